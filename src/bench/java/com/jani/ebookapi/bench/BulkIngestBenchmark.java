@@ -0,0 +1,77 @@
+package com.jani.ebookapi.bench;
+
+import com.jani.ebookapi.EbookApplication;
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.ByteArrayOutputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Ebooks per second through individual {@code POST /ebooks} calls versus one {@code POST /ebooks/bulk} stream,
+ * both over a single keep-alive connection against an in-process server.
+ * Args: [individual posts, default 20000] [bulk lines, default 1000000]
+ */
+public class BulkIngestBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        int individual = args.length > 0 ? Integer.parseInt(args[0]) : 20_000;
+        int bulk = args.length > 1 ? Integer.parseInt(args[1]) : 1_000_000;
+
+        try (ConfigurableApplicationContext context = SpringApplication.run(EbookApplication.class,
+                "--server.port=0", "--logging.level.root=WARN")) {
+            int port = ((WebServerApplicationContext) context).getWebServer().getPort();
+            HttpClient client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+            URI ebooks = URI.create("http://localhost:" + port + "/ebooks");
+
+            // warm up both paths before measuring
+            postIndividually(client, ebooks, individual / 10);
+            postBulk(client, URI.create(ebooks + "/bulk"), bulk / 10);
+
+            long start = System.nanoTime();
+            postIndividually(client, ebooks, individual);
+            double individualRate = individual / ((System.nanoTime() - start) / 1e9);
+            System.out.printf("POST /ebooks       %,10.0f ebooks/s%n", individualRate);
+
+            start = System.nanoTime();
+            String report = postBulk(client, URI.create(ebooks + "/bulk"), bulk);
+            double bulkRate = bulk / ((System.nanoTime() - start) / 1e9);
+            System.out.printf("POST /ebooks/bulk  %,10.0f ebooks/s (%.1fx) %s%n", bulkRate, bulkRate / individualRate, report);
+        }
+    }
+
+    private static void postIndividually(HttpClient client, URI uri, int count) throws Exception {
+        for (int i = 0; i < count; i++) {
+            HttpRequest request = HttpRequest.newBuilder(uri)
+                    .header("Content-Type", "application/json")
+                    .POST(HttpRequest.BodyPublishers.ofString(line(i)))
+                    .build();
+            HttpResponse<Void> response = client.send(request, HttpResponse.BodyHandlers.discarding());
+            if (response.statusCode() != 201) throw new IllegalStateException("POST /ebooks returned " + response.statusCode());
+        }
+    }
+
+    private static String postBulk(HttpClient client, URI uri, int count) throws Exception {
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        for (int i = 0; i < count; i++) {
+            body.write(line(i).getBytes(StandardCharsets.UTF_8));
+            body.write('\n');
+        }
+        HttpRequest request = HttpRequest.newBuilder(uri)
+                .header("Content-Type", "application/x-ndjson")
+                .POST(HttpRequest.BodyPublishers.ofByteArray(body.toByteArray()))
+                .build();
+        HttpResponse<String> response = client.send(request, HttpResponse.BodyHandlers.ofString());
+        if (response.statusCode() != 200) throw new IllegalStateException("POST /ebooks/bulk returned " + response.statusCode());
+        return response.body();
+    }
+
+    private static String line(int i) {
+        return "{\"author\": \"Author " + (i % 5000) + "\", \"title\": \"Title number " + i + "\", \"format\": \"epub\"}";
+    }
+}
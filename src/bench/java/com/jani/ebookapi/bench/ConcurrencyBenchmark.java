@@ -0,0 +1,146 @@
+package com.jani.ebookapi.bench;
+
+import com.jani.ebookapi.EbookApplication;
+import com.jani.ebookapi.model.Ebook;
+import com.jani.ebookapi.service.EbookService;
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.function.IntFunction;
+
+/**
+ * Throughput and latency percentiles of the {@code /ebooks} endpoints at high concurrency, under the same load for
+ * Tomcat on its platform thread pool, Tomcat on virtual threads ({@code spring.threads.virtual.enabled}, Java 21+) and the
+ * reactive stack on Netty (the "reactive" profile). Persistence runs with batch durability, so every write waits until
+ * fsynced. Each mode runs in a fresh JVM.
+ * Args: [concurrent clients, default 400] [seconds per endpoint, default 20] [modes, default "platform,virtual,reactive"]
+ * [child JVM options, default "-Xms1g -Xmx1g"]
+ */
+public class ConcurrencyBenchmark {
+
+    private static final int SEEDED = 10_000;
+
+    public static void main(String[] args) throws Exception {
+        if (args.length > 0 && args[0].equals("run")) {
+            run(args[1], Integer.parseInt(args[2]), Integer.parseInt(args[3]));
+            return;
+        }
+        String clients = args.length > 0 ? args[0] : "400";
+        String seconds = args.length > 1 ? args[1] : "20";
+        List<String> modes = new ArrayList<>(List.of((args.length > 2 ? args[2] : "platform,virtual,reactive").split(",")));
+        String childOptions = args.length > 3 ? args[3] : "-Xms1g -Xmx1g";
+        // below 21 the setting is ignored, and the mode would report platform threads under the virtual label
+        if (modes.contains("virtual") && Runtime.version().feature() < 21) {
+            System.out.println("Running on Java " + Runtime.version() + ": virtual threads need Java 21, skipping the virtual mode");
+            modes.remove("virtual");
+        }
+        for (String mode : modes) {
+            List<String> command = new ArrayList<>();
+            command.add(Path.of(System.getProperty("java.home"), "bin", "java").toString());
+            command.addAll(List.of(childOptions.trim().split("\\s+")));
+            command.addAll(List.of("-cp", System.getProperty("java.class.path"), ConcurrencyBenchmark.class.getName(),
+                    "run", mode, clients, seconds));
+            Process process = new ProcessBuilder(command).redirectErrorStream(true).start();
+            try (BufferedReader output = new BufferedReader(new InputStreamReader(process.getInputStream()))) {
+                output.lines().forEach(System.out::println);
+            }
+            process.waitFor();
+        }
+    }
+
+    // runs in the child JVM
+    private static void run(String mode, int clients, int seconds) throws Exception {
+        Path directory = Files.createTempDirectory("ebook-concurrency");
+        try (ConfigurableApplicationContext context = SpringApplication.run(EbookApplication.class,
+                "--server.port=0", "--logging.level.root=WARN", "--spring.main.banner-mode=off",
+                "--spring.threads.virtual.enabled=" + mode.equals("virtual"),
+                "--spring.profiles.active=" + (mode.equals("reactive") ? "reactive" : "default"),
+                "--ebook.persistence.enabled=true", "--ebook.persistence.directory=" + directory,
+                "--ebook.persistence.durability=batch", "--ebook.persistence.snapshot-interval=0")) {
+            EbookService ebookService = context.getBean(EbookService.class);
+            List<Ebook> seeded = new ArrayList<>();
+            for (int i = 0; i < SEEDED; i++) {
+                seeded.add(new Ebook(null, "Author " + (i % 500), "Title number " + i, "epub"));
+            }
+            String[] ids = ebookService.addAll(seeded).stream().map(Ebook::getId).toArray(String[]::new);
+
+            String base = "http://localhost:" + ((WebServerApplicationContext) context).getWebServer().getPort();
+            HttpClient client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+            IntFunction<HttpRequest> getById = i -> HttpRequest.newBuilder(URI.create(base + "/ebooks/" + ids[i % ids.length])).build();
+            IntFunction<HttpRequest> getPage = i -> HttpRequest.newBuilder(URI.create(base + "/ebooks?limit=20&author=Author%20" + i % 500)).build();
+            IntFunction<HttpRequest> post = i -> HttpRequest.newBuilder(URI.create(base + "/ebooks"))
+                    .header("Content-Type", "application/json")
+                    .POST(HttpRequest.BodyPublishers.ofString("{\"author\": \"Author " + i % 500
+                            + "\", \"title\": \"Title number " + i + "\", \"format\": \"epub\"}"))
+                    .build();
+
+            // warm up every path before measuring
+            for (IntFunction<HttpRequest> requests : List.of(getById, getPage, post)) {
+                load(client, requests, clients, 3);
+            }
+            System.out.printf("%s, Java %s, %d clients%n", mode, Runtime.version(), clients);
+            report("GET /ebooks/{id}", load(client, getById, clients, seconds), seconds);
+            report("GET /ebooks?author", load(client, getPage, clients, seconds), seconds);
+            report("POST /ebooks", load(client, post, clients, seconds), seconds);
+        } finally {
+            try (var files = Files.list(directory)) {
+                for (Path file : files.toList()) Files.delete(file);
+            }
+            Files.delete(directory);
+        }
+    }
+
+    // closed model: every client sends its next request as soon as the previous one is answered
+    private static long[] load(HttpClient client, IntFunction<HttpRequest> requests, int clients, int seconds) throws Exception {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(seconds);
+        ExecutorService executor = Executors.newFixedThreadPool(clients);
+        try {
+            List<Future<long[]>> futures = new ArrayList<>();
+            for (int c = 0; c < clients; c++) {
+                int offset = c * 7919;
+                futures.add(executor.submit(() -> {
+                    long[] latencies = new long[1024];
+                    int count = 0;
+                    while (System.nanoTime() < deadline) {
+                        long start = System.nanoTime();
+                        HttpResponse<Void> response = client.send(requests.apply(offset + count), HttpResponse.BodyHandlers.discarding());
+                        if (response.statusCode() >= 300) throw new IllegalStateException("status " + response.statusCode());
+                        if (count == latencies.length) latencies = Arrays.copyOf(latencies, count * 2);
+                        latencies[count++] = System.nanoTime() - start;
+                    }
+                    return Arrays.copyOf(latencies, count);
+                }));
+            }
+            List<long[]> perClient = new ArrayList<>();
+            for (Future<long[]> future : futures) perClient.add(future.get());
+            long[] latencies = perClient.stream().flatMapToLong(Arrays::stream).toArray();
+            Arrays.sort(latencies);
+            return latencies;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static void report(String endpoint, long[] latencies, int seconds) {
+        System.out.printf("  %-20s %,9.0f req/s  p50 %7.2f ms  p99 %7.2f ms  max %7.2f ms%n", endpoint,
+                (double) latencies.length / seconds, percentile(latencies, 0.50), percentile(latencies, 0.99),
+                latencies[latencies.length - 1] / 1e6);
+    }
+
+    private static double percentile(long[] sorted, double quantile) {
+        return sorted[(int) Math.min(sorted.length - 1, Math.ceil(quantile * sorted.length) - 1)] / 1e6;
+    }
+}
@@ -0,0 +1,58 @@
+package com.jani.ebookapi.bench;
+
+import com.jani.ebookapi.EbookApplication;
+import com.jani.ebookapi.model.Ebook;
+import com.jani.ebookapi.service.EbookService;
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.InputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Records per minute through {@code GET /ebooks/export}, plain and gzipped, against an in-process server.
+ * Args: [ebook count, default 1000000]
+ */
+public class ExportBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+
+        try (ConfigurableApplicationContext context = SpringApplication.run(EbookApplication.class,
+                "--server.port=0", "--logging.level.root=WARN")) {
+            EbookService ebookService = context.getBean(EbookService.class);
+            List<Ebook> batch = new ArrayList<>();
+            for (int i = 0; i < count; i++) {
+                batch.add(new Ebook(null, "Author " + (i % 5000), "Title number " + i, "epub"));
+                if (batch.size() == 1000) {
+                    ebookService.addAll(batch);
+                    batch = new ArrayList<>();
+                }
+            }
+            ebookService.addAll(batch);
+
+            int port = ((WebServerApplicationContext) context).getWebServer().getPort();
+            HttpClient client = HttpClient.newHttpClient();
+            URI export = URI.create("http://localhost:" + port + "/ebooks/export");
+            for (String encoding : List.of("identity", "gzip", "identity", "gzip")) {
+                HttpRequest request = HttpRequest.newBuilder(export).header("Accept-Encoding", encoding).build();
+                long start = System.nanoTime();
+                HttpResponse<InputStream> response = client.send(request, HttpResponse.BodyHandlers.ofInputStream());
+                long bytes = 0;
+                try (InputStream body = response.body()) {
+                    byte[] buffer = new byte[64 * 1024];
+                    int read;
+                    while ((read = body.read(buffer)) >= 0) bytes += read;
+                }
+                double seconds = (System.nanoTime() - start) / 1e9;
+                System.out.printf("%-8s %,d bytes in %.2f s, %,.0f ebooks/min%n", encoding, bytes, seconds, count / seconds * 60);
+            }
+        }
+    }
+}
@@ -0,0 +1,120 @@
+package com.jani.ebookapi.bench;
+
+import com.jani.ebookapi.model.Ebook;
+import com.jani.ebookapi.store.CompactEbookStore;
+import com.jani.ebookapi.store.ConcurrentEbookStore;
+import com.jani.ebookapi.store.EbookStore;
+import com.jani.ebookapi.store.TieredEbookStore;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.ref.Reference;
+import java.nio.file.Files;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Supplier;
+
+/**
+ * Retained heap per stored ebook for the original {@code HashMap<String, Ebook>} layout and each {@link EbookStore}.
+ * The tiered store is measured with a full 64MB cache, which it keeps at any catalog size.
+ * Args: [ebook count, default 1000000]
+ */
+public class FootprintBenchmark {
+
+    private static final String[] FORMATS = {"epub", "pdf", "mobi", "azw3", "txt"};
+    private static final String[] WORDS = {"the", "night", "river", "of", "stars", "house", "last", "winter",
+            "garden", "secret", "city", "shadow", "and", "kingdom", "letters", "from", "a", "stranger"};
+
+    public static void main(String[] args) {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        Ebook[] input = generate(count);
+
+        long baseline = measure("HashMap<String, Ebook>", count, () -> {
+            Map<String, Ebook> booksData = new HashMap<>();
+            for (Ebook ebook : input) {
+                Ebook copy = copyOf(ebook);
+                copy.setId(UUID.randomUUID().toString());
+                booksData.put(copy.getId(), copy);
+            }
+            return booksData;
+        });
+        long concurrent = measure("ConcurrentEbookStore", count, () -> fill(new ConcurrentEbookStore(), input));
+        long compact = measure("CompactEbookStore", count, () -> fill(new CompactEbookStore(), input));
+        TieredEbookStore tieredStore = tiered();
+        long tiered = measure("TieredEbookStore", count, () -> fill(tieredStore, input));
+        tieredStore.close();
+
+        System.out.printf("%nConcurrentEbookStore: %.2fx of baseline%n", (double) concurrent / baseline);
+        System.out.printf("CompactEbookStore:    %.2fx of baseline (%.1fx smaller)%n",
+                (double) compact / baseline, (double) baseline / compact);
+        System.out.printf("TieredEbookStore:     %.2fx of baseline (%.1fx smaller)%n",
+                (double) tiered / baseline, (double) baseline / tiered);
+    }
+
+    // author and format strings are fresh instances per ebook, the way request deserialization produces them
+    private static Ebook[] generate(int count) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        Ebook[] ebooks = new Ebook[count];
+        for (int i = 0; i < count; i++) {
+            StringBuilder title = new StringBuilder();
+            int words = 2 + random.nextInt(4);
+            for (int w = 0; w < words; w++) {
+                if (w > 0) title.append(' ');
+                title.append(WORDS[random.nextInt(WORDS.length)]);
+            }
+            ebooks[i] = new Ebook(null, "Author " + random.nextInt(count / 20 + 1), title.toString(),
+                    FORMATS[random.nextInt(FORMATS.length)]);
+        }
+        return ebooks;
+    }
+
+    private static Ebook copyOf(Ebook ebook) {
+        return new Ebook(null, new String(ebook.getAuthor()), new String(ebook.getTitle()), new String(ebook.getFormat()));
+    }
+
+    private static EbookStore fill(EbookStore store, Ebook[] input) {
+        for (Ebook ebook : input) {
+            String id = UUID.randomUUID().toString();
+            store.putIfAbsent(id, copyOf(ebook));
+        }
+        return store;
+    }
+
+    private static TieredEbookStore tiered() {
+        try {
+            return new TieredEbookStore(Files.createTempDirectory("ebooks"), 64L << 20, 64L << 20);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static long measure(String name, int count, Supplier<Object> builder) {
+        long before = usedHeap();
+        Object retained = builder.get();
+        long bytes = usedHeap() - before;
+        // keep the structure reachable until after the measurement
+        Reference.reachabilityFence(retained);
+        System.out.printf("%-24s %,14d bytes  %6.1f bytes/ebook%n", name, bytes, (double) bytes / count);
+        return bytes;
+    }
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        long used = Long.MAX_VALUE;
+        // repeat until a full collection no longer frees anything
+        for (int i = 0; i < 10; i++) {
+            System.gc();
+            try {
+                Thread.sleep(50);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            long current = runtime.totalMemory() - runtime.freeMemory();
+            if (current >= used) break;
+            used = current;
+        }
+        return used;
+    }
+}
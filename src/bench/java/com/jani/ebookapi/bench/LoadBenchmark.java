@@ -0,0 +1,239 @@
+package com.jani.ebookapi.bench;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.jani.ebookapi.EbookApplication;
+import com.jani.ebookapi.model.Ebook;
+import com.jani.ebookapi.service.EbookService;
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.PrintStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.stream.Stream;
+
+/**
+ * Open-model load test: boots the application on a loopback port and sends a weighted mix of list, get, post, put,
+ * delete and bulk requests at a constant arrival rate, whether or not earlier requests have been answered. Latency is measured
+ * from the time a request was scheduled to be sent, so a stalled server shows up in the percentiles instead of just
+ * slowing the load down (coordinated omission). Reports throughput and HdrHistogram percentiles per endpoint and writes
+ * the full distributions (in ms) to target/load. Writes shed by admission control with 503 are counted apart and left
+ * out of the percentiles, which would otherwise look better the more is shed. A bulk request loads one full batch of
+ * {@value #BULK_LINES} new ebooks.
+ * Args: [requests per second, default 1000] [seconds, default 30] [mix, default "list=10,get=55,post=10,put=15,delete=10"]
+ * [application arguments, e.g. --ebook.store.type=compact --ebook.persistence.enabled=true]
+ */
+public class LoadBenchmark {
+
+    private static final int SEEDED = 10_000;
+    private static final int WARMUP_SECONDS = 5;
+    private static final int BULK_LINES = 1000;
+
+    private enum Endpoint {
+        LIST("GET /ebooks"), GET("GET /ebooks/{id}"), POST("POST /ebooks"), PUT("PUT /ebooks/{id}"), DELETE("DELETE /ebooks/{id}"),
+        BULK("POST /ebooks/bulk");
+
+        private final String label;
+
+        Endpoint(String label) {
+            this.label = label;
+        }
+    }
+
+    private static class Result {
+        // up to one minute at three significant digits
+        private final Histogram latencies = new ConcurrentHistogram(TimeUnit.MINUTES.toNanos(1), 3);
+        private final LongAdder errors = new LongAdder();
+        private final LongAdder shed = new LongAdder();
+        private final LongAdder skipped = new LongAdder();
+    }
+
+    private final HttpClient client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+    private final ObjectMapper objectMapper;
+    private final String base;
+    private final String[] ids;
+    private final Queue<String> deletable;
+    private final int[] weights = new int[Endpoint.values().length];
+
+    private LoadBenchmark(ObjectMapper objectMapper, String base, String[] ids, Queue<String> deletable, String mix) {
+        this.objectMapper = objectMapper;
+        this.base = base;
+        this.ids = ids;
+        this.deletable = deletable;
+        for (String entry : mix.split(",")) {
+            String[] weight = entry.split("=");
+            weights[Endpoint.valueOf(weight[0].trim().toUpperCase()).ordinal()] = Integer.parseInt(weight[1].trim());
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        int rate = args.length > 0 ? Integer.parseInt(args[0]) : 1000;
+        int seconds = args.length > 1 ? Integer.parseInt(args[1]) : 30;
+        String mix = args.length > 2 ? args[2] : "list=10,get=55,post=10,put=15,delete=10";
+        String[] applicationArgs = Stream.concat(
+                Stream.of("--server.address=127.0.0.1", "--server.port=0", "--logging.level.root=WARN", "--spring.main.banner-mode=off"),
+                Arrays.stream(args).skip(3)).toArray(String[]::new);
+
+        try (ConfigurableApplicationContext context = SpringApplication.run(EbookApplication.class, applicationArgs)) {
+            EbookService ebookService = context.getBean(EbookService.class);
+            // reads and updates go to ebooks that are never deleted; deletes take ebooks from a separate pool that posts refill
+            String[] ids = seed(ebookService);
+            Queue<String> deletable = new ConcurrentLinkedQueue<>(Arrays.asList(seed(ebookService)));
+            String base = "http://127.0.0.1:" + ((WebServerApplicationContext) context).getWebServer().getPort();
+            LoadBenchmark load = new LoadBenchmark(context.getBean(ObjectMapper.class), base, ids, deletable, mix);
+
+            load.run(rate, Math.min(WARMUP_SECONDS, seconds));
+            System.out.printf("open model, %,d req/s for %d s, mix %s, Java %s%n", rate, seconds, mix, Runtime.version());
+            Map<Endpoint, Result> results = load.run(rate, seconds);
+            report(results, seconds);
+        }
+    }
+
+    private static String[] seed(EbookService ebookService) {
+        List<Ebook> ebooks = new ArrayList<>(SEEDED);
+        for (int i = 0; i < SEEDED; i++) {
+            ebooks.add(new Ebook(null, "Author " + (i % 500), "Title number " + i, "epub"));
+        }
+        return ebookService.addAll(ebooks).stream().map(Ebook::getId).toArray(String[]::new);
+    }
+
+    private Map<Endpoint, Result> run(int rate, int seconds) throws InterruptedException {
+        Map<Endpoint, Result> results = new EnumMap<>(Endpoint.class);
+        for (Endpoint endpoint : Endpoint.values()) results.put(endpoint, new Result());
+        LongAdder sent = new LongAdder();
+        LongAdder completed = new LongAdder();
+        long interval = TimeUnit.SECONDS.toNanos(1) / rate;
+        long requests = (long) rate * seconds;
+        long maxLag = 0;
+
+        long start = System.nanoTime();
+        for (long n = 0; n < requests; n++) {
+            long scheduled = start + n * interval;
+            long wait;
+            while ((wait = scheduled - System.nanoTime()) > 0) LockSupport.parkNanos(wait);
+            maxLag = Math.max(maxLag, System.nanoTime() - scheduled);
+
+            Endpoint endpoint = pick();
+            Result result = results.get(endpoint);
+            HttpRequest request = request(endpoint, n);
+            if (request == null) {
+                result.skipped.increment();
+                continue;
+            }
+            sent.increment();
+            client.sendAsync(request, HttpResponse.BodyHandlers.ofString()).whenComplete((response, failure) -> {
+                if (failure == null && response.statusCode() == 503) {
+                    result.shed.increment();
+                    if (endpoint == Endpoint.DELETE) deletable.add(request.uri().getPath().substring("/ebooks/".length()));
+                    completed.increment();
+                    return;
+                }
+                // measured from the scheduled send time, not the actual one
+                result.latencies.recordValue(Math.min(System.nanoTime() - scheduled, result.latencies.getHighestTrackableValue()));
+                if (failure != null || response.statusCode() >= 300) {
+                    result.errors.increment();
+                } else if (endpoint == Endpoint.POST) {
+                    deletable.add(idOf(response.body()));
+                }
+                completed.increment();
+            });
+        }
+        long deadline = System.nanoTime() + TimeUnit.MINUTES.toNanos(1);
+        while (completed.sum() < sent.sum() && System.nanoTime() < deadline) Thread.sleep(10);
+        if (maxLag > TimeUnit.MILLISECONDS.toNanos(10)) {
+            System.out.printf("  warning: the load generator fell up to %.1f ms behind schedule%n", maxLag / 1e6);
+        }
+        return results;
+    }
+
+    private Endpoint pick() {
+        int total = Arrays.stream(weights).sum();
+        int value = ThreadLocalRandom.current().nextInt(total);
+        for (Endpoint endpoint : Endpoint.values()) {
+            value -= weights[endpoint.ordinal()];
+            if (value < 0) return endpoint;
+        }
+        throw new IllegalStateException();
+    }
+
+    // null when there is nothing left to delete
+    private HttpRequest request(Endpoint endpoint, long n) {
+        String randomId = ids[ThreadLocalRandom.current().nextInt(ids.length)];
+        return switch (endpoint) {
+            case LIST -> HttpRequest.newBuilder(URI.create(base + "/ebooks?limit=20&author=Author%20" + n % 500)).build();
+            case GET -> HttpRequest.newBuilder(URI.create(base + "/ebooks/" + randomId)).build();
+            case POST -> HttpRequest.newBuilder(URI.create(base + "/ebooks"))
+                    .header("Content-Type", "application/json").POST(body(n)).build();
+            case PUT -> HttpRequest.newBuilder(URI.create(base + "/ebooks/" + randomId))
+                    .header("Content-Type", "application/json").PUT(body(n)).build();
+            case DELETE -> {
+                String id = deletable.poll();
+                yield id == null ? null : HttpRequest.newBuilder(URI.create(base + "/ebooks/" + id)).DELETE().build();
+            }
+            case BULK -> HttpRequest.newBuilder(URI.create(base + "/ebooks/bulk"))
+                    .header("Content-Type", "application/x-ndjson").POST(bulkBody(n)).build();
+        };
+    }
+
+    private static HttpRequest.BodyPublisher bulkBody(long n) {
+        StringBuilder lines = new StringBuilder(BULK_LINES * 80);
+        for (int i = 0; i < BULK_LINES; i++) {
+            lines.append("{\"author\": \"Author ").append(n % 500).append("\", \"title\": \"Bulk title ").append(n).append('-')
+                    .append(i).append("\", \"format\": \"epub\"}\n");
+        }
+        return HttpRequest.BodyPublishers.ofString(lines.toString());
+    }
+
+    private static HttpRequest.BodyPublisher body(long n) {
+        return HttpRequest.BodyPublishers.ofString("{\"author\": \"Author " + n % 500
+                + "\", \"title\": \"Title number " + n + "\", \"format\": \"epub\"}");
+    }
+
+    private String idOf(String json) {
+        try {
+            return objectMapper.readValue(json, Ebook.class).getId();
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static void report(Map<Endpoint, Result> results, int seconds) throws Exception {
+        Path directory = Files.createDirectories(Path.of("target", "load"));
+        Histogram all = new Histogram(TimeUnit.MINUTES.toNanos(1), 3);
+        long errors = 0;
+        long shed = 0;
+        for (Map.Entry<Endpoint, Result> entry : results.entrySet()) {
+            Result result = entry.getValue();
+            if (result.latencies.getTotalCount() == 0 && result.skipped.sum() == 0) continue;
+            all.add(result.latencies);
+            errors += result.errors.sum();
+            shed += result.shed.sum();
+            print(entry.getKey().label, result.latencies, seconds, result.errors.sum(), result.shed.sum(), result.skipped.sum());
+            try (PrintStream out = new PrintStream(directory.resolve(entry.getKey().name().toLowerCase() + ".hgrm").toFile())) {
+                result.latencies.outputPercentileDistribution(out, 1e6);
+            }
+        }
+        print("total", all, seconds, errors, shed, 0);
+    }
+
+    private static void print(String label, Histogram latencies, int seconds, long errors, long shed, long skipped) {
+        System.out.printf("  %-20s %,9.0f req/s  p50 %8.2f  p90 %8.2f  p99 %8.2f  p99.9 %8.2f  max %8.2f ms  errors %d%s%s%n",
+                label, (double) latencies.getTotalCount() / seconds, latencies.getValueAtPercentile(50) / 1e6,
+                latencies.getValueAtPercentile(90) / 1e6, latencies.getValueAtPercentile(99) / 1e6,
+                latencies.getValueAtPercentile(99.9) / 1e6, latencies.getMaxValue() / 1e6, errors,
+                shed > 0 ? "  shed " + shed : "", skipped > 0 ? "  skipped " + skipped : "");
+    }
+}
@@ -0,0 +1,115 @@
+package com.jani.ebookapi.bench;
+
+import com.jani.ebookapi.model.Ebook;
+import com.jani.ebookapi.persistence.DurabilityMode;
+import com.jani.ebookapi.persistence.SnapshotFile;
+import com.jani.ebookapi.persistence.SnapshotManager;
+import com.jani.ebookapi.persistence.WriteAheadLog;
+import com.jani.ebookapi.service.EbookService;
+import com.jani.ebookapi.store.CompactEbookStore;
+import com.jani.ebookapi.store.ConcurrentEbookStore;
+import com.jani.ebookapi.store.EbookStore;
+
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Time from JVM start until a snapshot of the catalog is loaded into {@link EbookService}.
+ * Writes a snapshot once, then loads it in a fresh JVM per store type so class loading and JIT warm-up are included.
+ * Args: [ebook count, default 5000000] [child JVM options, default "-Xms4g -Xmx4g"]
+ */
+public class StartupBenchmark {
+
+    private static final String[] FORMATS = {"epub", "pdf", "mobi", "azw3", "txt"};
+    private static final String[] WORDS = {"the", "night", "river", "of", "stars", "house", "last", "winter",
+            "garden", "secret", "city", "shadow", "and", "kingdom", "letters", "from", "a", "stranger"};
+
+    public static void main(String[] args) throws Exception {
+        if (args.length > 0 && args[0].equals("load")) {
+            load(Path.of(args[1]), args[2]);
+            return;
+        }
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 5_000_000;
+        String childOptions = args.length > 1 ? args[1] : "-Xms4g -Xmx4g";
+
+        Path directory = Files.createTempDirectory("ebook-startup");
+        try {
+            long start = System.nanoTime();
+            Path snapshot = directory.resolve(String.format("snapshot-%020d.bin", count));
+            SnapshotFile.write(snapshot, count, () -> generate(count));
+            System.out.printf("Wrote %,d ebooks (%,d bytes) in %d ms%n", count, Files.size(snapshot),
+                    Duration.ofNanos(System.nanoTime() - start).toMillis());
+
+            for (String storeType : List.of("concurrent", "compact")) {
+                List<String> command = new ArrayList<>();
+                command.add(Path.of(System.getProperty("java.home"), "bin", "java").toString());
+                command.addAll(List.of(childOptions.trim().split("\\s+")));
+                command.addAll(List.of("-cp", System.getProperty("java.class.path"), StartupBenchmark.class.getName(),
+                        "load", directory.toString(), storeType));
+                Process process = new ProcessBuilder(command).redirectErrorStream(true).start();
+                try (BufferedReader output = new BufferedReader(new InputStreamReader(process.getInputStream()))) {
+                    output.lines().forEach(System.out::println);
+                }
+                process.waitFor();
+            }
+        } finally {
+            try (var files = Files.list(directory)) {
+                for (Path file : files.toList()) Files.delete(file);
+            }
+            Files.delete(directory);
+        }
+    }
+
+    // runs in the child JVM
+    private static void load(Path directory, String storeType) throws Exception {
+        EbookStore store = storeType.equals("compact") ? new CompactEbookStore() : new ConcurrentEbookStore();
+        EbookService ebookService = new EbookService(store);
+        long start = System.nanoTime();
+        try (WriteAheadLog writeAheadLog = new WriteAheadLog(directory, DurabilityMode.BATCH, 64 << 20, Duration.ofMillis(100))) {
+            new SnapshotManager(directory, ebookService, writeAheadLog).load();
+        }
+        long loadMillis = Duration.ofNanos(System.nanoTime() - start).toMillis();
+        long sinceJvmStart = System.currentTimeMillis() - ManagementFactory.getRuntimeMXBean().getStartTime();
+        Runtime runtime = Runtime.getRuntime();
+        System.out.printf("%-10s %,d ebooks loaded in %,d ms, ready %,d ms after JVM start, heap used %,d MB%n",
+                storeType, store.size(), loadMillis, sinceJvmStart,
+                (runtime.totalMemory() - runtime.freeMemory()) >> 20);
+    }
+
+    private static Iterator<Ebook> generate(int count) {
+        return new Iterator<>() {
+            private final long idStep = Long.divideUnsigned(-1L, count);
+            private long generated;
+
+            @Override
+            public boolean hasNext() {
+                return generated < count;
+            }
+
+            @Override
+            public Ebook next() {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                StringBuilder title = new StringBuilder();
+                int words = 2 + random.nextInt(4);
+                for (int w = 0; w < words; w++) {
+                    if (w > 0) title.append(' ');
+                    title.append(WORDS[random.nextInt(WORDS.length)]);
+                }
+                // random version 4 ids, increasing like the id-ordered snapshots SnapshotManager writes
+                long mostSigBits = (generated++ * idStep + random.nextLong(idStep) & ~0xF000L) | 0x4000L;
+                long leastSigBits = random.nextLong() & 0x3FFFFFFFFFFFFFFFL | 0x8000000000000000L;
+                return new Ebook(new UUID(mostSigBits, leastSigBits).toString(), "Author " + random.nextInt(count / 20 + 1),
+                        title.toString(), FORMATS[random.nextInt(FORMATS.length)]);
+            }
+        };
+    }
+}
@@ -0,0 +1,60 @@
+package com.jani.ebookapi.bench.jmh;
+
+import com.jani.ebookapi.cluster.ClusterIdGenerator;
+import com.jani.ebookapi.cluster.ClusterMembership;
+import com.jani.ebookapi.cluster.ConsistentHashRing;
+import com.jani.ebookapi.service.TimeOrderedIdGenerator;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The per-request cost of cluster mode on a node: finding the owner of an id on the ring, and drawing ids until one is
+ * owned by this node when an ebook is created.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ClusterRoutingBenchmark {
+
+    @Param({"3", "16"})
+    int nodes;
+
+    @Param({"128"})
+    int virtualNodes;
+
+    private ConsistentHashRing ring;
+    private ClusterIdGenerator idGenerator;
+    private String[] ids;
+
+    @Setup
+    public void prepare() {
+        List<String> members = new ArrayList<>();
+        for (int i = 0; i < nodes; i++) {
+            members.add("http://10.0.0." + (i + 1) + ":8080");
+        }
+        ring = new ConsistentHashRing(members, virtualNodes);
+        idGenerator = new ClusterIdGenerator(new TimeOrderedIdGenerator(), new ClusterMembership(members.get(0), members, virtualNodes));
+        ids = new String[10_000];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = UUID.randomUUID().toString();
+        }
+    }
+
+    @Benchmark
+    public String owner() {
+        return ring.owner(ids[ThreadLocalRandom.current().nextInt(ids.length)]);
+    }
+
+    @Benchmark
+    public String ownedId() {
+        return idGenerator.nextId();
+    }
+}
@@ -0,0 +1,105 @@
+package com.jani.ebookapi.bench.jmh;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.jani.ebookapi.admission.AdaptiveConcurrencyLimit;
+import com.jani.ebookapi.model.Ebook;
+import com.jani.ebookapi.service.EbookService;
+import com.jani.ebookapi.web.EbookController;
+import com.jani.ebookapi.web.EbookJsonCache;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.beans.factory.support.DefaultListableBeanFactory;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.ByteArrayHttpMessageConverter;
+import org.springframework.http.converter.StringHttpMessageConverter;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.http.converter.json.MappingJackson2HttpMessageConverter;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.util.unit.DataSize;
+import org.springframework.validation.beanvalidation.LocalValidatorFactoryBean;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
+
+/**
+ * Full in-process dispatch through {@link EbookController}: DispatcherServlet, argument resolution, validation and
+ * message conversion, without a socket. Adds are measured together with the delete that undoes them.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms1g", "-Xmx1g"})
+public class ControllerBenchmark {
+
+    private static final int CATALOG_SIZE = 10_000;
+
+    private MockMvc mockMvc;
+    private String[] ids;
+    private byte[] newEbook;
+
+    @Setup
+    public void prepare() throws Exception {
+        ObjectMapper objectMapper = Jackson2ObjectMapperBuilder.json().failOnUnknownProperties(true).build();
+        LocalValidatorFactoryBean validator = new LocalValidatorFactoryBean();
+        validator.afterPropertiesSet();
+        EbookService ebookService = new EbookService();
+        EbookController controller = new EbookController(ebookService, objectMapper, validator,
+                new EbookJsonCache(objectMapper, DataSize.ofMegabytes(64), ebookService::get),
+                new DefaultListableBeanFactory().getBeanProvider(AdaptiveConcurrencyLimit.class));
+        mockMvc = MockMvcBuilders.standaloneSetup(controller)
+                .setMessageConverters(new ByteArrayHttpMessageConverter(), new StringHttpMessageConverter(),
+                        new MappingJackson2HttpMessageConverter(objectMapper))
+                .setValidator(validator)
+                .build();
+
+        List<Ebook> ebooks = new ArrayList<>(CATALOG_SIZE);
+        for (int i = 0; i < CATALOG_SIZE; i++) {
+            ebooks.add(new Ebook(null, "Author " + i % 500, "Title number " + i, "epub"));
+        }
+        ids = ebookService.addAll(ebooks).stream().map(Ebook::getId).toArray(String[]::new);
+        newEbook = objectMapper.writeValueAsBytes(new Ebook(null, "New Author", "New Title", "epub"));
+    }
+
+    @Benchmark
+    public byte[] getEbook() throws Exception {
+        return body(mockMvc.perform(get("/ebooks/{id}", ids[ThreadLocalRandom.current().nextInt(ids.length)])).andReturn());
+    }
+
+    @Benchmark
+    public byte[] getPage() throws Exception {
+        return body(mockMvc.perform(get("/ebooks").param("limit", "100")).andReturn());
+    }
+
+    @Benchmark
+    public byte[] findByAuthor() throws Exception {
+        return body(mockMvc.perform(get("/ebooks").param("author", "Author " + ThreadLocalRandom.current().nextInt(500))
+                .param("limit", "100")).andReturn());
+    }
+
+    @Benchmark
+    public byte[] searchTitles() throws Exception {
+        return body(mockMvc.perform(get("/ebooks/search").param("q", "title numb")).andReturn());
+    }
+
+    @Benchmark
+    public int addAndDelete() throws Exception {
+        MvcResult added = mockMvc.perform(post("/ebooks").contentType(MediaType.APPLICATION_JSON).content(newEbook)).andReturn();
+        // {"id":"<36 character uuid>",...}, cheaper to cut out than to parse
+        String json = added.getResponse().getContentAsString();
+        int idStart = json.indexOf("\"id\":\"") + 6;
+        String id = json.substring(idStart, idStart + 36);
+        return mockMvc.perform(delete("/ebooks/{id}", id)).andReturn().getResponse().getStatus();
+    }
+
+    private static byte[] body(MvcResult result) {
+        if (result.getResponse().getStatus() != 200) throw new IllegalStateException("status " + result.getResponse().getStatus());
+        return result.getResponse().getContentAsByteArray();
+    }
+}
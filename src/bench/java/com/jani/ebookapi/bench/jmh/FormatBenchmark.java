@@ -0,0 +1,84 @@
+package com.jani.ebookapi.bench.jmh;
+
+import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.jani.ebookapi.model.Ebook;
+import com.jani.ebookapi.web.EbookFormats;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The payloads of {@link JsonBenchmark} per wire format, with the mappers the application negotiates. The encoded
+ * sizes are printed once per trial, so the bytes on the wire can be read next to the serialization cost.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class FormatBenchmark {
+
+    @Param({"json", "cbor", "smile"})
+    String format;
+
+    @Param({"100", "1000"})
+    int envelopeSize;
+
+    private ObjectMapper objectMapper;
+    private JavaType envelopeType;
+    private Ebook ebook;
+    private byte[] ebookBytes;
+    private Map<String, List<Ebook>> envelope;
+    private byte[] envelopeBytes;
+
+    @Setup
+    public void prepare() throws IOException {
+        Jackson2ObjectMapperBuilder builder = Jackson2ObjectMapperBuilder.json().failOnUnknownProperties(true);
+        objectMapper = switch (format) {
+            case "cbor" -> new EbookFormats(builder).mapper(MediaType.APPLICATION_CBOR);
+            case "smile" -> new EbookFormats(builder).mapper(EbookFormats.SMILE);
+            default -> builder.build();
+        };
+        envelopeType = objectMapper.getTypeFactory().constructMapType(Map.class,
+                objectMapper.getTypeFactory().constructType(String.class),
+                objectMapper.getTypeFactory().constructCollectionType(List.class, Ebook.class));
+        ebook = new Ebook(UUID.randomUUID().toString(), "Ursula K. Le Guin", "The Left Hand of Darkness", "epub");
+        ebookBytes = objectMapper.writeValueAsBytes(ebook);
+        List<Ebook> ebooks = new ArrayList<>(envelopeSize);
+        for (int i = 0; i < envelopeSize; i++) {
+            ebooks.add(new Ebook(UUID.randomUUID().toString(), "Author " + i % 50, "Title number " + i, "epub"));
+        }
+        envelope = Map.of("data", ebooks);
+        envelopeBytes = objectMapper.writeValueAsBytes(envelope);
+        System.out.printf("%n%s: ebook %d bytes, envelope of %d %d bytes%n", format, ebookBytes.length, envelopeSize, envelopeBytes.length);
+    }
+
+    @Benchmark
+    public byte[] serializeEbook() throws IOException {
+        return objectMapper.writeValueAsBytes(ebook);
+    }
+
+    @Benchmark
+    public Ebook deserializeEbook() throws IOException {
+        return objectMapper.readValue(ebookBytes, Ebook.class);
+    }
+
+    @Benchmark
+    public byte[] serializeEnvelope() throws IOException {
+        return objectMapper.writeValueAsBytes(envelope);
+    }
+
+    @Benchmark
+    public Map<String, List<Ebook>> deserializeEnvelope() throws IOException {
+        return objectMapper.readValue(envelopeBytes, envelopeType);
+    }
+}
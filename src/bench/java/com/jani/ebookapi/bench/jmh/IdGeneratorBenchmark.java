@@ -0,0 +1,42 @@
+package com.jani.ebookapi.bench.jmh;
+
+import com.jani.ebookapi.service.IdGenerator;
+import com.jani.ebookapi.service.RandomIdGenerator;
+import com.jani.ebookapi.service.TimeOrderedIdGenerator;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Id generation per {@link IdGenerator}: "random" is {@code UUID.randomUUID()} with its shared SecureRandom, so run it
+ * with several thread counts (e.g. JmhRunner "1,8,32" IdGeneratorBenchmark) to see the contention.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class IdGeneratorBenchmark {
+
+    @Param({"time-ordered", "random"})
+    String generator;
+
+    private IdGenerator idGenerator;
+
+    @Setup
+    public void prepare() {
+        idGenerator = generator.equals("random") ? new RandomIdGenerator() : new TimeOrderedIdGenerator();
+    }
+
+    @Benchmark
+    public String nextId() {
+        return idGenerator.nextId();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(1000)
+    public String[] nextIds() {
+        return idGenerator.nextIds(1000);
+    }
+}
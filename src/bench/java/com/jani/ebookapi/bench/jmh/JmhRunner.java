@@ -0,0 +1,40 @@
+package com.jani.ebookapi.bench.jmh;
+
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.results.format.ResultFormatFactory;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Runs the JMH suites in this package once per thread count and writes all results to one JSON file,
+ * which tools such as jmh.morethan.io can compare between runs.
+ * Args: [thread counts, default "1,4"] [JMH options, e.g. a benchmark regex, "-p catalogSize=10000" or "-rff results.json"]
+ * Results go to target/jmh-results.json unless -rff is given.
+ */
+public class JmhRunner {
+
+    public static void main(String[] args) throws Exception {
+        int[] threadCounts = Arrays.stream((args.length > 0 ? args[0] : "1,4").split(",")).mapToInt(Integer::parseInt).toArray();
+        CommandLineOptions commandLine = new CommandLineOptions(Arrays.copyOfRange(args, Math.min(1, args.length), args.length));
+        String resultFile = commandLine.getResult().orElse("target/jmh-results.json");
+
+        List<RunResult> results = new ArrayList<>();
+        for (int threads : threadCounts) {
+            ChainedOptionsBuilder options = new OptionsBuilder().parent(commandLine).threads(threads);
+            if (commandLine.getIncludes().isEmpty()) options.include(JmhRunner.class.getPackageName() + "\\.");
+            results.addAll(new Runner(options.build()).run());
+        }
+        try (PrintStream out = new PrintStream(resultFile)) {
+            ResultFormatFactory.getInstance(ResultFormatType.JSON, out).writeOut(results);
+        }
+        System.out.println("Results written to " + resultFile);
+    }
+}
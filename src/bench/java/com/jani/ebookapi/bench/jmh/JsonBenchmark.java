@@ -0,0 +1,72 @@
+package com.jani.ebookapi.bench.jmh;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.jani.ebookapi.model.Ebook;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Jackson (de)serialization of a single {@link Ebook} and of the {@code {"data": [...]}} list envelope,
+ * with an ObjectMapper configured like the application's.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class JsonBenchmark {
+
+    private static final TypeReference<Map<String, List<Ebook>>> ENVELOPE = new TypeReference<>() {
+    };
+
+    @Param({"100", "1000"})
+    int envelopeSize;
+
+    private ObjectMapper objectMapper;
+    private Ebook ebook;
+    private byte[] ebookJson;
+    private Map<String, List<Ebook>> envelope;
+    private byte[] envelopeJson;
+
+    @Setup
+    public void prepare() throws IOException {
+        objectMapper = Jackson2ObjectMapperBuilder.json().failOnUnknownProperties(true).build();
+        ebook = new Ebook(UUID.randomUUID().toString(), "Ursula K. Le Guin", "The Left Hand of Darkness", "epub");
+        ebookJson = objectMapper.writeValueAsBytes(ebook);
+        List<Ebook> ebooks = new ArrayList<>(envelopeSize);
+        for (int i = 0; i < envelopeSize; i++) {
+            ebooks.add(new Ebook(UUID.randomUUID().toString(), "Author " + i % 50, "Title number " + i, "epub"));
+        }
+        envelope = Map.of("data", ebooks);
+        envelopeJson = objectMapper.writeValueAsBytes(envelope);
+    }
+
+    @Benchmark
+    public byte[] serializeEbook() throws IOException {
+        return objectMapper.writeValueAsBytes(ebook);
+    }
+
+    @Benchmark
+    public Ebook deserializeEbook() throws IOException {
+        return objectMapper.readValue(ebookJson, Ebook.class);
+    }
+
+    @Benchmark
+    public byte[] serializeEnvelope() throws IOException {
+        return objectMapper.writeValueAsBytes(envelope);
+    }
+
+    @Benchmark
+    public Map<String, List<Ebook>> deserializeEnvelope() throws IOException {
+        return objectMapper.readValue(envelopeJson, ENVELOPE);
+    }
+}
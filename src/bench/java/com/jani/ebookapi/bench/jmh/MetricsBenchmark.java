@@ -0,0 +1,115 @@
+package com.jani.ebookapi.bench.jmh;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.jani.ebookapi.admission.AdaptiveConcurrencyLimit;
+import com.jani.ebookapi.metrics.InstrumentedEbookStore;
+import com.jani.ebookapi.model.Ebook;
+import com.jani.ebookapi.service.EbookService;
+import com.jani.ebookapi.store.ConcurrentEbookStore;
+import com.jani.ebookapi.web.EbookController;
+import com.jani.ebookapi.web.EbookJsonCache;
+import io.micrometer.core.instrument.Meter;
+import io.micrometer.core.instrument.config.MeterFilter;
+import io.micrometer.core.instrument.distribution.DistributionStatisticConfig;
+import io.micrometer.core.instrument.observation.DefaultMeterObservationHandler;
+import io.micrometer.observation.ObservationRegistry;
+import io.micrometer.prometheus.PrometheusConfig;
+import io.micrometer.prometheus.PrometheusMeterRegistry;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.beans.factory.support.DefaultListableBeanFactory;
+import org.springframework.http.converter.ByteArrayHttpMessageConverter;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.http.converter.json.MappingJackson2HttpMessageConverter;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.test.web.servlet.setup.StandaloneMockMvcBuilder;
+import org.springframework.util.unit.DataSize;
+import org.springframework.validation.beanvalidation.LocalValidatorFactoryBean;
+import org.springframework.web.filter.ServerHttpObservationFilter;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+
+/**
+ * Cost of the metrics on the hot path: service operations with and without the timed store, and a dispatched GET with
+ * and without the {@code http.server.requests} observation filter, recording into a Prometheus registry with percentile
+ * histograms the way the application does. The observation path takes a while to be compiled, hence the long warmup.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 10, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms1g", "-Xmx1g"})
+public class MetricsBenchmark {
+
+    private static final int CATALOG_SIZE = 10_000;
+
+    @Param({"off", "on"})
+    String metrics;
+
+    private EbookService ebookService;
+    private MockMvc mockMvc;
+    private String[] ids;
+
+    @Setup
+    public void prepare() throws Exception {
+        boolean enabled = metrics.equals("on");
+        PrometheusMeterRegistry registry = new PrometheusMeterRegistry(PrometheusConfig.DEFAULT);
+        // management.metrics.distribution.percentiles-histogram.http.server.requests=true
+        registry.config().meterFilter(new MeterFilter() {
+            @Override
+            public DistributionStatisticConfig configure(Meter.Id id, DistributionStatisticConfig config) {
+                if (!id.getName().equals("http.server.requests")) return config;
+                return DistributionStatisticConfig.builder().percentilesHistogram(true).build().merge(config);
+            }
+        });
+        // management.metrics.enable.http.server.requests.active=false
+        registry.config().meterFilter(MeterFilter.denyNameStartsWith("http.server.requests.active"));
+        ConcurrentEbookStore store = new ConcurrentEbookStore();
+        ebookService = new EbookService(enabled ? new InstrumentedEbookStore(store, registry) : store);
+
+        ObjectMapper objectMapper = Jackson2ObjectMapperBuilder.json().build();
+        LocalValidatorFactoryBean validator = new LocalValidatorFactoryBean();
+        validator.afterPropertiesSet();
+        StandaloneMockMvcBuilder builder = MockMvcBuilders.standaloneSetup(new EbookController(ebookService, objectMapper,
+                        validator, new EbookJsonCache(objectMapper, DataSize.ofMegabytes(64), ebookService::get),
+                        new DefaultListableBeanFactory().getBeanProvider(AdaptiveConcurrencyLimit.class)))
+                .setMessageConverters(new ByteArrayHttpMessageConverter(), new MappingJackson2HttpMessageConverter(objectMapper));
+        if (enabled) {
+            ObservationRegistry observationRegistry = ObservationRegistry.create();
+            observationRegistry.observationConfig().observationHandler(new DefaultMeterObservationHandler(registry));
+            builder.addFilters(new ServerHttpObservationFilter(observationRegistry));
+        }
+        mockMvc = builder.build();
+
+        List<Ebook> ebooks = new ArrayList<>(CATALOG_SIZE);
+        for (int i = 0; i < CATALOG_SIZE; i++) {
+            ebooks.add(new Ebook(null, "Author " + i % 500, "Title number " + i, "epub"));
+        }
+        ids = ebookService.addAll(ebooks).stream().map(Ebook::getId).toArray(String[]::new);
+    }
+
+    @Benchmark
+    public Ebook serviceGet() {
+        return ebookService.get(randomId());
+    }
+
+    @Benchmark
+    public Ebook serviceUpdate() {
+        return ebookService.update(randomId(), new Ebook(null, "Author 1", "Updated title", "epub"));
+    }
+
+    @Benchmark
+    public int httpGet() throws Exception {
+        return mockMvc.perform(get("/ebooks/{id}", randomId())).andReturn().getResponse().getStatus();
+    }
+
+    private String randomId() {
+        return ids[ThreadLocalRandom.current().nextInt(ids.length)];
+    }
+}
@@ -0,0 +1,95 @@
+package com.jani.ebookapi.bench.jmh;
+
+import com.jani.ebookapi.model.Ebook;
+import com.jani.ebookapi.service.EbookService;
+import com.jani.ebookapi.store.CompactEbookStore;
+import com.jani.ebookapi.store.ConcurrentEbookStore;
+import com.jani.ebookapi.store.EbookStore;
+import com.jani.ebookapi.store.TieredEbookStore;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link EbookService} operations against a pre-filled catalog, per store type and catalog size.
+ * Adds are measured together with the remove that undoes them, so the catalog keeps its size during a run.
+ * {@code hotGet} reads from the first {@value #HOT_EBOOKS} ebooks only, which the tiered store keeps in its cache.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms2g", "-Xmx2g"})
+public class ServiceBenchmark {
+
+    @Param({"10000", "1000000"})
+    int catalogSize;
+
+    private static final int HOT_EBOOKS = 1000;
+
+    @Param({"concurrent", "compact", "tiered"})
+    String store;
+
+    private EbookStore ebookStore;
+    private EbookService ebookService;
+    private String[] ids;
+
+    @Setup(Level.Trial)
+    public void fill() throws IOException {
+        ebookStore = switch (store) {
+            case "compact" -> new CompactEbookStore();
+            case "tiered" -> new TieredEbookStore(Files.createTempDirectory("ebooks"), 64L << 20, 64L << 20);
+            default -> new ConcurrentEbookStore();
+        };
+        ebookService = new EbookService(ebookStore);
+        List<Ebook> added = new ArrayList<>(catalogSize);
+        for (int from = 0; from < catalogSize; from += 1000) {
+            List<Ebook> batch = new ArrayList<>();
+            for (int i = from; i < Math.min(from + 1000, catalogSize); i++) {
+                batch.add(newEbook(i));
+            }
+            added.addAll(ebookService.addAll(batch));
+        }
+        ids = added.stream().map(Ebook::getId).toArray(String[]::new);
+    }
+
+    @Benchmark
+    public Ebook get() {
+        return ebookService.get(randomId());
+    }
+
+    @TearDown(Level.Trial)
+    public void close() throws Exception {
+        if (ebookStore instanceof AutoCloseable closeable) closeable.close();
+    }
+
+    @Benchmark
+    public Ebook hotGet() {
+        return ebookService.get(ids[ThreadLocalRandom.current().nextInt(Math.min(HOT_EBOOKS, ids.length))]);
+    }
+
+    @Benchmark
+    public Ebook update() {
+        return ebookService.update(randomId(), newEbook(ThreadLocalRandom.current().nextInt(catalogSize)));
+    }
+
+    @Benchmark
+    public Ebook addAndRemove() {
+        Ebook added = ebookService.add(newEbook(ThreadLocalRandom.current().nextInt(catalogSize)));
+        return ebookService.remove(added.getId());
+    }
+
+    private String randomId() {
+        return ids[ThreadLocalRandom.current().nextInt(ids.length)];
+    }
+
+    private static Ebook newEbook(int i) {
+        return new Ebook(null, "Author " + (i % 5000), "Title number " + i, i % 3 == 0 ? "pdf" : "epub");
+    }
+}
@@ -0,0 +1,30 @@
+package com.jani.ebookapi;
+
+import org.springframework.boot.autoconfigure.thread.Threading;
+import org.springframework.core.env.Environment;
+import org.springframework.core.task.VirtualThreadTaskExecutor;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Threads the application starts itself, beside the ones of the web server and Spring's executors: virtual threads
+ * when {@code spring.threads.virtual.enabled} is set on Java 21 or later, like the request threads, otherwise daemon
+ * platform threads. Either way they do not keep the JVM alive.
+ */
+public final class InternalThreads {
+
+    private InternalThreads() {
+    }
+
+    public static ThreadFactory factory(String prefix, Environment environment) {
+        return factory(prefix, Threading.VIRTUAL.isActive(environment));
+    }
+
+    public static ThreadFactory factory(String prefix, boolean virtual) {
+        if (virtual) return new VirtualThreadTaskExecutor(prefix).getVirtualThreadFactory();
+        CustomizableThreadFactory threadFactory = new CustomizableThreadFactory(prefix);
+        threadFactory.setDaemon(true);
+        return threadFactory;
+    }
+}
@@ -0,0 +1,129 @@
+package com.jani.ebookapi.admission;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * How many requests may be in flight at once, adjusted to their latency in the manner of TCP Vegas and AIMD. The
+ * latency of each window of completed requests is compared with the baseline, the lowest latency seen recently: while
+ * it stays within {@code tolerance} times the baseline and the limit is in use, the limit grows by one per window;
+ * once requests queue up for the CPU, the journal or the store, their latency rises and the limit is cut by the
+ * backoff factor. The baseline slowly follows a lasting change in latency, such as turning on synchronous persistence.
+ * A minimum equal to the maximum makes it a fixed limit.
+ */
+public class AdaptiveConcurrencyLimit {
+
+    private static final int MIN_WINDOW = 10;
+    private static final long BASELINE_DRIFT_NANOS = TimeUnit.MINUTES.toNanos(1);
+    private static final long MAX_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(5);
+
+    private final int minLimit;
+    private final int maxLimit;
+    private final double tolerance;
+    private final double backoff;
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final LongAdder rejected = new LongAdder();
+    private volatile double limit;
+
+    // guarded by this
+    private long baselineNanos;
+    private long windowStart = System.nanoTime();
+    private long windowLatencyNanos;
+    private int windowSamples;
+    private int windowMaxInFlight;
+
+    public AdaptiveConcurrencyLimit(int initialLimit, int minLimit, int maxLimit, double tolerance, double backoff) {
+        if (minLimit < 1 || maxLimit < minLimit) throw new IllegalArgumentException("Limits must satisfy 1 <= min <= max");
+        if (tolerance <= 1 || backoff <= 0 || backoff >= 1) throw new IllegalArgumentException("Tolerance must exceed 1 and backoff lie in (0, 1)");
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.tolerance = tolerance;
+        this.backoff = backoff;
+        this.limit = Math.max(minLimit, Math.min(maxLimit, initialLimit));
+    }
+
+    /**
+     * Takes a slot if fewer requests than the limit are in flight; each successful call must be paired with
+     * {@link #release}.
+     */
+    public boolean tryAcquire() {
+        if (take()) return true;
+        rejected.increment();
+        return false;
+    }
+
+    /**
+     * Waits until fewer requests than the limit are in flight and takes a slot, for writes better slowed down than
+     * shed, such as the batches of a bulk load that is already under way. Must be paired with {@link #release}.
+     */
+    public void acquire() throws InterruptedException {
+        long park = 1000;
+        while (!take()) {
+            if (Thread.interrupted()) throw new InterruptedException();
+            LockSupport.parkNanos(park);
+            park = Math.min(MAX_PARK_NANOS, park * 2);
+        }
+    }
+
+    // whether a slot is free right now, without taking it; counts as a rejection if not
+    public boolean admits() {
+        if (inFlight.get() < (int) limit) return true;
+        rejected.increment();
+        return false;
+    }
+
+    // latency is null for requests that say nothing about load, such as ones rejected as invalid
+    public void release(Duration latency) {
+        int current = inFlight.getAndDecrement();
+        if (latency != null) sample(latency.toNanos(), current);
+    }
+
+    private boolean take() {
+        int current;
+        do {
+            current = inFlight.get();
+            if (current >= (int) limit) return false;
+        } while (!inFlight.compareAndSet(current, current + 1));
+        return true;
+    }
+
+    public int limit() {
+        return (int) limit;
+    }
+
+    public int inFlight() {
+        return inFlight.get();
+    }
+
+    public long rejected() {
+        return rejected.sum();
+    }
+
+    private synchronized void sample(long latencyNanos, int inFlightBefore) {
+        windowLatencyNanos += latencyNanos;
+        windowSamples++;
+        windowMaxInFlight = Math.max(windowMaxInFlight, inFlightBefore);
+        if (windowSamples < Math.max(MIN_WINDOW, (int) limit)) return;
+
+        long now = System.nanoTime();
+        long average = windowLatencyNanos / windowSamples;
+        if (baselineNanos == 0 || average < baselineNanos) {
+            baselineNanos = average;
+        } else {
+            baselineNanos += (long) ((average - baselineNanos) * Math.min(1.0, (double) (now - windowStart) / BASELINE_DRIFT_NANOS));
+        }
+        if (average > baselineNanos * tolerance) {
+            limit = Math.max(minLimit, limit * backoff);
+        } else if (windowMaxInFlight * 2 >= (int) limit) {
+            // only grow a limit that is actually used, so a quiet period does not leave it far above what the server takes
+            limit = Math.min(maxLimit, limit + 1);
+        }
+        windowStart = now;
+        windowLatencyNanos = 0;
+        windowSamples = 0;
+        windowMaxInFlight = 0;
+    }
+}
@@ -0,0 +1,67 @@
+package com.jani.ebookapi.admission;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+
+// admission control: writes beyond an adaptive concurrency limit are shed with 503 instead of queueing
+@Configuration
+@ConditionalOnProperty(name = "ebook.admission.enabled", havingValue = "true", matchIfMissing = true)
+public class AdmissionConfiguration {
+
+    @Bean
+    public AdaptiveConcurrencyLimit writeConcurrencyLimit(@Value("${ebook.admission.initial-limit:20}") int initialLimit,
+                                                          @Value("${ebook.admission.min-limit:4}") int minLimit,
+                                                          @Value("${ebook.admission.max-limit:200}") int maxLimit,
+                                                          @Value("${ebook.admission.tolerance:2.0}") double tolerance,
+                                                          @Value("${ebook.admission.backoff:0.9}") double backoff) {
+        return new AdaptiveConcurrencyLimit(initialLimit, minLimit, maxLimit, tolerance, backoff);
+    }
+
+    @Bean
+    public MeterBinder admissionMetrics(AdaptiveConcurrencyLimit limit) {
+        return registry -> {
+            Gauge.builder("ebook.admission.limit", limit, AdaptiveConcurrencyLimit::limit)
+                    .description("Writes allowed in flight at once")
+                    .register(registry);
+            Gauge.builder("ebook.admission.in.flight", limit, AdaptiveConcurrencyLimit::inFlight)
+                    .description("Writes in flight")
+                    .register(registry);
+            FunctionCounter.builder("ebook.admission.rejected", limit, AdaptiveConcurrencyLimit::rejected)
+                    .description("Writes answered with 503 because the limit was reached")
+                    .register(registry);
+        };
+    }
+
+    // component scanning finds the nested configurations on their own, so each repeats the switch
+    @Configuration
+    @ConditionalOnProperty(name = "ebook.admission.enabled", havingValue = "true", matchIfMissing = true)
+    @ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
+    static class Servlet {
+
+        @Bean
+        public AdmissionFilter admissionFilter(AdaptiveConcurrencyLimit limit,
+                                               @Value("${ebook.admission.retry-after:1s}") Duration retryAfter) {
+            return new AdmissionFilter(limit, retryAfter);
+        }
+    }
+
+    @Configuration
+    @ConditionalOnProperty(name = "ebook.admission.enabled", havingValue = "true", matchIfMissing = true)
+    @ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+    static class Reactive {
+
+        @Bean
+        public ReactiveAdmissionFilter reactiveAdmissionFilter(AdaptiveConcurrencyLimit limit,
+                                                               @Value("${ebook.admission.retry-after:1s}") Duration retryAfter) {
+            return new ReactiveAdmissionFilter(limit, retryAfter);
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package com.jani.ebookapi.admission;
+
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.core.Ordered;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+import java.time.Duration;
+
+/**
+ * Admits the single-ebook writes, {@code POST /ebooks}, {@code PUT /ebooks/{id}} and {@code DELETE /ebooks/{id}}, up
+ * to the concurrency limit and answers the rest with 503 Service Unavailable and a Retry-After header right away, so a
+ * burst of writes does not queue up in front of the reads sharing the same threads. A bulk load, {@code POST
+ * /ebooks/bulk}, is shed the same way if no slot is free when it starts; once admitted, each of its batches waits for
+ * a slot of its own in the controller. Runs before cluster routing and replica forwarding, which then only see
+ * admitted writes.
+ */
+public class AdmissionFilter extends OncePerRequestFilter implements Ordered {
+
+    private final AdaptiveConcurrencyLimit limit;
+    private final String retryAfter;
+
+    public AdmissionFilter(AdaptiveConcurrencyLimit limit, Duration retryAfter) {
+        this.limit = limit;
+        this.retryAfter = retryAfterSeconds(retryAfter);
+    }
+
+    // after the observation filter timing http.server.requests, so rejected writes show up there as 503s
+    @Override
+    public int getOrder() {
+        return 0;
+    }
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        String path = request.getRequestURI().substring(request.getContextPath().length());
+        return !limited(request.getMethod(), path) && !bulk(request.getMethod(), path);
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        if (bulk(request.getMethod(), request.getRequestURI().substring(request.getContextPath().length()))) {
+            if (limit.admits()) {
+                chain.doFilter(request, response);
+            } else {
+                reject(response);
+            }
+            return;
+        }
+        if (!limit.tryAcquire()) {
+            reject(response);
+            return;
+        }
+        long started = System.nanoTime();
+        boolean completed = false;
+        try {
+            chain.doFilter(request, response);
+            completed = true;
+        } finally {
+            limit.release(completed && response.getStatus() < 300 ? Duration.ofNanos(System.nanoTime() - started) : null);
+        }
+    }
+
+    private void reject(HttpServletResponse response) {
+        response.setStatus(HttpStatus.SERVICE_UNAVAILABLE.value());
+        response.setHeader(HttpHeaders.RETRY_AFTER, retryAfter);
+    }
+
+    // the single-ebook writes, each holding a slot until answered
+    static boolean limited(String method, String path) {
+        if (method.equals("POST")) return path.equals("/ebooks");
+        if (method.equals("PUT") || method.equals("DELETE")) {
+            return path.startsWith("/ebooks/") && path.indexOf('/', "/ebooks/".length()) < 0 && !path.equals("/ebooks/bulk");
+        }
+        return false;
+    }
+
+    static boolean bulk(String method, String path) {
+        return method.equals("POST") && path.equals("/ebooks/bulk");
+    }
+
+    static String retryAfterSeconds(Duration retryAfter) {
+        return Long.toString(Math.max(1, (retryAfter.toMillis() + 999) / 1000));
+    }
+}
@@ -0,0 +1,61 @@
+package com.jani.ebookapi.admission;
+
+import org.springframework.core.Ordered;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.HttpStatusCode;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.http.server.reactive.ServerHttpResponse;
+import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.server.WebFilter;
+import org.springframework.web.server.WebFilterChain;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.SignalType;
+
+import java.time.Duration;
+
+// the reactive counterpart of AdmissionFilter; a write holds its slot until its response is complete
+public class ReactiveAdmissionFilter implements WebFilter, Ordered {
+
+    private final AdaptiveConcurrencyLimit limit;
+    private final String retryAfter;
+
+    public ReactiveAdmissionFilter(AdaptiveConcurrencyLimit limit, Duration retryAfter) {
+        this.limit = limit;
+        this.retryAfter = AdmissionFilter.retryAfterSeconds(retryAfter);
+    }
+
+    @Override
+    public int getOrder() {
+        return 0;
+    }
+
+    @Override
+    public Mono<Void> filter(ServerWebExchange exchange, WebFilterChain chain) {
+        ServerHttpRequest request = exchange.getRequest();
+        String method = request.getMethod().name();
+        String path = request.getPath().pathWithinApplication().value();
+        if (AdmissionFilter.bulk(method, path)) {
+            return limit.admits() ? chain.filter(exchange) : reject(exchange);
+        }
+        if (!AdmissionFilter.limited(method, path)) {
+            return chain.filter(exchange);
+        }
+        if (!limit.tryAcquire()) {
+            return reject(exchange);
+        }
+        long started = System.nanoTime();
+        return chain.filter(exchange).doFinally(signal -> {
+            HttpStatusCode status = exchange.getResponse().getStatusCode();
+            boolean succeeded = signal == SignalType.ON_COMPLETE && status != null && status.is2xxSuccessful();
+            limit.release(succeeded ? Duration.ofNanos(System.nanoTime() - started) : null);
+        });
+    }
+
+    private Mono<Void> reject(ServerWebExchange exchange) {
+        ServerHttpResponse response = exchange.getResponse();
+        response.setStatusCode(HttpStatus.SERVICE_UNAVAILABLE);
+        response.getHeaders().set(HttpHeaders.RETRY_AFTER, retryAfter);
+        return response.setComplete();
+    }
+}
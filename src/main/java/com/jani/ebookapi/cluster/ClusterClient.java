@@ -0,0 +1,150 @@
+package com.jani.ebookapi.cluster;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SequenceWriter;
+import com.jani.ebookapi.model.Ebook;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.http.HttpHeaders;
+import org.springframework.web.util.UriComponentsBuilder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * HTTP calls between instances: cluster nodes, and replicas forwarding writes to their leader. Every request carries
+ * {@link #FORWARDED} so the receiving instance serves it from its own store instead of routing it again, even while
+ * two cluster nodes disagree about the ring.
+ */
+public class ClusterClient {
+
+    public static final String FORWARDED = "X-Ebook-Forwarded";
+
+    // the request headers that matter to the ebook routes; hop-by-hop headers are left to the client
+    private static final List<String> FORWARDED_HEADERS = List.of("Content-Type", "Accept", "If-Match", "If-None-Match");
+
+    // one node's page of a scatter-gather read, as served by GET /ebooks
+    record Page(List<Ebook> data, String next) {
+    }
+
+    // an ebook handed over to its new owner, only replacing the copy stored there at the given version, or none if 0
+    record HandOver(Ebook ebook, long replaces) {
+    }
+
+    // the new owner's answer: the version each handed-over ebook is stored at there, leaving out those it kept its own copy of
+    record Received(int received, Map<String, Long> stored) {
+    }
+
+    private final HttpClient httpClient;
+    private final Duration timeout;
+    private final ObjectMapper objectMapper;
+    private final ObjectWriter lineWriter;
+
+    public ClusterClient(ObjectMapper objectMapper, Duration timeout) {
+        this.httpClient = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(timeout)
+                .build();
+        this.timeout = timeout;
+        this.objectMapper = objectMapper;
+        this.lineWriter = objectMapper.writerFor(HandOver.class).withRootValueSeparator("\n");
+    }
+
+    // replays a client request against another instance, such as the node owning its ebook
+    public HttpResponse<byte[]> forward(String node, HttpServletRequest request) throws IOException, InterruptedException {
+        Map<String, String> headers = new HashMap<>();
+        for (String name : Collections.list(request.getHeaderNames())) {
+            headers.put(name, request.getHeader(name));
+        }
+        return forward(node, request.getMethod(), pathAndQuery(request), headers, request.getInputStream().readAllBytes());
+    }
+
+    // the answer of a forwarded request, as far as the ebook routes use it
+    public static void copy(HttpResponse<byte[]> forwarded, HttpServletResponse response) throws IOException {
+        response.setStatus(forwarded.statusCode());
+        for (String name : List.of(HttpHeaders.CONTENT_TYPE, HttpHeaders.ETAG, HttpHeaders.VARY)) {
+            forwarded.headers().firstValue(name).ifPresent(value -> response.setHeader(name, value));
+        }
+        response.getOutputStream().write(forwarded.body());
+    }
+
+    public static String pathAndQuery(HttpServletRequest request) {
+        String query = request.getQueryString();
+        return request.getRequestURI().substring(request.getContextPath().length()) + (query == null ? "" : "?" + query);
+    }
+
+    HttpResponse<byte[]> forward(String node, String method, String pathAndQuery, Map<String, String> headers, byte[] body)
+            throws IOException, InterruptedException {
+        HttpRequest.Builder request = request(URI.create(node + pathAndQuery))
+                .method(method, body.length == 0 ? HttpRequest.BodyPublishers.noBody() : HttpRequest.BodyPublishers.ofByteArray(body));
+        headers.forEach((name, value) -> {
+            if (FORWARDED_HEADERS.stream().anyMatch(name::equalsIgnoreCase)) request.header(name, value);
+        });
+        return httpClient.send(request.build(), HttpResponse.BodyHandlers.ofByteArray());
+    }
+
+    CompletableFuture<Page> page(String node, String author, String format, String cursor, int limit) {
+        URI uri = UriComponentsBuilder.fromUriString(node).path("/ebooks")
+                .queryParamIfPresent("author", Optional.ofNullable(author))
+                .queryParamIfPresent("format", Optional.ofNullable(format))
+                .queryParamIfPresent("cursor", Optional.ofNullable(cursor))
+                .queryParam("limit", limit)
+                .encode().build().toUri();
+        return httpClient.sendAsync(request(uri).GET().build(), HttpResponse.BodyHandlers.ofByteArray())
+                .thenApply(response -> {
+                    try {
+                        return objectMapper.readValue(expectOk(node, response), Page.class);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+    }
+
+    // stores the given ebooks under their ids on the node now owning them, returns the versions they are stored at
+    Map<String, Long> handOver(String node, List<HandOver> ebooks) throws IOException, InterruptedException {
+        ByteArrayOutputStream lines = new ByteArrayOutputStream(ebooks.size() * 128);
+        try (SequenceWriter sequence = lineWriter.writeValues(lines)) {
+            sequence.writeAll(ebooks);
+        }
+        HttpRequest request = request(URI.create(node + "/cluster/ebooks"))
+                .header("Content-Type", "application/x-ndjson")
+                .POST(HttpRequest.BodyPublishers.ofByteArray(lines.toByteArray()))
+                .build();
+        byte[] received = expectOk(node, httpClient.send(request, HttpResponse.BodyHandlers.ofByteArray()));
+        return objectMapper.readValue(received, Received.class).stored();
+    }
+
+    // tells a node about the new members, which it rebalances to before answering
+    void announce(String node, List<String> nodes) throws IOException, InterruptedException {
+        HttpRequest request = request(URI.create(node + "/cluster/nodes"))
+                .header("Content-Type", "application/json")
+                .PUT(HttpRequest.BodyPublishers.ofByteArray(objectMapper.writeValueAsBytes(nodes)))
+                .build();
+        expectOk(node, httpClient.send(request, HttpResponse.BodyHandlers.ofByteArray()));
+    }
+
+    private HttpRequest.Builder request(URI uri) {
+        return HttpRequest.newBuilder(uri).timeout(timeout).header(FORWARDED, "true");
+    }
+
+    private static byte[] expectOk(String node, HttpResponse<byte[]> response) throws IOException {
+        if (response.statusCode() != 200) {
+            throw new IOException(node + " answered " + response.request().method() + " " + response.uri().getPath()
+                    + " with " + response.statusCode());
+        }
+        return response.body();
+    }
+}
@@ -0,0 +1,56 @@
+package com.jani.ebookapi.cluster;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.jani.ebookapi.service.EbookService;
+import com.jani.ebookapi.service.IdGenerator;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+import java.util.List;
+
+// cluster mode: this node owns part of the id space and routes requests for the rest to the other nodes
+@Configuration
+@ConditionalOnProperty(name = "ebook.cluster.enabled", havingValue = "true")
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
+public class ClusterConfiguration {
+
+    @Bean
+    public ClusterMembership clusterMembership(@Value("${ebook.cluster.self}") String self,
+                                               @Value("${ebook.cluster.nodes}") List<String> nodes,
+                                               @Value("${ebook.cluster.virtual-nodes:128}") int virtualNodes) {
+        return new ClusterMembership(self, nodes, virtualNodes);
+    }
+
+    @Bean
+    public ClusterClient clusterClient(ObjectMapper objectMapper, @Value("${ebook.cluster.timeout:5s}") Duration timeout) {
+        return new ClusterClient(objectMapper, timeout);
+    }
+
+    @Bean
+    public ClusterRebalancer clusterRebalancer(EbookService ebookService, ClusterMembership membership, ClusterClient clusterClient) {
+        return new ClusterRebalancer(ebookService, membership, clusterClient);
+    }
+
+    @Bean
+    public ClusterRoutingFilter clusterRoutingFilter(ClusterMembership membership, ClusterClient clusterClient,
+                                                     EbookService ebookService, ObjectMapper objectMapper) {
+        return new ClusterRoutingFilter(membership, clusterClient, ebookService, objectMapper);
+    }
+
+    // new ebooks get ids this node owns, wrapped before EbookService receives the generator
+    @Bean
+    static BeanPostProcessor clusterIdGenerator(ObjectProvider<ClusterMembership> membership) {
+        return new BeanPostProcessor() {
+            @Override
+            public Object postProcessAfterInitialization(Object bean, String beanName) {
+                return bean instanceof IdGenerator idGenerator ? new ClusterIdGenerator(idGenerator, membership.getObject()) : bean;
+            }
+        };
+    }
+}
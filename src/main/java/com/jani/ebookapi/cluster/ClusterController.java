@@ -0,0 +1,111 @@
+package com.jani.ebookapi.cluster;
+
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.jani.ebookapi.model.Ebook;
+import com.jani.ebookapi.service.EbookService;
+import com.jani.ebookapi.service.EbookVersionConflictException;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Cluster membership: {@code GET /cluster} shows this node's view, {@code PUT /cluster/nodes} replaces the members.
+ * {@code POST /cluster/ebooks} receives the ebooks other nodes hand over while rebalancing.
+ */
+@RestController
+@ConditionalOnProperty(name = "ebook.cluster.enabled", havingValue = "true")
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
+public class ClusterController {
+
+    private final ClusterMembership membership;
+    private final ClusterClient clusterClient;
+    private final ClusterRebalancer rebalancer;
+    private final EbookService ebookService;
+    private final ObjectReader handOverReader;
+
+    public ClusterController(ClusterMembership membership, ClusterClient clusterClient, ClusterRebalancer rebalancer,
+                             EbookService ebookService, ObjectMapper objectMapper) {
+        this.membership = membership;
+        this.clusterClient = clusterClient;
+        this.rebalancer = rebalancer;
+        this.ebookService = ebookService;
+        this.handOverReader = objectMapper.readerFor(ClusterClient.HandOver.class);
+    }
+
+    @GetMapping("/cluster")
+    public Map<String, Object> getCluster() {
+        Map<String, Object> cluster = new LinkedHashMap<>();
+        cluster.put("self", membership.self());
+        cluster.put("nodes", membership.nodes());
+        cluster.put("ebooks", ebookService.getAll().size());
+        return cluster;
+    }
+
+    /**
+     * Switches the cluster to the given members. Sent by a client, the new members are announced to every old and new
+     * node, each of which hands over the ebooks it no longer owns before answering, and then this node does the same.
+     */
+    @PutMapping("/cluster/nodes")
+    public Map<String, Object> setNodes(@RequestBody List<String> nodes,
+                                        @RequestHeader(value = ClusterClient.FORWARDED, required = false) String forwarded) {
+        if (nodes.isEmpty()) throw new ResponseStatusException(HttpStatus.BAD_REQUEST);
+        List<String> members = nodes.stream().map(ClusterMembership::normalize).toList();
+        try {
+            if (forwarded == null) {
+                Set<String> affected = new LinkedHashSet<>(membership.nodes());
+                affected.addAll(members);
+                affected.remove(membership.self());
+                for (String node : affected) {
+                    clusterClient.announce(node, members);
+                }
+            }
+            rebalancer.rebalance(members);
+        } catch (IOException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_GATEWAY, e.getMessage(), e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE);
+        }
+        return getCluster();
+    }
+
+    /**
+     * Newline-delimited ebooks with their ids, stored as they are. An ebook only replaces the copy an earlier handover
+     * stored here, so a write this node took since, deletes included, is never overwritten by an older one.
+     */
+    @PostMapping("/cluster/ebooks")
+    public ClusterClient.Received receiveEbooks(InputStream body) throws IOException {
+        int received = 0;
+        Map<String, Long> stored = new LinkedHashMap<>();
+        try (MappingIterator<ClusterClient.HandOver> handOvers = handOverReader.readValues(body)) {
+            while (handOvers.hasNextValue()) {
+                ClusterClient.HandOver handOver = handOvers.nextValue();
+                Ebook ebook = handOver.ebook();
+                if (store(ebook, handOver.replaces())) stored.put(ebook.getId(), ebook.getVersion());
+                received++;
+            }
+        }
+        return new ClusterClient.Received(received, stored);
+    }
+
+    private boolean store(Ebook ebook, long replaces) {
+        if (replaces == 0) return ebookService.putIfAbsent(ebook.getId(), ebook) == null;
+        try {
+            return ebookService.update(ebook.getId(), replaces, ebook) != null;
+        } catch (EbookVersionConflictException e) {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,60 @@
+package com.jani.ebookapi.cluster;
+
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * This node's view of the cluster: its own base URL and the ring of all members, which is replaced as a whole when
+ * nodes join or leave. Ids are compared against the ring current at the time of the call.
+ */
+public class ClusterMembership {
+
+    private final String self;
+    private final int virtualNodes;
+    private volatile ConsistentHashRing ring;
+
+    public ClusterMembership(String self, Collection<String> nodes, int virtualNodes) {
+        this.self = normalize(self);
+        this.virtualNodes = virtualNodes;
+        this.ring = ring(nodes);
+    }
+
+    public String self() {
+        return self;
+    }
+
+    public List<String> nodes() {
+        return ring.nodes();
+    }
+
+    public ConsistentHashRing ring() {
+        return ring;
+    }
+
+    public String owner(String ebookId) {
+        return ring.owner(ebookId);
+    }
+
+    public boolean isMember() {
+        return ring.nodes().contains(self);
+    }
+
+    public boolean isLocal(String ebookId) {
+        return ring.owner(ebookId).equals(self);
+    }
+
+    // the ring the given members would form, without switching to it
+    public ConsistentHashRing ring(Collection<String> nodes) {
+        return new ConsistentHashRing(nodes.stream().map(ClusterMembership::normalize).toList(), virtualNodes);
+    }
+
+    public void switchTo(ConsistentHashRing ring) {
+        this.ring = ring;
+    }
+
+    // base URLs are compared as strings, so "http://host:8080/" and "http://host:8080" must be the same member
+    public static String normalize(String node) {
+        String trimmed = node.trim();
+        return trimmed.endsWith("/") ? trimmed.substring(0, trimmed.length() - 1) : trimmed;
+    }
+}
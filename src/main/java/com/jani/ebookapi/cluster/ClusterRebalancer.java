@@ -0,0 +1,133 @@
+package com.jani.ebookapi.cluster;
+
+import com.jani.ebookapi.model.Ebook;
+import com.jani.ebookapi.service.EbookService;
+import com.jani.ebookapi.service.EbookVersionConflictException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.*;
+
+/**
+ * Moves this node to a new set of members: every local ebook that the new ring assigns to another node is handed over
+ * to that node and then removed here.
+ * <p>
+ * The ebooks are copied before the ring is switched, so they are already on their new owners once requests are routed
+ * there. Writes that reach this node in between are caught afterwards: a local copy is only removed while it is still
+ * the version that was handed over, otherwise the newer version is handed over again, and ebooks deleted in between are
+ * deleted on their new owner too. The new owner takes writes of its own as soon as the ring is switched, so a copy is
+ * only ever stored where there is none yet, and only replaced or deleted while it is still the one this handover
+ * stored there; a newer write on the new owner wins.
+ */
+public class ClusterRebalancer {
+
+    private static final Logger log = LoggerFactory.getLogger(ClusterRebalancer.class);
+
+    private static final int BATCH_SIZE = 1000;
+
+    private final EbookService ebookService;
+    private final ClusterMembership membership;
+    private final ClusterClient clusterClient;
+
+    public ClusterRebalancer(EbookService ebookService, ClusterMembership membership, ClusterClient clusterClient) {
+        this.ebookService = ebookService;
+        this.membership = membership;
+        this.clusterClient = clusterClient;
+    }
+
+    // returns the number of ebooks handed over to other nodes
+    public synchronized int rebalance(List<String> nodes) throws IOException, InterruptedException {
+        ConsistentHashRing target = membership.ring(nodes);
+        HandedOver handedOver = new HandedOver();
+        handOver(target, handedOver);
+        membership.switchTo(target);
+
+        Set<String> stillHere = handOver(target, handedOver);
+        for (String ebookId : stillHere) {
+            removeHandedOver(target, ebookId, handedOver);
+        }
+        for (String ebookId : handedOver.versions.keySet()) {
+            if (!stillHere.contains(ebookId)) deleteHandedOver(target, ebookId, handedOver);
+        }
+        log.info("Rebalanced to {}, handed over {} ebooks", target.nodes(), handedOver.versions.size());
+        return handedOver.versions.size();
+    }
+
+    // hands over every local ebook owned by another node in the target ring, unless that version already was; returns their ids
+    private Set<String> handOver(ConsistentHashRing target, HandedOver handedOver) throws IOException, InterruptedException {
+        Set<String> leaving = new HashSet<>();
+        List<Ebook> page = ebookService.getPage(null, BATCH_SIZE);
+        while (!page.isEmpty()) {
+            Map<String, List<Ebook>> byOwner = new HashMap<>();
+            for (Ebook ebook : page) {
+                String owner = target.owner(ebook.getId());
+                if (owner.equals(membership.self())) continue;
+                leaving.add(ebook.getId());
+                Long version = handedOver.versions.get(ebook.getId());
+                if (version == null || version != ebook.getVersion()) {
+                    byOwner.computeIfAbsent(owner, node -> new ArrayList<>()).add(ebook);
+                }
+            }
+            for (Map.Entry<String, List<Ebook>> batch : byOwner.entrySet()) {
+                send(batch.getKey(), batch.getValue(), handedOver);
+            }
+            if (page.size() < BATCH_SIZE) break;
+            page = ebookService.getPage(page.get(page.size() - 1).getId(), BATCH_SIZE);
+        }
+        return leaving;
+    }
+
+    private void send(String owner, List<Ebook> ebooks, HandedOver handedOver) throws IOException, InterruptedException {
+        List<ClusterClient.HandOver> handOvers = new ArrayList<>(ebooks.size());
+        for (Ebook ebook : ebooks) {
+            Long copy = handedOver.copies.get(ebook.getId());
+            // handed over before without storing a copy: the new owner has a newer write of its own
+            if (copy == null && handedOver.versions.containsKey(ebook.getId())) continue;
+            handOvers.add(new ClusterClient.HandOver(ebook, copy == null ? 0 : copy));
+        }
+        Map<String, Long> stored = handOvers.isEmpty() ? Map.of() : clusterClient.handOver(owner, handOvers);
+        for (Ebook ebook : ebooks) {
+            handedOver.versions.put(ebook.getId(), ebook.getVersion());
+            Long copy = stored.get(ebook.getId());
+            if (copy == null) {
+                handedOver.copies.remove(ebook.getId());
+            } else {
+                handedOver.copies.put(ebook.getId(), copy);
+            }
+        }
+    }
+
+    // the ebook was deleted here after it was copied
+    private void deleteHandedOver(ConsistentHashRing target, String ebookId, HandedOver handedOver) throws IOException, InterruptedException {
+        Long copy = handedOver.copies.get(ebookId);
+        if (copy == null) return;
+        // answers 412 if the new owner changed its copy since, which then stays
+        clusterClient.forward(target.owner(ebookId), "DELETE", "/ebooks/" + ebookId,
+                Map.of("If-Match", "\"v" + copy + "\""), new byte[0]);
+    }
+
+    private void removeHandedOver(ConsistentHashRing target, String ebookId, HandedOver handedOver) throws IOException, InterruptedException {
+        long version = handedOver.versions.get(ebookId);
+        while (true) {
+            try {
+                if (ebookService.remove(ebookId, version) == null) deleteHandedOver(target, ebookId, handedOver);
+                return;
+            } catch (EbookVersionConflictException e) {
+                Ebook current = ebookService.get(ebookId);
+                if (current == null) {
+                    deleteHandedOver(target, ebookId, handedOver);
+                    return;
+                }
+                send(target.owner(ebookId), List.of(current), handedOver);
+                version = current.getVersion();
+            }
+        }
+    }
+
+    // per leaving id, the local version handed over and, if this handover stored one, the version of the copy on the new owner
+    private static final class HandedOver {
+        final Map<String, Long> versions = new HashMap<>();
+        final Map<String, Long> copies = new HashMap<>();
+    }
+}
@@ -0,0 +1,177 @@
+package com.jani.ebookapi.cluster;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.jani.ebookapi.model.Ebook;
+import com.jani.ebookapi.service.EbookService;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.util.UriUtils;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ThreadLocalRandom;
+
+import static com.jani.ebookapi.web.EbookController.*;
+
+/**
+ * Routes the ebook API across the cluster. A request for a single ebook is replayed against the node owning its id,
+ * and {@code GET /ebooks} is answered by merging the same page from every node, so any node can serve any request.
+ * Requests forwarded by another node are always served from the local store.
+ */
+public class ClusterRoutingFilter extends OncePerRequestFilter {
+
+    private static final Logger log = LoggerFactory.getLogger(ClusterRoutingFilter.class);
+
+    // the routes under /ebooks/ that are not ebook ids
+    private static final Set<String> COLLECTION_ROUTES = Set.of("export", "search", "bulk", "changes");
+
+    private final ClusterMembership membership;
+    private final ClusterClient clusterClient;
+    private final EbookService ebookService;
+    private final ObjectMapper objectMapper;
+
+    public ClusterRoutingFilter(ClusterMembership membership, ClusterClient clusterClient, EbookService ebookService,
+                                ObjectMapper objectMapper) {
+        this.membership = membership;
+        this.clusterClient = clusterClient;
+        this.ebookService = ebookService;
+        this.objectMapper = objectMapper;
+    }
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        return request.getHeader(ClusterClient.FORWARDED) != null;
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        String path = request.getRequestURI().substring(request.getContextPath().length());
+        String method = request.getMethod();
+        if (path.equals("/ebooks") && method.equals("GET") && gather(request, response)) return;
+
+        String owner = null;
+        if (path.startsWith("/ebooks/") && path.indexOf('/', "/ebooks/".length()) < 0) {
+            String segment = UriUtils.decode(path.substring("/ebooks/".length()), StandardCharsets.UTF_8);
+            if (!COLLECTION_ROUTES.contains(segment)) owner = membership.owner(segment);
+        }
+        // a node that has left owns no ids, so it cannot create ebooks itself
+        if ((path.equals("/ebooks") || path.equals("/ebooks/bulk")) && method.equals("POST") && !membership.isMember()) {
+            List<String> nodes = membership.nodes();
+            owner = nodes.get(ThreadLocalRandom.current().nextInt(nodes.size()));
+        }
+        if (owner == null || owner.equals(membership.self())) {
+            chain.doFilter(request, response);
+            return;
+        }
+        forward(owner, request, response);
+    }
+
+    private void forward(String owner, HttpServletRequest request, HttpServletResponse response) throws IOException {
+        try {
+            ClusterClient.copy(clusterClient.forward(owner, request), response);
+        } catch (IOException | InterruptedException e) {
+            if (e instanceof InterruptedException) Thread.currentThread().interrupt();
+            log.warn("Could not forward {} {} to {}: {}", request.getMethod(), ClusterClient.pathAndQuery(request), owner, e.toString());
+            response.sendError(HttpStatus.BAD_GATEWAY.value());
+        }
+    }
+
+    // false if the request is left to the local controller, which rejects bad paging parameters
+    private boolean gather(HttpServletRequest request, HttpServletResponse response) throws IOException {
+        // sequences are per node, so a delta only covers the node asked
+        if (request.getParameter("since") != null) return false;
+        String author = request.getParameter("author");
+        String format = request.getParameter("format");
+        String limitParameter = request.getParameter("limit");
+        String cursor = request.getParameter("cursor");
+        boolean stream = "true".equals(request.getParameter("stream"));
+        int pageSize;
+        try {
+            pageSize = limitParameter == null ? DEFAULT_PAGE_SIZE : Math.min(Integer.parseInt(limitParameter), MAX_PAGE_SIZE);
+            decodeCursor(cursor);
+        } catch (NumberFormatException | ResponseStatusException e) {
+            return false;
+        }
+        if (pageSize < 1) return false;
+
+        response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+        try {
+            if (stream || (limitParameter == null && cursor == null)) {
+                writeCatalog(stream ? null : author, stream ? null : format, response);
+            } else {
+                Map<String, Object> body = new LinkedHashMap<>();
+                ClusterClient.Page page = mergedPage(author, format, cursor, pageSize);
+                if (page.next() != null) body.put("next", page.next());
+                body.put("data", page.data());
+                objectMapper.writeValue(response.getOutputStream(), body);
+            }
+        } catch (CompletionException e) {
+            log.warn("Could not gather ebooks from the cluster: {}", e.getCause().toString());
+            if (!response.isCommitted()) {
+                response.reset();
+                response.sendError(HttpStatus.BAD_GATEWAY.value());
+            }
+        }
+        return true;
+    }
+
+    // the {"data": [...]} envelope of the whole cluster's catalog, merged page by page
+    private void writeCatalog(String author, String format, HttpServletResponse response) throws IOException {
+        try (JsonGenerator generator = objectMapper.getFactory().createGenerator(response.getOutputStream())) {
+            generator.writeStartObject();
+            generator.writeArrayFieldStart("data");
+            String cursor = null;
+            do {
+                ClusterClient.Page page = mergedPage(author, format, cursor, EXPORT_PAGE_SIZE);
+                for (Ebook ebook : page.data()) {
+                    generator.writeObject(ebook);
+                }
+                cursor = page.next();
+            } while (cursor != null);
+            generator.writeEndArray();
+            generator.writeEndObject();
+        }
+    }
+
+    /**
+     * The first {@code pageSize} ebooks after the cursor across all nodes, in id order. Every node returns its own first
+     * {@code pageSize}, so the merged page is complete, and there is another page if more than that were found in total
+     * or any node has more.
+     */
+    private ClusterClient.Page mergedPage(String author, String format, String cursor, int pageSize) {
+        List<CompletableFuture<ClusterClient.Page>> remotePages = new ArrayList<>();
+        for (String node : membership.nodes()) {
+            if (!node.equals(membership.self())) remotePages.add(clusterClient.page(node, author, format, cursor, pageSize));
+        }
+        String afterId = decodeCursor(cursor);
+        List<Ebook> local = author != null || format != null
+                ? ebookService.find(author, format, afterId, pageSize + 1)
+                : ebookService.getPage(afterId, pageSize + 1);
+        boolean more = local.size() > pageSize;
+        List<Ebook> merged = new ArrayList<>(local.subList(0, Math.min(local.size(), pageSize)));
+        for (CompletableFuture<ClusterClient.Page> remotePage : remotePages) {
+            ClusterClient.Page page = remotePage.join();
+            merged.addAll(page.data());
+            more |= page.next() != null;
+        }
+        merged.sort(Comparator.comparing(Ebook::getId));
+        if (merged.size() > pageSize) {
+            merged = merged.subList(0, pageSize);
+            more = true;
+        }
+        return new ClusterClient.Page(merged, more && !merged.isEmpty() ? encodeCursor(merged.get(merged.size() - 1).getId()) : null);
+    }
+}
@@ -0,0 +1,67 @@
+package com.jani.ebookapi.cluster;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.TreeSet;
+
+/**
+ * Immutable consistent-hash ring assigning every ebook id to one node. Each node is placed on the ring at many
+ * pseudo-random points (virtual nodes), and an id belongs to the node at the first point at or after its own hash,
+ * so the id space is split evenly and adding or removing a node only moves the ids of the ranges it gains or loses.
+ */
+public final class ConsistentHashRing {
+
+    private final List<String> nodes;
+    // the points in ascending order, and the node owning the range ending at each point
+    private final long[] points;
+    private final String[] owners;
+
+    public ConsistentHashRing(Collection<String> nodes, int virtualNodes) {
+        if (nodes.isEmpty()) throw new IllegalArgumentException("A ring needs at least one node");
+        if (virtualNodes < 1) throw new IllegalArgumentException("Every node needs at least one virtual node");
+        this.nodes = List.copyOf(new TreeSet<>(nodes));
+        long[][] entries = new long[this.nodes.size() * virtualNodes][];
+        int entry = 0;
+        for (int node = 0; node < this.nodes.size(); node++) {
+            for (int replica = 0; replica < virtualNodes; replica++) {
+                entries[entry++] = new long[]{hash(this.nodes.get(node) + "#" + replica), node};
+            }
+        }
+        // ties between nodes are broken by node order, so every instance builds the same ring from the same members
+        Arrays.sort(entries, (a, b) -> a[0] != b[0] ? Long.compare(a[0], b[0]) : Long.compare(a[1], b[1]));
+        this.points = new long[entries.length];
+        this.owners = new String[entries.length];
+        for (int i = 0; i < entries.length; i++) {
+            points[i] = entries[i][0];
+            owners[i] = this.nodes.get((int) entries[i][1]);
+        }
+    }
+
+    // the members in a stable order
+    public List<String> nodes() {
+        return nodes;
+    }
+
+    public String owner(String key) {
+        int index = Arrays.binarySearch(points, hash(key));
+        if (index < 0) index = -index - 1;
+        // past the last point the ring wraps around to the first
+        return owners[index == points.length ? 0 : index];
+    }
+
+    // 64-bit FNV-1a over the chars, finished with the MurmurHash3 mixer so that similar keys spread evenly
+    static long hash(String key) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < key.length(); i++) {
+            hash ^= key.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb3fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+}
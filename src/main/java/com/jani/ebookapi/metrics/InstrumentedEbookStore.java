@@ -0,0 +1,168 @@
+package com.jani.ebookapi.metrics;
+
+import com.jani.ebookapi.model.Ebook;
+import com.jani.ebookapi.store.EbookStore;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiFunction;
+
+/**
+ * Times the operations of the wrapped store as {@code ebook.store.operations}, tagged with the operation.
+ * Writes run the service's remapping function, so their time includes index updates and the journal append.
+ * Reads take tens of nanoseconds, about what reading the clock twice and recording costs, so only one in
+ * {@link #DEFAULT_READ_SAMPLE_RATE} is timed: their timers give the latency distribution, not the number of reads.
+ */
+public class InstrumentedEbookStore implements EbookStore, Closeable {
+
+    public static final int DEFAULT_READ_SAMPLE_RATE = 64;
+
+    private final EbookStore delegate;
+    private final int readSampleRate;
+    private final Timer get;
+    private final Timer scan;
+    private final Timer putIfAbsent;
+    private final Timer computeIfPresent;
+    private final Timer compute;
+    private final Timer replace;
+    private final Timer remove;
+    private final Timer clear;
+
+    public InstrumentedEbookStore(EbookStore delegate, MeterRegistry registry) {
+        this(delegate, registry, DEFAULT_READ_SAMPLE_RATE);
+    }
+
+    public InstrumentedEbookStore(EbookStore delegate, MeterRegistry registry, int readSampleRate) {
+        this.delegate = delegate;
+        this.readSampleRate = readSampleRate;
+        this.get = timer(registry, "get");
+        this.scan = timer(registry, "scan");
+        this.putIfAbsent = timer(registry, "putIfAbsent");
+        this.computeIfPresent = timer(registry, "computeIfPresent");
+        this.compute = timer(registry, "compute");
+        this.replace = timer(registry, "replace");
+        this.remove = timer(registry, "remove");
+        this.clear = timer(registry, "clear");
+    }
+
+    @Override
+    public Ebook get(String ebookId) {
+        if (!sampled()) return delegate.get(ebookId);
+        long start = System.nanoTime();
+        try {
+            return delegate.get(ebookId);
+        } finally {
+            get.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    // iterated lazily by the caller, so there is nothing to time here
+    @Override
+    public Collection<Ebook> getAll() {
+        return delegate.getAll();
+    }
+
+    @Override
+    public List<Ebook> scan(String afterId, int limit) {
+        if (!sampled()) return delegate.scan(afterId, limit);
+        long start = System.nanoTime();
+        try {
+            return delegate.scan(afterId, limit);
+        } finally {
+            scan.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    @Override
+    public Ebook putIfAbsent(String ebookId, Ebook ebook) {
+        long start = System.nanoTime();
+        try {
+            return delegate.putIfAbsent(ebookId, ebook);
+        } finally {
+            putIfAbsent.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    @Override
+    public Ebook computeIfPresent(String ebookId, BiFunction<String, Ebook, Ebook> remappingFunction) {
+        long start = System.nanoTime();
+        try {
+            return delegate.computeIfPresent(ebookId, remappingFunction);
+        } finally {
+            computeIfPresent.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    @Override
+    public Ebook compute(String ebookId, BiFunction<String, Ebook, Ebook> remappingFunction) {
+        long start = System.nanoTime();
+        try {
+            return delegate.compute(ebookId, remappingFunction);
+        } finally {
+            compute.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    @Override
+    public boolean replace(String ebookId, Ebook existingEbook, Ebook updatedEbook) {
+        long start = System.nanoTime();
+        try {
+            return delegate.replace(ebookId, existingEbook, updatedEbook);
+        } finally {
+            replace.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    @Override
+    public Ebook remove(String ebookId) {
+        long start = System.nanoTime();
+        try {
+            return delegate.remove(ebookId);
+        } finally {
+            remove.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    @Override
+    public int size() {
+        return delegate.size();
+    }
+
+    @Override
+    public long estimatedBytes() {
+        return delegate.estimatedBytes();
+    }
+
+    @Override
+    public void clear() {
+        long start = System.nanoTime();
+        try {
+            delegate.clear();
+        } finally {
+            clear.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    // the wrapper is the bean the context closes
+    @Override
+    public void close() throws IOException {
+        if (delegate instanceof Closeable closeable) closeable.close();
+    }
+
+    private boolean sampled() {
+        return readSampleRate == 1 || ThreadLocalRandom.current().nextInt(readSampleRate) == 0;
+    }
+
+    private static Timer timer(MeterRegistry registry, String operation) {
+        return Timer.builder("ebook.store.operations")
+                .description("Time spent in EbookStore operations")
+                .tag("operation", operation)
+                .register(registry);
+    }
+}
@@ -0,0 +1,126 @@
+package com.jani.ebookapi.metrics;
+
+import com.jani.ebookapi.service.EbookChangeFeed;
+import com.jani.ebookapi.service.EbookService;
+import com.jani.ebookapi.store.EbookStore;
+import com.jani.ebookapi.web.EbookJsonCache;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.BaseUnits;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.HttpStatusCode;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.server.WebFilter;
+import org.springframework.web.servlet.HandlerInterceptor;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+/**
+ * Ebook metrics next to Spring Boot's per-route {@code http.server.requests} timers: store operation timers, catalog and
+ * JSON cache gauges, and counters for not found, invalid and precondition-failed requests and for write conflicts.
+ */
+@Configuration
+public class MetricsConfiguration {
+
+    // wraps the store before EbookService receives it; a store with metrics of its own is no MeterBinder bean then
+    @Bean
+    static BeanPostProcessor ebookStoreInstrumentation(ObjectProvider<MeterRegistry> meterRegistry) {
+        return new BeanPostProcessor() {
+            @Override
+            public Object postProcessAfterInitialization(Object bean, String beanName) {
+                if (!(bean instanceof EbookStore store)) return bean;
+                if (store instanceof MeterBinder binder) binder.bindTo(meterRegistry.getObject());
+                return new InstrumentedEbookStore(store, meterRegistry.getObject());
+            }
+        };
+    }
+
+    @Bean
+    public MeterBinder ebookMetrics(EbookService ebookService, EbookStore ebookStore, EbookJsonCache jsonCache,
+                                    EbookChangeFeed changeFeed) {
+        return registry -> {
+            Gauge.builder("ebook.store.size", ebookStore, EbookStore::size)
+                    .description("Stored ebooks")
+                    .register(registry);
+            Gauge.builder("ebook.sync.tombstones", ebookService, EbookService::tombstones)
+                    .description("Deleted ids remembered for delta sync")
+                    .register(registry);
+            Gauge.builder("ebook.store.heap", ebookStore, EbookStore::estimatedBytes)
+                    .description("Approximate heap retained by the stored ebooks")
+                    .baseUnit(BaseUnits.BYTES)
+                    .register(registry);
+            FunctionCounter.builder("ebook.write.conflicts", ebookService, EbookService::writeConflicts)
+                    .description("Writes that lost against a concurrent write to the same ebook and were retried or rejected")
+                    .register(registry);
+            FunctionCounter.builder("ebook.json.cache.requests", jsonCache, EbookJsonCache::hits)
+                    .tag("result", "hit")
+                    .register(registry);
+            FunctionCounter.builder("ebook.json.cache.requests", jsonCache, EbookJsonCache::misses)
+                    .tag("result", "miss")
+                    .register(registry);
+            Gauge.builder("ebook.json.cache.size", jsonCache, EbookJsonCache::entries)
+                    .description("Ebooks with cached JSON")
+                    .register(registry);
+            Gauge.builder("ebook.json.cache.heap", jsonCache, EbookJsonCache::bytes)
+                    .description("Approximate heap held by cached JSON")
+                    .baseUnit(BaseUnits.BYTES)
+                    .register(registry);
+            Gauge.builder("ebook.changes.subscribers", changeFeed, EbookChangeFeed::subscribers)
+                    .description("Clients following the change feed")
+                    .register(registry);
+        };
+    }
+
+    @Bean
+    RejectedRequests rejectedRequests(MeterRegistry registry) {
+        return new RejectedRequests(registry);
+    }
+
+    @Configuration
+    @ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
+    static class ServletRejectedRequests {
+
+        // the status is final by then, also when an exception resolver set it
+        @Bean
+        WebMvcConfigurer rejectedRequestsInterceptor(RejectedRequests rejectedRequests) {
+            return new WebMvcConfigurer() {
+                @Override
+                public void addInterceptors(InterceptorRegistry registry) {
+                    registry.addInterceptor(new HandlerInterceptor() {
+                        @Override
+                        public void afterCompletion(HttpServletRequest request, HttpServletResponse response, Object handler, Exception ex) {
+                            rejectedRequests.record(response.getStatus());
+                        }
+                    }).addPathPatterns("/ebooks", "/ebooks/**");
+                }
+            };
+        }
+    }
+
+    @Configuration
+    @ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+    static class ReactiveRejectedRequests {
+
+        // errors are turned into responses after the filter chain, so their status comes from the exception
+        @Bean
+        WebFilter rejectedRequestsFilter(RejectedRequests rejectedRequests) {
+            return (exchange, chain) -> {
+                if (!exchange.getRequest().getPath().value().startsWith("/ebooks")) return chain.filter(exchange);
+                return chain.filter(exchange)
+                        .doOnSuccess(done -> {
+                            HttpStatusCode status = exchange.getResponse().getStatusCode();
+                            if (status != null) rejectedRequests.record(status.value());
+                        })
+                        .doOnError(ResponseStatusException.class, e -> rejectedRequests.record(e.getStatusCode().value()));
+            };
+        }
+    }
+}
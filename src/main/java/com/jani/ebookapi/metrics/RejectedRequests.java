@@ -0,0 +1,31 @@
+package com.jani.ebookapi.metrics;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.http.HttpStatus;
+
+// counts requests to the ebook routes answered with 404 Not Found, 400 Bad Request or 412 Precondition Failed
+class RejectedRequests {
+
+    private final Counter notFound;
+    private final Counter validationFailures;
+    private final Counter preconditionFailures;
+
+    RejectedRequests(MeterRegistry registry) {
+        this.notFound = Counter.builder("ebook.not.found")
+                .description("Requests for ebooks that do not exist")
+                .register(registry);
+        this.validationFailures = Counter.builder("ebook.validation.failures")
+                .description("Requests rejected as invalid, such as ebooks missing fields or bad paging parameters")
+                .register(registry);
+        this.preconditionFailures = Counter.builder("ebook.precondition.failures")
+                .description("Writes rejected because their If-Match header no longer matched the ebook")
+                .register(registry);
+    }
+
+    void record(int status) {
+        if (status == HttpStatus.NOT_FOUND.value()) notFound.increment();
+        else if (status == HttpStatus.BAD_REQUEST.value()) validationFailures.increment();
+        else if (status == HttpStatus.PRECONDITION_FAILED.value()) preconditionFailures.increment();
+    }
+}
@@ -1,8 +1,11 @@
 package com.jani.ebookapi.model;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonInclude;
 import jakarta.validation.constraints.NotEmpty;
 
+import java.util.Objects;
+
 @JsonInclude(JsonInclude.Include.NON_NULL)
 public class Ebook {
 
@@ -17,6 +20,10 @@ public class Ebook {
     @NotEmpty
     private String format;
 
+    // sequence of the mutation that stored this state, exposed through ETags only; not part of equality
+    @JsonIgnore
+    private long version;
+
     public Ebook() {
 
     }
@@ -59,4 +66,27 @@ public class Ebook {
     public void setFormat(String format) {
         this.format = format;
     }
+
+    @JsonIgnore
+    public long getVersion() {
+        return version;
+    }
+
+    public void setVersion(long version) {
+        this.version = version;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        Ebook ebook = (Ebook) o;
+        return Objects.equals(id, ebook.id) && Objects.equals(author, ebook.author)
+                && Objects.equals(title, ebook.title) && Objects.equals(format, ebook.format);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(id, author, title, format);
+    }
 }
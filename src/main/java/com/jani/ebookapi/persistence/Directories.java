@@ -0,0 +1,23 @@
+package com.jani.ebookapi.persistence;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+final class Directories {
+
+    // Windows cannot open a directory as a channel, its file systems journal the entries themselves
+    private static final boolean FORCEABLE = !System.getProperty("os.name", "").startsWith("Windows");
+
+    private Directories() {
+    }
+
+    // fsyncs the directory, so the files created, renamed or deleted in it so far survive a crash
+    static void force(Path directory) throws IOException {
+        if (!FORCEABLE) return;
+        try (FileChannel channel = FileChannel.open(directory, StandardOpenOption.READ)) {
+            channel.force(true);
+        }
+    }
+}
@@ -0,0 +1,8 @@
+package com.jani.ebookapi.persistence;
+
+public enum DurabilityMode {
+    // a write returns once the batch holding it is fsynced
+    BATCH,
+    // a write returns once queued, the log is fsynced every flush interval
+    PERIODIC
+}
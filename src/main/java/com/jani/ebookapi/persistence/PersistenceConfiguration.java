@@ -0,0 +1,41 @@
+package com.jani.ebookapi.persistence;
+
+import com.jani.ebookapi.InternalThreads;
+import com.jani.ebookapi.service.EbookService;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.Environment;
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
+
+// loads the latest snapshot and replays the write-ahead log into the service on startup, then journals every further mutation
+@Configuration
+@ConditionalOnProperty(name = "ebook.persistence.enabled", havingValue = "true")
+public class PersistenceConfiguration {
+
+    @Bean(destroyMethod = "close")
+    public WriteAheadLog writeAheadLog(@Value("${ebook.persistence.directory:data}") Path directory,
+                                       @Value("${ebook.persistence.durability:batch}") DurabilityMode durability,
+                                       @Value("${ebook.persistence.segment-size:64MB}") DataSize segmentSize,
+                                       @Value("${ebook.persistence.flush-interval:100ms}") Duration flushInterval) throws IOException {
+        return new WriteAheadLog(directory, durability, segmentSize.toBytes(), flushInterval);
+    }
+
+    // closed before the write-ahead log, so the final snapshot still sees it open
+    @Bean(destroyMethod = "close")
+    public SnapshotManager snapshotManager(EbookService ebookService, WriteAheadLog writeAheadLog,
+                                           @Value("${ebook.persistence.directory:data}") Path directory,
+                                           @Value("${ebook.persistence.snapshot-interval:10m}") Duration snapshotInterval,
+                                           Environment environment) throws IOException {
+        SnapshotManager snapshotManager = new SnapshotManager(directory, ebookService, writeAheadLog,
+                InternalThreads.factory("ebook-snapshot-", environment));
+        snapshotManager.recover();
+        snapshotManager.schedule(snapshotInterval);
+        return snapshotManager;
+    }
+}
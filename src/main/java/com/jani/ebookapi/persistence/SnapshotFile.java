@@ -0,0 +1,328 @@
+package com.jani.ebookapi.persistence;
+
+import com.jani.ebookapi.model.Ebook;
+import com.jani.ebookapi.service.DeltaIndex;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import java.util.zip.CRC32C;
+
+/**
+ * Binary point-in-time image of the catalog.
+ * <p>
+ * Layout: {@code [int magic][int format version][long sequence]}, then blocks of
+ * {@code [int record count][int byte length][int CRC32C][records]} closed by an empty block. A record is
+ * {@code [long id msb][long id lsb][long version]} (no version in format 1) followed by author, title and format as {@code [int length][UTF-8]}, length -1 for
+ * null. Blocks are located by their headers and decoded straight from a memory mapping, in parallel.
+ * <p>
+ * From format 3 the remembered removals follow: {@code [long horizon][int count][int byte length][int CRC32C]}, then
+ * per removal {@code [long id msb][long id lsb][long sequence][long removed at millis]}.
+ */
+public final class SnapshotFile {
+
+    private static final int MAGIC = 0x45424b53;
+    private static final int FORMAT_VERSION = 3;
+    private static final int FILE_HEADER_BYTES = 16;
+    private static final int BLOCK_HEADER_BYTES = 12;
+    private static final int REMOVALS_HEADER_BYTES = 20;
+    private static final int REMOVAL_BYTES = 32;
+    private static final int RECORDS_PER_BLOCK = 16_384;
+
+    private SnapshotFile() {
+    }
+
+    /**
+     * Writes the ebooks to a temporary file that is fsynced and then atomically renamed to {@code target}, and fsyncs
+     * the directory.
+     * Returns the number of ebooks written.
+     */
+    public static long write(Path target, long sequence, Iterable<Ebook> ebooks) throws IOException {
+        return write(target, sequence, ebooks, () -> new DeltaIndex.Removals(sequence, Collections.emptyNavigableMap()));
+    }
+
+    /**
+     * Like {@link #write(Path, long, Iterable)}, followed by the removals taken once the ebooks are written, so a
+     * removal during the write is among them when its ebook is not.
+     */
+    public static long write(Path target, long sequence, Iterable<Ebook> ebooks,
+                             Supplier<DeltaIndex.Removals> removals) throws IOException {
+        Path temporary = target.resolveSibling(target.getFileName() + ".tmp");
+        long count = 0;
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer header = ByteBuffer.allocate(FILE_HEADER_BYTES).putInt(MAGIC).putInt(FORMAT_VERSION).putLong(sequence);
+            writeFully(channel, header.flip());
+            BlockWriter block = new BlockWriter();
+            for (Ebook ebook : ebooks) {
+                block.add(ebook);
+                count++;
+                if (block.records == RECORDS_PER_BLOCK) block.flush(channel);
+            }
+            if (block.records > 0) block.flush(channel);
+            // the empty block ends the ebooks
+            block.flush(channel);
+            writeRemovals(channel, removals.get());
+            channel.force(true);
+        }
+        Files.move(temporary, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        // the rename is only durable once the directory is, callers delete what the snapshot replaces after this
+        Directories.force(target.toAbsolutePath().getParent());
+        return count;
+    }
+
+    /**
+     * Returns the sequence the snapshot was taken at; {@code consumer} must be thread-safe.
+     */
+    public static long read(Path file, Consumer<Ebook> consumer) throws IOException {
+        return readBlocks(file, block -> block.forEach(consumer));
+    }
+
+    /**
+     * Like {@link #read(Path, Consumer)}, but hands over each block's ebooks at once, in id order within the block.
+     */
+    public static long readBlocks(Path file, Consumer<List<Ebook>> consumer) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            int formatVersion = readFormatVersion(file, channel);
+            long sequence = readHeader(file, channel);
+            List<long[]> blocks = new ArrayList<>();
+            locateBlocks(file, channel, blocks);
+
+            try {
+                blocks.parallelStream().forEach(block -> {
+                    try {
+                        MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, block[0], block[1]);
+                        CRC32C crc = new CRC32C();
+                        crc.update(buffer.duplicate());
+                        if ((int) crc.getValue() != (int) block[3]) {
+                            throw new IOException("Corrupt snapshot " + file + " in block at byte " + block[0]);
+                        }
+                        consumer.accept(readBlock(buffer, (int) block[2], formatVersion >= 2));
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+            return sequence;
+        }
+    }
+
+    /**
+     * The removals remembered when the snapshot was taken, or null for a format that holds none.
+     */
+    public static DeltaIndex.Removals removals(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (readFormatVersion(file, channel) < 3) return null;
+            long position = locateBlocks(file, channel, new ArrayList<>());
+            ByteBuffer header = ByteBuffer.allocate(REMOVALS_HEADER_BYTES);
+            if (channel.read(header, position) != REMOVALS_HEADER_BYTES) throw new IOException("Truncated snapshot " + file);
+            long horizon = header.getLong(0);
+            int count = header.getInt(8);
+            int length = header.getInt(12);
+            if (count < 0 || length != count * REMOVAL_BYTES) throw new IOException("Corrupt snapshot " + file);
+            ByteBuffer records = ByteBuffer.allocate(length);
+            while (records.hasRemaining()) {
+                if (channel.read(records, position + REMOVALS_HEADER_BYTES + records.position()) < 0) {
+                    throw new IOException("Truncated snapshot " + file);
+                }
+            }
+            CRC32C crc = new CRC32C();
+            crc.update(records.array());
+            if ((int) crc.getValue() != header.getInt(16)) throw new IOException("Corrupt snapshot " + file);
+            NavigableMap<Long, DeltaIndex.Tombstone> tombstones = new TreeMap<>();
+            records.flip();
+            for (int i = 0; i < count; i++) {
+                String id = new UUID(records.getLong(), records.getLong()).toString();
+                long removedSequence = records.getLong();
+                tombstones.put(removedSequence, new DeltaIndex.Tombstone(id, records.getLong()));
+            }
+            return new DeltaIndex.Removals(horizon, tombstones);
+        }
+    }
+
+    public static long sequence(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            return readHeader(file, channel);
+        }
+    }
+
+    // adds {offset, length, record count, CRC} of each block, returns the position after the empty block
+    private static long locateBlocks(Path file, FileChannel channel, List<long[]> blocks) throws IOException {
+        long size = channel.size();
+        ByteBuffer blockHeader = ByteBuffer.allocate(BLOCK_HEADER_BYTES);
+        long position = FILE_HEADER_BYTES;
+        while (true) {
+            blockHeader.clear();
+            if (position + BLOCK_HEADER_BYTES > size || channel.read(blockHeader, position) != BLOCK_HEADER_BYTES) {
+                throw new IOException("Truncated snapshot " + file);
+            }
+            int records = blockHeader.getInt(0);
+            int length = blockHeader.getInt(4);
+            if (records == 0) return position + BLOCK_HEADER_BYTES;
+            if (length < 0 || position + BLOCK_HEADER_BYTES + length > size) {
+                throw new IOException("Truncated snapshot " + file);
+            }
+            blocks.add(new long[]{position + BLOCK_HEADER_BYTES, length, records, blockHeader.getInt(8)});
+            position += BLOCK_HEADER_BYTES + length;
+        }
+    }
+
+    private static long readHeader(Path file, FileChannel channel) throws IOException {
+        readFormatVersion(file, channel);
+        ByteBuffer sequence = ByteBuffer.allocate(8);
+        channel.read(sequence, 8);
+        return sequence.getLong(0);
+    }
+
+    private static int readFormatVersion(Path file, FileChannel channel) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(FILE_HEADER_BYTES);
+        if (channel.read(header, 0) != FILE_HEADER_BYTES) {
+            throw new IOException("Truncated snapshot " + file);
+        }
+        int formatVersion = header.getInt(4);
+        if (header.getInt(0) != MAGIC || formatVersion < 1 || formatVersion > FORMAT_VERSION) {
+            throw new IOException("Not a snapshot file " + file);
+        }
+        return formatVersion;
+    }
+
+    private static List<Ebook> readBlock(ByteBuffer buffer, int records, boolean versioned) {
+        StringReader reader = new StringReader(buffer);
+        List<Ebook> ebooks = new ArrayList<>(records);
+        for (int i = 0; i < records; i++) {
+            String id = new UUID(buffer.getLong(), buffer.getLong()).toString();
+            long version = versioned ? buffer.getLong() : 0;
+            String author = reader.read(true);
+            String title = reader.read(false);
+            String format = reader.read(true);
+            Ebook ebook = new Ebook(id, author, title, format);
+            ebook.setVersion(version);
+            ebooks.add(ebook);
+        }
+        return ebooks;
+    }
+
+    private static void writeRemovals(FileChannel channel, DeltaIndex.Removals removals) throws IOException {
+        Map<Long, DeltaIndex.Tombstone> tombstones = removals.tombstones();
+        ByteBuffer buffer = ByteBuffer.allocate(REMOVALS_HEADER_BYTES + tombstones.size() * REMOVAL_BYTES);
+        buffer.position(REMOVALS_HEADER_BYTES);
+        for (Map.Entry<Long, DeltaIndex.Tombstone> tombstone : tombstones.entrySet()) {
+            UUID id = UUID.fromString(tombstone.getValue().id());
+            buffer.putLong(id.getMostSignificantBits()).putLong(id.getLeastSignificantBits())
+                    .putLong(tombstone.getKey()).putLong(tombstone.getValue().removedAtMillis());
+        }
+        CRC32C crc = new CRC32C();
+        crc.update(buffer.array(), REMOVALS_HEADER_BYTES, buffer.position() - REMOVALS_HEADER_BYTES);
+        buffer.putLong(0, removals.horizon());
+        buffer.putInt(8, tombstones.size());
+        buffer.putInt(12, buffer.position() - REMOVALS_HEADER_BYTES);
+        buffer.putInt(16, (int) crc.getValue());
+        writeFully(channel, buffer.flip());
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    // decodes length-prefixed strings, sharing one instance per distinct value of repetitive fields like the format
+    private static final class StringReader {
+
+        private static final int CACHE_SLOTS = 1024;
+
+        private final ByteBuffer buffer;
+        private byte[] scratch = new byte[256];
+        private final byte[][] cachedBytes = new byte[CACHE_SLOTS][];
+        private final String[] cachedValues = new String[CACHE_SLOTS];
+
+        StringReader(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        String read(boolean shared) {
+            int length = buffer.getInt();
+            if (length < 0) return null;
+            if (length > scratch.length) scratch = new byte[Math.max(length, scratch.length * 2)];
+            buffer.get(scratch, 0, length);
+            if (!shared) return new String(scratch, 0, length, StandardCharsets.UTF_8);
+
+            int hash = length;
+            for (int i = 0; i < length; i++) {
+                hash = 31 * hash + scratch[i];
+            }
+            int slot = (hash ^ (hash >>> 16)) & (CACHE_SLOTS - 1);
+            byte[] cached = cachedBytes[slot];
+            if (cached != null && Arrays.equals(cached, 0, cached.length, scratch, 0, length)) {
+                return cachedValues[slot];
+            }
+            String value = new String(scratch, 0, length, StandardCharsets.UTF_8);
+            cachedBytes[slot] = Arrays.copyOf(scratch, length);
+            cachedValues[slot] = value;
+            return value;
+        }
+    }
+
+    private static final class BlockWriter {
+
+        private ByteBuffer buffer = ByteBuffer.allocate(1 << 20);
+        private int records;
+
+        void add(Ebook ebook) {
+            UUID id = UUID.fromString(ebook.getId());
+            byte[] author = utf8(ebook.getAuthor());
+            byte[] title = utf8(ebook.getTitle());
+            byte[] format = utf8(ebook.getFormat());
+            ensureCapacity(36 + length(author) + length(title) + length(format));
+            buffer.putLong(id.getMostSignificantBits()).putLong(id.getLeastSignificantBits()).putLong(ebook.getVersion());
+            putString(author);
+            putString(title);
+            putString(format);
+            records++;
+        }
+
+        void flush(FileChannel channel) throws IOException {
+            if (buffer.position() == 0) buffer.position(BLOCK_HEADER_BYTES);
+            CRC32C crc = new CRC32C();
+            crc.update(buffer.array(), BLOCK_HEADER_BYTES, buffer.position() - BLOCK_HEADER_BYTES);
+            buffer.putInt(0, records);
+            buffer.putInt(4, buffer.position() - BLOCK_HEADER_BYTES);
+            buffer.putInt(8, (int) crc.getValue());
+            writeFully(channel, buffer.flip());
+            buffer.clear();
+            records = 0;
+        }
+
+        private void ensureCapacity(int bytes) {
+            if (buffer.position() == 0) buffer.position(BLOCK_HEADER_BYTES);
+            if (buffer.remaining() >= bytes) return;
+            int capacity = Math.max(buffer.capacity() * 2, buffer.position() + bytes);
+            buffer = ByteBuffer.wrap(Arrays.copyOf(buffer.array(), capacity)).position(buffer.position());
+        }
+
+        private void putString(byte[] value) {
+            buffer.putInt(value == null ? -1 : value.length);
+            if (value != null) buffer.put(value);
+        }
+
+        private static byte[] utf8(String value) {
+            return value == null ? null : value.getBytes(StandardCharsets.UTF_8);
+        }
+
+        private static int length(byte[] value) {
+            return value == null ? 0 : value.length;
+        }
+    }
+}
@@ -0,0 +1,167 @@
+package com.jani.ebookapi.persistence;
+
+import com.jani.ebookapi.InternalThreads;
+import com.jani.ebookapi.model.Ebook;
+import com.jani.ebookapi.service.EbookService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Periodically writes a {@link SnapshotFile} of the service and drops the write-ahead log segments it covers.
+ * <p>
+ * A snapshot is fuzzy: it holds every mutation up to its sequence and possibly some later ones. Replaying the
+ * log records after that sequence in log order is idempotent per id, so recovery still ends in the latest state.
+ */
+public class SnapshotManager implements Closeable {
+
+    private static final Logger log = LoggerFactory.getLogger(SnapshotManager.class);
+
+    static final String SNAPSHOT_PREFIX = "snapshot-";
+    static final String SNAPSHOT_SUFFIX = ".bin";
+    private static final int PAGE_SIZE = 4096;
+
+    private final Path directory;
+    private final EbookService ebookService;
+    private final WriteAheadLog writeAheadLog;
+    private final ScheduledExecutorService scheduler;
+    private long lastSnapshotSequence = -1;
+
+    public SnapshotManager(Path directory, EbookService ebookService, WriteAheadLog writeAheadLog) throws IOException {
+        this(directory, ebookService, writeAheadLog, InternalThreads.factory("ebook-snapshot-", false));
+    }
+
+    public SnapshotManager(Path directory, EbookService ebookService, WriteAheadLog writeAheadLog,
+                           ThreadFactory threadFactory) throws IOException {
+        this.directory = directory;
+        this.ebookService = ebookService;
+        this.writeAheadLog = writeAheadLog;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(threadFactory);
+        Files.createDirectories(directory);
+    }
+
+    /**
+     * Loads the latest snapshot into the service, returns its sequence or 0 without a snapshot.
+     */
+    public synchronized long load() throws IOException {
+        List<Path> snapshots = snapshots();
+        if (snapshots.isEmpty()) return 0;
+        Path latest = snapshots.get(snapshots.size() - 1);
+        long start = System.nanoTime();
+        long sequence = SnapshotFile.sequence(latest);
+        SnapshotFile.readBlocks(latest, ebookService::restore);
+        ebookService.restoreSequence(sequence, SnapshotFile.removals(latest));
+        log.info("Loaded snapshot {} in {} ms", latest, Duration.ofNanos(System.nanoTime() - start).toMillis());
+        lastSnapshotSequence = sequence;
+        return sequence;
+    }
+
+    /**
+     * Loads the latest snapshot, replays the log records after it and attaches the log as the service's journal.
+     */
+    public void recover() throws IOException {
+        long snapshotSequence = load();
+        long start = System.nanoTime();
+        long[] replayed = new long[1];
+        writeAheadLog.replay(record -> {
+            // older records are already part of the snapshot
+            if (record.sequence() <= snapshotSequence) return;
+            if (record.operation() == WalRecord.Operation.CLEAR) {
+                ebookService.clearData();
+            } else {
+                ebookService.restore(record.sequence(), record.ebookId(), record.ebook());
+            }
+            replayed[0]++;
+        });
+        log.info("Replayed {} write-ahead log records from {} in {} ms", replayed[0], directory.toAbsolutePath(),
+                Duration.ofNanos(System.nanoTime() - start).toMillis());
+        writeAheadLog.start();
+        ebookService.setJournal(writeAheadLog);
+    }
+
+    /**
+     * Writes a snapshot unless nothing changed since the last one, returns the sequence it covers.
+     */
+    public synchronized long snapshot() throws IOException {
+        long sequence = ebookService.checkpoint();
+        if (sequence == lastSnapshotSequence) return sequence;
+        long start = System.nanoTime();
+        Path target = directory.resolve(String.format("%s%020d%s", SNAPSHOT_PREFIX, sequence, SNAPSHOT_SUFFIX));
+        long count = SnapshotFile.write(target, sequence, this::inIdOrder, ebookService::removals);
+        log.info("Wrote snapshot {} with {} ebooks in {} ms", target, count,
+                Duration.ofNanos(System.nanoTime() - start).toMillis());
+        lastSnapshotSequence = sequence;
+        // the new snapshot is durable, directory entry included, before what it replaces goes
+        for (Path snapshot : snapshots()) {
+            if (!snapshot.equals(target)) Files.delete(snapshot);
+        }
+        Directories.force(directory);
+        writeAheadLog.truncate(sequence);
+        return sequence;
+    }
+
+    public void schedule(Duration interval) {
+        if (interval.isZero() || interval.isNegative()) return;
+        scheduler.scheduleWithFixedDelay(() -> {
+            try {
+                snapshot();
+            } catch (IOException | RuntimeException e) {
+                log.error("Snapshot failed, the write-ahead log is kept", e);
+            }
+        }, interval.toMillis(), interval.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    // a final snapshot keeps the next startup from replaying the log
+    @Override
+    public void close() throws IOException {
+        scheduler.shutdownNow();
+        snapshot();
+    }
+
+    // id order turns the ordered-index inserts of a later load into appends
+    private Iterator<Ebook> inIdOrder() {
+        return new Iterator<>() {
+            private List<Ebook> page = ebookService.getPage(null, PAGE_SIZE);
+            private int next;
+
+            @Override
+            public boolean hasNext() {
+                if (next == page.size() && page.size() == PAGE_SIZE) {
+                    page = ebookService.getPage(page.get(next - 1).getId(), PAGE_SIZE);
+                    next = 0;
+                }
+                return next < page.size();
+            }
+
+            @Override
+            public Ebook next() {
+                if (!hasNext()) throw new NoSuchElementException();
+                return page.get(next++);
+            }
+        };
+    }
+
+    private List<Path> snapshots() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(path -> {
+                        String name = path.getFileName().toString();
+                        return name.startsWith(SNAPSHOT_PREFIX) && name.endsWith(SNAPSHOT_SUFFIX);
+                    })
+                    .sorted()
+                    .toList();
+        }
+    }
+}
@@ -0,0 +1,11 @@
+package com.jani.ebookapi.persistence;
+
+import com.jani.ebookapi.model.Ebook;
+
+// ebook is null for REMOVE and CLEAR, ebookId is null for CLEAR
+public record WalRecord(Operation operation, long sequence, String ebookId, Ebook ebook) {
+
+    public enum Operation {
+        PUT, REMOVE, CLEAR
+    }
+}
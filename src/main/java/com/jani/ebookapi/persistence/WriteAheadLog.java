@@ -0,0 +1,373 @@
+package com.jani.ebookapi.persistence;
+
+import com.jani.ebookapi.model.Ebook;
+import com.jani.ebookapi.service.EbookJournal;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.zip.CRC32C;
+
+/**
+ * Segmented append-only log of binary {@link WalRecord}s.
+ * <p>
+ * Appenders only encode and enqueue; a single writer thread drains everything queued since its last write into one
+ * gathering write, so concurrent requests share one fsync (group commit). Each record is framed as
+ * {@code [int payload length][int CRC32C][payload]}; a torn record at the end of the last segment is cut off on replay.
+ */
+public class WriteAheadLog implements EbookJournal, Closeable {
+
+    private static final Logger log = LoggerFactory.getLogger(WriteAheadLog.class);
+
+    static final String SEGMENT_PREFIX = "wal-";
+    static final String SEGMENT_SUFFIX = ".log";
+    private static final int HEADER_BYTES = 8;
+    private static final int MAX_BATCH_RECORDS = 4096;
+
+    private final Path directory;
+    private final DurabilityMode durability;
+    private final long segmentBytes;
+    private final long flushIntervalNanos;
+
+    private final ConcurrentLinkedQueue<Pending> queue = new ConcurrentLinkedQueue<>();
+    private final Thread writer;
+    private volatile boolean closed;
+    private volatile IOException failure;
+    // segments no longer written to, with the highest sequence each holds
+    private final ConcurrentSkipListMap<Path, Long> closedSegments = new ConcurrentSkipListMap<>();
+
+    // owned by the writer thread
+    private FileChannel segment;
+    private Path segmentPath;
+    private long segmentSize;
+    private long segmentHighestSequence;
+    private long segmentName;
+
+    public WriteAheadLog(Path directory, DurabilityMode durability, long segmentBytes, Duration flushInterval) throws IOException {
+        this.directory = directory;
+        this.durability = durability;
+        this.segmentBytes = segmentBytes;
+        this.flushIntervalNanos = flushInterval.toNanos();
+        Files.createDirectories(directory);
+        this.writer = new Thread(this::runWriter, "ebook-wal-writer");
+        this.writer.setDaemon(true);
+    }
+
+    /**
+     * Feeds every intact record to the consumer in log order, returns the highest sequence seen.
+     * Must be called before {@link #start()}.
+     */
+    public long replay(Consumer<WalRecord> consumer) throws IOException {
+        List<Path> segments = segments();
+        long highestSequence = 0;
+        for (int i = 0; i < segments.size(); i++) {
+            Path path = segments.get(i);
+            long size;
+            int validBytes = 0;
+            long segmentHighest = 0;
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+                size = channel.size();
+                ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+                WalRecord record;
+                while ((record = read(buffer)) != null) {
+                    segmentHighest = Math.max(segmentHighest, record.sequence());
+                    consumer.accept(record);
+                    validBytes = buffer.position();
+                }
+            }
+            if (validBytes < size) {
+                if (i < segments.size() - 1) {
+                    throw new IOException("Corrupt write-ahead log segment " + path + " at byte " + validBytes);
+                }
+                // a crash can leave a partially written record behind, cut the log after the last intact one
+                log.warn("Truncating torn write-ahead log segment {} from {} to {} bytes", path, size, validBytes);
+                try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+                    channel.truncate(validBytes);
+                }
+            }
+            segmentName = Math.max(segmentName, segmentName(path));
+            highestSequence = Math.max(highestSequence, segmentHighest);
+            if (validBytes == 0) Files.delete(path);
+            else closedSegments.put(path, segmentHighest);
+        }
+        segmentName = Math.max(segmentName, highestSequence);
+        return highestSequence;
+    }
+
+    public void start() {
+        writer.start();
+    }
+
+    @Override
+    public Commit append(long sequence, String ebookId, Ebook ebook) {
+        WalRecord.Operation operation = ebook == null ? WalRecord.Operation.REMOVE : WalRecord.Operation.PUT;
+        return enqueue(new WalRecord(operation, sequence, ebookId, ebook));
+    }
+
+    @Override
+    public Commit appendClear(long sequence) {
+        return enqueue(new WalRecord(WalRecord.Operation.CLEAR, sequence, null, null));
+    }
+
+    /**
+     * Deletes the segments that only hold records up to {@code sequence}, once a snapshot covers them.
+     * The segment currently written to is kept.
+     */
+    public void truncate(long sequence) throws IOException {
+        boolean deleted = false;
+        for (Map.Entry<Path, Long> closedSegment : closedSegments.entrySet()) {
+            if (closedSegment.getValue() > sequence) continue;
+            Files.deleteIfExists(closedSegment.getKey());
+            closedSegments.remove(closedSegment.getKey());
+            deleted = true;
+        }
+        if (deleted) Directories.force(directory);
+    }
+
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        LockSupport.unpark(writer);
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (failure != null) throw failure;
+    }
+
+    List<Path> segments() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(path -> {
+                        String name = path.getFileName().toString();
+                        return name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX);
+                    })
+                    .sorted()
+                    .toList();
+        }
+    }
+
+    private static long segmentName(Path path) {
+        String name = path.getFileName().toString();
+        return Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+    }
+
+    private Commit enqueue(WalRecord record) {
+        IOException error = failure;
+        if (error != null) throw new UncheckedIOException("Write-ahead log failed", error);
+        if (closed) throw new IllegalStateException("Write-ahead log is closed");
+        Pending pending = new Pending(record.sequence(), encode(record));
+        queue.add(pending);
+        LockSupport.unpark(writer);
+        return durability == DurabilityMode.BATCH ? pending : Commit.DONE;
+    }
+
+    private void runWriter() {
+        List<Pending> batch = new ArrayList<>();
+        long lastForce = System.nanoTime();
+        boolean unforced = false;
+        try {
+            while (true) {
+                Pending next;
+                while (batch.size() < MAX_BATCH_RECORDS && (next = queue.poll()) != null) {
+                    batch.add(next);
+                }
+                if (batch.isEmpty()) {
+                    if (closed) break;
+                    if (unforced && System.nanoTime() - lastForce >= flushIntervalNanos) {
+                        segment.force(false);
+                        lastForce = System.nanoTime();
+                        unforced = false;
+                    }
+                    LockSupport.parkNanos(this, unforced ? flushIntervalNanos : Duration.ofSeconds(1).toNanos());
+                    continue;
+                }
+                write(batch);
+                if (durability == DurabilityMode.BATCH || System.nanoTime() - lastForce >= flushIntervalNanos) {
+                    segment.force(false);
+                    lastForce = System.nanoTime();
+                    unforced = false;
+                } else {
+                    unforced = true;
+                }
+                for (Pending pending : batch) {
+                    pending.complete();
+                }
+                batch.clear();
+            }
+            if (segment != null) {
+                segment.force(false);
+                segment.close();
+            }
+        } catch (IOException e) {
+            log.error("Write-ahead log writer failed", e);
+            failure = e;
+            batch.forEach(Pending::complete);
+            queue.forEach(Pending::complete);
+        }
+    }
+
+    private void write(List<Pending> batch) throws IOException {
+        if (segment == null || segmentSize >= segmentBytes) roll(batch.get(0).sequence);
+        ByteBuffer[] buffers = new ByteBuffer[batch.size()];
+        long bytes = 0;
+        for (int i = 0; i < buffers.length; i++) {
+            buffers[i] = ByteBuffer.wrap(batch.get(i).bytes);
+            bytes += buffers[i].remaining();
+        }
+        long written = 0;
+        while (written < bytes) {
+            written += segment.write(buffers);
+        }
+        segmentSize += bytes;
+        for (Pending pending : batch) {
+            segmentHighestSequence = Math.max(segmentHighestSequence, pending.sequence);
+        }
+    }
+
+    private void roll(long firstSequence) throws IOException {
+        if (segment != null) {
+            segment.force(false);
+            segment.close();
+            closedSegments.put(segmentPath, segmentHighestSequence);
+        }
+        // names only need to sort in write order
+        segmentName = Math.max(segmentName + 1, firstSequence);
+        segmentPath = directory.resolve(String.format("%s%020d%s", SEGMENT_PREFIX, segmentName, SEGMENT_SUFFIX));
+        segment = FileChannel.open(segmentPath, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+        // forcing the segment does not persist its directory entry, without which its records are lost in a crash
+        Directories.force(directory);
+        segmentSize = 0;
+        segmentHighestSequence = 0;
+    }
+
+    static byte[] encode(WalRecord record) {
+        byte[] author = null;
+        byte[] title = null;
+        byte[] format = null;
+        int payloadLength = 1 + 8;
+        if (record.ebookId() != null) payloadLength += 16;
+        if (record.ebook() != null) {
+            author = utf8(record.ebook().getAuthor());
+            title = utf8(record.ebook().getTitle());
+            format = utf8(record.ebook().getFormat());
+            payloadLength += 12 + length(author) + length(title) + length(format);
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_BYTES + payloadLength);
+        buffer.position(HEADER_BYTES);
+        buffer.put((byte) record.operation().ordinal());
+        buffer.putLong(record.sequence());
+        if (record.ebookId() != null) {
+            UUID id = UUID.fromString(record.ebookId());
+            buffer.putLong(id.getMostSignificantBits());
+            buffer.putLong(id.getLeastSignificantBits());
+        }
+        if (record.ebook() != null) {
+            putString(buffer, author);
+            putString(buffer, title);
+            putString(buffer, format);
+        }
+        CRC32C crc = new CRC32C();
+        crc.update(buffer.array(), HEADER_BYTES, payloadLength);
+        buffer.putInt(0, payloadLength);
+        buffer.putInt(4, (int) crc.getValue());
+        return buffer.array();
+    }
+
+    // null at the end of the buffer or at the first torn or corrupt record
+    private static WalRecord read(ByteBuffer buffer) {
+        if (buffer.remaining() < HEADER_BYTES) return null;
+        int start = buffer.position();
+        int payloadLength = buffer.getInt(start);
+        int checksum = buffer.getInt(start + 4);
+        if (payloadLength < 9 || payloadLength > buffer.remaining() - HEADER_BYTES) return null;
+        ByteBuffer payload = buffer.slice(start + HEADER_BYTES, payloadLength);
+        CRC32C crc = new CRC32C();
+        crc.update(payload.duplicate());
+        if ((int) crc.getValue() != checksum) return null;
+        buffer.position(start + HEADER_BYTES + payloadLength);
+        return decode(payload);
+    }
+
+    static WalRecord decode(ByteBuffer payload) {
+        WalRecord.Operation operation = WalRecord.Operation.values()[payload.get()];
+        long sequence = payload.getLong();
+        if (operation == WalRecord.Operation.CLEAR) return new WalRecord(operation, sequence, null, null);
+        String ebookId = new UUID(payload.getLong(), payload.getLong()).toString();
+        if (operation == WalRecord.Operation.REMOVE) return new WalRecord(operation, sequence, ebookId, null);
+        String author = getString(payload);
+        String title = getString(payload);
+        String format = getString(payload);
+        return new WalRecord(operation, sequence, ebookId, new Ebook(ebookId, author, title, format));
+    }
+
+    private static byte[] utf8(String value) {
+        return value == null ? null : value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static int length(byte[] value) {
+        return value == null ? 0 : value.length;
+    }
+
+    private static void putString(ByteBuffer buffer, byte[] value) {
+        buffer.putInt(value == null ? -1 : value.length);
+        if (value != null) buffer.put(value);
+    }
+
+    private static String getString(ByteBuffer buffer) {
+        int length = buffer.getInt();
+        if (length < 0) return null;
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private final class Pending implements Commit {
+
+        final long sequence;
+        final byte[] bytes;
+        private volatile boolean completed;
+        private volatile Thread waiter;
+
+        Pending(long sequence, byte[] bytes) {
+            this.sequence = sequence;
+            this.bytes = bytes;
+        }
+
+        void complete() {
+            completed = true;
+            Thread thread = waiter;
+            if (thread != null) LockSupport.unpark(thread);
+        }
+
+        @Override
+        public void await() {
+            if (!completed) {
+                waiter = Thread.currentThread();
+                while (!completed) {
+                    LockSupport.park(this);
+                }
+            }
+            IOException error = failure;
+            if (error != null) throw new UncheckedIOException("Write-ahead log failed", error);
+        }
+    }
+}
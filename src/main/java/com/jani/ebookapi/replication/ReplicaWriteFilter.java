@@ -0,0 +1,67 @@
+package com.jani.ebookapi.replication;
+
+import com.jani.ebookapi.cluster.ClusterClient;
+import com.jani.ebookapi.web.EbookController;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+
+/**
+ * Sends the writes a replica receives to its leader. The answer is held back until the replica has applied the write,
+ * as told by the version in the ETag, so the client reads its own write from the replica right after.
+ */
+public class ReplicaWriteFilter extends OncePerRequestFilter {
+
+    private static final Logger log = LoggerFactory.getLogger(ReplicaWriteFilter.class);
+
+    private final ReplicationFollower follower;
+    private final ClusterClient clusterClient;
+    private final Duration readYourWritesTimeout;
+
+    public ReplicaWriteFilter(ReplicationFollower follower, ClusterClient clusterClient, Duration readYourWritesTimeout) {
+        this.follower = follower;
+        this.clusterClient = clusterClient;
+        this.readYourWritesTimeout = readYourWritesTimeout;
+    }
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        String path = request.getRequestURI().substring(request.getContextPath().length());
+        String method = request.getMethod();
+        return method.equals("GET") || method.equals("HEAD")
+                || !(path.equals("/ebooks") || path.startsWith("/ebooks/"));
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        try {
+            HttpResponse<byte[]> forwarded = clusterClient.forward(follower.leader(), request);
+            long version = version(forwarded.headers().firstValue(HttpHeaders.ETAG).orElse(null));
+            if (version > 0 && !follower.awaitApplied(version, readYourWritesTimeout)) {
+                log.debug("Version {} not replicated within {}", version, readYourWritesTimeout);
+            }
+            ClusterClient.copy(forwarded, response);
+        } catch (IOException | InterruptedException e) {
+            if (e instanceof InterruptedException) Thread.currentThread().interrupt();
+            log.warn("Could not forward {} {} to the leader {}: {}", request.getMethod(), ClusterClient.pathAndQuery(request),
+                    follower.leader(), e.toString());
+            response.sendError(HttpStatus.BAD_GATEWAY.value());
+        }
+    }
+
+    // the version in one of our ETags, or 0; deletes and bulk loads carry none and show up with the usual lag
+    static long version(String etag) {
+        return Math.max(EbookController.etagVersion(etag), 0);
+    }
+}
@@ -0,0 +1,81 @@
+package com.jani.ebookapi.replication;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.jani.ebookapi.InternalThreads;
+import com.jani.ebookapi.cluster.ClusterClient;
+import com.jani.ebookapi.cluster.ClusterMembership;
+import com.jani.ebookapi.persistence.SnapshotManager;
+import com.jani.ebookapi.service.EbookService;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.TimeGauge;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.Environment;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+// leader-follower replication: a leader feeds its mutations to replicas, which serve reads and forward writes
+@Configuration
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
+public class ReplicationConfiguration {
+
+    @Configuration
+    @ConditionalOnProperty(name = "ebook.replication.role", havingValue = "leader")
+    static class Leader {
+
+        // attached once persistence has recovered the store, which the log does not hold
+        @Bean
+        public ReplicationLog replicationLog(EbookService ebookService, ObjectProvider<SnapshotManager> snapshotManager,
+                                             @Value("${ebook.replication.log-size:100000}") int logSize) {
+            snapshotManager.getIfAvailable();
+            ReplicationLog replicationLog = new ReplicationLog(logSize, ebookService.checkpoint());
+            ebookService.addFeed(replicationLog);
+            return replicationLog;
+        }
+    }
+
+    @Configuration
+    @ConditionalOnProperty(name = "ebook.replication.role", havingValue = "follower")
+    static class Follower {
+
+        // continues from the sequence persistence recovered, if enabled
+        @Bean(destroyMethod = "close")
+        public ReplicationFollower replicationFollower(EbookService ebookService, ObjectProvider<SnapshotManager> snapshotManager,
+                                                       ObjectMapper objectMapper,
+                                                       @Value("${ebook.replication.leader}") String leader,
+                                                       @Value("${ebook.replication.poll-wait:10s}") Duration pollWait,
+                                                       @Value("${ebook.replication.timeout:5s}") Duration timeout,
+                                                       Environment environment) {
+            ReplicationFollower follower = new ReplicationFollower(ClusterMembership.normalize(leader),
+                    ebookService, snapshotManager.getIfAvailable(), objectMapper, pollWait, timeout,
+                    InternalThreads.factory("replication-follower-", environment));
+            follower.start();
+            return follower;
+        }
+
+        @Bean
+        public ReplicaWriteFilter replicaWriteFilter(ReplicationFollower follower, ObjectMapper objectMapper,
+                                                     @Value("${ebook.replication.timeout:5s}") Duration timeout,
+                                                     @Value("${ebook.replication.read-your-writes-timeout:1s}") Duration readYourWritesTimeout) {
+            return new ReplicaWriteFilter(follower, new ClusterClient(objectMapper, timeout), readYourWritesTimeout);
+        }
+
+        @Bean
+        public MeterBinder replicationMetrics(ReplicationFollower follower) {
+            return registry -> {
+                Gauge.builder("ebook.replication.lag", follower, ReplicationFollower::lag)
+                        .description("Changes the leader has that this replica has not applied yet")
+                        .register(registry);
+                TimeGauge.builder("ebook.replication.lag.time", follower, TimeUnit.MILLISECONDS, f -> f.lagTime().toMillis())
+                        .description("Time since this replica last held every change of its leader")
+                        .register(registry);
+            };
+        }
+    }
+}
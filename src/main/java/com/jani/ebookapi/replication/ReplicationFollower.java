@@ -0,0 +1,236 @@
+package com.jani.ebookapi.replication;
+
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.jani.ebookapi.InternalThreads;
+import com.jani.ebookapi.cluster.ClusterClient;
+import com.jani.ebookapi.model.Ebook;
+import com.jani.ebookapi.persistence.SnapshotManager;
+import com.jani.ebookapi.service.EbookService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps a replica's store in step with its leader. One thread long-polls the leader for the changes after the last
+ * applied sequence and applies them in order under the leader's versions. It starts from the sequence the store
+ * recovered to, so a replica with persistence catches up from where it stopped; when the leader no longer holds those
+ * changes, the replica starts over from a snapshot of the leader's catalog.
+ */
+public class ReplicationFollower implements Closeable {
+
+    private static final Logger log = LoggerFactory.getLogger(ReplicationFollower.class);
+
+    public static final String SEQUENCE_HEADER = "X-Ebook-Sequence";
+    static final int BATCH_SIZE = 1000;
+    private static final Duration RETRY_INTERVAL = Duration.ofSeconds(1);
+
+    // a batch of changes as served by the leader, with the leader's latest sequence
+    record Changes(long sequence, List<ReplicationLog.Change> changes) {
+    }
+
+    private final String leader;
+    private final EbookService ebookService;
+    private final SnapshotManager snapshotManager;
+    private final Duration pollWait;
+    private final HttpClient httpClient;
+    private final ObjectReader changesReader;
+    private final ObjectReader changeReader;
+    private final Thread thread;
+
+    private volatile long applied;
+    private volatile long leaderSequence;
+    private volatile boolean connected;
+    // when this replica was last known to hold everything the leader had
+    private volatile long caughtUpAt = System.nanoTime();
+    private volatile long resyncs;
+    private final Object appliedMonitor = new Object();
+
+    // snapshotManager is null without persistence
+    public ReplicationFollower(String leader, EbookService ebookService, SnapshotManager snapshotManager,
+                               ObjectMapper objectMapper, Duration pollWait, Duration timeout) {
+        this(leader, ebookService, snapshotManager, objectMapper, pollWait, timeout,
+                InternalThreads.factory("replication-follower-", false));
+    }
+
+    public ReplicationFollower(String leader, EbookService ebookService, SnapshotManager snapshotManager,
+                               ObjectMapper objectMapper, Duration pollWait, Duration timeout, ThreadFactory threadFactory) {
+        this.leader = leader;
+        this.ebookService = ebookService;
+        this.snapshotManager = snapshotManager;
+        this.pollWait = pollWait;
+        this.httpClient = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(timeout)
+                .build();
+        this.changesReader = objectMapper.readerFor(Changes.class);
+        this.changeReader = objectMapper.readerFor(ReplicationLog.Change.class);
+        this.thread = threadFactory.newThread(this::run);
+    }
+
+    public void start() {
+        applied = ebookService.checkpoint();
+        leaderSequence = applied;
+        log.info("Following {} from sequence {}", leader, applied);
+        thread.start();
+    }
+
+    // waits for the change being applied, so persistence closing after this sees no more
+    @Override
+    public void close() {
+        thread.interrupt();
+        try {
+            thread.join(RETRY_INTERVAL.toMillis() * 5);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    public String leader() {
+        return leader;
+    }
+
+    public long applied() {
+        return applied;
+    }
+
+    // changes the leader has that this replica has not applied yet, as of the last answer from the leader
+    public long lag() {
+        return Math.max(0, leaderSequence - applied);
+    }
+
+    // how long this replica may be missing changes: zero while caught up, otherwise the time since it last was
+    public Duration lagTime() {
+        if (connected && applied >= leaderSequence) return Duration.ZERO;
+        return Duration.ofNanos(System.nanoTime() - caughtUpAt);
+    }
+
+    public Map<String, Object> status() {
+        Map<String, Object> status = new LinkedHashMap<>();
+        status.put("role", "follower");
+        status.put("leader", leader);
+        status.put("connected", connected);
+        status.put("sequence", applied);
+        status.put("leaderSequence", leaderSequence);
+        status.put("lag", lag());
+        status.put("lagMillis", lagTime().toMillis());
+        status.put("resyncs", resyncs);
+        return status;
+    }
+
+    /**
+     * Waits until the change with the given sequence is applied here, so a client that wrote through this replica
+     * reads its own write. Returns false on timeout.
+     */
+    public boolean awaitApplied(long sequence, Duration timeout) throws InterruptedException {
+        long deadline = System.nanoTime() + timeout.toNanos();
+        synchronized (appliedMonitor) {
+            while (applied < sequence) {
+                long remaining = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+                if (remaining <= 0) return false;
+                appliedMonitor.wait(remaining);
+            }
+        }
+        return true;
+    }
+
+    private void run() {
+        while (!Thread.currentThread().isInterrupted()) {
+            try {
+                poll();
+            } catch (IOException | RuntimeException e) {
+                if (connected) log.warn("Lost the leader {}: {}", leader, e.toString());
+                connected = false;
+                try {
+                    Thread.sleep(RETRY_INTERVAL.toMillis());
+                } catch (InterruptedException interrupted) {
+                    return;
+                }
+            } catch (InterruptedException e) {
+                return;
+            }
+        }
+    }
+
+    private void poll() throws IOException, InterruptedException {
+        URI uri = URI.create(leader + "/replication/changes?after=" + applied + "&limit=" + BATCH_SIZE + "&wait=" + pollWait.toMillis());
+        HttpResponse<byte[]> response = httpClient.send(request(uri, pollWait.plusSeconds(5)), HttpResponse.BodyHandlers.ofByteArray());
+        if (response.statusCode() == 410) {
+            resync();
+            return;
+        }
+        if (response.statusCode() != 200) throw new IOException("The leader answered " + response.statusCode());
+        Changes changes = changesReader.readValue(response.body());
+        for (ReplicationLog.Change change : changes.changes()) {
+            if (change.clear()) {
+                ebookService.replicateClear(change.sequence());
+            } else if (change.id() != null) {
+                ebookService.replicate(change.sequence(), change.id(), change.ebook());
+            }
+            applied(change.sequence());
+        }
+        leaderSequence = Math.max(changes.sequence(), applied);
+        if (!connected) log.info("Connected to the leader {} at sequence {}", leader, applied);
+        connected = true;
+        if (applied >= leaderSequence) caughtUpAt = System.nanoTime();
+    }
+
+    private void resync() throws IOException, InterruptedException {
+        HttpResponse<InputStream> response = httpClient.send(request(URI.create(leader + "/replication/snapshot"), null),
+                HttpResponse.BodyHandlers.ofInputStream());
+        try (InputStream body = response.body()) {
+            if (response.statusCode() != 200) throw new IOException("The leader answered " + response.statusCode());
+            long sequence = Long.parseLong(response.headers().firstValue(SEQUENCE_HEADER).orElseThrow());
+            log.info("Sequence {} is no longer held by the leader {}, loading its catalog at sequence {}", applied, leader, sequence);
+            try (MappingIterator<ReplicationLog.Change> changes = changeReader.readValues(body)) {
+                ebookService.load(sequence, new Iterator<>() {
+                    @Override
+                    public boolean hasNext() {
+                        return changes.hasNext();
+                    }
+
+                    @Override
+                    public Ebook next() {
+                        ReplicationLog.Change change = changes.next();
+                        Ebook ebook = change.ebook();
+                        ebook.setId(change.id());
+                        ebook.setVersion(change.sequence());
+                        return ebook;
+                    }
+                });
+            }
+            // the load is not journaled
+            if (snapshotManager != null) snapshotManager.snapshot();
+            resyncs++;
+            applied(sequence);
+        }
+    }
+
+    private void applied(long sequence) {
+        applied = sequence;
+        synchronized (appliedMonitor) {
+            appliedMonitor.notifyAll();
+        }
+    }
+
+    private static HttpRequest request(URI uri, Duration timeout) {
+        HttpRequest.Builder request = HttpRequest.newBuilder(uri).header(ClusterClient.FORWARDED, "true").GET();
+        if (timeout != null) request.timeout(timeout);
+        return request.build();
+    }
+}
@@ -0,0 +1,26 @@
+package com.jani.ebookapi.replication;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.Map;
+
+// a replica's replication state: its leader, the sequence it has applied and how far behind it is
+@RestController
+@ConditionalOnProperty(name = "ebook.replication.role", havingValue = "follower")
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
+public class ReplicationFollowerController {
+
+    private final ReplicationFollower follower;
+
+    public ReplicationFollowerController(ReplicationFollower follower) {
+        this.follower = follower;
+    }
+
+    @GetMapping("/replication")
+    public Map<String, Object> getReplication() {
+        return follower.status();
+    }
+}
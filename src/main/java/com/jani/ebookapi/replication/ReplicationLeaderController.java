@@ -0,0 +1,90 @@
+package com.jani.ebookapi.replication;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.jani.ebookapi.model.Ebook;
+import com.jani.ebookapi.service.EbookService;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * What a leader serves its replicas: {@code GET /replication/changes} long-polls for the changes after a sequence,
+ * and {@code GET /replication/snapshot} is the whole catalog for a replica that has fallen too far behind.
+ */
+@RestController
+@ConditionalOnProperty(name = "ebook.replication.role", havingValue = "leader")
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
+public class ReplicationLeaderController {
+
+    private static final int MAX_CHANGES = 10_000;
+    private static final long MAX_WAIT_MILLIS = 30_000;
+    private static final int SNAPSHOT_PAGE_SIZE = 1000;
+    private static final MediaType NDJSON = MediaType.parseMediaType("application/x-ndjson");
+
+    private final ReplicationLog replicationLog;
+    private final EbookService ebookService;
+    private final ObjectMapper objectMapper;
+
+    public ReplicationLeaderController(ReplicationLog replicationLog, EbookService ebookService, ObjectMapper objectMapper) {
+        this.replicationLog = replicationLog;
+        this.ebookService = ebookService;
+        this.objectMapper = objectMapper;
+    }
+
+    @GetMapping("/replication")
+    public Map<String, Object> getReplication() {
+        Map<String, Object> status = new LinkedHashMap<>();
+        status.put("role", "leader");
+        status.put("sequence", replicationLog.latest());
+        return status;
+    }
+
+    // 410 Gone tells the replica these changes are no longer here and it has to load the snapshot instead
+    @GetMapping("/replication/changes")
+    public ReplicationFollower.Changes getChanges(@RequestParam long after,
+                                                  @RequestParam(defaultValue = "1000") int limit,
+                                                  @RequestParam(defaultValue = "0") long wait) throws InterruptedException {
+        if (limit < 1) throw new ResponseStatusException(HttpStatus.BAD_REQUEST);
+        long latest = replicationLog.latest();
+        List<ReplicationLog.Change> changes = replicationLog.read(after, Math.min(limit, MAX_CHANGES), Math.min(wait, MAX_WAIT_MILLIS));
+        if (changes == null) throw new ResponseStatusException(HttpStatus.GONE);
+        return new ReplicationFollower.Changes(Math.max(latest, replicationLog.latest()), changes);
+    }
+
+    /**
+     * Every ebook as a change carrying its version, read page by page while writes go on. The header holds a sequence
+     * all of them are at or after, so replaying the changes following it over the snapshot yields the catalog.
+     */
+    @GetMapping("/replication/snapshot")
+    public ResponseEntity<StreamingResponseBody> getSnapshot() {
+        long sequence = ebookService.checkpoint();
+        return ResponseEntity.ok()
+                .contentType(NDJSON)
+                .header(ReplicationFollower.SEQUENCE_HEADER, Long.toString(sequence))
+                .body(outputStream -> {
+                    try (JsonGenerator generator = objectMapper.getFactory().createGenerator(outputStream)) {
+                        List<Ebook> page = ebookService.getPage(null, SNAPSHOT_PAGE_SIZE);
+                        while (!page.isEmpty()) {
+                            for (Ebook ebook : page) {
+                                generator.writeObject(new ReplicationLog.Change(ebook.getVersion(), ebook.getId(), ebook, false));
+                                generator.writeRaw('\n');
+                            }
+                            if (page.size() < SNAPSHOT_PAGE_SIZE) break;
+                            page = ebookService.getPage(page.get(page.size() - 1).getId(), SNAPSHOT_PAGE_SIZE);
+                        }
+                    }
+                });
+    }
+}
@@ -0,0 +1,57 @@
+package com.jani.ebookapi.replication;
+
+import com.jani.ebookapi.model.Ebook;
+import com.jani.ebookapi.service.EbookJournal;
+import com.jani.ebookapi.service.SequenceRing;
+
+import java.util.List;
+
+/**
+ * The leader's most recent mutations, which followers read by sequence. A follower that falls further behind than
+ * the log holds has to start over from a snapshot.
+ */
+public class ReplicationLog implements EbookJournal {
+
+    /**
+     * One mutation: {@code ebook} is null for a remove, {@code clear} marks a cleared catalog. {@code id} is null as well
+     * for a sequence that changed nothing, which followers only count as applied.
+     */
+    public record Change(long sequence, String id, Ebook ebook, boolean clear) {
+    }
+
+    private final SequenceRing<Change> changes;
+
+    public ReplicationLog(int capacity, long floor) {
+        this.changes = new SequenceRing<>(capacity, floor, Change::sequence);
+    }
+
+    @Override
+    public Commit append(long sequence, String ebookId, Ebook ebook) {
+        changes.add(new Change(sequence, ebookId, ebook, false));
+        return Commit.DONE;
+    }
+
+    @Override
+    public Commit appendClear(long sequence) {
+        changes.add(new Change(sequence, null, null, true));
+        return Commit.DONE;
+    }
+
+    @Override
+    public void skip(long sequence) {
+        changes.add(new Change(sequence, null, null, false));
+    }
+
+    // the highest sequence appended so far
+    public long latest() {
+        return changes.latest();
+    }
+
+    /**
+     * Up to {@code limit} changes following {@code after}, in sequence order, waiting up to {@code waitMillis} for the
+     * first one. Returns null if the changes after {@code after} are no longer or were never in the log.
+     */
+    public List<Change> read(long after, int limit, long waitMillis) throws InterruptedException {
+        return changes.read(after, limit, waitMillis);
+    }
+}
@@ -0,0 +1,97 @@
+package com.jani.ebookapi.service;
+
+import com.jani.ebookapi.model.Ebook;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The stored ebooks by version and the recently removed ids by the sequence of their removal, so the changes after a
+ * sequence are found without scanning the catalog. Removals are kept for the retention period; the horizon is the
+ * sequence up to which removals may be missing.
+ */
+public class DeltaIndex implements EbookChangeListener {
+
+    public record Tombstone(String id, long removedAtMillis) {
+    }
+
+    // the remembered removals by sequence, and the horizon up to which others may be missing
+    public record Removals(long horizon, NavigableMap<Long, Tombstone> tombstones) {
+    }
+
+    private final ConcurrentSkipListMap<Long, String> versions = new ConcurrentSkipListMap<>();
+    private final ConcurrentSkipListMap<Long, Tombstone> tombstones = new ConcurrentSkipListMap<>();
+    private final AtomicLong horizon = new AtomicLong();
+    private volatile long retentionMillis = Duration.ofDays(7).toMillis();
+
+    public void setRetention(Duration retention) {
+        this.retentionMillis = retention.toMillis();
+    }
+
+    @Override
+    public void onChange(long sequence, Ebook previous, Ebook current) {
+        if (previous != null) versions.remove(previous.getVersion(), previous.getId());
+        if (current != null) {
+            versions.put(sequence, current.getId());
+        } else if (previous != null) {
+            tombstones.put(sequence, new Tombstone(previous.getId(), System.currentTimeMillis()));
+            compact();
+        }
+    }
+
+    // a cleared or replaced catalog: every earlier removal is gone along with the ebooks
+    @Override
+    public void onClear(long sequence) {
+        truncate(sequence);
+        versions.headMap(sequence, true).clear();
+        tombstones.headMap(sequence, true).clear();
+    }
+
+    // removals up to the given sequence are not known, such as the ones before a restored snapshot
+    public void truncate(long sequence) {
+        horizon.accumulateAndGet(sequence, Math::max);
+    }
+
+    // the horizon is read after the tombstones, so one expiring meanwhile is still covered by either
+    public Removals removals() {
+        NavigableMap<Long, Tombstone> copy = new TreeMap<>(tombstones);
+        return new Removals(horizon(), copy);
+    }
+
+    // takes over the removals remembered before a restart
+    public void restore(Removals removals) {
+        tombstones.putAll(removals.tombstones());
+        truncate(removals.horizon());
+        compact();
+    }
+
+    public long horizon() {
+        compact();
+        return horizon.get();
+    }
+
+    // the ids of the stored ebooks by the version they have, after since and up to until
+    public NavigableMap<Long, String> versions(long since, long until) {
+        return versions.subMap(since, false, until, true);
+    }
+
+    public NavigableMap<Long, Tombstone> tombstones(long since, long until) {
+        return tombstones.subMap(since, false, until, true);
+    }
+
+    public int tombstoneCount() {
+        return tombstones.size();
+    }
+
+    private void compact() {
+        long expired = System.currentTimeMillis() - retentionMillis;
+        for (Map.Entry<Long, Tombstone> head = tombstones.firstEntry(); head != null && head.getValue().removedAtMillis() < expired;
+             head = tombstones.firstEntry()) {
+            if (tombstones.remove(head.getKey(), head.getValue())) horizon.accumulateAndGet(head.getKey(), Math::max);
+        }
+    }
+}
@@ -0,0 +1,88 @@
+package com.jani.ebookapi.service;
+
+import com.jani.ebookapi.model.Ebook;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The recent mutations of the catalog as events numbered by their sequence, for clients following the catalog instead
+ * of polling it. Writers only put the event into a ring; every subscriber reads at its own pace, and one that falls
+ * further behind than the ring holds is told to reload the catalog instead of holding anything up. So are all
+ * subscribers when the catalog is cleared or replaced.
+ */
+public class EbookChangeFeed {
+
+    public enum Type {
+        CREATED, UPDATED, DELETED
+    }
+
+    /**
+     * {@code ebook} is the ebook as stored, or for a delete the one removed. Both are null for a sequence that changed
+     * nothing here, which is only kept so readers do not wait for it.
+     */
+    public record Change(long sequence, Type type, Ebook ebook) {
+    }
+
+    private final SequenceRing<Change> changes;
+    private final int maxSubscribers;
+    private final AtomicInteger subscribers = new AtomicInteger();
+
+    public EbookChangeFeed(int capacity, int maxSubscribers) {
+        this.changes = new SequenceRing<>(capacity, 0, Change::sequence);
+        this.maxSubscribers = maxSubscribers;
+    }
+
+    /**
+     * Follows the mutations of the given service from now on. A replica may be applying changes already: those after
+     * the checkpoint taken once attached are in the feed, the earlier ones are dropped.
+     */
+    public void attach(EbookService ebookService) {
+        ebookService.addChangeListener(new EbookChangeListener() {
+            @Override
+            public void onChange(long sequence, Ebook previous, Ebook current) {
+                if (previous == null && current == null) {
+                    changes.add(new Change(sequence, null, null));
+                    return;
+                }
+                Type type = current == null ? Type.DELETED : previous == null ? Type.CREATED : Type.UPDATED;
+                changes.add(new Change(sequence, type, current == null ? previous : current));
+            }
+
+            // the ebooks a replica loads from its leader are reported after this at older sequences, the ring drops them
+            @Override
+            public void onClear(long sequence) {
+                changes.restart(sequence);
+            }
+        });
+        changes.restart(ebookService.checkpoint());
+    }
+
+    // the sequence of the latest change, where a new subscriber starts
+    public long latest() {
+        return changes.latest();
+    }
+
+    /**
+     * Up to {@code limit} changes following {@code after}, waiting up to {@code waitMillis} for the first one.
+     * Returns null if the feed no longer holds them.
+     */
+    public List<Change> read(long after, int limit, long waitMillis) throws InterruptedException {
+        return changes.read(after, limit, waitMillis);
+    }
+
+    // false if there are as many subscribers as allowed already; each successful call must be paired with unsubscribe()
+    public boolean subscribe() {
+        if (subscribers.incrementAndGet() <= maxSubscribers) return true;
+        subscribers.decrementAndGet();
+        return false;
+    }
+
+    public void unsubscribe() {
+        subscribers.decrementAndGet();
+    }
+
+    public int subscribers() {
+        return subscribers.get();
+    }
+}
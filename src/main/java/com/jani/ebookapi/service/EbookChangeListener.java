@@ -0,0 +1,47 @@
+package com.jani.ebookapi.service;
+
+import com.jani.ebookapi.model.Ebook;
+
+import java.util.List;
+
+/**
+ * Observer of the mutations applied through {@link EbookService}.
+ * Called inside the store's per-id atomic section, so calls for the same id never interleave;
+ * implementations must be quick and must not call back into the store.
+ */
+public interface EbookChangeListener {
+
+    /**
+     * {@code previous} is null for an add, {@code current} is null for a remove. Both are null for a replicated remove
+     * of an ebook this instance does not have.
+     */
+    default void onChange(Ebook previous, Ebook current) {
+    }
+
+    /**
+     * The same with the sequence of the mutation, which is the version of {@code current} unless it is a remove.
+     */
+    default void onChange(long sequence, Ebook previous, Ebook current) {
+        onChange(previous, current);
+    }
+
+    /**
+     * Ebooks added at their versions while restoring a snapshot on startup, once they are all in the store. Called
+     * outside any atomic section, possibly for several blocks at once, but never for an id that changes meanwhile.
+     */
+    default void onRestore(List<Ebook> ebooks) {
+        for (Ebook ebook : ebooks) {
+            onChange(ebook.getVersion(), null, ebook);
+        }
+    }
+
+    default void onClear() {
+    }
+
+    /**
+     * The catalog was emptied, or replaced by ebooks at or before {@code sequence} that are reported next.
+     */
+    default void onClear(long sequence) {
+        onClear();
+    }
+}
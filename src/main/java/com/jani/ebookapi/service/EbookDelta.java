@@ -0,0 +1,13 @@
+package com.jani.ebookapi.service;
+
+import com.jani.ebookapi.model.Ebook;
+
+import java.util.List;
+
+/**
+ * The changes after a sequence: the ebooks added or updated since, as they are now, and the ids removed since.
+ * Applying the removals before the ebooks yields the catalog as of {@code sequence}; if {@code more}, there are further
+ * changes after it.
+ */
+public record EbookDelta(long sequence, List<Ebook> ebooks, List<String> removed, boolean more) {
+}
@@ -0,0 +1,32 @@
+package com.jani.ebookapi.service;
+
+import com.jani.ebookapi.model.Ebook;
+
+/**
+ * Durable record of the mutations applied through {@link EbookService}.
+ * {@link #append} is called inside the store's per-id atomic section, so it must only enqueue;
+ * the returned {@link Commit} is awaited after the section is left.
+ */
+public interface EbookJournal {
+
+    /**
+     * {@code ebook} is null for a remove.
+     */
+    Commit append(long sequence, String ebookId, Ebook ebook);
+
+    Commit appendClear(long sequence);
+
+    /**
+     * A sequence taken by a mutation that failed, and so changed nothing. Only in-memory journals keep it, so their
+     * readers do not wait for it; there is nothing to make durable.
+     */
+    default void skip(long sequence) {
+    }
+
+    interface Commit {
+
+        Commit DONE = () -> { };
+
+        void await();
+    }
+}
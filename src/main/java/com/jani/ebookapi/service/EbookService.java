@@ -1,42 +1,566 @@
 package com.jani.ebookapi.service;
 
 import com.jani.ebookapi.model.Ebook;
+import com.jani.ebookapi.store.ConcurrentEbookStore;
+import com.jani.ebookapi.store.EbookStore;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
-import java.util.Collection;
-import java.util.HashMap;
-import java.util.Map;
-import java.util.UUID;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
 
 @Service
 public class EbookService {
 
-    private Map<String, Ebook> booksData = new HashMap<>() {{
-    }};
+    private final EbookStore booksData;
+    private final IdGenerator idGenerator;
+
+    private final SecondaryIndex authorIndex = new SecondaryIndex(Ebook::getAuthor);
+    private final SecondaryIndex formatIndex = new SecondaryIndex(Ebook::getFormat);
+    private final TitleSearchIndex titleIndex = new TitleSearchIndex();
+    private final DeltaIndex deltaIndex = new DeltaIndex();
+
+    private final List<EbookChangeListener> listeners = new CopyOnWriteArrayList<>(List.of(authorIndex, formatIndex, titleIndex, deltaIndex));
+
+    // orders every mutation, assigned inside the per-id atomic section
+    private final AtomicLong sequence = new AtomicLong();
+    // the sequence up to which every mutation is applied
+    private final SequenceWatermark watermark = new SequenceWatermark();
+    // sequences restart lower after losing unsynced writes and differ between instances, this tells them apart
+    private final String epoch = Long.toString(ThreadLocalRandom.current().nextLong() >>> 1, 36);
+    // writes that lost against a concurrent one: failed compare-and-set updates and id collisions
+    private final LongAdder writeConflicts = new LongAdder();
+    private volatile EbookJournal journal;
+    // in-memory journals fed every mutation besides the durable one, such as a replication log; never awaited
+    private final List<EbookJournal> feeds = new CopyOnWriteArrayList<>();
+    // mutations pass it side by side; checkpoint() briefly closes it, clears and loads run with it closed
+    private final WriteGate writeGate = new WriteGate();
+
+    public EbookService() {
+        this(new ConcurrentEbookStore());
+    }
+
+    public EbookService(EbookStore ebookStore) {
+        this(ebookStore, new TimeOrderedIdGenerator());
+    }
+
+    public EbookService(EbookStore ebookStore, IdGenerator idGenerator) {
+        this.booksData = ebookStore;
+        this.idGenerator = idGenerator;
+    }
+
+    // picks up every listener bean, such as caches derived from stored ebooks
+    @Autowired
+    public EbookService(EbookStore ebookStore, IdGenerator idGenerator, ObjectProvider<EbookChangeListener> changeListeners) {
+        this(ebookStore, idGenerator);
+        changeListeners.orderedStream().forEach(listeners::add);
+    }
+
+    public void addChangeListener(EbookChangeListener listener) {
+        listeners.add(listener);
+    }
+
+    public void setJournal(EbookJournal journal) {
+        this.journal = journal;
+    }
+
+    // mutations applied from now on are also appended to the given journal, whose commits must be DONE
+    public void addFeed(EbookJournal feed) {
+        feeds.add(feed);
+    }
+
+    // applies a snapshot entry or journaled mutation during startup under its own version, before a journal is attached
+    public void restore(long version, String ebookId, Ebook ebook) {
+        if (version > sequence.get()) sequence.accumulateAndGet(version, Math::max);
+        if (ebook != null) {
+            ebook.setId(ebookId);
+            ebook.setVersion(version);
+        }
+        gated(new Mutation(), () -> booksData.compute(ebookId, (id, existingEbook) -> {
+            notifyChange(version, existingEbook, ebook);
+            return ebook;
+        }));
+        watermark.advanceTo(version);
+    }
+
+    /**
+     * Applies a block of snapshot entries during startup, each under its own version, before a journal is attached.
+     * The indexes take the whole block at once; blocks of distinct ids may be restored in parallel.
+     */
+    public void restore(List<Ebook> ebooks) {
+        List<Ebook> added = new ArrayList<>(ebooks.size());
+        long latest = 0;
+        for (Ebook ebook : ebooks) {
+            long version = ebook.getVersion();
+            latest = Math.max(latest, version);
+            if (version > sequence.get()) sequence.accumulateAndGet(version, Math::max);
+            gated(new Mutation(), () -> booksData.compute(ebook.getId(), (id, existingEbook) -> {
+                // an id the store has already is reported as the update it is
+                if (existingEbook != null) notifyChange(version, existingEbook, ebook);
+                else added.add(ebook);
+                return ebook;
+            }));
+        }
+        for (EbookChangeListener listener : listeners) {
+            listener.onRestore(added);
+        }
+        watermark.advanceTo(latest);
+    }
+
+    /**
+     * Continues the mutation sequence after a restored snapshot and remembers the removals it holds, so
+     * {@link #changesSince} still answers clients from before the restart. Null removals for a snapshot without
+     * them: no removal up to its sequence is known then.
+     */
+    public void restoreSequence(long sequence, DeltaIndex.Removals removals) {
+        if (sequence > this.sequence.get()) this.sequence.accumulateAndGet(sequence, Math::max);
+        watermark.advanceTo(sequence);
+        if (removals == null) {
+            deltaIndex.truncate(sequence);
+        } else {
+            deltaIndex.restore(removals);
+        }
+    }
+
+    // the remembered removals, for a snapshot taken after the ebooks were read
+    public DeltaIndex.Removals removals() {
+        return deltaIndex.removals();
+    }
+
+    // how long removed ids are remembered for changesSince()
+    @Value("${ebook.sync.tombstone-retention:7d}")
+    public void setTombstoneRetention(Duration retention) {
+        deltaIndex.setRetention(retention);
+    }
+
+    /**
+     * Names the state of the whole catalog for validating cached query results: the sequence up to which every
+     * mutation is applied, qualified by an id drawn for this instance. Read before a query, it covers everything that
+     * query sees, and it changes with every mutation applied after.
+     */
+    public String catalogVersion() {
+        return watermark.get() + "-" + epoch;
+    }
+
+    public long writeConflicts() {
+        return writeConflicts.sum();
+    }
+
+    /**
+     * Returns the sequence of the latest mutation, once every mutation up to it is applied to the store.
+     * A snapshot read after this covers at least all of them.
+     */
+    public long checkpoint() {
+        writeGate.close();
+        try {
+            return sequence.get();
+        } finally {
+            writeGate.open();
+        }
+    }
 
     public Collection<Ebook> getAll() {
-        return booksData.values();
+        return booksData.getAll();
+    }
+
+    // ebooks ordered by id, starting after the given id
+    public List<Ebook> getPage(String afterId, int limit) {
+        return booksData.scan(afterId, limit);
+    }
+
+    // ebooks matching all given (non-null) criteria, ordered by id, starting after the given id
+    public List<Ebook> find(String author, String format, String afterId, int limit) {
+        List<SecondaryIndex> indexes = new ArrayList<>(2);
+        List<String> keys = new ArrayList<>(2);
+        if (author != null) {
+            indexes.add(authorIndex);
+            keys.add(author);
+        }
+        if (format != null) {
+            indexes.add(formatIndex);
+            keys.add(format);
+        }
+        if (indexes.isEmpty()) return getPage(afterId, limit);
+
+        List<NavigableSet<String>> postings = new ArrayList<>(indexes.size());
+        for (int i = 0; i < indexes.size(); i++) {
+            postings.add(indexes.get(i).lookup(keys.get(i)));
+        }
+        // the posting sets are in id order: leap each one to the next id at or after the candidate until all agree,
+        // so a page costs its own size in seeks however large the sets are
+        List<Ebook> ebooks = new ArrayList<>();
+        String id = afterId == null ? postings.get(0).ceiling("") : postings.get(0).higher(afterId);
+        candidates:
+        while (id != null && ebooks.size() < limit) {
+            for (NavigableSet<String> ids : postings) {
+                String next = ids.ceiling(id);
+                if (next == null) break candidates;
+                if (!next.equals(id)) {
+                    id = next;
+                    continue candidates;
+                }
+            }
+            Ebook ebook = booksData.get(id);
+            // the indexes are updated just before the store, so re-check the stored ebook
+            if (ebook != null && matchesAll(ebook, indexes, keys)) ebooks.add(ebook);
+            id = postings.get(0).higher(id);
+        }
+        return ebooks;
+    }
+
+    private static boolean matchesAll(Ebook ebook, List<SecondaryIndex> indexes, List<String> keys) {
+        for (int i = 0; i < indexes.size(); i++) {
+            if (!indexes.get(i).matches(ebook, keys.get(i))) return false;
+        }
+        return true;
+    }
+
+    // best matching ebooks for a search-as-you-type title query
+    public List<Ebook> search(String query, int limit) {
+        return titleIndex.search(query, limit, booksData::get);
     }
 
     public Ebook get(String ebookId) {
         return booksData.get(ebookId);
     }
 
+    /**
+     * The ebooks added or updated and the ids removed after {@code since}, at most {@code limit} changes in sequence
+     * order, found in time proportional to their number rather than to the catalog. Since 0 is every stored ebook.
+     * Returns null if removals that far back are no longer remembered, or {@code since} is ahead of this store.
+     */
+    public EbookDelta changesSince(long since, int limit) {
+        // every mutation up to here has reached the indexes and the store; read without waiting for writers
+        long until = watermark.get();
+        // a client starting from nothing needs no removals
+        if ((since > 0 && since < deltaIndex.horizon()) || since > until) return null;
+        Iterator<Map.Entry<Long, String>> updates = deltaIndex.versions(since, until).entrySet().iterator();
+        Iterator<Map.Entry<Long, DeltaIndex.Tombstone>> removals = deltaIndex.tombstones(since, until).entrySet().iterator();
+        Map.Entry<Long, String> update = updates.hasNext() ? updates.next() : null;
+        Map.Entry<Long, DeltaIndex.Tombstone> removal = removals.hasNext() ? removals.next() : null;
+        List<Ebook> ebooks = new ArrayList<>();
+        List<String> removed = new ArrayList<>();
+        long sequence = since;
+        while (update != null || removal != null) {
+            if (ebooks.size() + removed.size() == limit) return new EbookDelta(sequence, ebooks, removed, true);
+            if (removal == null || (update != null && update.getKey() < removal.getKey())) {
+                Ebook ebook = booksData.get(update.getValue());
+                // changed again after the checkpoint, it is reported at its new version next time
+                if (ebook != null && ebook.getVersion() == update.getKey()) ebooks.add(ebook);
+                sequence = update.getKey();
+                update = updates.hasNext() ? updates.next() : null;
+            } else {
+                removed.add(removal.getValue().id());
+                sequence = removal.getKey();
+                removal = removals.hasNext() ? removals.next() : null;
+            }
+        }
+        return new EbookDelta(until, ebooks, removed, false);
+    }
+
+    public int tombstones() {
+        return deltaIndex.tombstoneCount();
+    }
+
     public Ebook add(Ebook ebook) {
-        ebook.setId(UUID.randomUUID().toString());
-        booksData.put(ebook.getId(), ebook);
+        // retry on the (practically impossible) id collision instead of overwriting
+        EbookJournal.Commit commit;
+        while ((commit = insert(idGenerator.nextId(), ebook)) == null) {
+            writeConflicts.increment();
+        }
+        commit.await();
         return ebook;
     }
 
+    // adds all ebooks, then waits once for the whole batch to be journaled
+    public List<Ebook> addAll(List<Ebook> ebooks) {
+        String[] ids = idGenerator.nextIds(ebooks.size());
+        List<EbookJournal.Commit> commits = new ArrayList<>(ebooks.size());
+        for (int i = 0; i < ebooks.size(); i++) {
+            EbookJournal.Commit commit = insert(ids[i], ebooks.get(i));
+            while (commit == null) {
+                writeConflicts.increment();
+                commit = insert(idGenerator.nextId(), ebooks.get(i));
+            }
+            commits.add(commit);
+        }
+        commits.forEach(EbookJournal.Commit::await);
+        return ebooks;
+    }
+
     public void clearData() {
-        booksData.clear();
+        EbookJournal.Commit commit = exclusive(() -> {
+            long clearSequence = sequence.incrementAndGet();
+            EbookJournal.Commit cleared = clear(clearSequence);
+            watermark.applied(clearSequence);
+            return cleared;
+        });
+        commit.await();
+    }
+
+    /**
+     * Applies a mutation replicated from a leader instance under the version it has there, so that a replica's
+     * versions and ETags match its leader's. {@code ebook} is null for a remove. Replicated mutations must be applied
+     * one at a time in version order.
+     */
+    public void replicate(long version, String ebookId, Ebook ebook) {
+        if (ebook != null) {
+            ebook.setId(ebookId);
+            ebook.setVersion(version);
+        }
+        // sequences the leader skipped are never applied here
+        watermark.advanceTo(version - 1);
+        Mutation mutation = new Mutation();
+        gated(mutation, () -> booksData.compute(ebookId, (id, existingEbook) -> {
+            sequence.set(version);
+            mutation.sequence = version;
+            mutation.commit = journal(version, id, ebook);
+            notifyChange(version, existingEbook, ebook);
+            return ebook;
+        }));
+        mutation.commit.await();
+    }
+
+    public void replicateClear(long version) {
+        EbookJournal.Commit commit = exclusive(() -> {
+            sequence.set(version);
+            EbookJournal.Commit cleared = clear(version);
+            watermark.reset(version);
+            return cleared;
+        });
+        commit.await();
+    }
+
+    /**
+     * Replaces the whole catalog with the given ebooks, which keep their versions, and continues from
+     * {@code sequence}, for a replica starting over from its leader's catalog. Nothing is journaled, so a snapshot
+     * must follow to make it durable; {@link #checkpoint()} waits for the whole load, so that snapshot covers all of it.
+     */
+    public void load(long sequence, Iterator<Ebook> ebooks) {
+        exclusive(() -> {
+            booksData.clear();
+            listeners.forEach(listener -> listener.onClear(sequence));
+            this.sequence.set(sequence);
+            while (ebooks.hasNext()) {
+                Ebook ebook = ebooks.next();
+                booksData.compute(ebook.getId(), (id, existingEbook) -> {
+                    notifyChange(ebook.getVersion(), existingEbook, ebook);
+                    return ebook;
+                });
+            }
+            watermark.reset(sequence);
+            return null;
+        });
+    }
+
+    public boolean update(String ebookId, Ebook existingEbook, Ebook updatedEbook) {
+        updatedEbook.setId(ebookId);
+        Mutation mutation = new Mutation();
+        Ebook stored = gated(mutation, () -> booksData.computeIfPresent(ebookId, (id, currentEbook) -> {
+            if (!currentEbook.equals(existingEbook)) return currentEbook;
+            apply(mutation, id, currentEbook, updatedEbook);
+            return updatedEbook;
+        }));
+        if (mutation.commit == null) {
+            if (stored != null) writeConflicts.increment();
+            return false;
+        }
+        mutation.await();
+        return true;
     }
 
-    public void update(String ebookId, Ebook existingEbook, Ebook updatedEbook) {
-        booksData.replace(ebookId, existingEbook, updatedEbook);
+    // atomically replaces the stored ebook, returns null if there is none
+    public Ebook update(String ebookId, Ebook updatedEbook) {
+        updatedEbook.setId(ebookId);
+        Mutation mutation = new Mutation();
+        Ebook stored = gated(mutation, () -> booksData.computeIfPresent(ebookId, (id, existingEbook) -> {
+            apply(mutation, id, existingEbook, updatedEbook);
+            return updatedEbook;
+        }));
+        mutation.await();
+        return stored;
+    }
+
+    /**
+     * Stores an ebook under an id assigned elsewhere, such as one handed over by another cluster node, unless an ebook
+     * is stored under that id already. Returns the stored ebook, or null if the given one was stored.
+     */
+    public Ebook putIfAbsent(String ebookId, Ebook ebook) {
+        ebook.setId(ebookId);
+        Mutation mutation = new Mutation();
+        Ebook stored = gated(mutation, () -> booksData.compute(ebookId, (id, existingEbook) -> {
+            if (existingEbook != null) return existingEbook;
+            apply(mutation, id, null, ebook);
+            return ebook;
+        }));
+        if (mutation.commit == null) return stored;
+        mutation.await();
+        return null;
+    }
+
+    /**
+     * Like {@link #update(String, Ebook)}, but only replaces the stored ebook if it is still at the expected version;
+     * the check and the write are one atomic step. Returns null if there is no ebook with the given id.
+     *
+     * @throws EbookVersionConflictException if the ebook has another version, leaving it unchanged
+     */
+    public Ebook update(String ebookId, long expectedVersion, Ebook updatedEbook) {
+        updatedEbook.setId(ebookId);
+        Mutation mutation = new Mutation();
+        Ebook stored = gated(mutation, () -> booksData.computeIfPresent(ebookId, (id, existingEbook) -> {
+            if (existingEbook.getVersion() != expectedVersion) return existingEbook;
+            apply(mutation, id, existingEbook, updatedEbook);
+            return updatedEbook;
+        }));
+        if (stored == null) return null;
+        if (mutation.commit == null) throw versionConflict(ebookId, expectedVersion, stored);
+        mutation.await();
+        return stored;
     }
 
     public Ebook remove(String ebookId) {
-        return booksData.remove(ebookId);
+        Ebook[] removed = new Ebook[1];
+        Mutation mutation = new Mutation();
+        gated(mutation, () -> booksData.computeIfPresent(ebookId, (id, existingEbook) -> {
+            apply(mutation, id, existingEbook, null);
+            removed[0] = existingEbook;
+            return null;
+        }));
+        mutation.await();
+        return removed[0];
+    }
+
+    /**
+     * Removes the ebook only if it is still at the expected version, checked atomically with the removal.
+     * Returns null if there is no ebook with the given id.
+     *
+     * @throws EbookVersionConflictException if the ebook has another version, leaving it in place
+     */
+    public Ebook remove(String ebookId, long expectedVersion) {
+        Ebook[] current = new Ebook[1];
+        Mutation mutation = new Mutation();
+        gated(mutation, () -> booksData.computeIfPresent(ebookId, (id, existingEbook) -> {
+            current[0] = existingEbook;
+            if (existingEbook.getVersion() != expectedVersion) return existingEbook;
+            apply(mutation, id, existingEbook, null);
+            return null;
+        }));
+        if (current[0] == null) return null;
+        if (mutation.commit == null) throw versionConflict(ebookId, expectedVersion, current[0]);
+        mutation.await();
+        return current[0];
+    }
+
+    private EbookVersionConflictException versionConflict(String ebookId, long expectedVersion, Ebook current) {
+        writeConflicts.increment();
+        return new EbookVersionConflictException(ebookId, expectedVersion, current.getVersion());
+    }
+
+    // null if the id is taken
+    private EbookJournal.Commit insert(String ebookId, Ebook ebook) {
+        ebook.setId(ebookId);
+        Mutation mutation = new Mutation();
+        gated(mutation, () -> booksData.compute(ebookId, (id, existingEbook) -> {
+            if (existingEbook != null) return existingEbook;
+            apply(mutation, id, null, ebook);
+            return ebook;
+        }));
+        return mutation.commit;
+    }
+
+    private <T> T gated(Mutation mutation, Supplier<T> body) {
+        int cell = writeGate.enter();
+        try {
+            return body.get();
+        } finally {
+            // also when the store failed after the sequence was taken, or the watermark would stop there
+            if (mutation.sequence != 0) watermark.applied(mutation.sequence);
+            writeGate.exit(cell);
+        }
+    }
+
+    // with no other mutation in flight, so nothing lands between emptying the store and the indexes or outlives the clear
+    private <T> T exclusive(Supplier<T> mutation) {
+        writeGate.close();
+        try {
+            return mutation.get();
+        } finally {
+            writeGate.open();
+        }
+    }
+
+    // must run inside the per-id atomic section so versions, the journal and the listeners follow each id's mutation order
+    private void apply(Mutation mutation, String ebookId, Ebook previous, Ebook ebook) {
+        long mutationSequence = sequence.incrementAndGet();
+        mutation.sequence = mutationSequence;
+        if (ebook != null) ebook.setVersion(mutationSequence);
+        mutation.commit = journal(mutationSequence, ebookId, ebook);
+        notifyChange(mutationSequence, previous, ebook);
+    }
+
+    // the durable journal first: the feeds only ever publish a mutation it took, a refused one fails and is skipped
+    private EbookJournal.Commit journal(long mutationSequence, String ebookId, Ebook ebook) {
+        EbookJournal current = journal;
+        EbookJournal.Commit commit;
+        try {
+            commit = current == null ? EbookJournal.Commit.DONE : current.append(mutationSequence, ebookId, ebook);
+        } catch (RuntimeException e) {
+            skip(mutationSequence);
+            throw e;
+        }
+        for (EbookJournal feed : feeds) {
+            feed.append(mutationSequence, ebookId, ebook);
+        }
+        return commit;
+    }
+
+    // runs with the gate closed
+    private EbookJournal.Commit clear(long clearSequence) {
+        EbookJournal current = journal;
+        EbookJournal.Commit cleared;
+        try {
+            cleared = current == null ? EbookJournal.Commit.DONE : current.appendClear(clearSequence);
+        } catch (RuntimeException e) {
+            skip(clearSequence);
+            throw e;
+        }
+        for (EbookJournal feed : feeds) {
+            feed.appendClear(clearSequence);
+        }
+        booksData.clear();
+        listeners.forEach(listener -> listener.onClear(clearSequence));
+        return cleared;
+    }
+
+    // readers of the feeds and the change listeners would otherwise wait for the sequence of a failed mutation forever
+    private void skip(long skippedSequence) {
+        for (EbookJournal feed : feeds) {
+            feed.skip(skippedSequence);
+        }
+        notifyChange(skippedSequence, null, null);
+    }
+
+    private void notifyChange(long sequence, Ebook previous, Ebook current) {
+        for (EbookChangeListener listener : listeners) {
+            listener.onChange(sequence, previous, current);
+        }
+    }
+
+    // what a mutation did inside the per-id atomic section: its sequence, 0 if it changed nothing, and its journal commit
+    private static final class Mutation {
+
+        long sequence;
+        EbookJournal.Commit commit;
+
+        void await() {
+            if (commit != null) commit.await();
+        }
     }
 }
@@ -0,0 +1,22 @@
+package com.jani.ebookapi.service;
+
+/**
+ * Thrown by the version-checked writes of {@link EbookService} when the stored ebook has changed since the expected
+ * version was read. Nothing was written.
+ */
+public class EbookVersionConflictException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    private final long currentVersion;
+
+    public EbookVersionConflictException(String ebookId, long expectedVersion, long currentVersion) {
+        // an expected outcome under contention, so no stack trace is captured
+        super("Ebook " + ebookId + " is at version " + currentVersion + ", not " + expectedVersion, null, false, false);
+        this.currentVersion = currentVersion;
+    }
+
+    public long currentVersion() {
+        return currentVersion;
+    }
+}
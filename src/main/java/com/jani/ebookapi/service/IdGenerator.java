@@ -0,0 +1,18 @@
+package com.jani.ebookapi.service;
+
+/**
+ * Source of the ids {@link EbookService} assigns to new ebooks, as canonical lowercase UUID strings.
+ * Implementations must be safe for concurrent use. An id that is already taken is replaced by a new one, never overwritten.
+ */
+public interface IdGenerator {
+
+    String nextId();
+
+    default String[] nextIds(int count) {
+        String[] ids = new String[count];
+        for (int i = 0; i < count; i++) {
+            ids[i] = nextId();
+        }
+        return ids;
+    }
+}
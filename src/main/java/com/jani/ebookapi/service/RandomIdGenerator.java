@@ -0,0 +1,38 @@
+package com.jani.ebookapi.service;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.nio.ByteBuffer;
+import java.security.SecureRandom;
+import java.util.UUID;
+
+/**
+ * Version 4 UUIDs from a shared {@link SecureRandom}: unguessable, but unordered and contended under concurrent writes.
+ */
+@Component
+@ConditionalOnProperty(name = "ebook.id.generator", havingValue = "random")
+public class RandomIdGenerator implements IdGenerator {
+
+    private static final SecureRandom ID_RANDOM = new SecureRandom();
+
+    @Override
+    public String nextId() {
+        return UUID.randomUUID().toString();
+    }
+
+    // like UUID.randomUUID(), but with a single SecureRandom call for the whole batch
+    @Override
+    public String[] nextIds(int count) {
+        byte[] random = new byte[16 * count];
+        ID_RANDOM.nextBytes(random);
+        ByteBuffer bits = ByteBuffer.wrap(random);
+        String[] ids = new String[count];
+        for (int i = 0; i < count; i++) {
+            long mostSigBits = bits.getLong() & ~0xF000L | 0x4000L;
+            long leastSigBits = bits.getLong() & 0x3FFFFFFFFFFFFFFFL | 0x8000000000000000L;
+            ids[i] = new UUID(mostSigBits, leastSigBits).toString();
+        }
+        return ids;
+    }
+}
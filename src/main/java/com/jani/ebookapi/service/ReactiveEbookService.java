@@ -0,0 +1,94 @@
+package com.jani.ebookapi.service;
+
+import com.jani.ebookapi.model.Ebook;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.util.List;
+import java.util.function.Supplier;
+
+/**
+ * Non-blocking facade over {@link EbookService} for the reactive web stack.
+ * Reads are in-memory and run on the subscribing thread; writes may wait for the journal, so they run on the bounded elastic scheduler.
+ */
+@Service
+public class ReactiveEbookService {
+
+    private final EbookService ebookService;
+
+    public ReactiveEbookService(EbookService ebookService) {
+        this.ebookService = ebookService;
+    }
+
+    public String catalogVersion() {
+        return ebookService.catalogVersion();
+    }
+
+    public Mono<Ebook> get(String ebookId) {
+        return Mono.fromSupplier(() -> ebookService.get(ebookId));
+    }
+
+    // one page of ebooks matching all given (non-null) criteria, ordered by id, starting after the given id
+    public Mono<List<Ebook>> find(String author, String format, String afterId, int limit) {
+        return Mono.fromSupplier(() -> ebookService.find(author, format, afterId, limit));
+    }
+
+    /**
+     * All matching ebooks in id order, one page per element. A page is only read from the store once the subscriber
+     * requests it, so a slow client holds at most a page or two in memory.
+     */
+    public Flux<List<Ebook>> pages(String author, String format, int pageSize) {
+        return Flux.generate(() -> new String[1], (lastId, sink) -> {
+            List<Ebook> page = ebookService.find(author, format, lastId[0], pageSize);
+            if (!page.isEmpty()) {
+                sink.next(page);
+                lastId[0] = page.get(page.size() - 1).getId();
+            }
+            if (page.size() < pageSize) sink.complete();
+            return lastId;
+        });
+    }
+
+    // empty if the changes since that sequence are no longer known
+    public Mono<EbookDelta> changesSince(long since, int limit) {
+        return Mono.fromSupplier(() -> ebookService.changesSince(since, limit));
+    }
+
+    public Mono<List<Ebook>> search(String query, int limit) {
+        return Mono.fromSupplier(() -> ebookService.search(query, limit));
+    }
+
+    public Mono<Ebook> add(Ebook ebook) {
+        return write(() -> ebookService.add(ebook));
+    }
+
+    public Mono<List<Ebook>> addAll(List<Ebook> ebooks) {
+        return write(() -> ebookService.addAll(ebooks));
+    }
+
+    // empty if there is no ebook with the given id
+    public Mono<Ebook> update(String ebookId, Ebook updatedEbook) {
+        return write(() -> ebookService.update(ebookId, updatedEbook));
+    }
+
+    // empty if there is no ebook with the given id, an EbookVersionConflictException if it is not at the expected version
+    public Mono<Ebook> update(String ebookId, long expectedVersion, Ebook updatedEbook) {
+        return write(() -> ebookService.update(ebookId, expectedVersion, updatedEbook));
+    }
+
+    // empty if there is no ebook with the given id
+    public Mono<Ebook> remove(String ebookId) {
+        return write(() -> ebookService.remove(ebookId));
+    }
+
+    // empty if there is no ebook with the given id, an EbookVersionConflictException if it is not at the expected version
+    public Mono<Ebook> remove(String ebookId, long expectedVersion) {
+        return write(() -> ebookService.remove(ebookId, expectedVersion));
+    }
+
+    private static <T> Mono<T> write(Supplier<T> mutation) {
+        return Mono.fromSupplier(mutation).subscribeOn(Schedulers.boundedElastic());
+    }
+}
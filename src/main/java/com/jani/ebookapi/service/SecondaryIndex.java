@@ -0,0 +1,68 @@
+package com.jani.ebookapi.service;
+
+import com.jani.ebookapi.model.Ebook;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.function.Function;
+
+// inverted index from one ebook field to the ids of the ebooks having that value, kept in id order for paging
+public class SecondaryIndex implements EbookChangeListener {
+
+    private final Function<Ebook, String> keyExtractor;
+    private final ConcurrentHashMap<String, ConcurrentSkipListSet<String>> postings = new ConcurrentHashMap<>();
+
+    public SecondaryIndex(Function<Ebook, String> keyExtractor) {
+        this.keyExtractor = keyExtractor;
+    }
+
+    public NavigableSet<String> lookup(String key) {
+        NavigableSet<String> ids = postings.get(key);
+        return ids == null ? Collections.emptyNavigableSet() : Collections.unmodifiableNavigableSet(ids);
+    }
+
+    public boolean matches(Ebook ebook, String key) {
+        return Objects.equals(keyExtractor.apply(ebook), key);
+    }
+
+    @Override
+    public void onChange(Ebook previous, Ebook current) {
+        String previousKey = previous == null ? null : keyExtractor.apply(previous);
+        String currentKey = current == null ? null : keyExtractor.apply(current);
+        if (previous != null && current != null && Objects.equals(previousKey, currentKey)) return;
+        if (previousKey != null) {
+            String id = previous.getId();
+            // drop the posting set once empty so stale values do not accumulate
+            postings.computeIfPresent(previousKey, (key, ids) -> {
+                ids.remove(id);
+                return ids.isEmpty() ? null : ids;
+            });
+        }
+        if (currentKey != null) {
+            String id = current.getId();
+            postings.compute(currentKey, (key, ids) -> {
+                if (ids == null) ids = new ConcurrentSkipListSet<>();
+                ids.add(id);
+                return ids;
+            });
+        }
+    }
+
+    // one posting update per distinct value of the block instead of one per ebook
+    @Override
+    public void onRestore(List<Ebook> ebooks) {
+        Map<String, List<String>> idsByKey = new HashMap<>();
+        for (Ebook ebook : ebooks) {
+            String key = keyExtractor.apply(ebook);
+            if (key != null) idsByKey.computeIfAbsent(key, k -> new ArrayList<>()).add(ebook.getId());
+        }
+        // nothing is removed during a restore, so a posting set cannot be dropped while blocks are added to it
+        idsByKey.forEach((key, added) -> postings.computeIfAbsent(key, k -> new ConcurrentSkipListSet<>()).addAll(added));
+    }
+
+    @Override
+    public void onClear() {
+        postings.clear();
+    }
+}
@@ -0,0 +1,107 @@
+package com.jani.ebookapi.service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.ToLongFunction;
+
+/**
+ * The most recent entries of a mutation sequence, which readers follow by sequence number. A fixed ring of slots
+ * indexed by sequence: adding never blocks or allocates beyond the entry itself, and a reader that falls further behind
+ * than the ring holds has to start over some other way.
+ * <p>
+ * Mutations of different ebooks can be added out of sequence order, so a read stops at the first sequence that is not
+ * added yet; it never skips one. Every sequence after the floor must be added eventually, unless the ring is
+ * restarted past it.
+ */
+public class SequenceRing<T> {
+
+    private final AtomicReferenceArray<T> slots;
+    private final ToLongFunction<T> sequenceOf;
+    // the ring holds no entries up to this sequence, such as the ones recovered on startup
+    private final AtomicLong floor;
+    private final AtomicLong latest;
+    // readers waiting for the next entry; adds only take the monitor while there are any
+    private final AtomicInteger waiters = new AtomicInteger();
+    private final Object monitor = new Object();
+
+    public SequenceRing(int capacity, long floor, ToLongFunction<T> sequenceOf) {
+        this.slots = new AtomicReferenceArray<>(capacity);
+        this.sequenceOf = sequenceOf;
+        this.floor = new AtomicLong(floor);
+        this.latest = new AtomicLong(floor);
+    }
+
+    // the highest sequence added so far
+    public long latest() {
+        return latest.get();
+    }
+
+    public void add(T entry) {
+        long sequence = sequenceOf.applyAsLong(entry);
+        if (sequence <= floor.get()) return;
+        slots.set(slot(sequence), entry);
+        latest.accumulateAndGet(sequence, Math::max);
+        wakeReaders();
+    }
+
+    // drops every entry up to the given sequence, such as when the whole catalog was replaced; readers behind it start over
+    public void restart(long sequence) {
+        floor.accumulateAndGet(sequence, Math::max);
+        latest.accumulateAndGet(sequence, Math::max);
+        wakeReaders();
+    }
+
+    /**
+     * Up to {@code limit} entries following {@code after}, in sequence order, waiting up to {@code waitMillis} for the
+     * first one. Returns null if the entries after {@code after} are no longer or were never in the ring.
+     */
+    public List<T> read(long after, int limit, long waitMillis) throws InterruptedException {
+        if (after < floor.get() || after > latest.get() || latest.get() - after > slots.length()) return null;
+        List<T> entries = new ArrayList<>();
+        if (!collect(after, limit, entries)) return null;
+        if (!entries.isEmpty() || waitMillis <= 0) return entries;
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(waitMillis);
+        waiters.incrementAndGet();
+        try {
+            synchronized (monitor) {
+                while (true) {
+                    // checked after registering as a waiter, so an add in between is seen here or wakes us up
+                    if (!collect(after, limit, entries)) return null;
+                    long remaining = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+                    if (!entries.isEmpty() || remaining <= 0) return entries;
+                    monitor.wait(remaining);
+                }
+            }
+        } finally {
+            waiters.decrementAndGet();
+        }
+    }
+
+    // false if an entry was already overwritten or dropped
+    private boolean collect(long after, int limit, List<T> entries) {
+        if (after < floor.get()) return false;
+        for (long sequence = after + 1; entries.size() < limit; sequence++) {
+            T entry = slots.get(slot(sequence));
+            if (entry == null || sequenceOf.applyAsLong(entry) < sequence) return true;
+            if (sequenceOf.applyAsLong(entry) > sequence) return false;
+            entries.add(entry);
+        }
+        return true;
+    }
+
+    private void wakeReaders() {
+        if (waiters.get() > 0) {
+            synchronized (monitor) {
+                monitor.notifyAll();
+            }
+        }
+    }
+
+    private int slot(long sequence) {
+        return (int) (sequence % slots.length());
+    }
+}
@@ -0,0 +1,59 @@
+package com.jani.ebookapi.service;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * The highest sequence up to which every mutation is applied. Mutations take their sequence inside the per-id atomic
+ * section but finish in any order: each marks its sequence in a ring slot once applied and moves the watermark over
+ * the marked sequences following it, so reading the watermark never waits for a writer.
+ */
+final class SequenceWatermark {
+
+    private static final int CAPACITY = 1 << 12;
+
+    private final AtomicLongArray applied = new AtomicLongArray(CAPACITY);
+    private final AtomicLong watermark = new AtomicLong();
+
+    long get() {
+        return watermark.get();
+    }
+
+    // each sequence above the watermark is marked exactly once
+    void applied(long sequence) {
+        // the slot belongs to the sequence CAPACITY earlier until the watermark is past it
+        while (sequence - watermark.get() > CAPACITY) {
+            Thread.yield();
+        }
+        applied.set(slot(sequence), sequence);
+        // whoever marks last moves the watermark, as either sees the other's mark
+        long current = watermark.get();
+        while (applied.get(slot(current + 1)) == current + 1) {
+            if (watermark.compareAndSet(current, current + 1)) {
+                current++;
+            } else {
+                current = watermark.get();
+            }
+        }
+    }
+
+    /**
+     * Moves the watermark up to the given sequence at once, such as over sequences restored on startup or skipped by a
+     * leader. Only while no mutation up to it is in flight.
+     */
+    void advanceTo(long sequence) {
+        watermark.accumulateAndGet(sequence, Math::max);
+    }
+
+    // continues from any sequence, lower ones included; only while no mutation is in flight
+    void reset(long sequence) {
+        for (int i = 0; i < CAPACITY; i++) {
+            applied.set(i, 0);
+        }
+        watermark.set(sequence);
+    }
+
+    private static int slot(long sequence) {
+        return (int) (sequence & (CAPACITY - 1));
+    }
+}
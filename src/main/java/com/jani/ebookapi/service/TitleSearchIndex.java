@@ -0,0 +1,160 @@
+package com.jani.ebookapi.service;
+
+import com.jani.ebookapi.model.Ebook;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.function.Function;
+
+// inverted index from lowercased title tokens to ebook ids, with prefix matching on the last query token
+public class TitleSearchIndex implements EbookChangeListener {
+
+    // upper bound of candidates ranked per query, keeps very short prefixes bounded in time
+    static final int MAX_CANDIDATES = 5_000;
+
+    private final ConcurrentSkipListMap<String, Set<String>> postings = new ConcurrentSkipListMap<>();
+
+    public List<Ebook> search(String query, int limit, Function<String, Ebook> lookup) {
+        List<String> queryTokens = tokenize(query);
+        if (queryTokens.isEmpty() || limit < 1) return List.of();
+        // the last token is still being typed unless the query ends with a separator
+        boolean prefixQuery = Character.isLetterOrDigit(query.charAt(query.length() - 1));
+        String lastToken = queryTokens.get(queryTokens.size() - 1);
+
+        List<Set<String>> exactClauses = new ArrayList<>();
+        for (int i = 0; i < queryTokens.size() - (prefixQuery ? 1 : 0); i++) {
+            Set<String> ids = postings.get(queryTokens.get(i));
+            if (ids == null) return List.of();
+            exactClauses.add(ids);
+        }
+        Collection<Set<String>> prefixClause = prefixQuery
+                ? postings.subMap(lastToken, true, lastToken + Character.MAX_VALUE, false).values()
+                : List.of();
+        if (prefixQuery && prefixClause.isEmpty()) return List.of();
+
+        // drive candidate generation from the most selective clause
+        Set<String> driver = null;
+        for (Set<String> ids : exactClauses) {
+            if (driver == null || ids.size() < driver.size()) driver = ids;
+        }
+        Iterable<Set<String>> candidateSources = driver != null && (!prefixQuery || driver.size() <= sizeOf(prefixClause))
+                ? List.of(driver)
+                : prefixClause;
+
+        PriorityQueue<Hit> best = new PriorityQueue<>(limit + 1, Comparator.reverseOrder());
+        int examined = 0;
+        sources:
+        for (Set<String> source : candidateSources) {
+            candidates:
+            for (String id : source) {
+                if (++examined > MAX_CANDIDATES) break sources;
+                for (Set<String> clause : exactClauses) {
+                    if (clause != source && !clause.contains(id)) continue candidates;
+                }
+                Ebook ebook = lookup.apply(id);
+                if (ebook == null) continue;
+                Hit hit = rank(ebook, queryTokens, prefixQuery);
+                if (hit == null) continue;
+                best.add(hit);
+                if (best.size() > limit) best.poll();
+            }
+        }
+        List<Ebook> ebooks = new ArrayList<>(best.size());
+        while (!best.isEmpty()) ebooks.add(best.poll().ebook);
+        Collections.reverse(ebooks);
+        return ebooks;
+    }
+
+    @Override
+    public void onChange(Ebook previous, Ebook current) {
+        Set<String> previousTokens = previous == null ? Set.of() : new HashSet<>(tokenize(previous.getTitle()));
+        Set<String> currentTokens = current == null ? Set.of() : new HashSet<>(tokenize(current.getTitle()));
+        for (String token : previousTokens) {
+            if (currentTokens.contains(token)) continue;
+            String id = previous.getId();
+            postings.computeIfPresent(token, (key, ids) -> {
+                ids.remove(id);
+                return ids.isEmpty() ? null : ids;
+            });
+        }
+        for (String token : currentTokens) {
+            if (previousTokens.contains(token)) continue;
+            String id = current.getId();
+            postings.compute(token, (key, ids) -> {
+                if (ids == null) ids = ConcurrentHashMap.newKeySet();
+                ids.add(id);
+                return ids;
+            });
+        }
+    }
+
+    // one posting update per distinct token of the block instead of one per token of each title
+    @Override
+    public void onRestore(List<Ebook> ebooks) {
+        Map<String, List<String>> idsByToken = new HashMap<>();
+        for (Ebook ebook : ebooks) {
+            for (String token : new HashSet<>(tokenize(ebook.getTitle()))) {
+                idsByToken.computeIfAbsent(token, t -> new ArrayList<>()).add(ebook.getId());
+            }
+        }
+        // nothing is removed during a restore, so a posting set cannot be dropped while blocks are added to it
+        idsByToken.forEach((token, added) -> postings.computeIfAbsent(token, t -> ConcurrentHashMap.newKeySet()).addAll(added));
+    }
+
+    @Override
+    public void onClear() {
+        postings.clear();
+    }
+
+    static List<String> tokenize(String text) {
+        List<String> tokens = new ArrayList<>();
+        if (text == null) return tokens;
+        int start = -1;
+        for (int i = 0; i <= text.length(); i++) {
+            boolean tokenChar = i < text.length() && Character.isLetterOrDigit(text.charAt(i));
+            if (tokenChar && start < 0) {
+                start = i;
+            } else if (!tokenChar && start >= 0) {
+                tokens.add(text.substring(start, i).toLowerCase(Locale.ROOT));
+                start = -1;
+            }
+        }
+        return tokens;
+    }
+
+    private static int sizeOf(Collection<Set<String>> clause) {
+        int size = 0;
+        for (Set<String> ids : clause) size += ids.size();
+        return size;
+    }
+
+    // exact token matches rank before prefix matches, then earlier matches, then shorter titles
+    private static Hit rank(Ebook ebook, List<String> queryTokens, boolean prefixQuery) {
+        List<String> titleTokens = tokenize(ebook.getTitle());
+        String lastToken = queryTokens.get(queryTokens.size() - 1);
+        // the stored title may have changed after the index was read
+        if (!titleTokens.containsAll(queryTokens.subList(0, queryTokens.size() - 1))) return null;
+        int prefixPosition = -1;
+        for (int position = 0; position < titleTokens.size(); position++) {
+            String token = titleTokens.get(position);
+            if (token.equals(lastToken)) return new Hit(ebook, true, position, ebook.getTitle().length());
+            if (prefixQuery && prefixPosition < 0 && token.startsWith(lastToken)) prefixPosition = position;
+        }
+        return prefixPosition < 0 ? null : new Hit(ebook, false, prefixPosition, ebook.getTitle().length());
+    }
+
+    private record Hit(Ebook ebook, boolean exact, int position, int length) implements Comparable<Hit> {
+
+        private static final Comparator<Hit> ORDER = Comparator
+                .comparing((Hit hit) -> !hit.exact)
+                .thenComparingInt(Hit::position)
+                .thenComparingInt(Hit::length)
+                .thenComparing(hit -> hit.ebook.getId());
+
+        @Override
+        public int compareTo(Hit other) {
+            return ORDER.compare(this, other);
+        }
+    }
+}
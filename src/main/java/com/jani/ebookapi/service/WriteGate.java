@@ -0,0 +1,63 @@
+package com.jani.ebookapi.service;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Lets any number of mutations run at once and one caller at a time shut them out, such as a checkpoint waiting for
+ * the mutations in flight. A mutation only counts itself in a cell picked by its thread, each on its own cache line,
+ * so mutations on different threads share no written memory; closing the gate waits until every cell is back to zero.
+ */
+final class WriteGate {
+
+    // longs from one cell to the next, 128 bytes
+    private static final int CELL_STRIDE = 16;
+
+    private final AtomicLongArray cells;
+    private final int mask;
+    private final ReentrantLock closer = new ReentrantLock();
+    private volatile boolean closed;
+
+    WriteGate() {
+        int stripes = Integer.highestOneBit(2 * Runtime.getRuntime().availableProcessors() - 1) << 1;
+        this.cells = new AtomicLongArray(stripes * CELL_STRIDE);
+        this.mask = stripes - 1;
+    }
+
+    /**
+     * Waits while the gate is closed, then counts the calling thread in; returns the cell to pass to {@link #exit}.
+     * The thread that closed the gate passes at once.
+     */
+    int enter() {
+        long id = Thread.currentThread().getId() * 0x9E3779B97F4A7C15L;
+        int cell = ((int) (id >>> 32) & mask) * CELL_STRIDE;
+        while (true) {
+            cells.getAndIncrement(cell);
+            // the increment and this read pair with close() setting the flag and reading the cells
+            if (!closed || closer.isHeldByCurrentThread()) return cell;
+            cells.getAndDecrement(cell);
+            closer.lock();
+            closer.unlock();
+        }
+    }
+
+    void exit(int cell) {
+        cells.getAndDecrement(cell);
+    }
+
+    // once this returns no mutation is in flight and none starts until open()
+    void close() {
+        closer.lock();
+        closed = true;
+        for (int cell = 0; cell < cells.length(); cell += CELL_STRIDE) {
+            while (cells.get(cell) != 0) {
+                Thread.yield();
+            }
+        }
+    }
+
+    void open() {
+        closed = false;
+        closer.unlock();
+    }
+}
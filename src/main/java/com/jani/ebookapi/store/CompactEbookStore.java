@@ -0,0 +1,419 @@
+package com.jani.ebookapi.store;
+
+import com.jani.ebookapi.model.Ebook;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiFunction;
+
+/**
+ * Memory-compact store. Ebooks are kept column-wise in small sorted leaves: ids and versions as longs, author and format as
+ * dictionary codes and titles as UTF-8 in one byte array per leaf, so a stored ebook costs no objects of its own.
+ * {@link Ebook} objects are only materialized on read.
+ * <p>
+ * Leaves are immutable and replaced on every write, so reads never lock; writers to the same leaf serialize on it.
+ * A leaf splits once it holds {@link #MAX_LEAF_SIZE} ebooks, and moves into the one before it once removals leave both
+ * within half of that; an empty one is dropped. The directory maps the lowest id of each leaf's range to the leaf.
+ */
+@Component
+@ConditionalOnProperty(name = "ebook.store.type", havingValue = "compact")
+public class CompactEbookStore implements EbookStore {
+
+    static final int MAX_LEAF_SIZE = 256;
+    // per segment without its arrays: directory node and key, the Segment and Leaf objects and seven array headers
+    private static final int SEGMENT_OVERHEAD = 240;
+    private static final EbookKey FIRST_KEY = new EbookKey(0, 0);
+
+    private final ConcurrentSkipListMap<EbookKey, Segment> directory = new ConcurrentSkipListMap<>();
+    private final StringDictionary authors = new StringDictionary();
+    private final StringDictionary formats = new StringDictionary();
+    private final AtomicInteger size = new AtomicInteger();
+
+    public CompactEbookStore() {
+        directory.put(FIRST_KEY, new Segment(FIRST_KEY, Leaf.EMPTY));
+    }
+
+    @Override
+    public Ebook get(String ebookId) {
+        EbookKey key = EbookKey.parse(ebookId);
+        if (key == null) return null;
+        while (true) {
+            Segment segment = segmentFor(key);
+            Leaf leaf = segment.leaf;
+            int index = leaf.search(key.mostSigBits(), key.leastSigBits());
+            if (index >= 0) return materialize(ebookId, leaf, index);
+            // a concurrent split may have moved the id into a new segment
+            if (segmentFor(key) == segment) return null;
+        }
+    }
+
+    @Override
+    public Collection<Ebook> getAll() {
+        return new AbstractCollection<>() {
+            @Override
+            public Iterator<Ebook> iterator() {
+                // pull ordered batches so segments split during iteration are neither skipped nor repeated
+                return new Iterator<>() {
+                    private Iterator<Ebook> batch = scan(null, MAX_LEAF_SIZE).iterator();
+                    private String lastId;
+
+                    @Override
+                    public boolean hasNext() {
+                        if (!batch.hasNext() && lastId != null) {
+                            batch = scan(lastId, MAX_LEAF_SIZE).iterator();
+                            lastId = null;
+                        }
+                        return batch.hasNext();
+                    }
+
+                    @Override
+                    public Ebook next() {
+                        if (!hasNext()) throw new NoSuchElementException();
+                        Ebook ebook = batch.next();
+                        lastId = ebook.getId();
+                        return ebook;
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                return size.get();
+            }
+        };
+    }
+
+    @Override
+    public List<Ebook> scan(String afterId, int limit) {
+        EbookKey lowerBound = null;
+        if (afterId != null) {
+            lowerBound = EbookKey.parse(afterId);
+            if (lowerBound == null) return List.of();
+        }
+        List<Ebook> ebooks = new ArrayList<>(Math.min(limit, 1024));
+        Map.Entry<EbookKey, Segment> entry = lowerBound == null ? directory.firstEntry() : directory.floorEntry(lowerBound);
+        // skipping ids up to the last one returned keeps concurrent splits from repeating ids
+        while (entry != null && ebooks.size() < limit) {
+            Segment segment = entry.getValue();
+            Leaf leaf = segment.leaf;
+            int index = 0;
+            if (lowerBound != null) {
+                index = leaf.search(lowerBound.mostSigBits(), lowerBound.leastSigBits());
+                index = index >= 0 ? index + 1 : -index - 1;
+            }
+            int first = index;
+            for (; index < leaf.count && ebooks.size() < limit; index++) {
+                ebooks.add(materialize(leaf.idAt(index), leaf, index));
+            }
+            if (index > first) lowerBound = new EbookKey(leaf.mostSigBits[index - 1], leaf.leastSigBits[index - 1]);
+            Map.Entry<EbookKey, Segment> next = directory.higherEntry(entry.getKey());
+            // a merge moves the next segment's ids into this leaf before dropping that segment, so read it again then
+            if (segment.leaf == leaf) entry = next;
+        }
+        return ebooks;
+    }
+
+    @Override
+    public Ebook putIfAbsent(String ebookId, Ebook ebook) {
+        Ebook[] existing = new Ebook[1];
+        compute(ebookId, (id, current) -> {
+            existing[0] = current;
+            return current != null ? current : ebook;
+        });
+        return existing[0];
+    }
+
+    @Override
+    public Ebook computeIfPresent(String ebookId, BiFunction<String, Ebook, Ebook> remappingFunction) {
+        return compute(ebookId, (id, current) -> current == null ? null : remappingFunction.apply(id, current));
+    }
+
+    @Override
+    public Ebook compute(String ebookId, BiFunction<String, Ebook, Ebook> remappingFunction) {
+        EbookKey key = EbookKey.parse(ebookId);
+        if (key == null) {
+            Ebook result = remappingFunction.apply(ebookId, null);
+            if (result != null) throw new IllegalArgumentException("Ebook id is not a UUID: " + ebookId);
+            return null;
+        }
+        while (true) {
+            Segment segment = segmentFor(key);
+            synchronized (segment) {
+                // the segment split before we got the lock, look it up again
+                if (segmentFor(key) != segment) continue;
+                Leaf leaf = segment.leaf;
+                int index = leaf.search(key.mostSigBits(), key.leastSigBits());
+                Ebook current = index >= 0 ? materialize(ebookId, leaf, index) : null;
+                Ebook result = remappingFunction.apply(ebookId, current);
+                if (result == current) return result;
+                if (result == null) {
+                    segment.leaf = leaf.without(index);
+                    size.decrementAndGet();
+                    if (segment.leaf.count <= MAX_LEAF_SIZE / 4) merge(segment);
+                    return null;
+                }
+                result.setId(ebookId);
+                Leaf updated = leaf.with(index, key, result.getVersion(), authorCode(result), formatCode(result), titleBytes(result));
+                if (index < 0) size.incrementAndGet();
+                if (updated.count > MAX_LEAF_SIZE) {
+                    split(segment, updated, -index - 1);
+                } else {
+                    segment.leaf = updated;
+                }
+                return result;
+            }
+        }
+    }
+
+    @Override
+    public boolean replace(String ebookId, Ebook existingEbook, Ebook updatedEbook) {
+        boolean[] replaced = new boolean[1];
+        computeIfPresent(ebookId, (id, current) -> {
+            replaced[0] = current.equals(existingEbook);
+            return replaced[0] ? updatedEbook : current;
+        });
+        return replaced[0];
+    }
+
+    @Override
+    public Ebook remove(String ebookId) {
+        Ebook[] removed = new Ebook[1];
+        computeIfPresent(ebookId, (id, current) -> {
+            removed[0] = current;
+            return null;
+        });
+        return removed[0];
+    }
+
+    @Override
+    public int size() {
+        return size.get();
+    }
+
+    @Override
+    public long estimatedBytes() {
+        long bytes = authors.estimatedBytes() + formats.estimatedBytes();
+        for (Segment segment : directory.values()) {
+            Leaf leaf = segment.leaf;
+            // three long and three int columns
+            bytes += SEGMENT_OVERHEAD + leaf.count * 36L + leaf.titles.length;
+        }
+        return bytes;
+    }
+
+    @Override
+    public void clear() {
+        for (Segment segment : directory.values()) {
+            synchronized (segment) {
+                size.addAndGet(-segment.leaf.count);
+                segment.leaf = Leaf.EMPTY;
+                merge(segment);
+            }
+        }
+    }
+
+    private Segment segmentFor(EbookKey key) {
+        return directory.floorEntry(key).getValue();
+    }
+
+    // publish the upper half before shrinking this segment, so readers always find every id in one of them.
+    // An id appended after the last one, as time-ordered ids are, starts a new leaf and leaves this one full.
+    private void split(Segment segment, Leaf leaf, int insertedAt) {
+        int middle = insertedAt == leaf.count - 1 ? insertedAt : leaf.count / 2;
+        Leaf upper = leaf.slice(middle, leaf.count);
+        EbookKey upperKey = new EbookKey(upper.mostSigBits[0], upper.leastSigBits[0]);
+        directory.put(upperKey, new Segment(upperKey, upper));
+        segment.leaf = leaf.slice(0, middle);
+    }
+
+    /**
+     * Holding the segment's lock: drops it if empty, or moves its ebooks into the segment before it if both fit in half a
+     * leaf, so removals give back what splits took. The ebooks go into the segment before first, so readers always find
+     * every id in one of them, and writers waiting for the dropped segment look it up again. Locks are only ever taken
+     * from a segment to the one before it, never the other way round.
+     */
+    private void merge(Segment segment) {
+        if (segment.key == FIRST_KEY) return;
+        Leaf leaf = segment.leaf;
+        if (leaf.count == 0) {
+            directory.remove(segment.key, segment);
+            return;
+        }
+        Segment previous = directory.lowerEntry(segment.key).getValue();
+        synchronized (previous) {
+            // it split, or moved into the one before it, since it was looked up
+            if (directory.lowerEntry(segment.key).getValue() != previous) return;
+            if (previous.leaf.count + leaf.count > MAX_LEAF_SIZE / 2) return;
+            previous.leaf = previous.leaf.concat(leaf);
+            directory.remove(segment.key, segment);
+        }
+    }
+
+    private int authorCode(Ebook ebook) {
+        return ebook.getAuthor() == null ? -1 : authors.encode(ebook.getAuthor());
+    }
+
+    private int formatCode(Ebook ebook) {
+        return ebook.getFormat() == null ? -1 : formats.encode(ebook.getFormat());
+    }
+
+    private static byte[] titleBytes(Ebook ebook) {
+        return ebook.getTitle() == null ? null : ebook.getTitle().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private Ebook materialize(String ebookId, Leaf leaf, int index) {
+        int author = leaf.authors[index];
+        int format = leaf.formats[index];
+        Ebook ebook = new Ebook(ebookId,
+                author < 0 ? null : authors.decode(author),
+                leaf.titleAt(index),
+                format < 0 ? null : formats.decode(format));
+        ebook.setVersion(leaf.versions[index]);
+        return ebook;
+    }
+
+    private static final class Segment {
+
+        // its key in the directory
+        final EbookKey key;
+        volatile Leaf leaf;
+
+        Segment(EbookKey key, Leaf leaf) {
+            this.key = key;
+            this.leaf = leaf;
+        }
+    }
+
+    // immutable, sorted by unsigned id; titleEnds holds ~end for a null title
+    private static final class Leaf {
+
+        static final Leaf EMPTY = new Leaf(0, 0);
+
+        final int count;
+        final long[] mostSigBits;
+        final long[] leastSigBits;
+        final long[] versions;
+        final int[] authors;
+        final int[] formats;
+        final int[] titleEnds;
+        final byte[] titles;
+        // only advanced while the leaf is being built, before it is published
+        private int filled;
+        private int titleSize;
+
+        Leaf(int count, int titleCapacity) {
+            this.count = count;
+            this.mostSigBits = new long[count];
+            this.leastSigBits = new long[count];
+            this.versions = new long[count];
+            this.authors = new int[count];
+            this.formats = new int[count];
+            this.titleEnds = new int[count];
+            this.titles = new byte[titleCapacity];
+        }
+
+        int search(long msb, long lsb) {
+            int low = 0;
+            int high = count - 1;
+            while (low <= high) {
+                int middle = (low + high) >>> 1;
+                int result = Long.compareUnsigned(mostSigBits[middle], msb);
+                if (result == 0) result = Long.compareUnsigned(leastSigBits[middle], lsb);
+                if (result < 0) low = middle + 1;
+                else if (result > 0) high = middle - 1;
+                else return middle;
+            }
+            return -(low + 1);
+        }
+
+        String idAt(int index) {
+            return new EbookKey(mostSigBits[index], leastSigBits[index]).toString();
+        }
+
+        String titleAt(int index) {
+            int end = titleEnds[index];
+            if (end < 0) return null;
+            int start = titleStart(index);
+            return new String(titles, start, end - start, StandardCharsets.UTF_8);
+        }
+
+        int titleStart(int index) {
+            if (index == 0) return 0;
+            int previousEnd = titleEnds[index - 1];
+            return previousEnd < 0 ? ~previousEnd : previousEnd;
+        }
+
+        // inserts at -(index + 1) for a negative index, replaces otherwise
+        Leaf with(int index, EbookKey key, long version, int author, int format, byte[] title) {
+            boolean replace = index >= 0;
+            int position = replace ? index : -index - 1;
+            int titleLength = title == null ? 0 : title.length;
+            int removedTitle = replace ? titleStart(position + 1) - titleStart(position) : 0;
+            Leaf leaf = new Leaf(replace ? count : count + 1, titleStart(count) - removedTitle + titleLength);
+            leaf.append(this, 0, position);
+            leaf.append(key.mostSigBits(), key.leastSigBits(), version, author, format, title);
+            leaf.append(this, replace ? position + 1 : position, count);
+            return leaf;
+        }
+
+        Leaf without(int index) {
+            int removedTitle = titleStart(index + 1) - titleStart(index);
+            Leaf leaf = new Leaf(count - 1, titleStart(count) - removedTitle);
+            leaf.append(this, 0, index);
+            leaf.append(this, index + 1, count);
+            return leaf;
+        }
+
+        // the ebooks of both, all ids of the other one above this one's
+        Leaf concat(Leaf other) {
+            Leaf leaf = new Leaf(count + other.count, titleStart(count) + other.titleStart(other.count));
+            leaf.append(this, 0, count);
+            leaf.append(other, 0, other.count);
+            return leaf;
+        }
+
+        Leaf slice(int from, int to) {
+            Leaf leaf = new Leaf(to - from, titleStart(to) - titleStart(from));
+            leaf.append(this, from, to);
+            return leaf;
+        }
+
+        private void append(Leaf source, int from, int to) {
+            if (from >= to) return;
+            int length = to - from;
+            System.arraycopy(source.mostSigBits, from, mostSigBits, filled, length);
+            System.arraycopy(source.leastSigBits, from, leastSigBits, filled, length);
+            System.arraycopy(source.versions, from, versions, filled, length);
+            System.arraycopy(source.authors, from, authors, filled, length);
+            System.arraycopy(source.formats, from, formats, filled, length);
+            int titleFrom = source.titleStart(from);
+            int titleTo = source.titleStart(to);
+            System.arraycopy(source.titles, titleFrom, titles, titleSize, titleTo - titleFrom);
+            int shift = titleSize - titleFrom;
+            for (int i = 0; i < length; i++) {
+                int end = source.titleEnds[from + i];
+                titleEnds[filled + i] = end < 0 ? ~(~end + shift) : end + shift;
+            }
+            filled += length;
+            titleSize += titleTo - titleFrom;
+        }
+
+        private void append(long msb, long lsb, long version, int author, int format, byte[] title) {
+            mostSigBits[filled] = msb;
+            leastSigBits[filled] = lsb;
+            versions[filled] = version;
+            authors[filled] = author;
+            formats[filled] = format;
+            if (title != null) {
+                System.arraycopy(title, 0, titles, titleSize, title.length);
+                titleSize += title.length;
+            }
+            titleEnds[filled] = title == null ? ~titleSize : titleSize;
+            filled++;
+        }
+    }
+}
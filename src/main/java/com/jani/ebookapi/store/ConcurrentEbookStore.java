@@ -0,0 +1,126 @@
+package com.jani.ebookapi.store;
+
+import com.jani.ebookapi.model.Ebook;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.NavigableSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.function.BiFunction;
+
+@Component
+@ConditionalOnProperty(name = "ebook.store.type", havingValue = "concurrent", matchIfMissing = true)
+public class ConcurrentEbookStore implements EbookStore {
+
+    // per ebook without its field strings: map node and table slot, skip list node, the Ebook and its id string
+    private static final int ENTRY_OVERHEAD = 200;
+    private static final int SAMPLE_SIZE = 1000;
+
+    private final ConcurrentHashMap<String, Ebook> booksData = new ConcurrentHashMap<>();
+
+    // ordered key index for cursor scans, only modified inside the per-key compute of booksData
+    private final ConcurrentSkipListSet<String> orderedIds = new ConcurrentSkipListSet<>();
+
+    @Override
+    public Ebook get(String ebookId) {
+        return booksData.get(ebookId);
+    }
+
+    @Override
+    public Collection<Ebook> getAll() {
+        return booksData.values();
+    }
+
+    @Override
+    public List<Ebook> scan(String afterId, int limit) {
+        NavigableSet<String> ids = afterId == null ? orderedIds : orderedIds.tailSet(afterId, false);
+        List<Ebook> ebooks = new ArrayList<>(Math.min(limit, 1024));
+        for (String id : ids) {
+            if (ebooks.size() >= limit) break;
+            Ebook ebook = booksData.get(id);
+            // skip ids removed between reading the index and the map
+            if (ebook != null) ebooks.add(ebook);
+        }
+        return ebooks;
+    }
+
+    @Override
+    public Ebook putIfAbsent(String ebookId, Ebook ebook) {
+        Ebook[] existing = new Ebook[1];
+        booksData.compute(ebookId, (id, current) -> {
+            if (current != null) {
+                existing[0] = current;
+                return current;
+            }
+            orderedIds.add(id);
+            return ebook;
+        });
+        return existing[0];
+    }
+
+    @Override
+    public Ebook computeIfPresent(String ebookId, BiFunction<String, Ebook, Ebook> remappingFunction) {
+        return booksData.computeIfPresent(ebookId, (id, current) -> {
+            Ebook result = remappingFunction.apply(id, current);
+            if (result == null) orderedIds.remove(id);
+            return result;
+        });
+    }
+
+    @Override
+    public Ebook compute(String ebookId, BiFunction<String, Ebook, Ebook> remappingFunction) {
+        return booksData.compute(ebookId, (id, current) -> {
+            Ebook result = remappingFunction.apply(id, current);
+            if (current == null && result != null) orderedIds.add(id);
+            else if (current != null && result == null) orderedIds.remove(id);
+            return result;
+        });
+    }
+
+    @Override
+    public boolean replace(String ebookId, Ebook existingEbook, Ebook updatedEbook) {
+        return booksData.replace(ebookId, existingEbook, updatedEbook);
+    }
+
+    @Override
+    public Ebook remove(String ebookId) {
+        Ebook[] removed = new Ebook[1];
+        booksData.computeIfPresent(ebookId, (id, current) -> {
+            removed[0] = current;
+            orderedIds.remove(id);
+            return null;
+        });
+        return removed[0];
+    }
+
+    @Override
+    public int size() {
+        return booksData.size();
+    }
+
+    // extrapolated from the field strings of the first ebooks in id order
+    @Override
+    public long estimatedBytes() {
+        List<Ebook> sample = scan(null, SAMPLE_SIZE);
+        if (sample.isEmpty()) return 0;
+        long sampleBytes = 0;
+        for (Ebook ebook : sample) {
+            sampleBytes += stringBytes(ebook.getAuthor()) + stringBytes(ebook.getTitle()) + stringBytes(ebook.getFormat());
+        }
+        return (long) size() * ENTRY_OVERHEAD + sampleBytes * size() / sample.size();
+    }
+
+    // a Latin-1 string: object plus byte array, each 8-byte aligned
+    private static long stringBytes(String value) {
+        return value == null ? 0 : 24 + ((16 + value.length() + 7) & ~7);
+    }
+
+    @Override
+    public void clear() {
+        booksData.keySet().forEach(this::remove);
+    }
+}
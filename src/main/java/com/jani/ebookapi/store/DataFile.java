@@ -0,0 +1,183 @@
+package com.jani.ebookapi.store;
+
+import com.jani.ebookapi.model.Ebook;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Append-only file of encoded ebooks, mapped into memory in chunks of {@link #CHUNK_SIZE}. An append reserves its
+ * space with one compare-and-set and copies into the mapping, so appends do not wait for each other, and a read is a
+ * plain memory read. It is scratch space: nothing is fsynced and the file is deleted on close, durability is the
+ * write-ahead log's job.
+ * <p>
+ * A record is {@code [int record length][long id msb][long id lsb][long version]} followed by author, title and format
+ * as {@code [int length][UTF-8]}, length -1 for null. Records never span chunks. A location is
+ * {@code [16 bits file id][16 bits chunk][32 bits position]}.
+ */
+final class DataFile implements Closeable {
+
+    static final int CHUNK_SIZE = 64 << 20;
+    private static final int MAX_CHUNKS = 1 << 16;
+    private static final int HEADER_BYTES = 28;
+
+    private final int id;
+    private final Path path;
+    private final FileChannel channel;
+    private volatile MappedByteBuffer[] chunks = new MappedByteBuffer[0];
+    // the chunk being filled in the upper half, the position in it in the lower half
+    private final AtomicLong tail = new AtomicLong();
+    private final AtomicLong appended = new AtomicLong();
+
+    DataFile(Path directory, int id) throws IOException {
+        Files.createDirectories(directory);
+        this.id = id;
+        this.path = Files.createTempFile(directory, "ebooks-", ".dat");
+        this.channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+    }
+
+    int id() {
+        return id;
+    }
+
+    static int fileId(long location) {
+        return (int) (location >>> 48);
+    }
+
+    // bytes taken in the file, including the ends of chunks left empty
+    long appended() {
+        return appended.get();
+    }
+
+    long append(byte[] record) {
+        if (record.length > CHUNK_SIZE) throw new IllegalArgumentException("Ebook too large to store: " + record.length + " bytes");
+        while (true) {
+            long current = tail.get();
+            int chunk = (int) (current >>> 32);
+            int position = (int) current;
+            int skipped = 0;
+            if (position + record.length > CHUNK_SIZE) {
+                skipped = CHUNK_SIZE - position;
+                chunk++;
+                position = 0;
+            }
+            if (chunk >= MAX_CHUNKS) throw new IllegalStateException("Data file " + path + " is full");
+            long next = ((long) chunk << 32) | (position + record.length);
+            if (!tail.compareAndSet(current, next)) continue;
+            appended.addAndGet(skipped + record.length);
+            chunk(chunk).put(position, record);
+            return ((long) id << 48) | ((long) chunk << 32) | position;
+        }
+    }
+
+    Ebook read(long location, String ebookId) {
+        ByteBuffer chunk = chunkAt(location);
+        int position = (int) location + 20;
+        long version = chunk.getLong(position);
+        position += 8;
+        String[] fields = new String[3];
+        for (int i = 0; i < fields.length; i++) {
+            int length = chunk.getInt(position);
+            position += 4;
+            if (length < 0) continue;
+            byte[] bytes = new byte[length];
+            chunk.get(position, bytes);
+            position += length;
+            fields[i] = new String(bytes, StandardCharsets.UTF_8);
+        }
+        Ebook ebook = new Ebook(ebookId, fields[0], fields[1], fields[2]);
+        ebook.setVersion(version);
+        return ebook;
+    }
+
+    int length(long location) {
+        return chunkAt(location).getInt((int) location);
+    }
+
+    // the record as stored, for copying it to another file
+    byte[] copy(long location) {
+        ByteBuffer chunk = chunkAt(location);
+        int position = (int) location;
+        byte[] record = new byte[chunk.getInt(position)];
+        chunk.get(position, record);
+        return record;
+    }
+
+    static byte[] encode(EbookKey key, Ebook ebook) {
+        byte[] author = utf8(ebook.getAuthor());
+        byte[] title = utf8(ebook.getTitle());
+        byte[] format = utf8(ebook.getFormat());
+        int length = HEADER_BYTES + 12 + size(author) + size(title) + size(format);
+        ByteBuffer record = ByteBuffer.allocate(length)
+                .putInt(length)
+                .putLong(key.mostSigBits())
+                .putLong(key.leastSigBits())
+                .putLong(ebook.getVersion());
+        putString(record, author);
+        putString(record, title);
+        putString(record, format);
+        return record.array();
+    }
+
+    /**
+     * Deletes the file. Mappings stay readable until they are garbage collected, so readers that looked up a location
+     * in this file just before still read their ebook.
+     */
+    @Override
+    public void close() {
+        try {
+            channel.close();
+            Files.deleteIfExists(path);
+        } catch (IOException e) {
+            // a mapped file cannot be deleted on Windows
+            path.toFile().deleteOnExit();
+        }
+    }
+
+    private ByteBuffer chunkAt(long location) {
+        return chunks[(int) (location >>> 32) & (MAX_CHUNKS - 1)];
+    }
+
+    private MappedByteBuffer chunk(int index) {
+        MappedByteBuffer[] current = chunks;
+        if (index < current.length) return current[index];
+        synchronized (this) {
+            current = chunks;
+            if (index >= current.length) {
+                MappedByteBuffer[] grown = Arrays.copyOf(current, index + 1);
+                try {
+                    for (int i = current.length; i <= index; i++) {
+                        grown[i] = channel.map(FileChannel.MapMode.READ_WRITE, (long) i * CHUNK_SIZE, CHUNK_SIZE);
+                    }
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                chunks = grown;
+            }
+            return chunks[index];
+        }
+    }
+
+    private static void putString(ByteBuffer record, byte[] value) {
+        record.putInt(value == null ? -1 : value.length);
+        if (value != null) record.put(value);
+    }
+
+    private static byte[] utf8(String value) {
+        return value == null ? null : value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static int size(byte[] value) {
+        return value == null ? 0 : value.length;
+    }
+}
@@ -0,0 +1,43 @@
+package com.jani.ebookapi.store;
+
+import java.util.UUID;
+
+// binary form of a canonical UUID ebook id, ordered like the lowercase id strings
+record EbookKey(long mostSigBits, long leastSigBits) implements Comparable<EbookKey> {
+
+    // null when the id is not a canonical 36-character UUID
+    static EbookKey parse(String ebookId) {
+        if (ebookId == null || ebookId.length() != 36
+                || ebookId.charAt(8) != '-' || ebookId.charAt(13) != '-'
+                || ebookId.charAt(18) != '-' || ebookId.charAt(23) != '-') {
+            return null;
+        }
+        long mostSigBits = 0;
+        long leastSigBits = 0;
+        int digits = 0;
+        for (int i = 0; i < 36; i++) {
+            char c = ebookId.charAt(i);
+            if (c == '-') continue;
+            // only the lowercase ASCII digits round-trip to the same string; Character.digit also takes upper case,
+            // fullwidth and other Unicode digits
+            int digit;
+            if (c >= '0' && c <= '9') digit = c - '0';
+            else if (c >= 'a' && c <= 'f') digit = c - 'a' + 10;
+            else return null;
+            if (digits++ < 16) mostSigBits = (mostSigBits << 4) | digit;
+            else leastSigBits = (leastSigBits << 4) | digit;
+        }
+        return new EbookKey(mostSigBits, leastSigBits);
+    }
+
+    @Override
+    public int compareTo(EbookKey other) {
+        int result = Long.compareUnsigned(mostSigBits, other.mostSigBits);
+        return result != 0 ? result : Long.compareUnsigned(leastSigBits, other.leastSigBits);
+    }
+
+    @Override
+    public String toString() {
+        return new UUID(mostSigBits, leastSigBits).toString();
+    }
+}
@@ -0,0 +1,46 @@
+package com.jani.ebookapi.store;
+
+import com.jani.ebookapi.model.Ebook;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.function.BiFunction;
+
+/**
+ * Storage backing {@link com.jani.ebookapi.service.EbookService}.
+ * Implementations must be safe for concurrent use; the compute-style methods are
+ * atomic per id and invoke their remapping function at most once.
+ */
+public interface EbookStore {
+
+    Ebook get(String ebookId);
+
+    /**
+     * Weakly consistent view of all stored ebooks, safe to iterate during concurrent writes.
+     */
+    Collection<Ebook> getAll();
+
+    /**
+     * Up to {@code limit} ebooks with ids strictly greater than {@code afterId} (or from the start when null), in id order.
+     */
+    List<Ebook> scan(String afterId, int limit);
+
+    Ebook putIfAbsent(String ebookId, Ebook ebook);
+
+    Ebook computeIfPresent(String ebookId, BiFunction<String, Ebook, Ebook> remappingFunction);
+
+    Ebook compute(String ebookId, BiFunction<String, Ebook, Ebook> remappingFunction);
+
+    boolean replace(String ebookId, Ebook existingEbook, Ebook updatedEbook);
+
+    Ebook remove(String ebookId);
+
+    int size();
+
+    /**
+     * Approximate heap retained by the stored ebooks, for monitoring. May walk part of the store, so not for every request.
+     */
+    long estimatedBytes();
+
+    void clear();
+}
@@ -0,0 +1,46 @@
+package com.jani.ebookapi.store;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+
+// assigns stable int codes to repetitive strings such as authors and formats; codes are never reused
+class StringDictionary {
+
+    private final ConcurrentHashMap<String, Integer> codes = new ConcurrentHashMap<>();
+    private volatile String[] values = new String[64];
+    private int size;
+
+    int encode(String value) {
+        Integer code = codes.get(value);
+        return code != null ? code : register(value);
+    }
+
+    String decode(int code) {
+        return values[code];
+    }
+
+    int size() {
+        return codes.size();
+    }
+
+    // map node, boxed code, array slot and the string itself per value
+    long estimatedBytes() {
+        long bytes = 4L * values.length;
+        for (String value : codes.keySet()) {
+            bytes += 64 + 24 + ((16 + value.length() + 7) & ~7);
+        }
+        return bytes;
+    }
+
+    private synchronized int register(String value) {
+        Integer code = codes.get(value);
+        if (code != null) return code;
+        String[] current = values;
+        if (size == current.length) current = Arrays.copyOf(current, size * 2);
+        current[size] = value;
+        // publish the array before the code so readers never decode an unset slot
+        values = current;
+        codes.put(value, size);
+        return size++;
+    }
+}
@@ -0,0 +1,534 @@
+package com.jani.ebookapi.store;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.jani.ebookapi.InternalThreads;
+import com.jani.ebookapi.model.Ebook;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.BaseUnits;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiFunction;
+
+/**
+ * Store for catalogs larger than the heap. Every ebook is encoded in a memory-mapped {@link DataFile}; the heap only
+ * holds the ids in sorted leaves, as in {@link CompactEbookStore} but with each ebook's location in the file instead of
+ * its fields, and the most requested ebooks in a Caffeine cache bounded by their approximate size, whose W-TinyLFU
+ * policy keeps a scan or a burst of one-off reads from flushing them. A cached read costs a cache lookup; any other
+ * decodes the record from the mapping, which the page cache keeps in memory as long as there is room.
+ * <p>
+ * Writes append a new record and replace the leaf holding the id under its segment's lock, then update the cache while
+ * still holding it, so the cache follows each id's writes in order. Once superseded records take more room than the
+ * live ones, a background thread copies the live records into a new file segment by segment and deletes the old file.
+ */
+@Component
+@ConditionalOnProperty(name = "ebook.store.type", havingValue = "tiered")
+public class TieredEbookStore implements EbookStore, MeterBinder, Closeable {
+
+    static final int MAX_LEAF_SIZE = 256;
+    // per segment without its arrays: directory node and key, the Segment and Leaf objects and three array headers
+    private static final int SEGMENT_OVERHEAD = 160;
+    // per cached ebook without its field strings: cache node, the Ebook and its id string
+    private static final int CACHE_ENTRY_OVERHEAD = 200;
+    private static final long MIN_COMPACTION_BYTES = 64L << 20;
+
+    private final Path directory;
+    private final ConcurrentSkipListMap<EbookKey, Segment> segments = new ConcurrentSkipListMap<>();
+    private final Cache<String, Ebook> cache;
+    private final ConcurrentHashMap<Integer, DataFile> files = new ConcurrentHashMap<>();
+    private final AtomicInteger size = new AtomicInteger();
+    private final AtomicLong liveBytes = new AtomicLong();
+    private final AtomicBoolean compacting = new AtomicBoolean();
+    private final ExecutorService compactor;
+    private final long compactionBytes;
+    private volatile DataFile active;
+    private int generation;
+
+    @Autowired
+    public TieredEbookStore(@Value("${ebook.store.directory:${java.io.tmpdir}}") Path directory,
+                            @Value("${ebook.store.cache-size:64MB}") DataSize cacheSize,
+                            Environment environment) throws IOException {
+        this(directory, cacheSize.toBytes(), MIN_COMPACTION_BYTES, InternalThreads.factory("ebook-store-compactor-", environment));
+    }
+
+    // compactionBytes: superseded bytes tolerated whatever the live ones take
+    public TieredEbookStore(Path directory, long cacheBytes, long compactionBytes) throws IOException {
+        this(directory, cacheBytes, compactionBytes, InternalThreads.factory("ebook-store-compactor-", false));
+    }
+
+    public TieredEbookStore(Path directory, long cacheBytes, long compactionBytes, ThreadFactory threadFactory) throws IOException {
+        this.directory = directory;
+        this.compactionBytes = compactionBytes;
+        this.compactor = Executors.newSingleThreadExecutor(threadFactory);
+        this.cache = Caffeine.newBuilder()
+                .maximumWeight(cacheBytes)
+                .weigher((String id, Ebook ebook) -> weight(ebook))
+                .recordStats()
+                // bookkeeping on the calling threads; the common pool starts a thread per task on a single CPU
+                .executor(Runnable::run)
+                .build();
+        this.active = new DataFile(directory, 0);
+        files.put(0, active);
+        segments.put(new EbookKey(0, 0), new Segment(Leaf.EMPTY));
+    }
+
+    @Override
+    public Ebook get(String ebookId) {
+        Ebook cached = cache.getIfPresent(ebookId);
+        if (cached != null) return cached;
+        EbookKey key = EbookKey.parse(ebookId);
+        if (key == null) return null;
+        // loads and writes of one id exclude each other in the cache, so a load never overwrites a newer write
+        return cache.get(ebookId, id -> load(id, key));
+    }
+
+    @Override
+    public Collection<Ebook> getAll() {
+        return new AbstractCollection<>() {
+            @Override
+            public Iterator<Ebook> iterator() {
+                // pull ordered batches so segments split during iteration are neither skipped nor repeated
+                return new Iterator<>() {
+                    private Iterator<Ebook> batch = scan(null, MAX_LEAF_SIZE).iterator();
+                    private String lastId;
+
+                    @Override
+                    public boolean hasNext() {
+                        if (!batch.hasNext() && lastId != null) {
+                            batch = scan(lastId, MAX_LEAF_SIZE).iterator();
+                            lastId = null;
+                        }
+                        return batch.hasNext();
+                    }
+
+                    @Override
+                    public Ebook next() {
+                        if (!hasNext()) throw new NoSuchElementException();
+                        Ebook ebook = batch.next();
+                        lastId = ebook.getId();
+                        return ebook;
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                return size.get();
+            }
+        };
+    }
+
+    // scanned ebooks are not cached, a listing or an export would only push out the hot ones
+    @Override
+    public List<Ebook> scan(String afterId, int limit) {
+        EbookKey lowerBound = null;
+        if (afterId != null) {
+            lowerBound = EbookKey.parse(afterId);
+            if (lowerBound == null) return List.of();
+        }
+        List<Ebook> ebooks = new ArrayList<>(Math.min(limit, 1024));
+        EbookKey segmentKey = lowerBound == null ? segments.firstKey() : segments.floorKey(lowerBound);
+        // segments are never removed; skipping ids up to the last one returned keeps concurrent splits from repeating ids
+        while (segmentKey != null && ebooks.size() < limit) {
+            Leaf leaf = segments.get(segmentKey).leaf;
+            int index = 0;
+            if (lowerBound != null) {
+                index = leaf.search(lowerBound.mostSigBits(), lowerBound.leastSigBits());
+                index = index >= 0 ? index + 1 : -index - 1;
+            }
+            int first = index;
+            for (; index < leaf.count && ebooks.size() < limit; index++) {
+                String id = leaf.idAt(index);
+                Ebook cached = cache.policy().getIfPresentQuietly(id);
+                Ebook ebook = cached != null ? cached : read(id, leaf.locations[index]);
+                // a compaction dropped the file after the leaf was read, take the moved record
+                if (ebook == null) ebook = load(id, new EbookKey(leaf.mostSigBits[index], leaf.leastSigBits[index]));
+                if (ebook != null) ebooks.add(ebook);
+            }
+            if (index > first) lowerBound = new EbookKey(leaf.mostSigBits[index - 1], leaf.leastSigBits[index - 1]);
+            segmentKey = segments.higherKey(segmentKey);
+        }
+        return ebooks;
+    }
+
+    @Override
+    public Ebook putIfAbsent(String ebookId, Ebook ebook) {
+        Ebook[] existing = new Ebook[1];
+        compute(ebookId, (id, current) -> {
+            existing[0] = current;
+            return current != null ? current : ebook;
+        });
+        return existing[0];
+    }
+
+    @Override
+    public Ebook computeIfPresent(String ebookId, BiFunction<String, Ebook, Ebook> remappingFunction) {
+        return compute(ebookId, (id, current) -> current == null ? null : remappingFunction.apply(id, current));
+    }
+
+    @Override
+    public Ebook compute(String ebookId, BiFunction<String, Ebook, Ebook> remappingFunction) {
+        EbookKey key = EbookKey.parse(ebookId);
+        if (key == null) {
+            Ebook result = remappingFunction.apply(ebookId, null);
+            if (result != null) throw new IllegalArgumentException("Ebook id is not a UUID: " + ebookId);
+            return null;
+        }
+        Ebook stored;
+        while (true) {
+            Segment segment = segmentFor(key);
+            synchronized (segment) {
+                // the segment split before we got the lock, look it up again
+                if (segmentFor(key) != segment) continue;
+                Leaf leaf = segment.leaf;
+                int index = leaf.search(key.mostSigBits(), key.leastSigBits());
+                Ebook current = null;
+                if (index >= 0) {
+                    current = cache.policy().getIfPresentQuietly(ebookId);
+                    // compactions take the segment lock, so the file holding the record is still there
+                    if (current == null) current = read(ebookId, leaf.locations[index]);
+                }
+                Ebook result = remappingFunction.apply(ebookId, current);
+                if (result == current) return result;
+                if (result == null) {
+                    liveBytes.addAndGet(-length(leaf.locations[index]));
+                    segment.leaf = leaf.without(index);
+                    size.decrementAndGet();
+                    cache.invalidate(ebookId);
+                    stored = null;
+                } else {
+                    result.setId(ebookId);
+                    byte[] record = DataFile.encode(key, result);
+                    long location = active.append(record);
+                    liveBytes.addAndGet(record.length - (index >= 0 ? length(leaf.locations[index]) : 0));
+                    Leaf updated = leaf.with(index, key, location);
+                    if (index < 0) size.incrementAndGet();
+                    if (updated.count > MAX_LEAF_SIZE) {
+                        split(segment, updated, -index - 1);
+                    } else {
+                        segment.leaf = updated;
+                    }
+                    cache.put(ebookId, result);
+                    stored = result;
+                }
+            }
+            compactIfWasteful();
+            return stored;
+        }
+    }
+
+    @Override
+    public boolean replace(String ebookId, Ebook existingEbook, Ebook updatedEbook) {
+        boolean[] replaced = new boolean[1];
+        computeIfPresent(ebookId, (id, current) -> {
+            replaced[0] = current.equals(existingEbook);
+            return replaced[0] ? updatedEbook : current;
+        });
+        return replaced[0];
+    }
+
+    @Override
+    public Ebook remove(String ebookId) {
+        Ebook[] removed = new Ebook[1];
+        computeIfPresent(ebookId, (id, current) -> {
+            removed[0] = current;
+            return null;
+        });
+        return removed[0];
+    }
+
+    @Override
+    public int size() {
+        return size.get();
+    }
+
+    // the ids and locations plus the cached ebooks; the file is off the heap
+    @Override
+    public long estimatedBytes() {
+        long bytes = cache.policy().eviction().map(eviction -> eviction.weightedSize().orElse(0)).orElse(0L);
+        for (Segment segment : segments.values()) {
+            bytes += SEGMENT_OVERHEAD + segment.leaf.count * 24L;
+        }
+        return bytes;
+    }
+
+    // bytes taken in the data files, superseded records included
+    public long diskBytes() {
+        long bytes = 0;
+        for (DataFile file : files.values()) {
+            bytes += file.appended();
+        }
+        return bytes;
+    }
+
+    @Override
+    public void clear() {
+        for (Segment segment : segments.values()) {
+            synchronized (segment) {
+                for (int i = 0; i < segment.leaf.count; i++) {
+                    liveBytes.addAndGet(-length(segment.leaf.locations[i]));
+                }
+                size.addAndGet(-segment.leaf.count);
+                segment.leaf = Leaf.EMPTY;
+            }
+        }
+        cache.invalidateAll();
+        compactIfWasteful();
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        FunctionCounter.builder("ebook.store.cache.requests", cache, c -> c.stats().hitCount())
+                .tag("result", "hit")
+                .register(registry);
+        FunctionCounter.builder("ebook.store.cache.requests", cache, c -> c.stats().missCount())
+                .tag("result", "miss")
+                .register(registry);
+        Gauge.builder("ebook.store.cache.size", cache, Cache::estimatedSize)
+                .description("Ebooks held on the heap by the tiered store")
+                .register(registry);
+        Gauge.builder("ebook.store.disk", this, TieredEbookStore::diskBytes)
+                .description("Bytes taken by the tiered store's data files, superseded records included")
+                .baseUnit(BaseUnits.BYTES)
+                .register(registry);
+    }
+
+    /**
+     * Copies the live records into a new file and deletes the old one. Segments are moved one at a time under their
+     * locks, so reads and writes go on meanwhile; writes started after the switch already go to the new file.
+     */
+    public synchronized void compact() {
+        DataFile previous = active;
+        DataFile next;
+        try {
+            next = new DataFile(directory, ++generation & 0xFFFF);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        files.put(next.id(), next);
+        active = next;
+        // a segment split off one not moved yet may be missed by the weakly consistent iteration, so repeat until none moves
+        boolean moved = true;
+        while (moved) {
+            moved = false;
+            for (Segment segment : segments.values()) {
+                synchronized (segment) {
+                    Leaf leaf = segment.leaf;
+                    long[] locations = null;
+                    for (int i = 0; i < leaf.count; i++) {
+                        if (DataFile.fileId(leaf.locations[i]) == next.id()) continue;
+                        if (locations == null) locations = leaf.locations.clone();
+                        locations[i] = next.append(file(leaf.locations[i]).copy(leaf.locations[i]));
+                    }
+                    if (locations != null) {
+                        segment.leaf = leaf.withLocations(locations);
+                        moved = true;
+                    }
+                }
+            }
+        }
+        files.remove(previous.id());
+        previous.close();
+    }
+
+    @Override
+    public void close() {
+        compactor.shutdownNow();
+        synchronized (this) {
+            files.values().forEach(DataFile::close);
+        }
+    }
+
+    /**
+     * Waits until no background compaction is running or queued, so the data files hold what the writes so far left
+     * behind them.
+     */
+    public void awaitCompaction(Duration timeout) throws InterruptedException, TimeoutException {
+        long deadline = System.nanoTime() + timeout.toNanos();
+        // a compaction may queue the next one as it ends, so wait until the flag stays down
+        while (compacting.get()) {
+            try {
+                compactor.submit(() -> { }).get(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+            } catch (ExecutionException e) {
+                throw new IllegalStateException(e.getCause());
+            }
+        }
+    }
+
+    private void compactIfWasteful() {
+        long wasted = active.appended() - liveBytes.get();
+        if (wasted <= compactionBytes || wasted <= liveBytes.get() || !compacting.compareAndSet(false, true)) return;
+        compactor.execute(() -> {
+            try {
+                compact();
+            } finally {
+                compacting.set(false);
+            }
+            // writes during the compaction skipped the check and superseded records in the new file; once writes stop
+            // nothing else would reclaim them
+            compactIfWasteful();
+        });
+    }
+
+    // null if the id is not stored
+    private Ebook load(String ebookId, EbookKey key) {
+        while (true) {
+            Leaf leaf = segmentFor(key).leaf;
+            int index = leaf.search(key.mostSigBits(), key.leastSigBits());
+            if (index >= 0) {
+                Ebook ebook = read(ebookId, leaf.locations[index]);
+                if (ebook != null) return ebook;
+                // its file was dropped by a compaction after the leaf was read
+                continue;
+            }
+            // a concurrent split may have moved the id into a new segment
+            if (segmentFor(key).leaf.search(key.mostSigBits(), key.leastSigBits()) < 0) return null;
+        }
+    }
+
+    // null if the file holding the location has been dropped
+    private Ebook read(String ebookId, long location) {
+        DataFile file = files.get(DataFile.fileId(location));
+        return file == null ? null : file.read(location, ebookId);
+    }
+
+    private int length(long location) {
+        return file(location).length(location);
+    }
+
+    private DataFile file(long location) {
+        return files.get(DataFile.fileId(location));
+    }
+
+    private Segment segmentFor(EbookKey key) {
+        return segments.floorEntry(key).getValue();
+    }
+
+    // publish the upper half before shrinking this segment, so readers always find every id in one of them
+    private void split(Segment segment, Leaf leaf, int insertedAt) {
+        int middle = insertedAt == leaf.count - 1 ? insertedAt : leaf.count / 2;
+        Leaf upper = leaf.slice(middle, leaf.count);
+        segments.put(new EbookKey(upper.mostSigBits[0], upper.leastSigBits[0]), new Segment(upper));
+        segment.leaf = leaf.slice(0, middle);
+    }
+
+    // what a cached ebook retains: a Latin-1 string is an object plus a byte array, each 8-byte aligned
+    private static int weight(Ebook ebook) {
+        return CACHE_ENTRY_OVERHEAD + stringBytes(ebook.getAuthor()) + stringBytes(ebook.getTitle()) + stringBytes(ebook.getFormat());
+    }
+
+    private static int stringBytes(String value) {
+        return value == null ? 0 : 24 + ((16 + value.length() + 7) & ~7);
+    }
+
+    private static final class Segment {
+
+        volatile Leaf leaf;
+
+        Segment(Leaf leaf) {
+            this.leaf = leaf;
+        }
+    }
+
+    // immutable, sorted by unsigned id
+    private static final class Leaf {
+
+        static final Leaf EMPTY = new Leaf(new long[0], new long[0], new long[0]);
+
+        final int count;
+        final long[] mostSigBits;
+        final long[] leastSigBits;
+        final long[] locations;
+
+        Leaf(long[] mostSigBits, long[] leastSigBits, long[] locations) {
+            this.count = locations.length;
+            this.mostSigBits = mostSigBits;
+            this.leastSigBits = leastSigBits;
+            this.locations = locations;
+        }
+
+        int search(long msb, long lsb) {
+            int low = 0;
+            int high = count - 1;
+            while (low <= high) {
+                int middle = (low + high) >>> 1;
+                int result = Long.compareUnsigned(mostSigBits[middle], msb);
+                if (result == 0) result = Long.compareUnsigned(leastSigBits[middle], lsb);
+                if (result < 0) low = middle + 1;
+                else if (result > 0) high = middle - 1;
+                else return middle;
+            }
+            return -(low + 1);
+        }
+
+        String idAt(int index) {
+            return new EbookKey(mostSigBits[index], leastSigBits[index]).toString();
+        }
+
+        // inserts at -(index + 1) for a negative index, replaces otherwise
+        Leaf with(int index, EbookKey key, long location) {
+            if (index >= 0) {
+                long[] replaced = locations.clone();
+                replaced[index] = location;
+                return withLocations(replaced);
+            }
+            int position = -index - 1;
+            return new Leaf(insert(mostSigBits, position, key.mostSigBits()),
+                    insert(leastSigBits, position, key.leastSigBits()),
+                    insert(locations, position, location));
+        }
+
+        Leaf withLocations(long[] replaced) {
+            return new Leaf(mostSigBits, leastSigBits, replaced);
+        }
+
+        Leaf without(int index) {
+            return new Leaf(delete(mostSigBits, index), delete(leastSigBits, index), delete(locations, index));
+        }
+
+        Leaf slice(int from, int to) {
+            return new Leaf(Arrays.copyOfRange(mostSigBits, from, to), Arrays.copyOfRange(leastSigBits, from, to),
+                    Arrays.copyOfRange(locations, from, to));
+        }
+
+        private static long[] insert(long[] values, int position, long value) {
+            long[] result = new long[values.length + 1];
+            System.arraycopy(values, 0, result, 0, position);
+            result[position] = value;
+            System.arraycopy(values, position, result, position + 1, values.length - position);
+            return result;
+        }
+
+        private static long[] delete(long[] values, int position) {
+            long[] result = new long[values.length - 1];
+            System.arraycopy(values, 0, result, 0, position);
+            System.arraycopy(values, position + 1, result, position, values.length - position - 1);
+            return result;
+        }
+    }
+}
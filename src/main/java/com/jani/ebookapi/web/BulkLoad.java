@@ -0,0 +1,68 @@
+package com.jani.ebookapi.web;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.jani.ebookapi.model.Ebook;
+import jakarta.validation.ConstraintViolation;
+import jakarta.validation.Validator;
+
+import java.util.*;
+import java.util.stream.Collectors;
+
+// parses and validates the lines of one NDJSON bulk load and collects its report, shared by both web stacks
+class BulkLoad {
+
+    private final ObjectReader ebookReader;
+    private final Validator validator;
+    private final List<Map<String, Object>> errors = new ArrayList<>();
+    private long lineNumber;
+    private long inserted;
+    private long failed;
+
+    BulkLoad(ObjectReader ebookReader, Validator validator) {
+        this.ebookReader = ebookReader;
+        this.validator = validator;
+    }
+
+    // the valid ebook on the next line, null for a blank or invalid line (which is reported)
+    Ebook parse(String line) {
+        lineNumber++;
+        if (line.isBlank()) return null;
+        String error;
+        try {
+            Ebook ebook = ebookReader.readValue(line);
+            if (ebook == null) {
+                error = "Expected an ebook object";
+            } else {
+                Set<ConstraintViolation<Ebook>> violations = validator.validate(ebook);
+                if (violations.isEmpty()) return ebook;
+                error = violations.stream()
+                        .map(violation -> violation.getPropertyPath() + ": " + violation.getMessage())
+                        .sorted()
+                        .collect(Collectors.joining(", "));
+            }
+        } catch (JsonProcessingException e) {
+            error = e.getOriginalMessage();
+        }
+        failed++;
+        if (errors.size() < EbookController.MAX_BULK_ERRORS) {
+            Map<String, Object> lineError = new LinkedHashMap<>();
+            lineError.put("line", lineNumber);
+            lineError.put("error", error);
+            errors.add(lineError);
+        }
+        return null;
+    }
+
+    void inserted(int count) {
+        inserted += count;
+    }
+
+    Map<String, Object> report() {
+        Map<String, Object> report = new LinkedHashMap<>();
+        report.put("inserted", inserted);
+        report.put("failed", failed);
+        report.put("errors", errors);
+        return report;
+    }
+}
@@ -0,0 +1,25 @@
+package com.jani.ebookapi.web;
+
+import com.jani.ebookapi.persistence.SnapshotManager;
+import com.jani.ebookapi.service.EbookChangeFeed;
+import com.jani.ebookapi.service.EbookService;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+// the catalog's recent mutations, streamed to clients as server-sent events at GET /ebooks/changes
+@Configuration
+public class ChangeFeedConfiguration {
+
+    // attached once persistence has recovered the store, so the feed starts with the first change after startup
+    @Bean
+    public EbookChangeFeed ebookChangeFeed(EbookService ebookService, ObjectProvider<SnapshotManager> snapshotManager,
+                                           @Value("${ebook.changes.buffer-size:10000}") int bufferSize,
+                                           @Value("${ebook.changes.max-subscribers:256}") int maxSubscribers) {
+        snapshotManager.getIfAvailable();
+        EbookChangeFeed changeFeed = new EbookChangeFeed(bufferSize, maxSubscribers);
+        changeFeed.attach(ebookService);
+        return changeFeed;
+    }
+}
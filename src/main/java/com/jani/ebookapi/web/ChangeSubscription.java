@@ -0,0 +1,63 @@
+package com.jani.ebookapi.web;
+
+import com.jani.ebookapi.service.EbookChangeFeed;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+// one client's position in the change feed and the server-sent events it is sent next, shared by both web stacks
+class ChangeSubscription {
+
+    private static final int BATCH_SIZE = 256;
+
+    /**
+     * One server-sent event; a null {@code name} is a comment that only keeps an idle connection open.
+     */
+    record Event(String id, String name, Object data) {
+    }
+
+    private static final Event HEARTBEAT = new Event(null, null, null);
+
+    private final EbookChangeFeed changeFeed;
+    private final long heartbeatMillis;
+    private long after;
+
+    // starts after the given Last-Event-ID, or with the next change
+    ChangeSubscription(EbookChangeFeed changeFeed, String lastEventId, long heartbeatMillis) {
+        this.changeFeed = changeFeed;
+        this.heartbeatMillis = heartbeatMillis;
+        try {
+            this.after = lastEventId == null || lastEventId.isBlank() ? changeFeed.latest() : Long.parseLong(lastEventId.trim());
+        } catch (NumberFormatException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Last-Event-ID must be a sequence number");
+        }
+    }
+
+    /**
+     * The next events, waiting up to the heartbeat interval for a change. A client that missed changes the feed no
+     * longer holds gets a {@code reset} event and has to reload the catalog; it resumes from the sequence it carries.
+     */
+    List<Event> next() throws InterruptedException {
+        List<EbookChangeFeed.Change> changes = changeFeed.read(after, BATCH_SIZE, heartbeatMillis);
+        if (changes == null) {
+            after = changeFeed.latest();
+            return List.of(new Event(Long.toString(after), "reset", Map.of("sequence", after)));
+        }
+        if (changes.isEmpty()) return List.of(HEARTBEAT);
+        List<Event> events = new ArrayList<>(changes.size());
+        for (EbookChangeFeed.Change change : changes) {
+            after = change.sequence();
+            if (change.type() == null) continue;
+            String id = Long.toString(change.sequence());
+            switch (change.type()) {
+                case CREATED -> events.add(new Event(id, "created", change.ebook()));
+                case UPDATED -> events.add(new Event(id, "updated", change.ebook()));
+                case DELETED -> events.add(new Event(id, "deleted", Map.of("id", change.ebook().getId())));
+            }
+        }
+        return events.isEmpty() ? List.of(HEARTBEAT) : events;
+    }
+}
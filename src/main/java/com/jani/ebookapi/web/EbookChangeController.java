@@ -0,0 +1,73 @@
+package com.jani.ebookapi.web;
+
+import com.jani.ebookapi.InternalThreads;
+import com.jani.ebookapi.service.EbookChangeFeed;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.core.env.Environment;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * {@code GET /ebooks/changes}: every create, update and delete as a server-sent event whose id is the mutation's
+ * sequence, resuming after {@code Last-Event-ID} on reconnect. Each subscriber is fed by its own thread, so a client
+ * reading slowly only delays its own events.
+ */
+@RestController
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
+public class EbookChangeController {
+
+    private final EbookChangeFeed changeFeed;
+    private final long heartbeatMillis;
+    private final ExecutorService subscribers;
+
+    public EbookChangeController(EbookChangeFeed changeFeed, @Value("${ebook.changes.heartbeat:15s}") Duration heartbeat,
+                                 Environment environment) {
+        this.changeFeed = changeFeed;
+        this.heartbeatMillis = heartbeat.toMillis();
+        // bounded by the subscriber limit of the feed
+        this.subscribers = Executors.newCachedThreadPool(InternalThreads.factory("ebook-changes-", environment));
+    }
+
+    @GetMapping(value = "/ebooks/changes", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter streamChanges(@RequestHeader(value = "Last-Event-ID", required = false) String lastEventId) {
+        ChangeSubscription subscription = new ChangeSubscription(changeFeed, lastEventId, heartbeatMillis);
+        if (!changeFeed.subscribe()) throw new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, "Too many subscribers");
+        // no timeout, the stream lasts until the client goes away
+        SseEmitter emitter = new SseEmitter(0L);
+        subscribers.execute(() -> {
+            try {
+                while (true) {
+                    for (ChangeSubscription.Event event : subscription.next()) {
+                        emitter.send(event.name() == null
+                                ? SseEmitter.event().comment("")
+                                : SseEmitter.event().id(event.id()).name(event.name()).data(event.data(), MediaType.APPLICATION_JSON));
+                    }
+                }
+            } catch (IOException | IllegalStateException e) {
+                // the client went away and the container completes the request, or it is completed already
+            } catch (InterruptedException e) {
+                emitter.complete();
+            } finally {
+                changeFeed.unsubscribe();
+            }
+        });
+        return emitter;
+    }
+
+    @PreDestroy
+    void close() {
+        subscribers.shutdownNow();
+    }
+}
@@ -1,22 +1,79 @@
 package com.jani.ebookapi.web;
 
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.jani.ebookapi.admission.AdaptiveConcurrencyLimit;
 import com.jani.ebookapi.model.Ebook;
+import com.jani.ebookapi.service.EbookDelta;
 import com.jani.ebookapi.service.EbookService;
+import com.jani.ebookapi.service.EbookVersionConflictException;
 import jakarta.validation.Valid;
+import jakarta.validation.Validator;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
 import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
 import java.util.*;
+import java.util.function.LongFunction;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
 
 @RestController
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
 public class EbookController {
 
+    public static final int DEFAULT_PAGE_SIZE = 100;
+    public static final int MAX_PAGE_SIZE = 1000;
+    static final int DEFAULT_SEARCH_LIMIT = 10;
+    static final int MAX_SEARCH_LIMIT = 100;
+    static final int BULK_BATCH_SIZE = 1000;
+    static final int MAX_BULK_ERRORS = 1000;
+    public static final int EXPORT_PAGE_SIZE = 1000;
+    static final MediaType NDJSON = MediaType.parseMediaType("application/x-ndjson");
+
     private final EbookService ebookService;
+    private final ObjectMapper objectMapper;
+    private final ObjectWriter streamingWriter;
+    private final ObjectWriter lineWriter;
+    private final ObjectReader ebookReader;
+    private final Validator validator;
+    private final EbookJsonCache jsonCache;
+    // null while admission control is off
+    private final AdaptiveConcurrencyLimit writeLimit;
 
-    public EbookController(EbookService ebookService) {
+    public EbookController(EbookService ebookService, ObjectMapper objectMapper, Validator validator, EbookJsonCache jsonCache,
+                           ObjectProvider<AdaptiveConcurrencyLimit> writeLimit) {
         this.ebookService = ebookService;
+        this.jsonCache = jsonCache;
+        this.writeLimit = writeLimit.getIfAvailable();
+        this.objectMapper = objectMapper;
+        // a line holds exactly one ebook
+        this.ebookReader = objectMapper.readerFor(Ebook.class).with(DeserializationFeature.FAIL_ON_TRAILING_TOKENS);
+        this.validator = validator;
+        // flushing after every item would turn the stream into one tiny chunk per ebook
+        this.streamingWriter = objectMapper.writerFor(Ebook.class).without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+        // top-level values are otherwise separated by a space
+        this.lineWriter = streamingWriter.withRootValueSeparator("\n");
     }
 
     @GetMapping("/")
@@ -25,47 +82,348 @@ public class EbookController {
     }
 
     @GetMapping("/ebooks")
-    public ResponseEntity<Object> getEbook() {
-        Collection<Ebook> ebooks = ebookService.getAll();
-        // format return data
+    public ResponseEntity<Object> getEbook(@RequestParam(required = false) String author,
+                                           @RequestParam(required = false) String format,
+                                           @RequestParam(required = false) Integer limit,
+                                           @RequestParam(required = false) String cursor,
+                                           WebRequest request) {
+        int pageSize = limit == null ? DEFAULT_PAGE_SIZE : Math.min(limit, MAX_PAGE_SIZE);
+        if (pageSize < 1) throw new ResponseStatusException(HttpStatus.BAD_REQUEST);
+        String afterId = decodeCursor(cursor);
+        MediaType binary = EbookFormats.preferredBinary(request.getHeader(HttpHeaders.ACCEPT));
+        if (request.checkNotModified(listEtag(ebookService.catalogVersion(), binary, author, format, limit, cursor))) return null;
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok().header(HttpHeaders.VARY, HttpHeaders.ACCEPT);
+        boolean filtered = author != null || format != null;
+        if (limit == null && cursor == null) {
+            Collection<Ebook> ebooks = filtered
+                    ? ebookService.find(author, format, null, Integer.MAX_VALUE)
+                    : ebookService.getAll();
+            // format return data
+            return response.body(Map.of("data", ebooks));
+        }
+        // read one extra ebook to know whether another page follows
+        List<Ebook> ebooks = filtered
+                ? ebookService.find(author, format, afterId, pageSize + 1)
+                : ebookService.getPage(afterId, pageSize + 1);
+        Map<String, Object> page = new LinkedHashMap<>();
+        if (ebooks.size() > pageSize) {
+            ebooks = ebooks.subList(0, pageSize);
+            page.put("next", encodeCursor(ebooks.get(pageSize - 1).getId()));
+        }
+        page.put("data", ebooks);
+        return response.body(page);
+    }
+
+    /**
+     * What changed after a sequence: the ebooks added or updated since, the ids deleted since, and the sequence to ask
+     * from next time. 410 Gone if deletions that far back are no longer remembered; the client reloads the catalog.
+     */
+    @GetMapping(value = "/ebooks", params = "since")
+    public Map<String, Object> getChanges(@RequestParam long since,
+                                          @RequestParam(defaultValue = "" + MAX_PAGE_SIZE) int limit) {
+        if (since < 0 || limit < 1) throw new ResponseStatusException(HttpStatus.BAD_REQUEST);
+        EbookDelta delta = ebookService.changesSince(since, Math.min(limit, MAX_PAGE_SIZE));
+        if (delta == null) throw new ResponseStatusException(HttpStatus.GONE);
+        return delta(delta);
+    }
+
+    // deletions are listed apart from the ebooks and applied first, an id deleted and added again is among the ebooks
+    static Map<String, Object> delta(EbookDelta delta) {
+        Map<String, Object> body = new LinkedHashMap<>();
+        body.put("sequence", delta.sequence());
+        body.put("data", delta.ebooks());
+        body.put("deleted", delta.removed());
+        body.put("more", delta.more());
+        return body;
+    }
+
+    @GetMapping(value = "/ebooks", params = "stream=true")
+    public ResponseEntity<StreamingResponseBody> streamEbooks() {
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_JSON)
+                .body(streamEbooks(ebookService.getAll()));
+    }
+
+    // the whole catalog as newline-delimited JSON in id order, read page by page so writers are never blocked
+    @GetMapping("/ebooks/export")
+    public ResponseEntity<StreamingResponseBody> exportEbooks(
+            @RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding) {
+        boolean gzip = acceptsGzip(acceptEncoding);
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok()
+                .contentType(NDJSON)
+                .header(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+        if (gzip) response.header(HttpHeaders.CONTENT_ENCODING, "gzip");
+        return response.body(outputStream -> {
+            OutputStream target = gzip ? new FastGzipOutputStream(outputStream) : outputStream;
+            try (JsonGenerator generator = objectMapper.getFactory().createGenerator(target)) {
+                List<Ebook> page = ebookService.getPage(null, EXPORT_PAGE_SIZE);
+                while (!page.isEmpty()) {
+                    for (Ebook ebook : page) {
+                        lineWriter.writeValue(generator, ebook);
+                    }
+                    if (page.size() < EXPORT_PAGE_SIZE) break;
+                    page = ebookService.getPage(page.get(page.size() - 1).getId(), EXPORT_PAGE_SIZE);
+                }
+                // the separator only goes between lines, the last one ends here
+                if (generator.getOutputContext().getEntryCount() > 0) generator.writeRaw('\n');
+            }
+        });
+    }
+
+    @GetMapping("/ebooks/search")
+    public ResponseEntity<Object> searchEbooks(@RequestParam String q,
+                                               @RequestParam(defaultValue = "" + DEFAULT_SEARCH_LIMIT) int limit) {
+        if (limit < 1) throw new ResponseStatusException(HttpStatus.BAD_REQUEST);
+        List<Ebook> ebooks = ebookService.search(q, Math.min(limit, MAX_SEARCH_LIMIT));
         return new ResponseEntity<>(Map.of("data", ebooks), HttpStatus.OK);
     }
 
     @GetMapping("/ebooks/{ebook_id}")
-    public ResponseEntity<Ebook> getEbook(@PathVariable String ebook_id) {
+    public ResponseEntity<Object> getEbook(@PathVariable String ebook_id, WebRequest request) throws JsonProcessingException {
         Ebook ebook = ebookService.get(ebook_id);
         if (ebook == null) throw new ResponseStatusException(HttpStatus.NOT_FOUND);
-        // create new Ebook with null id to discard id
-        Ebook returnEbook = new Ebook();
-        returnEbook.setFormat(ebook.getFormat());
-        returnEbook.setTitle(ebook.getTitle());
-        returnEbook.setAuthor(ebook.getAuthor());
-        return new ResponseEntity<>(returnEbook, HttpStatus.OK);
+        MediaType binary = EbookFormats.preferredBinary(request.getHeader(HttpHeaders.ACCEPT));
+        if (request.checkNotModified(etag(ebook, binary))) return null;
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok().header(HttpHeaders.VARY, HttpHeaders.ACCEPT);
+        if (binary != null) {
+            // left to the CBOR or Smile converter, with null id to discard id
+            return response.body(new Ebook(null, ebook.getAuthor(), ebook.getTitle(), ebook.getFormat()));
+        }
+        // the id-less JSON, serialized once per version
+        return response.contentType(MediaType.APPLICATION_JSON).body(jsonCache.json(ebook_id, ebook));
     }
 
     @PostMapping("/ebooks")
-    public ResponseEntity<Ebook> addEbook(@RequestBody @Valid Ebook ebook) {
-        return new ResponseEntity<>(ebookService.add(ebook), HttpStatus.CREATED);
+    public ResponseEntity<Ebook> addEbook(@RequestBody @Valid Ebook ebook,
+                                          @RequestHeader(value = HttpHeaders.ACCEPT, required = false) String accept) {
+        Ebook addedEbook = ebookService.add(ebook);
+        return ResponseEntity.status(HttpStatus.CREATED).eTag(etag(addedEbook, EbookFormats.preferredBinary(accept)))
+                .header(HttpHeaders.VARY, HttpHeaders.ACCEPT).body(addedEbook);
+    }
+
+    // newline-delimited JSON, one ebook per line; invalid lines are reported and skipped
+    @PostMapping("/ebooks/bulk")
+    public ResponseEntity<Object> addEbooks(InputStream body) throws IOException {
+        BufferedReader lines = new BufferedReader(new InputStreamReader(body, StandardCharsets.UTF_8));
+        BulkLoad bulkLoad = new BulkLoad(ebookReader, validator);
+        List<Ebook> batch = new ArrayList<>(BULK_BATCH_SIZE);
+        String line;
+        while ((line = lines.readLine()) != null) {
+            Ebook ebook = bulkLoad.parse(line);
+            if (ebook != null) batch.add(ebook);
+            if (batch.size() == BULK_BATCH_SIZE) {
+                bulkLoad.inserted(addBatch(batch).size());
+                batch = new ArrayList<>(BULK_BATCH_SIZE);
+            }
+        }
+        if (!batch.isEmpty()) bulkLoad.inserted(addBatch(batch).size());
+        return new ResponseEntity<>(bulkLoad.report(), HttpStatus.OK);
+    }
+
+    /**
+     * Each batch of a bulk load waits for a write slot of its own, so bulk loads count against the write limit like
+     * single writes do. Its latency says nothing about that of a single write and is left out of the limit's samples.
+     */
+    private List<Ebook> addBatch(List<Ebook> batch) throws InterruptedIOException {
+        if (writeLimit == null) return ebookService.addAll(batch);
+        try {
+            writeLimit.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted waiting for a write slot");
+        }
+        try {
+            return ebookService.addAll(batch);
+        } finally {
+            writeLimit.release(null);
+        }
     }
 
     @PutMapping("/ebooks/{ebook_id}")
-    public ResponseEntity<Ebook> updateEbook(@RequestBody @Valid Ebook updateForEbook, @PathVariable String ebook_id) {
-        Ebook existingEbook = ebookService.get(ebook_id);
-        if (existingEbook == null) throw new ResponseStatusException(HttpStatus.NOT_FOUND);
-        updateForEbook.setId(ebook_id);
-        ebookService.update(ebook_id, existingEbook, updateForEbook);
+    public ResponseEntity<Ebook> updateEbook(@RequestBody @Valid Ebook updateForEbook, @PathVariable String ebook_id,
+                                             @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch,
+                                             @RequestHeader(value = HttpHeaders.ACCEPT, required = false) String accept) {
+        long[] versions = ifMatchVersions(ifMatch);
+        Ebook updatedEbook = versions == null
+                ? ebookService.update(ebook_id, updateForEbook)
+                : ifMatch(ebook_id, versions, version -> ebookService.update(ebook_id, version, updateForEbook));
+        if (updatedEbook == null) throw new ResponseStatusException(HttpStatus.NOT_FOUND);
         // create new Ebook with null id to discard id
         Ebook returnEbook = new Ebook();
-        returnEbook.setFormat(updateForEbook.getFormat());
-        returnEbook.setTitle(updateForEbook.getTitle());
-        returnEbook.setAuthor(updateForEbook.getAuthor());
-        return new ResponseEntity<>(returnEbook, HttpStatus.OK);
+        returnEbook.setFormat(updatedEbook.getFormat());
+        returnEbook.setTitle(updatedEbook.getTitle());
+        returnEbook.setAuthor(updatedEbook.getAuthor());
+        return ResponseEntity.ok().eTag(etag(updatedEbook, EbookFormats.preferredBinary(accept)))
+                .header(HttpHeaders.VARY, HttpHeaders.ACCEPT).body(returnEbook);
     }
 
     @DeleteMapping("/ebooks/{ebook_id}")
-    public void deleteEbook(@PathVariable String ebook_id) {
-        Ebook ebook = ebookService.remove(ebook_id);
+    public void deleteEbook(@PathVariable String ebook_id,
+                            @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch) {
+        long[] versions = ifMatchVersions(ifMatch);
+        Ebook ebook = versions == null
+                ? ebookService.remove(ebook_id)
+                : ifMatch(ebook_id, versions, version -> ebookService.remove(ebook_id, version));
         if (ebook == null) throw new ResponseStatusException(HttpStatus.NOT_FOUND);
     }
 
+    // the write only happens at one of the given versions, the store checks it atomically; null if there is no such ebook
+    private Ebook ifMatch(String ebookId, long[] versions, LongFunction<Ebook> write) {
+        long version;
+        if (versions.length == 1) {
+            version = versions[0];
+        } else {
+            // at most one of the tags can be the current version, so find out which one to write against
+            Ebook current = ebookService.get(ebookId);
+            if (current == null) return null;
+            version = current.getVersion();
+            if (Arrays.stream(versions).noneMatch(v -> v == version)) {
+                throw new ResponseStatusException(HttpStatus.PRECONDITION_FAILED);
+            }
+        }
+        try {
+            return write.apply(version);
+        } catch (EbookVersionConflictException e) {
+            throw new ResponseStatusException(HttpStatus.PRECONDITION_FAILED);
+        }
+    }
+
+    // writes the {"data": [...]} envelope item by item instead of buffering the whole document
+    private StreamingResponseBody streamEbooks(Iterable<Ebook> ebooks) {
+        return outputStream -> {
+            try (JsonGenerator generator = objectMapper.getFactory().createGenerator(outputStream)) {
+                generator.writeStartObject();
+                generator.writeArrayFieldStart("data");
+                for (Ebook ebook : ebooks) {
+                    streamingWriter.writeValue(generator, ebook);
+                }
+                generator.writeEndArray();
+                generator.writeEndObject();
+            }
+        };
+    }
+
+    // favours throughput over ratio, deflating at the default level would make the export CPU-bound
+    private static final class FastGzipOutputStream extends GZIPOutputStream {
+
+        FastGzipOutputStream(OutputStream outputStream) throws IOException {
+            super(outputStream, 64 * 1024);
+            def.setLevel(Deflater.BEST_SPEED);
+        }
+    }
+
+    /**
+     * The strong entity tag of an ebook's version in JSON, or in the given binary format: {@code "v12"},
+     * {@code "v12-cbor"}, {@code "v12-smile"}. Each representation needs a tag of its own, so a cache never answers a
+     * request for one with a 304 validated against another.
+     */
+    static String etag(Ebook ebook, MediaType binary) {
+        return "\"v" + ebook.getVersion() + representation(binary) + "\"";
+    }
+
+    // tells the representations apart in entity tags, JSON has none
+    static String representation(MediaType binary) {
+        if (binary == null) return "";
+        return binary.equals(EbookFormats.SMILE) ? "-smile" : "-cbor";
+    }
+
+    /**
+     * The version named by one of our entity tags, whatever its representation, or -1 for a weak or foreign tag.
+     */
+    public static long etagVersion(String tag) {
+        if (tag == null || tag.length() < 4 || !tag.startsWith("\"v") || !tag.endsWith("\"")) return -1;
+        int end = tag.indexOf('-');
+        if (end < 0) {
+            end = tag.length() - 1;
+        } else {
+            String representation = tag.substring(end, tag.length() - 1);
+            if (!representation.equals("-cbor") && !representation.equals("-smile")) return -1;
+        }
+        try {
+            return Long.parseLong(tag, 2, end, 10);
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Whether an Accept-Encoding header allows a gzip response: gzip (or x-gzip) is listed, or failing that "*" is, with a
+     * q-value above zero, so "gzip;q=0" turns it off. A malformed q-value counts as zero.
+     */
+    static boolean acceptsGzip(String acceptEncoding) {
+        if (acceptEncoding == null) return false;
+        double gzip = -1;
+        double any = -1;
+        for (String coding : acceptEncoding.split(",")) {
+            String[] parameters = coding.split(";");
+            String name = parameters[0].trim().toLowerCase(Locale.ROOT);
+            double quality = 1;
+            for (int i = 1; i < parameters.length; i++) {
+                String parameter = parameters[i].trim();
+                if (parameter.length() > 1 && (parameter.charAt(0) == 'q' || parameter.charAt(0) == 'Q') && parameter.charAt(1) == '=') {
+                    try {
+                        quality = Double.parseDouble(parameter.substring(2).trim());
+                    } catch (NumberFormatException e) {
+                        quality = 0;
+                    }
+                }
+            }
+            if (name.equals("gzip") || name.equals("x-gzip")) {
+                gzip = Math.max(gzip, quality);
+            } else if (name.equals("*")) {
+                any = Math.max(any, quality);
+            }
+        }
+        return gzip >= 0 ? gzip > 0 : any > 0;
+    }
+
+    /**
+     * The versions named by the entity tags of an If-Match header, or null if there is no header or it is "*", in which
+     * case any existing ebook matches. A tag matches by its version, in any representation; weak and foreign tags never
+     * match, so they are left out.
+     */
+    static long[] ifMatchVersions(String ifMatch) {
+        if (ifMatch == null || ifMatch.trim().equals("*")) return null;
+        String[] tags = ifMatch.split(",");
+        long[] versions = new long[tags.length];
+        int count = 0;
+        for (String tag : tags) {
+            long version = etagVersion(tag.trim());
+            if (version >= 0) versions[count++] = version;
+        }
+        return Arrays.copyOf(versions, count);
+    }
+
+    /**
+     * The same query against an unmodified store returns the same result, in the same representation. The parameters go
+     * into the tag verbatim, percent-encoded so they stay within what a tag may hold and never contain the ':' and '='
+     * around them, so two different queries never share a tag.
+     */
+    static String listEtag(String catalogVersion, MediaType binary, String author, String format, Integer limit, String cursor) {
+        StringBuilder etag = new StringBuilder("\"c").append(catalogVersion).append(representation(binary));
+        appendParameter(etag, "a", author);
+        appendParameter(etag, "f", format);
+        appendParameter(etag, "l", limit == null ? null : limit.toString());
+        appendParameter(etag, "c", cursor);
+        return etag.append('"').toString();
+    }
+
+    // absent parameters are left out, so they differ from empty ones
+    private static void appendParameter(StringBuilder etag, String name, String value) {
+        if (value != null) etag.append(':').append(name).append('=').append(URLEncoder.encode(value, StandardCharsets.UTF_8));
+    }
+
+    public static String encodeCursor(String ebookId) {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(ebookId.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public static String decodeCursor(String cursor) {
+        if (cursor == null) return null;
+        try {
+            return new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+        } catch (IllegalArgumentException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST);
+        }
+    }
+
 }
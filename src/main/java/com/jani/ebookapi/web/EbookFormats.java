@@ -0,0 +1,67 @@
+package com.jani.ebookapi.web;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import org.springframework.http.InvalidMediaTypeException;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.util.MimeTypeUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * CBOR and Smile, the binary encodings served next to JSON. Their mappers are built from the same builder as the JSON
+ * one, so every spring.jackson setting applies and a payload is accepted or rejected alike in any of the three.
+ */
+public class EbookFormats {
+
+    public static final MediaType SMILE = MediaType.parseMediaType("application/x-jackson-smile");
+    public static final List<MediaType> BINARY = List.of(MediaType.APPLICATION_CBOR, SMILE);
+
+    private final ObjectMapper cborMapper;
+    private final ObjectMapper smileMapper;
+
+    public EbookFormats(Jackson2ObjectMapperBuilder builder) {
+        this.cborMapper = builder.factory(new CBORFactory()).build();
+        this.smileMapper = builder.factory(new SmileFactory()).build();
+    }
+
+    public ObjectMapper cbor() {
+        return cborMapper;
+    }
+
+    public ObjectMapper smile() {
+        return smileMapper;
+    }
+
+    // one of BINARY
+    public ObjectMapper mapper(MediaType binaryType) {
+        return binaryType.equals(SMILE) ? smileMapper : cborMapper;
+    }
+
+    /**
+     * The binary format the client ranks above JSON in its Accept header, or null if JSON is to be served: without a
+     * header, for wildcards, and for a header that does not parse.
+     */
+    public static MediaType preferredBinary(String accept) {
+        if (accept == null) return null;
+        List<MediaType> mediaTypes;
+        try {
+            mediaTypes = new ArrayList<>(MediaType.parseMediaTypes(accept));
+        } catch (InvalidMediaTypeException e) {
+            return null;
+        }
+        MimeTypeUtils.sortBySpecificity(mediaTypes);
+        mediaTypes.sort((a, b) -> Double.compare(b.getQualityValue(), a.getQualityValue()));
+        for (MediaType mediaType : mediaTypes) {
+            if (mediaType.getQualityValue() == 0) break;
+            if (mediaType.includes(MediaType.APPLICATION_JSON)) return null;
+            for (MediaType binary : BINARY) {
+                if (mediaType.equalsTypeAndSubtype(binary)) return binary;
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,86 @@
+package com.jani.ebookapi.web;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.reactivestreams.Publisher;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.boot.web.codec.CodecCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.ResolvableType;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferFactory;
+import org.springframework.http.MediaType;
+import org.springframework.http.codec.cbor.Jackson2CborDecoder;
+import org.springframework.http.codec.cbor.Jackson2CborEncoder;
+import org.springframework.http.codec.json.Jackson2JsonDecoder;
+import org.springframework.http.codec.json.Jackson2JsonEncoder;
+import org.springframework.http.codec.json.Jackson2SmileDecoder;
+import org.springframework.http.codec.json.Jackson2SmileEncoder;
+import org.springframework.http.converter.cbor.MappingJackson2CborHttpMessageConverter;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.http.converter.smile.MappingJackson2SmileHttpMessageConverter;
+import org.springframework.util.MimeType;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.Map;
+
+// CBOR and Smile request and response bodies wherever the controllers leave the encoding to content negotiation
+@Configuration
+public class EbookFormatsConfiguration {
+
+    @Bean
+    public EbookFormats ebookFormats(Jackson2ObjectMapperBuilder builder) {
+        return new EbookFormats(builder);
+    }
+
+    // replace the converters Spring MVC would otherwise add with default mappers
+    @Configuration
+    @ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
+    static class Servlet {
+
+        @Bean
+        public MappingJackson2CborHttpMessageConverter cborHttpMessageConverter(EbookFormats ebookFormats) {
+            return new MappingJackson2CborHttpMessageConverter(ebookFormats.cbor());
+        }
+
+        @Bean
+        public MappingJackson2SmileHttpMessageConverter smileHttpMessageConverter(EbookFormats ebookFormats) {
+            return new MappingJackson2SmileHttpMessageConverter(ebookFormats.smile());
+        }
+    }
+
+    // WebFlux has default Smile codecs, with default mappers, and none for CBOR; without media types these would claim JSON
+    @Configuration
+    @ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+    static class Reactive {
+
+        @Bean
+        public CodecCustomizer ebookFormatsCodecCustomizer(EbookFormats ebookFormats, ObjectMapper objectMapper) {
+            return configurer -> {
+                configurer.defaultCodecs().jackson2SmileDecoder(new Jackson2SmileDecoder(ebookFormats.smile(), EbookFormats.SMILE));
+                configurer.defaultCodecs().jackson2SmileEncoder(new Jackson2SmileEncoder(ebookFormats.smile(), EbookFormats.SMILE));
+                // custom codecs are consulted before the default ones, so JSON goes first to stay what */* gets
+                configurer.customCodecs().registerWithDefaultConfig(new Jackson2JsonDecoder(objectMapper));
+                configurer.customCodecs().registerWithDefaultConfig(new Jackson2JsonEncoder(objectMapper));
+                configurer.customCodecs().registerWithDefaultConfig(new Jackson2CborDecoder(ebookFormats.cbor(), MediaType.APPLICATION_CBOR));
+                configurer.customCodecs().registerWithDefaultConfig(new SingleValueCborEncoder(ebookFormats.cbor()));
+            };
+        }
+    }
+
+    // the stock encoder refuses every publisher, even the single value a response body is written from
+    private static final class SingleValueCborEncoder extends Jackson2CborEncoder {
+
+        SingleValueCborEncoder(ObjectMapper mapper) {
+            super(mapper, MediaType.APPLICATION_CBOR);
+        }
+
+        @Override
+        public Flux<DataBuffer> encode(Publisher<?> inputStream, DataBufferFactory bufferFactory, ResolvableType elementType,
+                                       MimeType mimeType, Map<String, Object> hints) {
+            if (!(inputStream instanceof Mono<?> value)) return super.encode(inputStream, bufferFactory, elementType, mimeType, hints);
+            return value.map(body -> encodeValue(body, bufferFactory, elementType, mimeType, hints)).flux();
+        }
+    }
+}
@@ -0,0 +1,137 @@
+package com.jani.ebookapi.web;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.jani.ebookapi.model.Ebook;
+import com.jani.ebookapi.service.EbookChangeListener;
+import com.jani.ebookapi.service.EbookService;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * The public (id-less) JSON of single ebooks, so repeated reads of an unchanged ebook are written without serializing it again.
+ * An entry is only served for the version it was serialized from; changes evict entries eagerly to free their memory.
+ */
+@Component
+public class EbookJsonCache implements EbookChangeListener {
+
+    // map node, entry and array headers, roughly
+    private static final int ENTRY_OVERHEAD = 96;
+
+    private record Entry(long version, byte[] json) {
+    }
+
+    private final ConcurrentHashMap<String, Entry> entries = new ConcurrentHashMap<>();
+    private final AtomicLong bytes = new AtomicLong();
+    private final long maxBytes;
+    private final ObjectWriter writer;
+    private final Function<String, Ebook> store;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    // the service is only looked up once serving, it is still being created when it registers this cache as a listener
+    @Autowired
+    public EbookJsonCache(ObjectMapper objectMapper, @Value("${ebook.json-cache.max-size:64MB}") DataSize maxSize,
+                          ObjectProvider<EbookService> ebookService) {
+        this(objectMapper, maxSize, ebookId -> ebookService.getObject().get(ebookId));
+    }
+
+    // store looks up the ebook now stored under an id
+    public EbookJsonCache(ObjectMapper objectMapper, DataSize maxSize, Function<String, Ebook> store) {
+        this.writer = objectMapper.writerFor(Ebook.class);
+        this.maxBytes = maxSize.toBytes();
+        this.store = store;
+    }
+
+    // the stored ebook with the given id
+    public byte[] json(String ebookId, Ebook ebook) throws JsonProcessingException {
+        Entry entry = entries.get(ebookId);
+        if (entry != null && entry.version() == ebook.getVersion()) {
+            hits.increment();
+            return entry.json();
+        }
+        misses.increment();
+        // copy with null id to discard id
+        Ebook returnEbook = new Ebook(null, ebook.getAuthor(), ebook.getTitle(), ebook.getFormat());
+        byte[] json = writer.writeValueAsBytes(returnEbook);
+        if (json.length + ENTRY_OVERHEAD <= maxBytes) cache(ebookId, new Entry(ebook.getVersion(), json));
+        return json;
+    }
+
+    /**
+     * A change may have evicted this version while it was serialized, and a stale entry would otherwise stay until the
+     * cache fills up, for good if the ebook was removed. So the entry never replaces a newer one, and is taken out
+     * again unless its version is still the stored one once it is in; the change then either finds it in place or is
+     * seen here. Only a change that has evicted but not yet stored its ebook can still leave an entry behind, which is
+     * never served and goes with the next change or eviction.
+     */
+    private void cache(String ebookId, Entry entry) {
+        Entry[] replaced = new Entry[1];
+        Entry cached = entries.compute(ebookId, (id, current) -> {
+            if (current != null && current.version() >= entry.version()) return current;
+            replaced[0] = current;
+            return entry;
+        });
+        if (cached != entry) return;
+        bytes.addAndGet(size(entry.json()) - (replaced[0] == null ? 0 : size(replaced[0].json())));
+        Ebook stored = store.apply(ebookId);
+        if (stored == null || stored.getVersion() != entry.version()) {
+            if (entries.remove(ebookId, entry)) bytes.addAndGet(-size(entry.json()));
+        }
+        if (bytes.get() > maxBytes) evict();
+    }
+
+    @Override
+    public void onChange(Ebook previous, Ebook current) {
+        if (previous != null) invalidate(previous.getId());
+    }
+
+    @Override
+    public void onClear() {
+        entries.keySet().forEach(this::invalidate);
+    }
+
+    public long hits() {
+        return hits.sum();
+    }
+
+    public long misses() {
+        return misses.sum();
+    }
+
+    public int entries() {
+        return entries.size();
+    }
+
+    // estimated heap held by the cached entries
+    public long bytes() {
+        return bytes.get();
+    }
+
+    private void invalidate(String ebookId) {
+        Entry removed = entries.remove(ebookId);
+        if (removed != null) bytes.addAndGet(-size(removed.json()));
+    }
+
+    // hash order is effectively random, so this drops arbitrary entries until the cache fits again
+    private void evict() {
+        Iterator<String> ids = entries.keySet().iterator();
+        while (bytes.get() > maxBytes && ids.hasNext()) {
+            invalidate(ids.next());
+        }
+    }
+
+    private static long size(byte[] json) {
+        return json.length + ENTRY_OVERHEAD;
+    }
+}
@@ -0,0 +1,58 @@
+package com.jani.ebookapi.web;
+
+import com.jani.ebookapi.service.EbookChangeFeed;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.codec.ServerSentEvent;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ResponseStatusException;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.Duration;
+
+/**
+ * The change feed of {@link EbookChangeController} on the reactive stack. Reading the feed waits for the next change,
+ * so every subscriber polls it on a thread of its own scheduler; events are only read as the client takes them.
+ */
+@RestController
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+public class ReactiveEbookChangeController {
+
+    private final EbookChangeFeed changeFeed;
+    private final long heartbeatMillis;
+    private final Scheduler subscribers;
+
+    public ReactiveEbookChangeController(EbookChangeFeed changeFeed, @Value("${ebook.changes.heartbeat:15s}") Duration heartbeat,
+                                         @Value("${ebook.changes.max-subscribers:256}") int maxSubscribers) {
+        this.changeFeed = changeFeed;
+        this.heartbeatMillis = heartbeat.toMillis();
+        this.subscribers = Schedulers.newBoundedElastic(maxSubscribers, Integer.MAX_VALUE, "ebook-changes", 60, true);
+    }
+
+    @GetMapping(value = "/ebooks/changes", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public Flux<ServerSentEvent<Object>> streamChanges(@RequestHeader(value = "Last-Event-ID", required = false) String lastEventId) {
+        ChangeSubscription subscription = new ChangeSubscription(changeFeed, lastEventId, heartbeatMillis);
+        if (!changeFeed.subscribe()) throw new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, "Too many subscribers");
+        return Mono.fromCallable(subscription::next)
+                .subscribeOn(subscribers)
+                .repeat()
+                .concatMapIterable(events -> events)
+                .map(event -> event.name() == null
+                        ? ServerSentEvent.builder().comment("").build()
+                        : ServerSentEvent.builder(event.data()).id(event.id()).event(event.name()).build())
+                .doFinally(signal -> changeFeed.unsubscribe());
+    }
+
+    @PreDestroy
+    void close() {
+        subscribers.dispose();
+    }
+}
@@ -0,0 +1,332 @@
+package com.jani.ebookapi.web;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SequenceWriter;
+import com.jani.ebookapi.admission.AdaptiveConcurrencyLimit;
+import com.jani.ebookapi.model.Ebook;
+import com.jani.ebookapi.service.EbookVersionConflictException;
+import com.jani.ebookapi.service.ReactiveEbookService;
+import jakarta.validation.Valid;
+import jakarta.validation.Validator;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferFactory;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.LongFunction;
+
+import static com.jani.ebookapi.web.EbookController.*;
+
+/**
+ * The routes and payloads of {@link EbookController} on the reactive stack, selected by the "reactive" profile.
+ * Catalog-wide responses are produced page by page as the client consumes them instead of being built in memory.
+ */
+@RestController
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+public class ReactiveEbookController {
+
+    private static final byte[] DATA_START = "{\"data\":[".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] DATA_END = "]}".getBytes(StandardCharsets.UTF_8);
+
+    private final ReactiveEbookService ebookService;
+    private final ObjectWriter arrayWriter;
+    private final ObjectWriter lineWriter;
+    private final ObjectReader ebookReader;
+    private final Validator validator;
+    private final EbookJsonCache jsonCache;
+    private final EbookFormats ebookFormats;
+    // null while admission control is off
+    private final AdaptiveConcurrencyLimit writeLimit;
+
+    public ReactiveEbookController(ReactiveEbookService ebookService, ObjectMapper objectMapper, Validator validator,
+                                   EbookJsonCache jsonCache, EbookFormats ebookFormats,
+                                   ObjectProvider<AdaptiveConcurrencyLimit> writeLimit) {
+        this.ebookService = ebookService;
+        this.writeLimit = writeLimit.getIfAvailable();
+        this.arrayWriter = objectMapper.writerFor(Ebook.class).withRootValueSeparator(",");
+        this.lineWriter = objectMapper.writerFor(Ebook.class).withRootValueSeparator("\n");
+        // a line holds exactly one ebook
+        this.ebookReader = objectMapper.readerFor(Ebook.class).with(DeserializationFeature.FAIL_ON_TRAILING_TOKENS);
+        this.validator = validator;
+        this.jsonCache = jsonCache;
+        this.ebookFormats = ebookFormats;
+    }
+
+    @GetMapping("/")
+    public String welcomeToAPI() {
+        return "Welcome!";
+    }
+
+    // the whole (filtered) catalog as {"data": [...]}, in id order, in JSON or the binary format the client prefers
+    @GetMapping(value = "/ebooks", params = {"!limit", "!cursor", "!since"})
+    public Mono<ResponseEntity<Flux<DataBuffer>>> getEbooks(@RequestParam(required = false) String author,
+                                                           @RequestParam(required = false) String format,
+                                                           ServerWebExchange exchange) {
+        MediaType binary = EbookFormats.preferredBinary(exchange.getRequest().getHeaders().getFirst(HttpHeaders.ACCEPT));
+        if (exchange.checkNotModified(listEtag(ebookService.catalogVersion(), binary, author, format, null, null))) {
+            return Mono.empty();
+        }
+        exchange.getResponse().getHeaders().set(HttpHeaders.VARY, HttpHeaders.ACCEPT);
+        if (binary != null) {
+            DataBufferFactory buffers = exchange.getResponse().bufferFactory();
+            Flux<DataBuffer> body = Flux.using(() -> new BinaryEnvelope(ebookFormats.mapper(binary)),
+                    envelope -> Flux.concat(
+                                    Mono.fromCallable(envelope::start),
+                                    ebookService.pages(author, format, EXPORT_PAGE_SIZE).map(envelope::page),
+                                    Mono.fromCallable(envelope::end))
+                            .map(buffers::wrap),
+                    BinaryEnvelope::close);
+            return Mono.just(ResponseEntity.ok().contentType(binary).body(body));
+        }
+        return Mono.just(streamEbooks(author, format, exchange));
+    }
+
+    @GetMapping(value = "/ebooks", params = "since")
+    public Mono<Map<String, Object>> getChanges(@RequestParam long since,
+                                                @RequestParam(defaultValue = "" + MAX_PAGE_SIZE) int limit) {
+        if (since < 0 || limit < 1) throw new ResponseStatusException(HttpStatus.BAD_REQUEST);
+        return ebookService.changesSince(since, Math.min(limit, MAX_PAGE_SIZE))
+                .switchIfEmpty(Mono.error(() -> new ResponseStatusException(HttpStatus.GONE)))
+                .map(EbookController::delta);
+    }
+
+    @GetMapping(value = "/ebooks", params = "stream=true")
+    public Mono<ResponseEntity<Flux<DataBuffer>>> streamEbooks(ServerWebExchange exchange) {
+        return Mono.just(streamEbooks(null, null, exchange));
+    }
+
+    @GetMapping("/ebooks")
+    public Mono<ResponseEntity<Map<String, Object>>> getEbookPage(@RequestParam(required = false) String author,
+                                                                  @RequestParam(required = false) String format,
+                                                                  @RequestParam(required = false) Integer limit,
+                                                                  @RequestParam(required = false) String cursor,
+                                                                  ServerWebExchange exchange) {
+        int pageSize = limit == null ? DEFAULT_PAGE_SIZE : Math.min(limit, MAX_PAGE_SIZE);
+        if (pageSize < 1) throw new ResponseStatusException(HttpStatus.BAD_REQUEST);
+        String afterId = decodeCursor(cursor);
+        MediaType binary = EbookFormats.preferredBinary(exchange.getRequest().getHeaders().getFirst(HttpHeaders.ACCEPT));
+        if (exchange.checkNotModified(listEtag(ebookService.catalogVersion(), binary, author, format, limit, cursor))) {
+            return Mono.empty();
+        }
+        // read one extra ebook to know whether another page follows
+        return ebookService.find(author, format, afterId, pageSize + 1).map(ebooks -> {
+            Map<String, Object> page = new LinkedHashMap<>();
+            if (ebooks.size() > pageSize) {
+                ebooks = ebooks.subList(0, pageSize);
+                page.put("next", encodeCursor(ebooks.get(pageSize - 1).getId()));
+            }
+            page.put("data", ebooks);
+            return ResponseEntity.ok().header(HttpHeaders.VARY, HttpHeaders.ACCEPT).body(page);
+        });
+    }
+
+    // the whole catalog as newline-delimited JSON in id order; gzip is left to server.compression
+    @GetMapping("/ebooks/export")
+    public ResponseEntity<Flux<DataBuffer>> exportEbooks(ServerWebExchange exchange) {
+        DataBufferFactory buffers = exchange.getResponse().bufferFactory();
+        Flux<DataBuffer> body = ebookService.pages(null, null, EXPORT_PAGE_SIZE)
+                .map(page -> encode(buffers, lineWriter, page, null, "\n"));
+        return ResponseEntity.ok()
+                .contentType(NDJSON)
+                .header(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING)
+                .body(body);
+    }
+
+    @GetMapping("/ebooks/search")
+    public Mono<Map<String, Object>> searchEbooks(@RequestParam String q,
+                                                  @RequestParam(defaultValue = "" + DEFAULT_SEARCH_LIMIT) int limit) {
+        if (limit < 1) throw new ResponseStatusException(HttpStatus.BAD_REQUEST);
+        return ebookService.search(q, Math.min(limit, MAX_SEARCH_LIMIT)).map(ebooks -> Map.of("data", ebooks));
+    }
+
+    @GetMapping("/ebooks/{ebook_id}")
+    public Mono<ResponseEntity<byte[]>> getEbook(@PathVariable String ebook_id, ServerWebExchange exchange) {
+        MediaType binary = EbookFormats.preferredBinary(exchange.getRequest().getHeaders().getFirst(HttpHeaders.ACCEPT));
+        return ebookService.get(ebook_id)
+                .switchIfEmpty(Mono.error(() -> new ResponseStatusException(HttpStatus.NOT_FOUND)))
+                .flatMap(ebook -> exchange.checkNotModified(etag(ebook, binary))
+                        ? Mono.empty()
+                        : Mono.fromCallable(() -> ResponseEntity.ok()
+                                .header(HttpHeaders.VARY, HttpHeaders.ACCEPT)
+                                .contentType(binary == null ? MediaType.APPLICATION_JSON : binary)
+                                .body(encode(ebook_id, ebook, binary))));
+    }
+
+    // the id-less JSON, serialized once per version, or with null id to discard id in the given binary format
+    private byte[] encode(String ebookId, Ebook ebook, MediaType binary) throws JsonProcessingException {
+        if (binary == null) return jsonCache.json(ebookId, ebook);
+        return ebookFormats.mapper(binary).writeValueAsBytes(new Ebook(null, ebook.getAuthor(), ebook.getTitle(), ebook.getFormat()));
+    }
+
+    @PostMapping("/ebooks")
+    public Mono<ResponseEntity<Ebook>> addEbook(@RequestBody @Valid Ebook ebook,
+                                                @RequestHeader(value = HttpHeaders.ACCEPT, required = false) String accept) {
+        MediaType binary = EbookFormats.preferredBinary(accept);
+        return ebookService.add(ebook)
+                .map(addedEbook -> ResponseEntity.status(HttpStatus.CREATED).eTag(etag(addedEbook, binary))
+                        .header(HttpHeaders.VARY, HttpHeaders.ACCEPT).body(addedEbook));
+    }
+
+    // newline-delimited JSON, one ebook per line; the next batch is only read once the previous one is stored
+    @PostMapping("/ebooks/bulk")
+    public Mono<Map<String, Object>> addEbooks(@RequestBody Flux<String> lines) {
+        BulkLoad bulkLoad = new BulkLoad(ebookReader, validator);
+        return lines.mapNotNull(bulkLoad::parse)
+                .buffer(BULK_BATCH_SIZE)
+                .concatMap(this::addBatch)
+                .doOnNext(batch -> bulkLoad.inserted(batch.size()))
+                .then(Mono.fromSupplier(bulkLoad::report));
+    }
+
+    // like EbookController.addBatch; waiting for the slot blocks, so it happens on the bounded elastic scheduler
+    private Mono<List<Ebook>> addBatch(List<Ebook> batch) {
+        if (writeLimit == null) return ebookService.addAll(batch);
+        return Mono.using(() -> {
+                    writeLimit.acquire();
+                    return batch;
+                }, ebookService::addAll, admitted -> writeLimit.release(null))
+                .subscribeOn(Schedulers.boundedElastic());
+    }
+
+    @PutMapping("/ebooks/{ebook_id}")
+    public Mono<ResponseEntity<Ebook>> updateEbook(@RequestBody @Valid Ebook updateForEbook, @PathVariable String ebook_id,
+                                                   @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch,
+                                                   @RequestHeader(value = HttpHeaders.ACCEPT, required = false) String accept) {
+        long[] versions = ifMatchVersions(ifMatch);
+        MediaType binary = EbookFormats.preferredBinary(accept);
+        Mono<Ebook> update = versions == null
+                ? ebookService.update(ebook_id, updateForEbook)
+                : ifMatch(ebook_id, versions, version -> ebookService.update(ebook_id, version, updateForEbook));
+        return update
+                .switchIfEmpty(Mono.error(() -> new ResponseStatusException(HttpStatus.NOT_FOUND)))
+                // create new Ebook with null id to discard id
+                .map(updatedEbook -> ResponseEntity.ok().eTag(etag(updatedEbook, binary)).header(HttpHeaders.VARY, HttpHeaders.ACCEPT).body(
+                        new Ebook(null, updatedEbook.getAuthor(), updatedEbook.getTitle(), updatedEbook.getFormat())));
+    }
+
+    @DeleteMapping("/ebooks/{ebook_id}")
+    public Mono<Void> deleteEbook(@PathVariable String ebook_id,
+                                  @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch) {
+        long[] versions = ifMatchVersions(ifMatch);
+        Mono<Ebook> removal = versions == null
+                ? ebookService.remove(ebook_id)
+                : ifMatch(ebook_id, versions, version -> ebookService.remove(ebook_id, version));
+        return removal
+                .switchIfEmpty(Mono.error(() -> new ResponseStatusException(HttpStatus.NOT_FOUND)))
+                .then();
+    }
+
+    // see EbookController: the write only happens at one of the given versions; empty if there is no such ebook
+    private Mono<Ebook> ifMatch(String ebookId, long[] versions, LongFunction<Mono<Ebook>> write) {
+        Mono<Long> version = versions.length == 1
+                ? Mono.just(versions[0])
+                : ebookService.get(ebookId).flatMap(current -> Arrays.stream(versions).anyMatch(v -> v == current.getVersion())
+                        ? Mono.just(current.getVersion())
+                        : Mono.error(new ResponseStatusException(HttpStatus.PRECONDITION_FAILED)));
+        return version.flatMap(write::apply)
+                .onErrorMap(EbookVersionConflictException.class, e -> new ResponseStatusException(HttpStatus.PRECONDITION_FAILED));
+    }
+
+    // the {"data": [...]} envelope, one buffer per page; the next page is read when the client has taken the previous one
+    private ResponseEntity<Flux<DataBuffer>> streamEbooks(String author, String format, ServerWebExchange exchange) {
+        DataBufferFactory buffers = exchange.getResponse().bufferFactory();
+        Flux<DataBuffer> data = ebookService.pages(author, format, EXPORT_PAGE_SIZE)
+                .index()
+                .map(page -> encode(buffers, arrayWriter, page.getT2(), page.getT1() == 0 ? null : ",", null));
+        Flux<DataBuffer> body = Flux.concat(
+                Mono.fromSupplier(() -> buffers.wrap(DATA_START)),
+                data,
+                Mono.fromSupplier(() -> buffers.wrap(DATA_END)));
+        return ResponseEntity.ok().contentType(MediaType.APPLICATION_JSON).body(body);
+    }
+
+    // one generator for the whole binary envelope, drained after each page: Smile refers back to names written before
+    private static final class BinaryEnvelope implements Closeable {
+
+        private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        private final JsonGenerator generator;
+
+        BinaryEnvelope(ObjectMapper mapper) throws IOException {
+            this.generator = mapper.createGenerator(bytes);
+        }
+
+        byte[] start() throws IOException {
+            generator.writeStartObject();
+            generator.writeArrayFieldStart("data");
+            return drain();
+        }
+
+        byte[] page(List<Ebook> ebooks) {
+            try {
+                for (Ebook ebook : ebooks) {
+                    generator.writeObject(ebook);
+                }
+                return drain();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        byte[] end() throws IOException {
+            generator.writeEndArray();
+            generator.writeEndObject();
+            return drain();
+        }
+
+        private byte[] drain() throws IOException {
+            generator.flush();
+            byte[] drained = bytes.toByteArray();
+            bytes.reset();
+            return drained;
+        }
+
+        @Override
+        public void close() {
+            try {
+                generator.close();
+            } catch (IOException e) {
+                // nothing is written after this
+            }
+        }
+    }
+
+    private static DataBuffer encode(DataBufferFactory buffers, ObjectWriter writer, List<Ebook> ebooks, String before, String after) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(ebooks.size() * 128);
+        try {
+            if (before != null) bytes.write(before.getBytes(StandardCharsets.UTF_8));
+            try (SequenceWriter sequence = writer.writeValues(bytes)) {
+                for (Ebook ebook : ebooks) {
+                    sequence.write(ebook);
+                }
+            }
+            if (after != null) bytes.write(after.getBytes(StandardCharsets.UTF_8));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return buffers.wrap(bytes.toByteArray());
+    }
+}
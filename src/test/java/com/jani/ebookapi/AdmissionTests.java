@@ -0,0 +1,179 @@
+package com.jani.ebookapi;
+
+import com.jani.ebookapi.admission.AdaptiveConcurrencyLimit;
+import com.jani.ebookapi.admission.AdmissionFilter;
+import com.jani.ebookapi.admission.ReactiveAdmissionFilter;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.mock.web.server.MockServerWebExchange;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class AdmissionTests {
+
+    @Test
+    void shouldGrowLimitWhileLatencyStaysLowAndTheLimitIsUsed() {
+        // Arrange
+        AdaptiveConcurrencyLimit limit = new AdaptiveConcurrencyLimit(10, 1, 100, 2.0, 0.9);
+
+        // Act
+        window(limit, 10, Duration.ofMillis(1));
+        window(limit, 11, Duration.ofMillis(1));
+
+        // Assert
+        assertThat(limit.limit()).isEqualTo(12);
+        assertThat(limit.inFlight()).isZero();
+    }
+
+    @Test
+    void shouldBackOffWhenLatencyRises() {
+        // Arrange
+        AdaptiveConcurrencyLimit limit = new AdaptiveConcurrencyLimit(10, 8, 100, 2.0, 0.9);
+        window(limit, 10, Duration.ofMillis(1));
+
+        // Act
+        window(limit, 11, Duration.ofMillis(10));
+        int backedOff = limit.limit();
+        for (int i = 0; i < 4; i++) {
+            window(limit, 5, Duration.ofMillis(10));
+        }
+
+        // Assert: cut by the backoff factor, and never below the minimum
+        assertThat(backedOff).isEqualTo(9);
+        assertThat(limit.limit()).isEqualTo(8);
+    }
+
+    @Test
+    void shouldNotGrowAnUnusedLimit() {
+        // Arrange
+        AdaptiveConcurrencyLimit limit = new AdaptiveConcurrencyLimit(40, 1, 100, 2.0, 0.9);
+
+        // Act: one write at a time
+        for (int i = 0; i < 200; i++) {
+            window(limit, 1, Duration.ofMillis(1));
+        }
+
+        // Assert
+        assertThat(limit.limit()).isEqualTo(40);
+    }
+
+    @Test
+    void shouldShedWritesAndBulkLoadsBeyondTheLimitWithRetryAfterButNotReads() throws Exception {
+        // Arrange: one write holding the only slot
+        AdaptiveConcurrencyLimit limit = new AdaptiveConcurrencyLimit(1, 1, 1, 2.0, 0.9);
+        AdmissionFilter filter = new AdmissionFilter(limit, Duration.ofMillis(1500));
+        CountDownLatch entered = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        CompletableFuture<Void> held = CompletableFuture.runAsync(() -> {
+            try {
+                filter.doFilter(new MockHttpServletRequest("POST", "/ebooks"), new MockHttpServletResponse(), (request, response) -> {
+                    entered.countDown();
+                    try {
+                        release.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                });
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        assertThat(entered.await(5, TimeUnit.SECONDS)).isTrue();
+
+        // Act
+        MockHttpServletResponse put = new MockHttpServletResponse();
+        boolean[] putPassed = {false};
+        filter.doFilter(new MockHttpServletRequest("PUT", "/ebooks/id"), put, (request, response) -> putPassed[0] = true);
+        MockHttpServletResponse get = new MockHttpServletResponse();
+        boolean[] getPassed = {false};
+        filter.doFilter(new MockHttpServletRequest("GET", "/ebooks/id"), get, (request, response) -> getPassed[0] = true);
+        MockHttpServletResponse bulk = new MockHttpServletResponse();
+        boolean[] bulkPassed = {false};
+        filter.doFilter(new MockHttpServletRequest("POST", "/ebooks/bulk"), bulk, (request, response) -> bulkPassed[0] = true);
+        release.countDown();
+        held.get(5, TimeUnit.SECONDS);
+        boolean[] retryPassed = {false};
+        filter.doFilter(new MockHttpServletRequest("PUT", "/ebooks/id"), new MockHttpServletResponse(), (request, response) -> retryPassed[0] = true);
+        boolean[] bulkRetryPassed = {false};
+        filter.doFilter(new MockHttpServletRequest("POST", "/ebooks/bulk"), new MockHttpServletResponse(), (request, response) -> bulkRetryPassed[0] = true);
+
+        // Assert
+        assertThat(putPassed[0]).isFalse();
+        assertThat(put.getStatus()).isEqualTo(503);
+        assertThat(put.getHeader("Retry-After")).isEqualTo("2");
+        assertThat(getPassed[0]).isTrue();
+        assertThat(bulkPassed[0]).isFalse();
+        assertThat(bulk.getStatus()).isEqualTo(503);
+        assertThat(retryPassed[0]).isTrue();
+        assertThat(bulkRetryPassed[0]).isTrue();
+        assertThat(limit.rejected()).isEqualTo(2);
+        assertThat(limit.inFlight()).isZero();
+    }
+
+    @Test
+    void shouldHoldTheSlotUntilTheReactiveResponseCompletes() {
+        // Arrange
+        AdaptiveConcurrencyLimit limit = new AdaptiveConcurrencyLimit(1, 1, 1, 2.0, 0.9);
+        ReactiveAdmissionFilter filter = new ReactiveAdmissionFilter(limit, Duration.ofSeconds(1));
+        Sinks.Empty<Void> pending = Sinks.empty();
+        filter.filter(MockServerWebExchange.from(MockServerHttpRequest.post("/ebooks")), exchange -> pending.asMono()).subscribe();
+
+        // Act
+        MockServerWebExchange rejected = MockServerWebExchange.from(MockServerHttpRequest.delete("/ebooks/id"));
+        filter.filter(rejected, exchange -> Mono.empty()).block();
+        pending.tryEmitEmpty();
+        MockServerWebExchange admitted = MockServerWebExchange.from(MockServerHttpRequest.put("/ebooks/id"));
+        filter.filter(admitted, exchange -> Mono.empty()).block();
+
+        // Assert
+        assertThat(rejected.getResponse().getStatusCode()).isEqualTo(HttpStatus.SERVICE_UNAVAILABLE);
+        assertThat(rejected.getResponse().getHeaders().getFirst("Retry-After")).isEqualTo("1");
+        assertThat(admitted.getResponse().getStatusCode()).isNotEqualTo(HttpStatus.SERVICE_UNAVAILABLE);
+        assertThat(limit.inFlight()).isZero();
+    }
+
+    @Test
+    void shouldLetBulkBatchesWaitForASlotInsteadOfShedding() throws Exception {
+        // Arrange: a single write holding the only slot
+        AdaptiveConcurrencyLimit limit = new AdaptiveConcurrencyLimit(1, 1, 1, 2.0, 0.9);
+        assertThat(limit.tryAcquire()).isTrue();
+
+        // Act
+        CompletableFuture<Void> batch = CompletableFuture.runAsync(() -> {
+            try {
+                limit.acquire();
+            } catch (InterruptedException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        Thread.sleep(50);
+        boolean waited = !batch.isDone();
+        limit.release(Duration.ofMillis(1));
+        batch.get(5, TimeUnit.SECONDS);
+
+        // Assert
+        assertThat(waited).isTrue();
+        assertThat(limit.inFlight()).isEqualTo(1);
+        assertThat(limit.rejected()).isZero();
+    }
+
+    // a window of writes all in flight at once, completing with the given latency
+    private static void window(AdaptiveConcurrencyLimit limit, int writes, Duration latency) {
+        for (int i = 0; i < writes; i++) {
+            assertThat(limit.tryAcquire()).isTrue();
+        }
+        for (int i = 0; i < writes; i++) {
+            limit.release(latency);
+        }
+    }
+}
@@ -0,0 +1,174 @@
+package com.jani.ebookapi;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.jani.ebookapi.model.Ebook;
+import com.jani.ebookapi.service.EbookChangeFeed;
+import com.jani.ebookapi.service.EbookService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
+
+import java.io.InputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+// GET /ebooks/changes read as a plain event stream from a real server
+@SpringBootTest(classes = EbookApplication.class, webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT,
+        properties = {"ebook.changes.buffer-size=16", "ebook.changes.heartbeat=200ms"})
+public class ChangeFeedTests {
+
+    private record Event(String id, String name, JsonNode data) {
+    }
+
+    @LocalServerPort
+    private int port;
+
+    @Autowired
+    private EbookService ebookService;
+
+    @Autowired
+    private EbookChangeFeed changeFeed;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final HttpClient httpClient = HttpClient.newHttpClient();
+    private final List<CompletableFuture<HttpResponse<Stream<String>>>> streams = new ArrayList<>();
+
+    @AfterEach
+    void tearDown() {
+        streams.forEach(stream -> stream.cancel(true));
+        ebookService.clearData();
+    }
+
+    @Test
+    void shouldStreamEveryMutationWithItsSequence() throws Exception {
+        // Arrange
+        BlockingQueue<Event> events = subscribe(null);
+
+        // Act
+        Ebook added = ebookService.add(new Ebook(null, "testAuthor", "testTitle", "pdf"));
+        Ebook updated = ebookService.update(added.getId(), new Ebook(null, "testAuthor", "updatedTitle", "pdf"));
+        ebookService.remove(added.getId());
+
+        // Assert
+        Event created = events.poll(5, TimeUnit.SECONDS);
+        Event changed = events.poll(5, TimeUnit.SECONDS);
+        Event deleted = events.poll(5, TimeUnit.SECONDS);
+        assertThat(created.name()).isEqualTo("created");
+        assertThat(created.id()).isEqualTo(Long.toString(added.getVersion()));
+        assertThat(created.data().get("id").asText()).isEqualTo(added.getId());
+        assertThat(changed.name()).isEqualTo("updated");
+        assertThat(changed.id()).isEqualTo(Long.toString(updated.getVersion()));
+        assertThat(changed.data().get("title").asText()).isEqualTo("updatedTitle");
+        assertThat(deleted.name()).isEqualTo("deleted");
+        assertThat(Long.parseLong(deleted.id())).isGreaterThan(updated.getVersion());
+        assertThat(deleted.data().get("id").asText()).isEqualTo(added.getId());
+    }
+
+    @Test
+    void shouldResumeAfterLastEventId() throws Exception {
+        // Arrange
+        Ebook first = ebookService.add(new Ebook(null, "testAuthor", "testTitle1", "pdf"));
+        Ebook second = ebookService.add(new Ebook(null, "testAuthor", "testTitle2", "pdf"));
+        Ebook third = ebookService.add(new Ebook(null, "testAuthor", "testTitle3", "pdf"));
+
+        // Act
+        BlockingQueue<Event> events = subscribe(Long.toString(first.getVersion()));
+
+        // Assert: only what came after it
+        assertThat(events.poll(5, TimeUnit.SECONDS).data().get("id").asText()).isEqualTo(second.getId());
+        assertThat(events.poll(5, TimeUnit.SECONDS).data().get("id").asText()).isEqualTo(third.getId());
+    }
+
+    @Test
+    void shouldResetSubscriberThatMissedMoreThanTheBufferHolds() throws Exception {
+        // Arrange
+        long start = changeFeed.latest();
+        for (int i = 0; i < 40; i++) {
+            ebookService.add(new Ebook(null, "testAuthor", "testTitle" + i, "pdf"));
+        }
+
+        // Act
+        BlockingQueue<Event> events = subscribe(Long.toString(start));
+        Ebook next = ebookService.add(new Ebook(null, "testAuthor", "testTitle", "pdf"));
+
+        // Assert: told to reload, then followed from there
+        Event reset = events.poll(5, TimeUnit.SECONDS);
+        assertThat(reset.name()).isEqualTo("reset");
+        assertThat(reset.id()).isEqualTo(Long.toString(next.getVersion() - 1));
+        assertThat(events.poll(5, TimeUnit.SECONDS).data().get("id").asText()).isEqualTo(next.getId());
+    }
+
+    @Test
+    void shouldNotHoldUpWritersForSubscribersNotReading() throws Exception {
+        // Arrange: a subscriber that never reads its stream
+        HttpRequest request = HttpRequest.newBuilder(URI.create("http://localhost:" + port + "/ebooks/changes")).build();
+        HttpResponse<InputStream> stalled = httpClient.send(request, HttpResponse.BodyHandlers.ofInputStream());
+
+        // Act
+        long started = System.nanoTime();
+        for (int i = 0; i < 5000; i++) {
+            ebookService.add(new Ebook(null, "testAuthor", "testTitle" + i, "pdf"));
+        }
+
+        // Assert
+        assertThat(TimeUnit.NANOSECONDS.toSeconds(System.nanoTime() - started)).isLessThan(5);
+        assertThat(ebookService.getAll()).hasSize(5000);
+        stalled.body().close();
+    }
+
+    @Test
+    void shouldRejectMalformedLastEventId() throws Exception {
+        // Act
+        HttpRequest request = HttpRequest.newBuilder(URI.create("http://localhost:" + port + "/ebooks/changes"))
+                .header("Last-Event-ID", "abc").build();
+        HttpResponse<String> response = httpClient.send(request, HttpResponse.BodyHandlers.ofString());
+
+        // Assert
+        assertThat(response.statusCode()).isEqualTo(400);
+    }
+
+    // the events of a new subscription as they arrive, heartbeats left out
+    private BlockingQueue<Event> subscribe(String lastEventId) throws Exception {
+        HttpRequest.Builder request = HttpRequest.newBuilder(URI.create("http://localhost:" + port + "/ebooks/changes"))
+                .header("Accept", "text/event-stream");
+        if (lastEventId != null) request.header("Last-Event-ID", lastEventId);
+        BlockingQueue<Event> events = new LinkedBlockingQueue<>();
+        CompletableFuture<HttpResponse<Stream<String>>> stream = httpClient.sendAsync(request.build(), HttpResponse.BodyHandlers.ofLines());
+        streams.add(stream);
+        HttpResponse<Stream<String>> response = stream.get(5, TimeUnit.SECONDS);
+        assertThat(response.statusCode()).isEqualTo(200);
+        Thread reader = new Thread(() -> {
+            String[] event = new String[3];
+            response.body().forEach(line -> {
+                if (line.startsWith("id:")) event[0] = line.substring(3).trim();
+                else if (line.startsWith("event:")) event[1] = line.substring(6).trim();
+                else if (line.startsWith("data:")) event[2] = line.substring(5).trim();
+                else if (line.isEmpty() && event[1] != null) {
+                    try {
+                        events.add(new Event(event[0], event[1], objectMapper.readTree(event[2])));
+                    } catch (Exception e) {
+                        throw new IllegalStateException(e);
+                    }
+                    event[0] = event[1] = event[2] = null;
+                }
+            });
+        });
+        reader.setDaemon(true);
+        reader.start();
+        return events;
+    }
+}
@@ -0,0 +1,220 @@
+package com.jani.ebookapi;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.jani.ebookapi.cluster.ClusterMembership;
+import com.jani.ebookapi.model.Ebook;
+import com.jani.ebookapi.service.EbookService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.SpringApplication;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+// several nodes in one JVM, each on its own loopback port
+public class ClusterTests {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final HttpClient httpClient = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+    private final List<ConfigurableApplicationContext> nodes = new ArrayList<>();
+
+    @AfterEach
+    void stopNodes() {
+        nodes.forEach(ConfigurableApplicationContext::close);
+    }
+
+    @Test
+    void shouldServeEveryEbookThroughAnyNode() throws Exception {
+        // Arrange
+        List<String> urls = startCluster(2);
+        List<String> ids = addEbooks(urls, 100);
+
+        // Act & Assert: each node stores only the ids it owns, and any node finds any ebook
+        assertOwnedOnly(100);
+        assertThat(localIds(0)).isNotEmpty();
+        assertThat(localIds(1)).isNotEmpty();
+        for (String id : ids) {
+            assertThat(send("GET", urls.get(0) + "/ebooks/" + id, null, null).statusCode()).isEqualTo(200);
+            assertThat(send("GET", urls.get(1) + "/ebooks/" + id, null, null).statusCode()).isEqualTo(200);
+        }
+    }
+
+    @Test
+    void shouldForwardConditionalWritesToOwner() throws Exception {
+        // Arrange
+        List<String> urls = startCluster(2);
+        String id = addEbooks(urls, 1).get(0);
+        // the node that does not own the ebook
+        String other = localIds(0).contains(id) ? urls.get(1) : urls.get(0);
+        String etag = send("GET", other + "/ebooks/" + id, null, null).headers().firstValue("ETag").orElseThrow();
+        String update = "{\"author\": \"testAuthor\", \"title\": \"updatedTitle\", \"format\": \"epub\"}";
+
+        // Act
+        HttpResponse<String> updated = send("PUT", other + "/ebooks/" + id, update, etag);
+        HttpResponse<String> stale = send("PUT", other + "/ebooks/" + id, update, etag);
+        HttpResponse<String> deleted = send("DELETE", other + "/ebooks/" + id, null, updated.headers().firstValue("ETag").orElseThrow());
+
+        // Assert
+        assertThat(updated.statusCode()).isEqualTo(200);
+        assertThat(objectMapper.readTree(updated.body()).get("title").asText()).isEqualTo("updatedTitle");
+        assertThat(stale.statusCode()).isEqualTo(412);
+        assertThat(deleted.statusCode()).isEqualTo(200);
+        assertThat(send("GET", other + "/ebooks/" + id, null, null).statusCode()).isEqualTo(404);
+    }
+
+    @Test
+    void shouldNotLetHandOverOverwriteNewerWritesOnTheNewOwner() throws Exception {
+        // Arrange: a handed-over copy that a client then updated on its new owner
+        String url = startCluster(1).get(0);
+        String id = UUID.randomUUID().toString();
+        JsonNode created = objectMapper.readTree(send("POST", url + "/cluster/ebooks", handOver(id, "handedTitle", 0), null).body());
+        long copy = created.get("stored").get(id).asLong();
+        String update = "{\"author\": \"testAuthor\", \"title\": \"clientTitle\", \"format\": \"epub\"}";
+        HttpResponse<String> updated = send("PUT", url + "/ebooks/" + id, update, "\"v" + copy + "\"");
+
+        // Act
+        JsonNode stale = objectMapper.readTree(send("POST", url + "/cluster/ebooks", handOver(id, "staleTitle", copy), null).body());
+        JsonNode again = objectMapper.readTree(send("POST", url + "/cluster/ebooks", handOver(id, "staleTitle", 0), null).body());
+        send("DELETE", url + "/ebooks/" + id, null, null);
+        String current = updated.headers().firstValue("ETag").orElseThrow();
+        long version = Long.parseLong(current.substring(2, current.length() - 1));
+        JsonNode deleted = objectMapper.readTree(send("POST", url + "/cluster/ebooks", handOver(id, "staleTitle", version), null).body());
+
+        // Assert
+        assertThat(updated.statusCode()).isEqualTo(200);
+        assertThat(stale.get("received").asInt()).isEqualTo(1);
+        assertThat(stale.get("stored").has(id)).isFalse();
+        assertThat(again.get("stored").has(id)).isFalse();
+        assertThat(deleted.get("stored").has(id)).isFalse();
+        assertThat(send("GET", url + "/ebooks/" + id, null, null).statusCode()).isEqualTo(404);
+    }
+
+    @Test
+    void shouldMergePagesFromAllNodesInIdOrder() throws Exception {
+        // Arrange
+        List<String> urls = startCluster(2);
+        List<String> ids = addEbooks(urls, 50).stream().sorted().toList();
+
+        // Act
+        List<String> paged = new ArrayList<>();
+        String cursor = null;
+        do {
+            JsonNode page = objectMapper.readTree(send("GET", urls.get(1) + "/ebooks?limit=7"
+                    + (cursor == null ? "" : "&cursor=" + cursor), null, null).body());
+            page.get("data").forEach(ebook -> paged.add(ebook.get("id").asText()));
+            cursor = page.hasNonNull("next") ? page.get("next").asText() : null;
+        } while (cursor != null);
+        JsonNode all = objectMapper.readTree(send("GET", urls.get(0) + "/ebooks", null, null).body());
+        JsonNode filtered = objectMapper.readTree(send("GET", urls.get(0) + "/ebooks?format=pdf&limit=100", null, null).body());
+
+        // Assert
+        assertThat(paged).isEqualTo(ids);
+        assertThat(all.get("data").size()).isEqualTo(50);
+        assertThat(all.get("data").get(0).get("id").asText()).isEqualTo(ids.get(0));
+        assertThat(filtered.get("data").size()).isEqualTo(25);
+        assertThat(filtered.has("next")).isFalse();
+    }
+
+    @Test
+    void shouldRebalanceWhenNodeIsAdded() throws Exception {
+        // Arrange
+        List<String> urls = startCluster(3);
+        List<String> members = urls.subList(0, 2);
+        send("PUT", urls.get(0) + "/cluster/nodes", objectMapper.writeValueAsString(members), null);
+        List<String> ids = addEbooks(members, 200);
+        assertThat(localIds(2)).isEmpty();
+
+        // Act
+        HttpResponse<String> response = send("PUT", urls.get(0) + "/cluster/nodes", objectMapper.writeValueAsString(urls), null);
+
+        // Assert: the new node took over its share, nothing was lost or duplicated
+        assertThat(response.statusCode()).isEqualTo(200);
+        assertThat(localIds(2)).isNotEmpty();
+        assertOwnedOnly(200);
+        for (int node = 0; node < 3; node++) {
+            assertThat(nodes.get(node).getBean(ClusterMembership.class).nodes()).containsExactlyInAnyOrderElementsOf(urls);
+        }
+        for (String id : ids) {
+            assertThat(send("GET", urls.get(2) + "/ebooks/" + id, null, null).statusCode()).isEqualTo(200);
+        }
+        JsonNode all = objectMapper.readTree(send("GET", urls.get(2) + "/ebooks", null, null).body());
+        assertThat(all.get("data").size()).isEqualTo(200);
+    }
+
+    // nodes that all list every node as a member
+    private List<String> startCluster(int size) throws IOException {
+        List<String> urls = new ArrayList<>();
+        for (int i = 0; i < size; i++) {
+            try (ServerSocket socket = new ServerSocket(0)) {
+                urls.add("http://127.0.0.1:" + socket.getLocalPort());
+            }
+        }
+        for (String url : urls) {
+            nodes.add(SpringApplication.run(EbookApplication.class,
+                    "--server.address=127.0.0.1",
+                    "--server.port=" + URI.create(url).getPort(),
+                    "--spring.main.banner-mode=off",
+                    "--ebook.cluster.enabled=true",
+                    "--ebook.cluster.self=" + url,
+                    "--ebook.cluster.nodes=" + String.join(",", urls)));
+        }
+        return urls;
+    }
+
+    // posted round-robin to the given nodes, half of them pdf
+    private List<String> addEbooks(List<String> urls, int count) throws Exception {
+        List<String> ids = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            String ebook = "{\"author\": \"testAuthor\", \"title\": \"testTitle" + i + "\", \"format\": \"" + (i % 2 == 0 ? "pdf" : "epub") + "\"}";
+            HttpResponse<String> response = send("POST", urls.get(i % urls.size()) + "/ebooks", ebook, null);
+            assertThat(response.statusCode()).isEqualTo(201);
+            ids.add(objectMapper.readTree(response.body()).get("id").asText());
+        }
+        return ids;
+    }
+
+    // one line of POST /cluster/ebooks, replacing the copy at the given version, or only storing it if there is none when 0
+    private String handOver(String id, String title, long replaces) throws Exception {
+        Ebook ebook = new Ebook(id, "testAuthor", title, "epub");
+        return "{\"ebook\": " + objectMapper.writeValueAsString(ebook) + ", \"replaces\": " + replaces + "}\n";
+    }
+
+    private List<String> localIds(int node) {
+        return nodes.get(node).getBean(EbookService.class).getAll().stream().map(Ebook::getId).toList();
+    }
+
+    // every ebook is stored once in total, on the node owning it
+    private void assertOwnedOnly(int total) {
+        int stored = 0;
+        for (ConfigurableApplicationContext context : nodes) {
+            ClusterMembership membership = context.getBean(ClusterMembership.class);
+            for (Ebook ebook : context.getBean(EbookService.class).getAll()) {
+                assertThat(membership.owner(ebook.getId())).isEqualTo(membership.self());
+                stored++;
+            }
+        }
+        assertThat(stored).isEqualTo(total);
+        assertThat(nodes.stream().flatMap(context -> context.getBean(EbookService.class).getAll().stream())
+                .map(Ebook::getId).collect(Collectors.toSet())).hasSize(total);
+    }
+
+    private HttpResponse<String> send(String method, String url, String body, String ifMatch) throws Exception {
+        HttpRequest.Builder request = HttpRequest.newBuilder(URI.create(url))
+                .method(method, body == null ? HttpRequest.BodyPublishers.noBody() : HttpRequest.BodyPublishers.ofString(body))
+                .header("Content-Type", "application/json");
+        if (ifMatch != null) request.header("If-Match", ifMatch);
+        return httpClient.send(request.build(), HttpResponse.BodyHandlers.ofString());
+    }
+}
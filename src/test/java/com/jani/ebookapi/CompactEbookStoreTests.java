@@ -0,0 +1,300 @@
+package com.jani.ebookapi;
+
+import com.jani.ebookapi.model.Ebook;
+import com.jani.ebookapi.service.EbookService;
+import com.jani.ebookapi.service.RandomIdGenerator;
+import com.jani.ebookapi.store.CompactEbookStore;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class CompactEbookStoreTests {
+
+    private CompactEbookStore ebookStore;
+    private EbookService ebookService;
+
+    @BeforeEach
+    void setUp() {
+        ebookStore = new CompactEbookStore();
+        ebookService = new EbookService(ebookStore);
+    }
+
+    @Test
+    void shouldRoundTripEbookFields() {
+        // Arrange
+        Ebook ebook = ebookService.add(new Ebook(null, "Émile Zola", "Thérèse Raquin – 日本語", "epub"));
+
+        // Act
+        Ebook retrievedEbook = ebookService.get(ebook.getId());
+
+        // Assert
+        assertEquals(ebook, retrievedEbook);
+        assertNotSame(ebook, retrievedEbook);
+    }
+
+    @Test
+    void shouldRoundTripMissingFields() {
+        // Arrange
+        Ebook ebook = ebookService.add(new Ebook(null, null, null, null));
+
+        // Act
+        Ebook retrievedEbook = ebookService.get(ebook.getId());
+
+        // Assert
+        assertEquals(ebook, retrievedEbook);
+    }
+
+    @Test
+    void shouldNotFindIdsThatAreNotUuids() {
+        // Arrange
+        Ebook ebook = ebookService.add(new Ebook(null, "testAuthor", "testTitle", "testFormat"));
+
+        // Act & Assert
+        assertNull(ebookService.get("not-a-uuid"));
+        assertNull(ebookService.get(ebook.getId().toUpperCase()));
+        assertNull(ebookService.get(unicodeDigits(ebook.getId())));
+        assertNull(ebookService.remove(unicodeDigits(ebook.getId())));
+        assertEquals(ebook, ebookService.get(ebook.getId()));
+        assertNull(ebookService.remove("not-a-uuid"));
+        assertThrows(IllegalArgumentException.class,
+                () -> ebookStore.putIfAbsent("not-a-uuid", new Ebook(null, "testAuthor", "testTitle", "testFormat")));
+    }
+
+    @Test
+    void shouldScanInSameOrderAsStringIds() {
+        // Arrange
+        List<String> ids = new ArrayList<>();
+        for (int i = 0; i < 500; i++) {
+            ids.add(ebookService.add(new Ebook(null, "testAuthor", "testTitle", "testFormat")).getId());
+        }
+        ids.sort(null);
+
+        // Act
+        List<String> firstPage = new ArrayList<>();
+        ebookStore.scan(null, 250).forEach(ebook -> firstPage.add(ebook.getId()));
+        List<String> secondPage = new ArrayList<>();
+        ebookStore.scan(firstPage.get(249), 500).forEach(ebook -> secondPage.add(ebook.getId()));
+
+        // Assert
+        assertEquals(ids.subList(0, 250), firstPage);
+        assertEquals(ids.subList(250, 500), secondPage);
+    }
+
+    // random ids split leaves in the middle, time-ordered ids append to the last one
+    @ParameterizedTest
+    @ValueSource(booleans = {false, true})
+    void shouldFindStableEbooksWhileLeavesSplit(boolean randomIds) throws Exception {
+        // Arrange
+        if (randomIds) ebookService = new EbookService(ebookStore, new RandomIdGenerator());
+        List<String> stableIds = new ArrayList<>();
+        for (int i = 0; i < 2_000; i++) {
+            stableIds.add(ebookService.add(new Ebook(null, "testAuthor", "testTitle" + i, "testFormat")).getId());
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+
+        // Act: readers look up and iterate while writers keep splitting leaves
+        List<Future<?>> writers = new ArrayList<>();
+        for (int t = 0; t < 2; t++) {
+            writers.add(executor.submit(() -> {
+                for (int i = 0; i < 20_000; i++) {
+                    ebookService.add(new Ebook(null, "testAuthor", "testTitle", "testFormat"));
+                }
+            }));
+        }
+        int misses = 0;
+        int duplicates = 0;
+        while (!writers.stream().allMatch(Future::isDone)) {
+            for (String id : stableIds) {
+                if (ebookService.get(id) == null) misses++;
+            }
+            Set<String> seen = new HashSet<>();
+            for (Ebook ebook : ebookService.getAll()) {
+                if (!seen.add(ebook.getId())) duplicates++;
+            }
+            if (!seen.containsAll(stableIds)) misses++;
+        }
+        for (Future<?> writer : writers) {
+            writer.get(60, TimeUnit.SECONDS);
+        }
+        executor.shutdown();
+
+        // Assert
+        assertEquals(0, misses);
+        assertEquals(0, duplicates);
+        assertEquals(42_000, ebookStore.size());
+        assertEquals(42_000, ebookService.getAll().stream().map(Ebook::getId).distinct().count());
+    }
+
+    @Test
+    void shouldFindStableEbooksWhileLeavesMerge() throws Exception {
+        // Arrange: stable ebooks spread over leaves the writers empty again
+        ebookService = new EbookService(ebookStore, new RandomIdGenerator());
+        List<String> stableIds = new ArrayList<>();
+        List<String> removedIds = new ArrayList<>();
+        for (int i = 0; i < 20_000; i++) {
+            String id = ebookService.add(new Ebook(null, "testAuthor", "testTitle" + i, "testFormat")).getId();
+            (i % 20 == 0 ? stableIds : removedIds).add(id);
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+
+        // Act: readers look up and iterate while writers remove everything around the stable ebooks
+        List<Future<?>> writers = new ArrayList<>();
+        for (int t = 0; t < 2; t++) {
+            List<String> ids = removedIds.subList(t * removedIds.size() / 2, (t + 1) * removedIds.size() / 2);
+            writers.add(executor.submit(() -> ids.forEach(ebookService::remove)));
+        }
+        int misses = 0;
+        int duplicates = 0;
+        while (!writers.stream().allMatch(Future::isDone)) {
+            for (String id : stableIds) {
+                if (ebookService.get(id) == null) misses++;
+            }
+            Set<String> seen = new HashSet<>();
+            for (Ebook ebook : ebookService.getAll()) {
+                if (!seen.add(ebook.getId())) duplicates++;
+            }
+            if (!seen.containsAll(stableIds)) misses++;
+        }
+        for (Future<?> writer : writers) {
+            writer.get(60, TimeUnit.SECONDS);
+        }
+        executor.shutdown();
+
+        // Assert
+        assertEquals(0, misses);
+        assertEquals(0, duplicates);
+        assertEquals(new HashSet<>(stableIds), new HashSet<>(ebookService.getAll().stream().map(Ebook::getId).toList()));
+    }
+
+    @Test
+    void shouldGiveBackLeavesOnceEbooksAreRemoved() {
+        // Arrange
+        ebookService = new EbookService(ebookStore, new RandomIdGenerator());
+        List<String> ids = new ArrayList<>();
+        for (int i = 0; i < 10_000; i++) {
+            ids.add(ebookService.add(new Ebook(null, "testAuthor", "testTitle" + i, "testFormat")).getId());
+        }
+        long filled = ebookStore.estimatedBytes();
+
+        // Act
+        for (int i = 0; i < ids.size(); i++) {
+            if (i % 20 != 0) ebookService.remove(ids.get(i));
+        }
+        long thinned = ebookStore.estimatedBytes();
+        for (int i = 0; i < ids.size(); i += 20) {
+            ebookService.remove(ids.get(i));
+        }
+        long removed = ebookStore.estimatedBytes();
+        for (int i = 0; i < 1_000; i++) {
+            ebookService.add(new Ebook(null, "testAuthor", "testTitle" + i, "testFormat"));
+        }
+        ebookService.clearData();
+        long cleared = ebookStore.estimatedBytes();
+
+        // Assert: what is left of the leaves moved together, and only the dictionaries are left once all is gone
+        assertTrue(thinned < filled / 16, "estimated " + thinned + " of " + filled);
+        assertTrue(removed < 1_000, "estimated " + removed);
+        assertTrue(cleared < 1_000, "estimated " + cleared);
+        assertEquals(0, ebookStore.size());
+        assertNull(ebookService.get(ids.get(0)));
+        assertEquals(0, ebookStore.scan(null, 10).size());
+    }
+
+    @Test
+    void shouldTrackSizeThroughUpdatesAndRemoves() {
+        // Arrange
+        Ebook ebook1 = ebookService.add(new Ebook(null, "testAuthor1", "testTitle1", "testFormat"));
+        Ebook ebook2 = ebookService.add(new Ebook(null, "testAuthor2", "testTitle2", "testFormat"));
+
+        // Act
+        ebookService.update(ebook1.getId(), new Ebook(null, "testAuthorNew", "testTitleNew", "testFormatNew"));
+        ebookService.remove(ebook2.getId());
+
+        // Assert
+        assertEquals(1, ebookStore.size());
+        assertEquals(1, ebookService.getAll().size());
+        assertEquals("testAuthorNew", ebookService.getAll().iterator().next().getAuthor());
+        assertEquals(ebook1.getId(), ebookService.getAll().iterator().next().getId());
+    }
+
+    @Test
+    void shouldApplyCompareAndSetOnStoredValues() {
+        // Arrange
+        Ebook ebook = ebookService.add(new Ebook(null, "testAuthor", "testTitle", "testFormat"));
+        Ebook stale = new Ebook(ebook.getId(), "testAuthor", "staleTitle", "testFormat");
+
+        // Act & Assert
+        assertFalse(ebookService.update(ebook.getId(), stale, new Ebook(null, "a", "b", "c")));
+        assertTrue(ebookService.update(ebook.getId(), ebookService.get(ebook.getId()), new Ebook(null, "a", "b", "c")));
+        assertEquals("b", ebookService.get(ebook.getId()).getTitle());
+    }
+
+    @Test
+    void shouldNotLoseConcurrentAtomicUpdates() throws Exception {
+        // Arrange
+        String id = ebookService.add(new Ebook(null, "testAuthor", "0", "testFormat")).getId();
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+
+        // Act
+        List<Future<?>> futures = new ArrayList<>();
+        for (int t = 0; t < 8; t++) {
+            futures.add(executor.submit(() -> {
+                for (int i = 0; i < 1_000; i++) {
+                    ebookStore.computeIfPresent(id, (key, existing) -> new Ebook(null, existing.getAuthor(),
+                            String.valueOf(Integer.parseInt(existing.getTitle()) + 1), existing.getFormat()));
+                    ebookService.add(new Ebook(null, "testAuthor", UUID.randomUUID().toString(), "testFormat"));
+                }
+            }));
+        }
+        for (Future<?> future : futures) {
+            future.get(60, TimeUnit.SECONDS);
+        }
+        executor.shutdown();
+
+        // Assert
+        assertEquals("8000", ebookService.get(id).getTitle());
+        assertEquals(8_001, ebookStore.size());
+    }
+
+    @Test
+    void shouldEstimateHeapFootprint() {
+        // Arrange
+        List<Ebook> ebooks = new ArrayList<>();
+        for (int i = 0; i < 10_000; i++) {
+            ebooks.add(new Ebook(null, "testAuthor" + i % 100, "testTitle" + i, "epub"));
+        }
+
+        // Act
+        long empty = ebookStore.estimatedBytes();
+        ebookService.addAll(ebooks);
+        long filled = ebookStore.estimatedBytes();
+
+        // Assert
+        assertTrue(empty < 1_000);
+        assertTrue(filled > 10_000L * 40 && filled < 10_000L * 150, "estimated " + filled);
+    }
+
+    // Arabic-Indic digits and fullwidth letters, which Character.digit reads as the same hex digits
+    static String unicodeDigits(String ebookId) {
+        StringBuilder converted = new StringBuilder();
+        for (char c : ebookId.toCharArray()) {
+            if (c >= '0' && c <= '9') converted.append((char) ('\u0660' + c - '0'));
+            else if (c >= 'a' && c <= 'f') converted.append((char) ('\uff41' + c - 'a'));
+            else converted.append(c);
+        }
+        return converted.toString();
+    }
+}
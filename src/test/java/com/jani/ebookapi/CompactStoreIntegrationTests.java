@@ -0,0 +1,8 @@
+package com.jani.ebookapi;
+
+import org.springframework.test.context.TestPropertySource;
+
+// runs the whole API suite against the compact store
+@TestPropertySource(properties = "ebook.store.type=compact")
+public class CompactStoreIntegrationTests extends EbookIntegrationTests {
+}
@@ -0,0 +1,199 @@
+package com.jani.ebookapi;
+
+import com.jani.ebookapi.model.Ebook;
+import com.jani.ebookapi.service.EbookService;
+import com.jani.ebookapi.store.ConcurrentEbookStore;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ConcurrentEbookStoreTests {
+
+    private static final int THREADS = 16;
+    private static final int OPERATIONS_PER_THREAD = 2_000;
+
+    private ConcurrentEbookStore ebookStore;
+    private EbookService ebookService;
+
+    @BeforeEach
+    void setUp() {
+        ebookStore = new ConcurrentEbookStore();
+        ebookService = new EbookService(ebookStore);
+    }
+
+    @Test
+    void shouldNotLoseConcurrentAdds() throws Exception {
+        // Arrange
+        List<Ebook> added = new CopyOnWriteArrayList<>();
+
+        // Act
+        runConcurrently(() -> {
+            for (int i = 0; i < OPERATIONS_PER_THREAD; i++) {
+                added.add(ebookService.add(new Ebook(null, "testAuthor", "testTitle" + i, "testFormat")));
+            }
+        });
+
+        // Assert
+        Set<String> ids = new HashSet<>();
+        added.forEach(ebook -> ids.add(ebook.getId()));
+        assertEquals(THREADS * OPERATIONS_PER_THREAD, ids.size());
+        assertEquals(THREADS * OPERATIONS_PER_THREAD, ebookStore.size());
+        assertEquals(THREADS * OPERATIONS_PER_THREAD, ebookService.getAll().size());
+    }
+
+    @Test
+    void shouldNotLoseConcurrentAtomicUpdates() throws Exception {
+        // Arrange: every thread increments the counter kept in the title of the same few ebooks
+        List<String> ids = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            ids.add(ebookService.add(new Ebook(null, "testAuthor", "0", "testFormat")).getId());
+        }
+
+        // Act
+        runConcurrently(() -> {
+            for (int i = 0; i < OPERATIONS_PER_THREAD; i++) {
+                String id = ids.get(i % ids.size());
+                ebookStore.computeIfPresent(id, (key, existing) -> increment(existing));
+            }
+        });
+
+        // Assert
+        int expectedPerEbook = THREADS * OPERATIONS_PER_THREAD / ids.size();
+        for (String id : ids) {
+            assertEquals(String.valueOf(expectedPerEbook), ebookService.get(id).getTitle());
+        }
+    }
+
+    @Test
+    void shouldNotLoseConcurrentCompareAndSetUpdates() throws Exception {
+        // Arrange
+        String id = ebookService.add(new Ebook(null, "testAuthor", "0", "testFormat")).getId();
+
+        // Act: optimistic read-modify-write loop through the service
+        runConcurrently(() -> {
+            for (int i = 0; i < OPERATIONS_PER_THREAD; i++) {
+                Ebook existing;
+                do {
+                    existing = ebookService.get(id);
+                } while (!ebookService.update(id, existing, increment(existing)));
+            }
+        });
+
+        // Assert
+        assertEquals(String.valueOf(THREADS * OPERATIONS_PER_THREAD), ebookService.get(id).getTitle());
+    }
+
+    @Test
+    void shouldKeepStoreConsistentUnderMixedWrites() throws Exception {
+        // Arrange
+        List<String> ids = new ArrayList<>();
+        for (int i = 0; i < THREADS; i++) {
+            ids.add(ebookService.add(new Ebook(null, "testAuthor", "testTitle", "testFormat")).getId());
+        }
+
+        // Act: each thread replaces every ebook and removes one of them once
+        ConcurrentLinkedQueue<Ebook> removed = new ConcurrentLinkedQueue<>();
+        runConcurrently(() -> {
+            for (int i = 0; i < OPERATIONS_PER_THREAD; i++) {
+                ebookService.update(ids.get(i % ids.size()), new Ebook(null, "testAuthorNew", "testTitleNew", "testFormatNew"));
+            }
+            for (String id : ids) {
+                Ebook ebook = ebookService.remove(id);
+                if (ebook != null) removed.add(ebook);
+            }
+        });
+
+        // Assert: every ebook was removed exactly once and updates never resurrected one
+        assertEquals(ids.size(), removed.size());
+        assertEquals(0, ebookStore.size());
+        for (String id : ids) {
+            assertNull(ebookService.update(id, new Ebook(null, "testAuthor", "testTitle", "testFormat")));
+        }
+    }
+
+    @Test
+    void shouldScanInIdOrderWhileWritersInsert() throws Exception {
+        // Arrange
+        for (int i = 0; i < 1_000; i++) {
+            ebookService.add(new Ebook(null, "testAuthor", "testTitle", "testFormat"));
+        }
+        List<String> existingIds = new ArrayList<>();
+        ebookStore.scan(null, Integer.MAX_VALUE).forEach(ebook -> existingIds.add(ebook.getId()));
+
+        // Act: page through with a cursor while other threads keep adding
+        List<String> scannedIds = new ArrayList<>();
+        ExecutorService background = Executors.newSingleThreadExecutor();
+        Future<?> writers = background.submit(() -> runConcurrently(() -> {
+            for (int i = 0; i < 200; i++) {
+                ebookService.add(new Ebook(null, "testAuthor", "testTitle", "testFormat"));
+            }
+        }));
+        String cursor = null;
+        List<Ebook> page;
+        do {
+            page = ebookStore.scan(cursor, 7);
+            page.forEach(ebook -> scannedIds.add(ebook.getId()));
+            if (!page.isEmpty()) cursor = page.get(page.size() - 1).getId();
+        } while (!page.isEmpty());
+        writers.get(60, TimeUnit.SECONDS);
+        background.shutdown();
+
+        // Assert: strictly ascending, and nothing that existed before the scan was skipped
+        for (int i = 1; i < scannedIds.size(); i++) {
+            assertTrue(scannedIds.get(i - 1).compareTo(scannedIds.get(i)) < 0);
+        }
+        assertTrue(scannedIds.containsAll(existingIds));
+    }
+
+    private static Ebook increment(Ebook ebook) {
+        int count = Integer.parseInt(ebook.getTitle());
+        return new Ebook(ebook.getId(), ebook.getAuthor(), String.valueOf(count + 1), ebook.getFormat());
+    }
+
+    private static Void runConcurrently(Runnable task) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        CountDownLatch start = new CountDownLatch(1);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int i = 0; i < THREADS; i++) {
+                futures.add(executor.submit(() -> {
+                    start.await();
+                    task.run();
+                    return null;
+                }));
+            }
+            start.countDown();
+            for (Future<?> future : futures) {
+                future.get(60, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        return null;
+    }
+
+    @Test
+    void shouldEstimateHeapFootprint() {
+        // Arrange
+        List<Ebook> ebooks = new ArrayList<>();
+        for (int i = 0; i < 10_000; i++) {
+            ebooks.add(new Ebook(null, "testAuthor" + i % 100, "testTitle" + i, "epub"));
+        }
+
+        // Act
+        long empty = ebookStore.estimatedBytes();
+        ebookService.addAll(ebooks);
+        long filled = ebookStore.estimatedBytes();
+
+        // Assert
+        assertTrue(empty < 1_000);
+        assertTrue(filled > 10_000L * 200 && filled < 10_000L * 400, "estimated " + filled);
+    }
+}
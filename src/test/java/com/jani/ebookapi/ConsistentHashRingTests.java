@@ -0,0 +1,74 @@
+package com.jani.ebookapi;
+
+import com.jani.ebookapi.cluster.ConsistentHashRing;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ConsistentHashRingTests {
+
+    private static final List<String> NODES = List.of("http://127.0.0.1:8081", "http://127.0.0.1:8082", "http://127.0.0.1:8083");
+
+    @Test
+    void shouldSpreadIdsEvenlyOverNodes() {
+        // Arrange
+        ConsistentHashRing ring = new ConsistentHashRing(NODES, 128);
+        int ids = 30_000;
+
+        // Act
+        Map<String, Integer> owned = new HashMap<>();
+        for (int i = 0; i < ids; i++) {
+            owned.merge(ring.owner(UUID.randomUUID().toString()), 1, Integer::sum);
+        }
+
+        // Assert: within a fifth of an even share
+        assertEquals(NODES.size(), owned.size());
+        for (int count : owned.values()) {
+            assertTrue(Math.abs(count - ids / NODES.size()) < ids / NODES.size() / 5, owned.toString());
+        }
+    }
+
+    @Test
+    void shouldOnlyMoveIdsToAddedNode() {
+        // Arrange
+        ConsistentHashRing before = new ConsistentHashRing(NODES.subList(0, 2), 128);
+        ConsistentHashRing after = new ConsistentHashRing(NODES, 128);
+        int ids = 30_000;
+
+        // Act
+        int moved = 0;
+        for (int i = 0; i < ids; i++) {
+            String id = UUID.randomUUID().toString();
+            if (!before.owner(id).equals(after.owner(id))) {
+                assertEquals(NODES.get(2), after.owner(id));
+                moved++;
+            }
+        }
+
+        // Assert: about a third of the ids, the new node's share
+        assertTrue(moved > ids / 4 && moved < ids * 2 / 5, "moved " + moved);
+    }
+
+    @Test
+    void shouldBuildSameRingRegardlessOfMemberOrder() {
+        // Arrange
+        ConsistentHashRing ring = new ConsistentHashRing(NODES, 16);
+        List<String> reversedNodes = new ArrayList<>(NODES);
+        Collections.reverse(reversedNodes);
+        ConsistentHashRing reversed = new ConsistentHashRing(reversedNodes, 16);
+
+        // Act & Assert
+        assertEquals(ring.nodes(), reversed.nodes());
+        for (int i = 0; i < 1000; i++) {
+            String id = UUID.randomUUID().toString();
+            assertEquals(ring.owner(id), reversed.owner(id));
+        }
+    }
+}
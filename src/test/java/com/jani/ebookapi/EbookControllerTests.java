@@ -2,7 +2,11 @@ package com.jani.ebookapi;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.jani.ebookapi.model.Ebook;
+import com.jani.ebookapi.service.EbookDelta;
 import com.jani.ebookapi.service.EbookService;
+import com.jani.ebookapi.service.EbookVersionConflictException;
+import com.jani.ebookapi.web.EbookController;
+import com.jani.ebookapi.web.EbookJsonCache;
 import org.hamcrest.Matchers;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.params.ParameterizedTest;
@@ -11,8 +15,10 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
 import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.annotation.Import;
 import org.springframework.http.MediaType;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
 import org.springframework.test.web.servlet.result.MockMvcResultMatchers;
 
 import java.util.*;
@@ -20,13 +26,17 @@ import java.util.*;
 import static org.hamcrest.Matchers.containsString;
 import static org.hamcrest.collection.IsCollectionWithSize.hasSize;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.*;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
 
 
-@WebMvcTest
+@WebMvcTest(EbookController.class)
 @AutoConfigureMockMvc
+@Import(EbookJsonCache.class)
 class EbookControllerTests {
 
     @Autowired
@@ -137,6 +147,170 @@ class EbookControllerTests {
                 .andExpect(jsonPath("$.data[0].*", hasSize(4)));
     }
 
+    @Test
+    void shouldGetFirstPageOfEbooksWithNextCursor() throws Exception {
+
+        // Arrange
+        Ebook ebook1 = new Ebook("id1", "testAuthor1", "testTitle1", "testFormat1");
+        Ebook ebook2 = new Ebook("id2", "testAuthor2", "testTitle2", "testFormat2");
+        Ebook ebook3 = new Ebook("id3", "testAuthor3", "testTitle3", "testFormat3");
+        when(ebookService.getPage(null, 3)).thenReturn(Arrays.asList(ebook1, ebook2, ebook3));
+
+        // Act & Assert
+        this.mockMvc.perform(get("/ebooks?limit=2"))
+                .andExpect(status().isOk())
+                .andExpect(header().string("Content-Type", "application/json"))
+                .andExpect(jsonPath("$.data", hasSize(2)))
+                .andExpect(jsonPath("$.data[0].id").value("id1"))
+                .andExpect(jsonPath("$.data[1].id").value("id2"))
+                .andExpect(jsonPath("$.next").isString());
+    }
+
+    @Test
+    void shouldGetNextPageOfEbooksFromCursor() throws Exception {
+
+        // Arrange
+        Ebook ebook1 = new Ebook("id1", "testAuthor1", "testTitle1", "testFormat1");
+        Ebook ebook2 = new Ebook("id2", "testAuthor2", "testTitle2", "testFormat2");
+        Ebook ebook3 = new Ebook("id3", "testAuthor3", "testTitle3", "testFormat3");
+        when(ebookService.getPage(null, 3)).thenReturn(Arrays.asList(ebook1, ebook2, ebook3));
+        when(ebookService.getPage("id2", 3)).thenReturn(Arrays.asList(ebook3));
+        String cursor = objectMapper.readTree(this.mockMvc.perform(get("/ebooks?limit=2"))
+                .andReturn().getResponse().getContentAsString()).get("next").asText();
+
+        // Act & Assert
+        this.mockMvc.perform(get("/ebooks?limit=2&cursor=" + cursor))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.data", hasSize(1)))
+                .andExpect(jsonPath("$.data[0].id").value("id3"))
+                .andExpect(jsonPath("$.next").doesNotExist());
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {
+            "limit=0",                          // empty page
+            "limit=-1",                         // negative page size
+            "limit=abc",                        // non-numeric page size
+            "cursor=***",                       // malformed cursor
+    })
+    void shouldRejectGetEbooksWithIncorrectPaging(String query) throws Exception {
+
+        // Act & Assert
+        this.mockMvc.perform(get("/ebooks?" + query))
+                .andExpect(status().isBadRequest());
+        verifyNoInteractions(ebookService);
+    }
+
+    @Test
+    void shouldFilterEbooksByAuthorAndFormat() throws Exception {
+
+        // Arrange
+        Ebook ebook = new Ebook("id1", "testAuthor", "testTitle", "testFormat");
+        when(ebookService.find("testAuthor", "testFormat", null, Integer.MAX_VALUE)).thenReturn(List.of(ebook));
+
+        // Act & Assert
+        this.mockMvc.perform(get("/ebooks?author=testAuthor&format=testFormat"))
+                .andExpect(status().isOk())
+                .andExpect(header().string("Content-Type", "application/json"))
+                .andExpect(jsonPath("$.data", hasSize(1)))
+                .andExpect(jsonPath("$.data[0].author").value("testAuthor"))
+                .andExpect(jsonPath("$.*", hasSize(1)));
+        verify(ebookService, never()).getAll();
+    }
+
+    @Test
+    void shouldGetChangesSinceSequence() throws Exception {
+
+        // Arrange
+        Ebook ebook = new Ebook("id1", "testAuthor", "testTitle", "testFormat");
+        when(ebookService.changesSince(5, 2)).thenReturn(new EbookDelta(8, List.of(ebook), List.of("id2"), true));
+
+        // Act & Assert
+        this.mockMvc.perform(get("/ebooks?since=5&limit=2"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.sequence").value(8))
+                .andExpect(jsonPath("$.data", hasSize(1)))
+                .andExpect(jsonPath("$.data[0].id").value("id1"))
+                .andExpect(jsonPath("$.deleted[0]").value("id2"))
+                .andExpect(jsonPath("$.more").value(true));
+        verify(ebookService, never()).getAll();
+    }
+
+    @Test
+    void shouldAnswerGoneForChangesNoLongerKnown() throws Exception {
+
+        // Arrange
+        when(ebookService.changesSince(5, EbookController.MAX_PAGE_SIZE)).thenReturn(null);
+
+        // Act & Assert
+        this.mockMvc.perform(get("/ebooks?since=5"))
+                .andExpect(status().isGone());
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {
+            "since=-1",                         // negative sequence
+            "since=abc",                        // non-numeric sequence
+            "since=0&limit=0",                  // empty result limit
+    })
+    void shouldRejectGetChangesWithIncorrectParameters(String query) throws Exception {
+
+        // Act & Assert
+        this.mockMvc.perform(get("/ebooks?" + query))
+                .andExpect(status().isBadRequest());
+        verifyNoInteractions(ebookService);
+    }
+
+    @Test
+    void shouldSearchEbooksByTitleWithLimit() throws Exception {
+
+        // Arrange
+        Ebook ebook = new Ebook("id1", "testAuthor", "testTitle", "testFormat");
+        when(ebookService.search("test", 5)).thenReturn(List.of(ebook));
+
+        // Act & Assert
+        this.mockMvc.perform(get("/ebooks/search?q=test&limit=5"))
+                .andExpect(status().isOk())
+                .andExpect(header().string("Content-Type", "application/json"))
+                .andExpect(jsonPath("$.data", hasSize(1)))
+                .andExpect(jsonPath("$.data[0].title").value("testTitle"));
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {
+            "/ebooks/search",                   // missing query
+            "/ebooks/search?q=test&limit=0",    // empty result limit
+    })
+    void shouldRejectSearchWithIncorrectParameters(String uri) throws Exception {
+
+        // Act & Assert
+        this.mockMvc.perform(get(uri))
+                .andExpect(status().isBadRequest());
+        verifyNoInteractions(ebookService);
+    }
+
+    @Test
+    void shouldStreamAllEbooksInDataEnvelope() throws Exception {
+
+        // Arrange
+        Ebook ebook1 = new Ebook("id1", "testAuthor1", "testTitle1", "testFormat1");
+        Ebook ebook2 = new Ebook("id2", "testAuthor2", "testTitle2", "testFormat2");
+        when(ebookService.getAll()).thenReturn(Arrays.asList(ebook1, ebook2));
+
+        // Act
+        MvcResult result = this.mockMvc.perform(get("/ebooks?stream=true"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        // Assert
+        this.mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isOk())
+                .andExpect(header().string("Content-Type", "application/json"))
+                .andExpect(jsonPath("$.data", hasSize(2)))
+                .andExpect(jsonPath("$.data[1].author").value("testAuthor2"))
+                .andExpect(jsonPath("$.*", hasSize(1)));
+    }
+
     @Test
     void shouldGetEbookByIdWithMatchingId() throws Exception {
 
@@ -158,6 +332,26 @@ class EbookControllerTests {
                 .andExpect(jsonPath("$.*", hasSize(3)));
     }
 
+    @Test
+    void shouldReturnNotModifiedForMatchingEbookVersion() throws Exception {
+
+        // Arrange
+        String id = UUID.randomUUID().toString();
+        Ebook returnEbook = new Ebook(id, "testAuthor", "testTitle", "testFormat");
+        returnEbook.setVersion(7);
+        when(ebookService.get(id)).thenReturn(returnEbook);
+
+        // Act & Assert
+        this.mockMvc.perform(get("/ebooks/"+id))
+                .andExpect(status().isOk())
+                .andExpect(header().string("ETag", "\"v7\""));
+        this.mockMvc.perform(get("/ebooks/"+id).header("If-None-Match", "\"v7\""))
+                .andExpect(status().isNotModified())
+                .andExpect(content().string(""));
+        this.mockMvc.perform(get("/ebooks/"+id).header("If-None-Match", "\"v6\""))
+                .andExpect(status().isOk());
+    }
+
     @Test
     void shouldNotGetEbookByIdWithoutMatchingId() throws Exception {
 
@@ -180,7 +374,7 @@ class EbookControllerTests {
         update.setFormat("testFormat");
         update.setTitle("testTitle");
         update.setAuthor("testAuthor");
-        when(ebookService.get(id)).thenReturn(null);
+        when(ebookService.update(eq(id), any(Ebook.class))).thenReturn(null);
 
         // Act & Assert
         this.mockMvc.perform(put("/ebooks/"+id)
@@ -221,19 +415,12 @@ class EbookControllerTests {
 
         // Arrange
         String id = UUID.randomUUID().toString();
-        Ebook existingEbook = new Ebook();
-        existingEbook.setId(id);
-        existingEbook.setFormat("testFormat");
-        existingEbook.setTitle("testTitle");
-        existingEbook.setAuthor("testAuthor");
-
         Ebook updateForEbook = new Ebook();
         updateForEbook.setFormat("testFormatNew");
         updateForEbook.setTitle("testTitleNew");
         updateForEbook.setAuthor("testAuthorNew");
 
-        when(ebookService.get(id)).thenReturn(existingEbook);
-        // no need to mock void ebookService.update
+        when(ebookService.update(eq(id), any(Ebook.class))).thenAnswer(invocation -> invocation.getArgument(1));
 
         // Act & Assert
         this.mockMvc.perform(put("/ebooks/"+id)
@@ -246,6 +433,69 @@ class EbookControllerTests {
                 .andExpect(jsonPath("$.*", hasSize(3)));
     }
 
+    @Test
+    void shouldUpdateEbookOnlyIfMatchingVersion() throws Exception {
+
+        // Arrange
+        String id = UUID.randomUUID().toString();
+        Ebook updateForEbook = new Ebook(null, "testAuthorNew", "testTitleNew", "testFormatNew");
+        Ebook current = new Ebook(id, "testAuthor", "testTitle", "testFormat");
+        current.setVersion(7);
+        when(ebookService.get(id)).thenReturn(current);
+        when(ebookService.update(eq(id), eq(7L), any(Ebook.class))).thenAnswer(invocation -> {
+            Ebook updated = invocation.getArgument(2);
+            updated.setVersion(8);
+            return updated;
+        });
+        when(ebookService.update(eq(id), eq(6L), any(Ebook.class))).thenThrow(new EbookVersionConflictException(id, 6, 7));
+
+        // Act & Assert
+        this.mockMvc.perform(put("/ebooks/"+id).header("If-Match", "\"v7\"")
+                .content(objectMapper.writeValueAsString(updateForEbook))
+                .contentType(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk())
+                .andExpect(header().string("ETag", "\"v8\""))
+                .andExpect(jsonPath("$.title").value("testTitleNew"));
+        this.mockMvc.perform(put("/ebooks/"+id).header("If-Match", "\"v6\"")
+                .content(objectMapper.writeValueAsString(updateForEbook))
+                .contentType(MediaType.APPLICATION_JSON))
+                .andExpect(status().isPreconditionFailed())
+                .andExpect(content().string(""));
+        // one of several tags is enough, weak tags never match
+        this.mockMvc.perform(put("/ebooks/"+id).header("If-Match", "\"v5\", \"v7\"")
+                .content(objectMapper.writeValueAsString(updateForEbook))
+                .contentType(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk());
+        this.mockMvc.perform(put("/ebooks/"+id).header("If-Match", "W/\"v7\"")
+                .content(objectMapper.writeValueAsString(updateForEbook))
+                .contentType(MediaType.APPLICATION_JSON))
+                .andExpect(status().isPreconditionFailed());
+        verify(ebookService, never()).update(eq(id), any(Ebook.class));
+    }
+
+    @Test
+    void shouldDeleteEbookOnlyIfMatchingVersion() throws Exception {
+
+        // Arrange
+        String id = UUID.randomUUID().toString();
+        String missingId = UUID.randomUUID().toString();
+        when(ebookService.remove(id, 7L)).thenReturn(new Ebook(id, "testAuthor", "testTitle", "testFormat"));
+        when(ebookService.remove(id, 6L)).thenThrow(new EbookVersionConflictException(id, 6, 7));
+        when(ebookService.remove(missingId, 7L)).thenReturn(null);
+        when(ebookService.remove(id)).thenReturn(new Ebook(id, "testAuthor", "testTitle", "testFormat"));
+
+        // Act & Assert
+        this.mockMvc.perform(delete("/ebooks/"+id).header("If-Match", "\"v6\""))
+                .andExpect(status().isPreconditionFailed());
+        this.mockMvc.perform(delete("/ebooks/"+id).header("If-Match", "\"v7\""))
+                .andExpect(status().isOk());
+        this.mockMvc.perform(delete("/ebooks/"+missingId).header("If-Match", "\"v7\""))
+                .andExpect(status().isNotFound());
+        this.mockMvc.perform(delete("/ebooks/"+id).header("If-Match", "*"))
+                .andExpect(status().isOk());
+        verify(ebookService).remove(id);
+    }
+
     @Test
     void shouldNotDeleteEbookByIdWithoutMatchingId() throws Exception {
 
@@ -273,4 +523,32 @@ class EbookControllerTests {
                 .andExpect(status().isOk())
                 .andExpect(content().string(""));
     }
+
+    @Test
+    void shouldBulkAddValidLinesAndReportInvalidOnes() throws Exception {
+
+        // Arrange
+        String body = """
+                {"author": "testAuthor", "title": "testTitle1", "format": "testFormat"}
+                not json
+
+                {"author": "", "title": "testTitle3", "format": "testFormat"}
+                {"author": "testAuthor", "title": "testTitle4", "format": "testFormat"}
+                """;
+        when(ebookService.addAll(anyList())).thenAnswer(invocation -> invocation.getArgument(0));
+
+        // Act & Assert
+        this.mockMvc.perform(post("/ebooks/bulk")
+                .content(body)
+                .contentType("application/x-ndjson"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.inserted").value(2))
+                .andExpect(jsonPath("$.failed").value(2))
+                .andExpect(jsonPath("$.errors", hasSize(2)))
+                .andExpect(jsonPath("$.errors[0].line").value(2))
+                .andExpect(jsonPath("$.errors[1].line").value(4))
+                .andExpect(jsonPath("$.errors[1].error").value("author: must not be empty"));
+        verify(ebookService).addAll(argThat(ebooks -> ebooks.size() == 2
+                && ebooks.get(0).getTitle().equals("testTitle1") && ebooks.get(1).getTitle().equals("testTitle4")));
+    }
 }
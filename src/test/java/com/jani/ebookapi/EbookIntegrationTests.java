@@ -1,8 +1,11 @@
 package com.jani.ebookapi;
 
+import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.jani.ebookapi.model.Ebook;
 import com.jani.ebookapi.service.EbookService;
+import com.jani.ebookapi.web.EbookFormats;
+import com.jani.ebookapi.web.EbookJsonCache;
 import org.hamcrest.Matchers;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.Test;
@@ -13,10 +16,19 @@ import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMock
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.http.MediaType;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
 import org.springframework.test.web.servlet.result.MockMvcResultMatchers;
 
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
+import java.util.zip.GZIPInputStream;
 
+import static org.assertj.core.api.Assertions.assertThat;
 import static org.hamcrest.Matchers.*;
 import static org.hamcrest.collection.IsCollectionWithSize.hasSize;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
@@ -24,6 +36,7 @@ import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
 
 @SpringBootTest(classes = EbookApplication.class)
 @AutoConfigureMockMvc
@@ -38,6 +51,12 @@ public class EbookIntegrationTests {
     @Autowired
     private ObjectMapper objectMapper;
 
+    @Autowired
+    private EbookJsonCache jsonCache;
+
+    @Autowired
+    private EbookFormats ebookFormats;
+
     @AfterEach
     void cleanupTestData() {
         ebookService.clearData();
@@ -88,6 +107,73 @@ public class EbookIntegrationTests {
                 .andExpect(content().string(""));
     }
 
+    @ParameterizedTest
+    @ValueSource(strings = {"application/cbor", "application/x-jackson-smile"})
+    void shouldAddAndGetEbooksInBinaryFormat(String mediaType) throws Exception {
+        // Arrange
+        ObjectMapper binaryMapper = ebookFormats.mapper(MediaType.parseMediaType(mediaType));
+        byte[] payload = binaryMapper.writeValueAsBytes(new Ebook(null, "testAuthor", "testTitle", "testFormat"));
+
+        // Act
+        MvcResult created = this.mockMvc.perform(post("/ebooks")
+                        .content(payload)
+                        .contentType(mediaType)
+                        .accept(mediaType))
+                .andExpect(status().isCreated())
+                .andExpect(content().contentType(mediaType))
+                .andReturn();
+        Ebook added = binaryMapper.readValue(created.getResponse().getContentAsByteArray(), Ebook.class);
+        byte[] single = this.mockMvc.perform(get("/ebooks/" + added.getId()).accept(mediaType))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType(mediaType))
+                .andExpect(header().string("Vary", containsString("Accept")))
+                .andReturn().getResponse().getContentAsByteArray();
+        byte[] list = this.mockMvc.perform(get("/ebooks").accept(mediaType))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType(mediaType))
+                .andReturn().getResponse().getContentAsByteArray();
+
+        // Assert
+        assertThat(added.getTitle()).isEqualTo("testTitle");
+        assertThat(binaryMapper.readValue(single, Ebook.class)).isEqualTo(new Ebook(null, "testAuthor", "testTitle", "testFormat"));
+        assertThat(binaryMapper.readTree(list).get("data").get(0).get("id").asText()).isEqualTo(added.getId());
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"application/cbor", "application/x-jackson-smile"})
+    void shouldNotAddEbookWithIncorrectBinaryPayload(String mediaType) throws Exception {
+        // Arrange: the same mistakes as in JSON
+        ObjectMapper binaryMapper = ebookFormats.mapper(MediaType.parseMediaType(mediaType));
+        byte[] extraField = binaryMapper.writeValueAsBytes(
+                Map.of("author", "testAuthor", "title", "testTitle", "format", "testFormat", "testField", "testValue"));
+        byte[] emptyFields = binaryMapper.writeValueAsBytes(new Ebook(null, "", "", ""));
+
+        // Act & Assert
+        this.mockMvc.perform(post("/ebooks").content(extraField).contentType(mediaType))
+                .andExpect(status().isBadRequest());
+        this.mockMvc.perform(post("/ebooks").content(emptyFields).contentType(mediaType))
+                .andExpect(status().isBadRequest());
+        this.mockMvc.perform(post("/ebooks").content("not cbor".getBytes(StandardCharsets.UTF_8)).contentType(mediaType))
+                .andExpect(status().isBadRequest());
+        assertThat(ebookService.getAll()).isEmpty();
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"*/*", "application/json, application/cbor", "application/cbor;q=0.5, application/json"})
+    void shouldServeJsonUnlessBinaryFormatIsPreferred(String accept) throws Exception {
+        // Arrange
+        Ebook ebook = ebookService.add(new Ebook(null, "testAuthor", "testTitle", "testFormat"));
+
+        // Act & Assert
+        this.mockMvc.perform(get("/ebooks/" + ebook.getId()).header("Accept", accept))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType(MediaType.APPLICATION_JSON))
+                .andExpect(jsonPath("$.title").value("testTitle"));
+        this.mockMvc.perform(get("/ebooks").header("Accept", accept))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType(MediaType.APPLICATION_JSON));
+    }
+
     @Test
     void shouldGetAllEbooksWithNoStoredEbooks() throws Exception {
         // Act & Assert
@@ -125,6 +211,235 @@ public class EbookIntegrationTests {
                 )));
     }
 
+    @Test
+    void shouldPageThroughAllEbooksWithCursors() throws Exception {
+        // Arrange
+        Set<String> ids = new HashSet<>();
+        for (int i = 0; i < 5; i++) {
+            ids.add(ebookService.add(new Ebook(null, "testAuthor" + i, "testTitle" + i, "testFormat" + i)).getId());
+        }
+
+        // Act
+        Set<String> pagedIds = new HashSet<>();
+        String cursor = null;
+        int pages = 0;
+        do {
+            String query = cursor == null ? "/ebooks?limit=2" : "/ebooks?limit=2&cursor=" + cursor;
+            JsonNode page = objectMapper.readTree(this.mockMvc.perform(get(query))
+                    .andExpect(status().isOk())
+                    .andReturn().getResponse().getContentAsString());
+            page.get("data").forEach(ebook -> pagedIds.add(ebook.get("id").asText()));
+            cursor = page.hasNonNull("next") ? page.get("next").asText() : null;
+            pages++;
+        } while (cursor != null);
+
+        // Assert
+        assertThat(pages).isEqualTo(3);
+        assertThat(pagedIds).isEqualTo(ids);
+    }
+
+    @Test
+    void shouldFilterEbooksByAuthorAndFormat() throws Exception {
+        // Arrange
+        ebookService.add(new Ebook(null, "testAuthor1", "testTitle1", "pdf"));
+        ebookService.add(new Ebook(null, "testAuthor1", "testTitle2", "epub"));
+        ebookService.add(new Ebook(null, "testAuthor2", "testTitle3", "pdf"));
+
+        // Act & Assert
+        this.mockMvc.perform(get("/ebooks?author=testAuthor1&format=pdf"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.data", hasSize(1)))
+                .andExpect(jsonPath("$.data[0].title").value("testTitle1"));
+        this.mockMvc.perform(get("/ebooks?format=pdf"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.data", hasSize(2)));
+    }
+
+    @Test
+    void shouldSearchEbooksByTitle() throws Exception {
+        // Arrange
+        ebookService.add(new Ebook(null, "testAuthor", "The Hobbit", "epub"));
+        ebookService.add(new Ebook(null, "testAuthor", "Dune", "epub"));
+
+        // Act & Assert
+        this.mockMvc.perform(get("/ebooks/search?q=hob"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.data", hasSize(1)))
+                .andExpect(jsonPath("$.data[0].title").value("The Hobbit"));
+    }
+
+    @Test
+    void shouldBulkAddEbooksInBatches() throws Exception {
+        // Arrange: more lines than one batch, with one invalid line in the middle
+        StringBuilder body = new StringBuilder();
+        for (int i = 0; i < 2_500; i++) {
+            if (i == 1_200) body.append("{\"author\": \"testAuthor\"}\n");
+            body.append("{\"author\": \"testAuthor\", \"title\": \"testTitle").append(i)
+                    .append("\", \"format\": \"testFormat\"}\n");
+        }
+
+        // Act & Assert
+        this.mockMvc.perform(post("/ebooks/bulk")
+                .content(body.toString())
+                .contentType("application/x-ndjson"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.inserted").value(2_500))
+                .andExpect(jsonPath("$.failed").value(1))
+                .andExpect(jsonPath("$.errors[0].line").value(1_201))
+                .andExpect(jsonPath("$.errors[0].error").value("format: must not be empty, title: must not be empty"));
+        assertThat(ebookService.getAll()).hasSize(2_500);
+        assertThat(ebookService.find("testAuthor", "testFormat", null, 10)).hasSize(10);
+        Set<String> ids = new HashSet<>();
+        ebookService.getAll().forEach(ebook -> ids.add(ebook.getId()));
+        assertThat(ids).hasSize(2_500);
+        assertThat(ids).allMatch(id -> UUID.fromString(id).version() == 7);
+    }
+
+    @Test
+    void shouldStreamAllEbooks() throws Exception {
+        // Arrange
+        ebookService.add(new Ebook(null, "testAuthor1", "testTitle1", "testFormat1"));
+        ebookService.add(new Ebook(null, "testAuthor2", "testTitle2", "testFormat2"));
+
+        // Act
+        MvcResult result = this.mockMvc.perform(get("/ebooks?stream=true"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        // Assert
+        this.mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isOk())
+                .andExpect(header().string("Content-Type", "application/json"))
+                .andExpect(jsonPath("$.data", hasSize(2)))
+                .andExpect(jsonPath("$.data", hasItem(hasEntry("title", "testTitle2"))));
+    }
+
+    @Test
+    void shouldExportAllEbooksAsNdjson() throws Exception {
+        // Arrange: more ebooks than one export page
+        for (int i = 0; i < 1_500; i++) {
+            ebookService.add(new Ebook(null, "testAuthor", "testTitle" + i, "testFormat"));
+        }
+
+        // Act
+        MvcResult result = this.mockMvc.perform(get("/ebooks/export"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        result = this.mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isOk())
+                .andExpect(header().string("Content-Type", "application/x-ndjson"))
+                .andExpect(header().doesNotExist("Content-Encoding"))
+                .andReturn();
+
+        // Assert
+        String[] lines = result.getResponse().getContentAsString().split("\n");
+        assertThat(lines).hasSize(1_500);
+        String previousId = "";
+        for (String line : lines) {
+            Ebook ebook = objectMapper.readValue(line, Ebook.class);
+            assertThat(ebook).isEqualTo(ebookService.get(ebook.getId()));
+            assertThat(ebook.getId()).isGreaterThan(previousId);
+            previousId = ebook.getId();
+        }
+    }
+
+    @Test
+    void shouldEndEveryExportedLineWithANewlineOnly() throws Exception {
+        // Arrange
+        Ebook first = ebookService.add(new Ebook(null, "testAuthor1", "testTitle1", "testFormat1"));
+        Ebook second = ebookService.add(new Ebook(null, "testAuthor2", "testTitle2", "testFormat2"));
+        List<Ebook> ordered = first.getId().compareTo(second.getId()) < 0 ? List.of(first, second) : List.of(second, first);
+
+        // Act
+        MvcResult result = this.mockMvc.perform(get("/ebooks/export"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        result = this.mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isOk())
+                .andReturn();
+
+        // Assert
+        assertThat(result.getResponse().getContentAsString()).isEqualTo(
+                objectMapper.writeValueAsString(ordered.get(0)) + "\n" + objectMapper.writeValueAsString(ordered.get(1)) + "\n");
+    }
+
+    @Test
+    void shouldExportAnEmptyCatalogAsAnEmptyBody() throws Exception {
+        // Act
+        MvcResult result = this.mockMvc.perform(get("/ebooks/export"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        result = this.mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isOk())
+                .andReturn();
+
+        // Assert
+        assertThat(result.getResponse().getContentAsByteArray()).isEmpty();
+    }
+
+    @Test
+    void shouldExportGzippedNdjsonWhenAccepted() throws Exception {
+        // Arrange
+        Ebook ebook = ebookService.add(new Ebook(null, "testAuthor", "testTitle", "testFormat"));
+
+        // Act
+        MvcResult result = this.mockMvc.perform(get("/ebooks/export").header("Accept-Encoding", "gzip, deflate"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        result = this.mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isOk())
+                .andExpect(header().string("Content-Encoding", "gzip"))
+                .andReturn();
+
+        // Assert
+        byte[] compressed = result.getResponse().getContentAsByteArray();
+        String content = new String(new GZIPInputStream(new ByteArrayInputStream(compressed)).readAllBytes(), StandardCharsets.UTF_8);
+        assertThat(content).isEqualTo(objectMapper.writeValueAsString(ebook) + "\n");
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {
+            "gzip;q=0",                         // explicitly refused
+            "gzip; q=0.000, deflate",
+            "identity",
+            "deflate, *;q=0",
+            "*, gzip;q=0",                      // the explicit entry wins over the wildcard
+            "br, gzipped",                      // only names containing gzip
+            "gzip;q=x",                         // malformed q-value
+    })
+    void shouldExportUncompressedUnlessGzipIsAccepted(String acceptEncoding) throws Exception {
+        // Arrange
+        Ebook ebook = ebookService.add(new Ebook(null, "testAuthor", "testTitle", "testFormat"));
+
+        // Act
+        MvcResult result = this.mockMvc.perform(get("/ebooks/export").header("Accept-Encoding", acceptEncoding))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        // Assert
+        this.mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isOk())
+                .andExpect(header().doesNotExist("Content-Encoding"))
+                .andExpect(content().string(objectMapper.writeValueAsString(ebook) + "\n"));
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"*", "GZIP;Q=0.5", "x-gzip", "deflate;q=1, gzip;q=0.1"})
+    void shouldExportGzippedForAnyAcceptingEncoding(String acceptEncoding) throws Exception {
+        // Arrange
+        ebookService.add(new Ebook(null, "testAuthor", "testTitle", "testFormat"));
+
+        // Act
+        MvcResult result = this.mockMvc.perform(get("/ebooks/export").header("Accept-Encoding", acceptEncoding))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        // Assert
+        this.mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isOk())
+                .andExpect(header().string("Content-Encoding", "gzip"));
+    }
+
     @Test
     void shouldGetEbookWithMatchingId() throws Exception {
         // Arrange
@@ -140,6 +455,121 @@ public class EbookIntegrationTests {
                 .andExpect(jsonPath("$.*", hasSize(3)));
     }
 
+    @Test
+    void shouldServeCachedJsonUntilEbookIsUpdated() throws Exception {
+        // Arrange
+        Ebook ebook = ebookService.add(new Ebook(null, "testAuthor", "testTitle", "testFormat"));
+        this.mockMvc.perform(get("/ebooks/" + ebook.getId())).andExpect(status().isOk());
+        long hits = jsonCache.hits();
+        long misses = jsonCache.misses();
+
+        // Act & Assert
+        this.mockMvc.perform(get("/ebooks/" + ebook.getId()))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType(MediaType.APPLICATION_JSON))
+                .andExpect(jsonPath("$.title").value("testTitle"))
+                .andExpect(jsonPath("$.id").doesNotExist());
+        assertThat(jsonCache.hits()).isEqualTo(hits + 1);
+        ebookService.update(ebook.getId(), new Ebook(null, "testAuthor", "updatedTitle", "testFormat"));
+        this.mockMvc.perform(get("/ebooks/" + ebook.getId()))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.title").value("updatedTitle"));
+        assertThat(jsonCache.misses()).isEqualTo(misses + 1);
+    }
+
+    @Test
+    void shouldAnswerConditionalGetOfEbookWithNotModified() throws Exception {
+        // Arrange
+        Ebook ebook = ebookService.add(new Ebook(null, "testAuthor", "testTitle", "testFormat"));
+        String etag = this.mockMvc.perform(get("/ebooks/" + ebook.getId()))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getHeader("ETag");
+
+        // Act & Assert
+        this.mockMvc.perform(get("/ebooks/" + ebook.getId()).header("If-None-Match", etag))
+                .andExpect(status().isNotModified())
+                .andExpect(header().string("ETag", etag))
+                .andExpect(content().string(""));
+        ebookService.update(ebook.getId(), new Ebook(null, "testAuthor", "updatedTitle", "testFormat"));
+        this.mockMvc.perform(get("/ebooks/" + ebook.getId()).header("If-None-Match", etag))
+                .andExpect(status().isOk())
+                .andExpect(header().string("ETag", not(etag)))
+                .andExpect(jsonPath("$.title").value("updatedTitle"));
+    }
+
+    @Test
+    void shouldAnswerConditionalGetOfCollectionWithNotModified() throws Exception {
+        // Arrange
+        ebookService.add(new Ebook(null, "testAuthor", "testTitle", "testFormat"));
+        String etag = this.mockMvc.perform(get("/ebooks?limit=10"))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getHeader("ETag");
+
+        // Act & Assert
+        this.mockMvc.perform(get("/ebooks?limit=10").header("If-None-Match", etag))
+                .andExpect(status().isNotModified())
+                .andExpect(content().string(""));
+        this.mockMvc.perform(get("/ebooks?limit=20").header("If-None-Match", etag))
+                .andExpect(status().isOk());
+        ebookService.add(new Ebook(null, "testAuthor", "testTitle", "testFormat"));
+        this.mockMvc.perform(get("/ebooks?limit=10").header("If-None-Match", etag))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.data", hasSize(2)));
+    }
+
+    @Test
+    void shouldNotAnswerConditionalGetOfAnotherQueryWithNotModified() throws Exception {
+        // Arrange: "Aa" and "BB" share a String hash code
+        ebookService.add(new Ebook(null, "Aa", "testTitle", "testFormat"));
+        ebookService.add(new Ebook(null, "BB", "testTitle", "testFormat"));
+        String etag = this.mockMvc.perform(get("/ebooks?author=Aa&limit=10"))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getHeader("ETag");
+
+        // Act & Assert
+        this.mockMvc.perform(get("/ebooks?author=BB&limit=10").header("If-None-Match", etag))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.data[0].author").value("BB"));
+        this.mockMvc.perform(get("/ebooks?author=&limit=10").header("If-None-Match", etag))
+                .andExpect(status().isOk());
+        this.mockMvc.perform(get("/ebooks?author=Aa&limit=10").header("If-None-Match", etag))
+                .andExpect(status().isNotModified());
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"application/cbor", "application/x-jackson-smile"})
+    void shouldTagEachRepresentationApart(String mediaType) throws Exception {
+        // Arrange
+        Ebook ebook = ebookService.add(new Ebook(null, "testAuthor", "testTitle", "testFormat"));
+        String jsonEtag = this.mockMvc.perform(get("/ebooks/" + ebook.getId()))
+                .andReturn().getResponse().getHeader("ETag");
+        String jsonListEtag = this.mockMvc.perform(get("/ebooks?limit=10"))
+                .andReturn().getResponse().getHeader("ETag");
+
+        // Act
+        String binaryEtag = this.mockMvc.perform(get("/ebooks/" + ebook.getId()).accept(mediaType).header("If-None-Match", jsonEtag))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType(mediaType))
+                .andReturn().getResponse().getHeader("ETag");
+        String binaryListEtag = this.mockMvc.perform(get("/ebooks?limit=10").accept(mediaType).header("If-None-Match", jsonListEtag))
+                .andExpect(status().isOk())
+                .andExpect(header().string("Vary", containsString("Accept")))
+                .andReturn().getResponse().getHeader("ETag");
+
+        // Assert: validators differ per representation, writes still match on the version
+        assertThat(binaryEtag).isNotEqualTo(jsonEtag).startsWith(jsonEtag.substring(0, jsonEtag.length() - 1));
+        assertThat(binaryListEtag).isNotEqualTo(jsonListEtag);
+        this.mockMvc.perform(get("/ebooks/" + ebook.getId()).accept(mediaType).header("If-None-Match", binaryEtag))
+                .andExpect(status().isNotModified());
+        this.mockMvc.perform(get("/ebooks/" + ebook.getId()).header("If-None-Match", binaryEtag))
+                .andExpect(status().isOk());
+        this.mockMvc.perform(put("/ebooks/" + ebook.getId())
+                        .content("{\"author\": \"testAuthor\", \"title\": \"updatedTitle\", \"format\": \"testFormat\"}")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .header("If-Match", binaryEtag))
+                .andExpect(status().isOk());
+    }
+
     @Test
     void shouldNotGetEbookWithoutMatchingId() throws Exception {
         // Arrange
@@ -151,6 +581,21 @@ public class EbookIntegrationTests {
                 .andExpect(content().string(""));
     }
 
+    @Test
+    void shouldNotGetEbookByIdWithNonAsciiDigits() throws Exception {
+        // Arrange
+        Ebook ebook = ebookService.add(new Ebook(null, "testAuthor", "testTitle", "testFormat"));
+        String id = CompactEbookStoreTests.unicodeDigits(ebook.getId());
+
+        // Act & Assert
+        this.mockMvc.perform(get("/ebooks/{id}", id))
+                .andExpect(status().isNotFound());
+        this.mockMvc.perform(delete("/ebooks/{id}", id))
+                .andExpect(status().isNotFound());
+        this.mockMvc.perform(get("/ebooks/{id}", ebook.getId()))
+                .andExpect(status().isOk());
+    }
+
     @Test
     void shouldNotUpdateEbookWithoutMatchingId() throws Exception {
         // Arrange
@@ -214,6 +659,33 @@ public class EbookIntegrationTests {
                 .andExpect(jsonPath("$.*", hasSize(3)));
     }
 
+    @Test
+    void shouldRejectWritesWithStaleIfMatch() throws Exception {
+        // Arrange
+        Ebook ebook = ebookService.add(new Ebook(null, "testAuthor", "testTitle", "testFormat"));
+        String etag = "\"v" + ebook.getVersion() + "\"";
+        String update = objectMapper.writeValueAsString(new Ebook(null, "testAuthor", "testTitleNew", "testFormat"));
+
+        // Act
+        String newEtag = this.mockMvc.perform(put("/ebooks/"+ebook.getId()).header("If-Match", etag)
+                        .content(update)
+                        .contentType(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getHeader("ETag");
+
+        // Assert: the first writer moved the version on, a second writer holding the old ETag loses
+        this.mockMvc.perform(put("/ebooks/"+ebook.getId()).header("If-Match", etag)
+                        .content(objectMapper.writeValueAsString(new Ebook(null, "testAuthor", "lostUpdate", "testFormat")))
+                        .contentType(MediaType.APPLICATION_JSON))
+                .andExpect(status().isPreconditionFailed());
+        this.mockMvc.perform(delete("/ebooks/"+ebook.getId()).header("If-Match", etag))
+                .andExpect(status().isPreconditionFailed());
+        assertThat(ebookService.get(ebook.getId()).getTitle()).isEqualTo("testTitleNew");
+        this.mockMvc.perform(delete("/ebooks/"+ebook.getId()).header("If-Match", newEtag))
+                .andExpect(status().isOk());
+        assertThat(ebookService.get(ebook.getId())).isNull();
+    }
+
     @Test
     void shouldNotDeleteEbookWithoutMatchingId() throws Exception {
         // Arrange
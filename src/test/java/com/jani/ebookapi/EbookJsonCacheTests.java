@@ -0,0 +1,106 @@
+package com.jani.ebookapi;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.jani.ebookapi.model.Ebook;
+import com.jani.ebookapi.service.EbookService;
+import com.jani.ebookapi.store.ConcurrentEbookStore;
+import com.jani.ebookapi.web.EbookJsonCache;
+import org.junit.jupiter.api.Test;
+import org.springframework.util.unit.DataSize;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class EbookJsonCacheTests {
+
+    private final EbookService ebookService = new EbookService();
+
+    @Test
+    void shouldServeSameBytesUntilEbookChanges() throws Exception {
+        // Arrange
+        EbookJsonCache cache = new EbookJsonCache(new ObjectMapper(), DataSize.ofMegabytes(1), ebookService::get);
+        Ebook ebook = ebookService.add(new Ebook(null, "testAuthor", "testTitle", "testFormat"));
+
+        // Act
+        byte[] first = cache.json(ebook.getId(), ebookService.get(ebook.getId()));
+        byte[] second = cache.json(ebook.getId(), ebookService.get(ebook.getId()));
+        ebookService.update(ebook.getId(), new Ebook(null, "testAuthor", "updatedTitle", "testFormat"));
+        byte[] updated = cache.json(ebook.getId(), ebookService.get(ebook.getId()));
+
+        // Assert
+        assertEquals("{\"author\":\"testAuthor\",\"title\":\"testTitle\",\"format\":\"testFormat\"}",
+                new String(first, StandardCharsets.UTF_8));
+        assertSame(first, second);
+        assertEquals("{\"author\":\"testAuthor\",\"title\":\"updatedTitle\",\"format\":\"testFormat\"}",
+                new String(updated, StandardCharsets.UTF_8));
+        assertEquals(1, cache.hits());
+        assertEquals(2, cache.misses());
+    }
+
+    @Test
+    void shouldEvictEntriesOnChange() throws Exception {
+        // Arrange
+        EbookService listeningService = new EbookService(new ConcurrentEbookStore());
+        EbookJsonCache cache = new EbookJsonCache(new ObjectMapper(), DataSize.ofMegabytes(1), listeningService::get);
+        listeningService.addChangeListener(cache);
+        Ebook updated = listeningService.add(new Ebook(null, "testAuthor", "testTitle", "testFormat"));
+        Ebook removed = listeningService.add(new Ebook(null, "testAuthor", "testTitle", "testFormat"));
+        cache.json(updated.getId(), updated);
+        cache.json(removed.getId(), removed);
+        long bytes = cache.bytes();
+
+        // Act
+        listeningService.update(updated.getId(), new Ebook(null, "testAuthor", "updatedTitle", "testFormat"));
+        listeningService.remove(removed.getId());
+
+        // Assert
+        assertTrue(bytes > 0);
+        assertEquals(0, cache.entries());
+        assertEquals(0, cache.bytes());
+    }
+
+    @Test
+    void shouldNotKeepEntrySerializedFromVersionEvictedMeanwhile() throws Exception {
+        // Arrange: a read that got the ebooks before they were updated and removed
+        EbookService listeningService = new EbookService(new ConcurrentEbookStore());
+        EbookJsonCache cache = new EbookJsonCache(new ObjectMapper(), DataSize.ofMegabytes(1), listeningService::get);
+        listeningService.addChangeListener(cache);
+        Ebook updated = listeningService.add(new Ebook(null, "testAuthor", "testTitle", "testFormat"));
+        Ebook removed = listeningService.add(new Ebook(null, "testAuthor", "testTitle", "testFormat"));
+        Ebook staleUpdated = listeningService.get(updated.getId());
+        Ebook staleRemoved = listeningService.get(removed.getId());
+        listeningService.update(updated.getId(), new Ebook(null, "testAuthor", "updatedTitle", "testFormat"));
+        listeningService.remove(removed.getId());
+
+        // Act
+        byte[] json = cache.json(staleUpdated.getId(), staleUpdated);
+        cache.json(staleRemoved.getId(), staleRemoved);
+        byte[] current = cache.json(updated.getId(), listeningService.get(updated.getId()));
+        cache.json(staleUpdated.getId(), staleUpdated);
+
+        // Assert: the stale reads were still answered, but only the current version stays cached
+        assertEquals("{\"author\":\"testAuthor\",\"title\":\"testTitle\",\"format\":\"testFormat\"}",
+                new String(json, StandardCharsets.UTF_8));
+        assertEquals(1, cache.entries());
+        assertEquals(current.length + 96, cache.bytes());
+        assertSame(current, cache.json(updated.getId(), listeningService.get(updated.getId())));
+    }
+
+    @Test
+    void shouldStayWithinMemoryBound() throws Exception {
+        // Arrange
+        EbookJsonCache cache = new EbookJsonCache(new ObjectMapper(), DataSize.ofKilobytes(4), ebookService::get);
+
+        // Act
+        for (int i = 0; i < 1000; i++) {
+            Ebook ebook = ebookService.add(new Ebook(null, "testAuthor", "testTitle" + i, "testFormat"));
+            cache.json(ebook.getId(), ebook);
+        }
+
+        // Assert
+        assertTrue(cache.bytes() <= 4096);
+        assertTrue(cache.entries() > 0 && cache.entries() < 1000);
+        assertEquals(1000, cache.misses());
+    }
+}
@@ -1,12 +1,28 @@
 package com.jani.ebookapi;
 
 import com.jani.ebookapi.model.Ebook;
+import com.jani.ebookapi.replication.ReplicationLog;
+import com.jani.ebookapi.service.EbookChangeFeed;
+import com.jani.ebookapi.service.EbookDelta;
+import com.jani.ebookapi.service.EbookJournal;
 import com.jani.ebookapi.service.EbookService;
+import com.jani.ebookapi.service.EbookVersionConflictException;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -38,6 +54,25 @@ public class EbookServiceTests {
         assertEquals(retrievedEbook.getFormat(), addedEbook.getFormat());
     }
 
+    @Test
+    void shouldAdvanceVersionOnEveryChange() {
+        // Arrange
+        Ebook first = ebookService.add(new Ebook(null, "testAuthor", "testTitle", "testFormat"));
+        Ebook second = ebookService.add(new Ebook(null, "testAuthor", "testTitle", "testFormat"));
+        String catalogVersion = ebookService.catalogVersion();
+
+        // Act
+        Ebook updated = ebookService.update(first.getId(), new Ebook(null, "testAuthor", "updatedTitle", "testFormat"));
+
+        // Assert
+        assertTrue(first.getVersion() > 0);
+        assertTrue(second.getVersion() > first.getVersion());
+        assertTrue(updated.getVersion() > second.getVersion());
+        assertEquals(updated.getVersion(), ebookService.get(first.getId()).getVersion());
+        assertNotEquals(catalogVersion, ebookService.catalogVersion());
+        assertNotEquals(ebookService.catalogVersion(), new EbookService().catalogVersion());
+    }
+
     @Test
     void shouldAddEbookAndGenerateUUID() {
         // Arrange
@@ -81,6 +116,80 @@ public class EbookServiceTests {
         assertEquals(updatedEbook.getFormat(), retrievedEbook.getFormat());
     }
 
+    @Test
+    void shouldCountStaleCompareAndSetAsWriteConflict() {
+        // Arrange
+        Ebook original = ebookService.add(new Ebook(null, "testAuthor", "testTitle", "testFormat"));
+        Ebook stale = new Ebook(original.getId(), "testAuthor", "testTitle", "testFormat");
+        stale.setVersion(original.getVersion());
+        ebookService.update(original.getId(), new Ebook(null, "testAuthor", "newerTitle", "testFormat"));
+
+        // Act
+        boolean updated = ebookService.update(original.getId(), stale, new Ebook(null, "testAuthor", "staleTitle", "testFormat"));
+        boolean missing = ebookService.update(UUID.randomUUID().toString(), stale, new Ebook(null, "testAuthor", "staleTitle", "testFormat"));
+
+        // Assert
+        assertFalse(updated);
+        assertFalse(missing);
+        assertEquals(1, ebookService.writeConflicts());
+        assertEquals("newerTitle", ebookService.get(original.getId()).getTitle());
+    }
+
+    @Test
+    void shouldUpdateAndRemoveOnlyAtExpectedVersion() {
+        // Arrange
+        Ebook original = ebookService.add(new Ebook(null, "testAuthor", "testTitle", "testFormat"));
+        long version = original.getVersion();
+
+        // Act
+        Ebook updated = ebookService.update(original.getId(), version, new Ebook(null, "testAuthor", "newTitle", "testFormat"));
+        EbookVersionConflictException staleUpdate = assertThrows(EbookVersionConflictException.class, () ->
+                ebookService.update(original.getId(), version, new Ebook(null, "testAuthor", "staleTitle", "testFormat")));
+        EbookVersionConflictException staleRemove = assertThrows(EbookVersionConflictException.class, () ->
+                ebookService.remove(original.getId(), version));
+        Ebook missing = ebookService.update(UUID.randomUUID().toString(), version, new Ebook(null, "testAuthor", "staleTitle", "testFormat"));
+
+        // Assert
+        assertTrue(updated.getVersion() > version);
+        assertEquals(updated.getVersion(), staleUpdate.currentVersion());
+        assertEquals(updated.getVersion(), staleRemove.currentVersion());
+        assertNull(missing);
+        assertEquals(2, ebookService.writeConflicts());
+        assertEquals("newTitle", ebookService.get(original.getId()).getTitle());
+        assertEquals(updated, ebookService.remove(original.getId(), updated.getVersion()));
+        assertNull(ebookService.get(original.getId()));
+    }
+
+    @Test
+    void shouldLetOnlyOneConcurrentWriterWinAtTheSameVersion() throws Exception {
+        // Arrange
+        Ebook original = ebookService.add(new Ebook(null, "testAuthor", "testTitle", "testFormat"));
+        int writers = 8;
+        ExecutorService executor = Executors.newFixedThreadPool(writers);
+
+        // Act
+        List<Future<Boolean>> results = new ArrayList<>();
+        for (int i = 0; i < writers; i++) {
+            Ebook update = new Ebook(null, "testAuthor", "title" + i, "testFormat");
+            results.add(executor.submit(() -> {
+                try {
+                    return ebookService.update(original.getId(), original.getVersion(), update) != null;
+                } catch (EbookVersionConflictException e) {
+                    return false;
+                }
+            }));
+        }
+        int wins = 0;
+        for (Future<Boolean> result : results) {
+            if (result.get()) wins++;
+        }
+        executor.shutdown();
+
+        // Assert
+        assertEquals(1, wins);
+        assertEquals(writers - 1, ebookService.writeConflicts());
+    }
+
     @Test
     void shouldRemoveEbook() {
         // Arrange
@@ -138,10 +247,278 @@ public class EbookServiceTests {
         assertEquals(0, ebookService.getAll().size());
     }
 
+    @Test
+    void shouldFindEbooksByAuthorAndFormat() {
+        // Arrange
+        Ebook ebook1 = ebookService.add(new Ebook(null, "testAuthor1", "testTitle1", "pdf"));
+        Ebook ebook2 = ebookService.add(new Ebook(null, "testAuthor1", "testTitle2", "epub"));
+        Ebook ebook3 = ebookService.add(new Ebook(null, "testAuthor2", "testTitle3", "pdf"));
+
+        // Act
+        List<Ebook> byAuthor = ebookService.find("testAuthor1", null, null, Integer.MAX_VALUE);
+        List<Ebook> byFormat = ebookService.find(null, "pdf", null, Integer.MAX_VALUE);
+        List<Ebook> byBoth = ebookService.find("testAuthor1", "pdf", null, Integer.MAX_VALUE);
+        List<Ebook> byUnknown = ebookService.find("testAuthor3", "pdf", null, Integer.MAX_VALUE);
+
+        // Assert
+        assertEquals(Set.of(ebook1, ebook2), new HashSet<>(byAuthor));
+        assertEquals(Set.of(ebook1, ebook3), new HashSet<>(byFormat));
+        assertEquals(List.of(ebook1), byBoth);
+        assertTrue(byUnknown.isEmpty());
+    }
+
+    @Test
+    void shouldKeepIndexesInSyncWithUpdateAndRemove() {
+        // Arrange
+        Ebook ebook = ebookService.add(new Ebook(null, "testAuthor", "testTitle", "pdf"));
+        Ebook other = ebookService.add(new Ebook(null, "testAuthor", "testTitle", "pdf"));
+
+        // Act
+        ebookService.update(ebook.getId(), new Ebook(null, "testAuthorNew", "testTitle", "epub"));
+        ebookService.remove(other.getId());
+
+        // Assert
+        assertTrue(ebookService.find("testAuthor", null, null, Integer.MAX_VALUE).isEmpty());
+        assertTrue(ebookService.find(null, "pdf", null, Integer.MAX_VALUE).isEmpty());
+        assertEquals(1, ebookService.find("testAuthorNew", "epub", null, Integer.MAX_VALUE).size());
+    }
+
+    @Test
+    void shouldPageThroughFilteredEbooksInIdOrder() {
+        // Arrange
+        for (int i = 0; i < 5; i++) {
+            ebookService.add(new Ebook(null, "testAuthor", "testTitle" + i, "pdf"));
+            ebookService.add(new Ebook(null, "testAuthor", "testTitle" + i, "epub"));
+        }
+
+        // Act
+        List<Ebook> firstPage = ebookService.find("testAuthor", "pdf", null, 3);
+        List<Ebook> secondPage = ebookService.find("testAuthor", "pdf", firstPage.get(2).getId(), 3);
+
+        // Assert
+        assertEquals(3, firstPage.size());
+        assertEquals(2, secondPage.size());
+        assertTrue(firstPage.get(2).getId().compareTo(secondPage.get(0).getId()) < 0);
+    }
+
+    @Test
+    void shouldPageThroughIntersectionOfInterleavedPostings() {
+        // Arrange: each criterion alone matches many ebooks, both together only every sixth
+        List<String> expected = new ArrayList<>();
+        for (int i = 0; i < 600; i++) {
+            Ebook added = ebookService.add(new Ebook(null, "testAuthor" + i % 2, "testTitle" + i, "testFormat" + i % 3));
+            if (i % 6 == 0) expected.add(added.getId());
+        }
+        expected.sort(null);
+
+        // Act
+        List<String> paged = new ArrayList<>();
+        String cursor = null;
+        List<Ebook> page;
+        do {
+            page = ebookService.find("testAuthor0", "testFormat0", cursor, 7);
+            page.forEach(ebook -> paged.add(ebook.getId()));
+            if (!page.isEmpty()) cursor = page.get(page.size() - 1).getId();
+        } while (page.size() == 7);
+
+        // Assert
+        assertEquals(expected, paged);
+    }
+
+    @Test
+    void shouldPageThroughEbooksInInsertionOrder() {
+        // Arrange
+        List<String> added = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            added.add(ebookService.add(new Ebook(null, "testAuthor", "testTitle" + i, "epub")).getId());
+        }
+        added.addAll(ebookService.addAll(List.of(new Ebook(null, "testAuthor", "batch1", "epub"),
+                new Ebook(null, "testAuthor", "batch2", "epub"))).stream().map(Ebook::getId).toList());
+
+        // Act
+        List<Ebook> page = ebookService.getPage(null, 100);
+
+        // Assert
+        assertEquals(added, page.stream().map(Ebook::getId).toList());
+    }
+
+    @Test
+    void shouldClearIndexesWithData() {
+        // Arrange
+        ebookService.add(new Ebook(null, "testAuthor", "testTitle", "pdf"));
+
+        // Act
+        ebookService.clearData();
+
+        // Assert
+        assertTrue(ebookService.find("testAuthor", "pdf", null, Integer.MAX_VALUE).isEmpty());
+    }
+
+    @Test
+    void shouldKeepIndexesInSyncWithDataWhenClearingDuringInserts() throws Exception {
+        // Arrange
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+
+        // Act
+        List<Future<?>> futures = new ArrayList<>();
+        for (int t = 0; t < 4; t++) {
+            futures.add(executor.submit(() -> {
+                for (int i = 0; i < 2_000; i++) {
+                    ebookService.add(new Ebook(null, "testAuthor", "testTitle", "pdf"));
+                }
+            }));
+        }
+        for (int i = 0; i < 50; i++) {
+            ebookService.clearData();
+        }
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        executor.shutdown();
+
+        // Assert
+        assertEquals(ebookService.getAll().size(), ebookService.find("testAuthor", "pdf", null, Integer.MAX_VALUE).size());
+    }
+
+    @Test
+    void shouldReturnChangesSinceSequenceWithRemovedIds() {
+        // Arrange
+        ebookService.add(new Ebook(null, "testAuthor", "testTitle1", "pdf"));
+        Ebook updated = ebookService.add(new Ebook(null, "testAuthor", "testTitle2", "pdf"));
+        Ebook removed = ebookService.add(new Ebook(null, "testAuthor", "testTitle3", "pdf"));
+        long since = ebookService.checkpoint();
+        ebookService.update(updated.getId(), new Ebook(null, "testAuthor", "updatedTitle", "pdf"));
+        ebookService.remove(removed.getId());
+        Ebook added = ebookService.add(new Ebook(null, "testAuthor", "testTitle4", "pdf"));
+
+        // Act
+        EbookDelta delta = ebookService.changesSince(since, 100);
+
+        // Assert
+        assertEquals(List.of(updated.getId(), added.getId()), delta.ebooks().stream().map(Ebook::getId).toList());
+        assertEquals("updatedTitle", delta.ebooks().get(0).getTitle());
+        assertEquals(List.of(removed.getId()), delta.removed());
+        assertEquals(added.getVersion(), delta.sequence());
+        assertFalse(delta.more());
+        assertEquals(3, ebookService.changesSince(0, 100).ebooks().size());
+        assertTrue(ebookService.changesSince(delta.sequence(), 100).ebooks().isEmpty());
+    }
+
+    @Test
+    void shouldNotSkipChangesInFlightWhilePollingChangesSince() throws Exception {
+        // Arrange
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        List<Future<?>> writers = new ArrayList<>();
+
+        // Act: follow the changes while they are written
+        for (int t = 0; t < 4; t++) {
+            writers.add(executor.submit(() -> {
+                for (int i = 0; i < 2_000; i++) {
+                    ebookService.add(new Ebook(null, "testAuthor", "testTitle", "pdf"));
+                }
+            }));
+        }
+        Set<String> seen = new HashSet<>();
+        long sequence = 0;
+        while (!writers.stream().allMatch(Future::isDone)) {
+            EbookDelta delta = ebookService.changesSince(sequence, 100);
+            delta.ebooks().forEach(ebook -> seen.add(ebook.getId()));
+            sequence = delta.sequence();
+        }
+        for (Future<?> writer : writers) {
+            writer.get();
+        }
+        executor.shutdown();
+        EbookDelta delta;
+        do {
+            delta = ebookService.changesSince(sequence, 100);
+            delta.ebooks().forEach(ebook -> seen.add(ebook.getId()));
+            sequence = delta.sequence();
+        } while (delta.more());
+
+        // Assert
+        assertEquals(8_000, seen.size());
+        assertEquals(ebookService.checkpoint(), sequence);
+    }
+
+    @Test
+    void shouldLimitChangesSinceAndContinueFromReturnedSequence() {
+        // Arrange
+        List<String> added = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            added.add(ebookService.add(new Ebook(null, "testAuthor", "testTitle" + i, "pdf")).getId());
+        }
+
+        // Act
+        EbookDelta first = ebookService.changesSince(0, 3);
+        EbookDelta second = ebookService.changesSince(first.sequence(), 3);
+
+        // Assert
+        assertTrue(first.more());
+        assertFalse(second.more());
+        assertEquals(added.subList(0, 3), first.ebooks().stream().map(Ebook::getId).toList());
+        assertEquals(added.subList(3, 5), second.ebooks().stream().map(Ebook::getId).toList());
+    }
+
+    @Test
+    void shouldOnlyPublishMutationsTheJournalTook() throws Exception {
+        // Arrange: a journal refusing the second mutation, as a write-ahead log does once its writer failed
+        ReplicationLog replicationLog = new ReplicationLog(16, 0);
+        EbookChangeFeed changeFeed = new EbookChangeFeed(16, 1);
+        changeFeed.attach(ebookService);
+        ebookService.addFeed(replicationLog);
+        ebookService.setJournal(new EbookJournal() {
+            @Override
+            public Commit append(long sequence, String ebookId, Ebook ebook) {
+                if (sequence == 2) throw new UncheckedIOException(new IOException("testFailure"));
+                return Commit.DONE;
+            }
+
+            @Override
+            public Commit appendClear(long sequence) {
+                return Commit.DONE;
+            }
+        });
+        Ebook first = ebookService.add(new Ebook(null, "testAuthor", "testTitle", "pdf"));
+
+        // Act
+        assertThrows(UncheckedIOException.class, () -> ebookService.add(new Ebook(null, "testAuthor", "failedTitle", "pdf")));
+        Ebook third = ebookService.add(new Ebook(null, "testAuthor", "testTitle", "pdf"));
+
+        // Assert: the failed sequence is published as one that changed nothing, so readers move past it
+        List<ReplicationLog.Change> replicated = replicationLog.read(0, 10, 0);
+        assertEquals(List.of(1L, 2L, 3L), replicated.stream().map(ReplicationLog.Change::sequence).toList());
+        assertEquals(Arrays.asList(first.getId(), null, third.getId()), replicated.stream().map(ReplicationLog.Change::id).toList());
+        List<EbookChangeFeed.Change> changes = changeFeed.read(0, 10, 0);
+        assertEquals(Arrays.asList(EbookChangeFeed.Type.CREATED, null, EbookChangeFeed.Type.CREATED),
+                changes.stream().map(EbookChangeFeed.Change::type).toList());
+        assertEquals(2, ebookService.getAll().size());
+        assertEquals(3, ebookService.checkpoint());
+    }
+
+    @Test
+    void shouldRefuseChangesSinceOnceRemovalsAreForgotten() throws InterruptedException {
+        // Arrange
+        ebookService.setTombstoneRetention(Duration.ofMillis(1));
+        Ebook ebook = ebookService.add(new Ebook(null, "testAuthor", "testTitle", "pdf"));
+        long since = ebookService.checkpoint();
+        ebookService.remove(ebook.getId());
+        Thread.sleep(10);
+
+        // Act
+        EbookDelta delta = ebookService.changesSince(since, 100);
+
+        // Assert: only a client starting from nothing can still be served
+        assertNull(delta);
+        assertEquals(0, ebookService.tombstones());
+        assertNotNull(ebookService.changesSince(0, 100));
+        assertNull(ebookService.changesSince(ebookService.checkpoint() + 1, 100));
+    }
+
     private boolean isValidUuid(String uuidString) {
         try {
             UUID uuid = UUID.fromString(uuidString);
-            return uuid.version() == 4;
+            return uuid.version() == 7;
         } catch (IllegalArgumentException e) {
             return false;
         }
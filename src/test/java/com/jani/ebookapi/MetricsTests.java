@@ -0,0 +1,124 @@
+package com.jani.ebookapi;
+
+import com.jani.ebookapi.metrics.InstrumentedEbookStore;
+import com.jani.ebookapi.model.Ebook;
+import com.jani.ebookapi.service.EbookService;
+import com.jani.ebookapi.store.ConcurrentEbookStore;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.actuate.observability.AutoConfigureObservability;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.servlet.MockMvc;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.hasItems;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@SpringBootTest(classes = EbookApplication.class)
+@AutoConfigureMockMvc
+// tests disable metrics export by default, which would leave only a registry without histogram buckets
+@AutoConfigureObservability(tracing = false)
+public class MetricsTests {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private EbookService ebookService;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @AfterEach
+    void cleanupTestData() {
+        ebookService.clearData();
+    }
+
+    @Test
+    void shouldTimeRoutesWithPercentileHistograms() throws Exception {
+        // Arrange
+        Ebook ebook = ebookService.add(new Ebook(null, "testAuthor", "testTitle", "testFormat"));
+
+        // Act
+        mockMvc.perform(get("/ebooks/" + ebook.getId())).andExpect(status().isOk());
+
+        // Assert: tagged with the route template, not the concrete path
+        Timer timer = meterRegistry.get("http.server.requests").tag("uri", "/ebooks/{ebook_id}").tag("method", "GET").timer();
+        assertThat(timer.count()).isPositive();
+        assertThat(timer.takeSnapshot().histogramCounts()).isNotEmpty();
+        assertThat(meterRegistry.get("ebook.store.operations").tag("operation", "compute").timer().count()).isPositive();
+        assertThat(meterRegistry.find("ebook.store.operations").tag("operation", "get").timer()).isNotNull();
+        assertThat(meterRegistry.get("ebook.store.size").gauge().value()).isEqualTo(1);
+        assertThat(meterRegistry.get("ebook.store.heap").gauge().value()).isPositive();
+    }
+
+    @Test
+    void shouldTimeEveryWriteButOnlySampledReads() {
+        // Arrange
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        InstrumentedEbookStore store = new InstrumentedEbookStore(new ConcurrentEbookStore(), registry);
+        SimpleMeterRegistry everyReadRegistry = new SimpleMeterRegistry();
+        InstrumentedEbookStore timeEveryRead = new InstrumentedEbookStore(new ConcurrentEbookStore(), everyReadRegistry, 1);
+        Ebook ebook = new Ebook("testId", "testAuthor", "testTitle", "testFormat");
+
+        // Act
+        for (int i = 0; i < 10_000; i++) {
+            store.putIfAbsent("testId" + i, ebook);
+            store.get("testId" + i);
+            timeEveryRead.get("testId");
+        }
+
+        // Assert
+        assertThat(registry.get("ebook.store.operations").tag("operation", "putIfAbsent").timer().count()).isEqualTo(10_000);
+        assertThat(registry.get("ebook.store.operations").tag("operation", "get").timer().count()).isBetween(50L, 500L);
+        assertThat(everyReadRegistry.get("ebook.store.operations").tag("operation", "get").timer().count()).isEqualTo(10_000);
+    }
+
+    @Test
+    void shouldCountNotFoundAndInvalidRequests() throws Exception {
+        // Arrange
+        double notFound = meterRegistry.get("ebook.not.found").counter().count();
+        double invalid = meterRegistry.get("ebook.validation.failures").counter().count();
+
+        // Act
+        mockMvc.perform(get("/ebooks/unknown")).andExpect(status().isNotFound());
+        mockMvc.perform(post("/ebooks")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"author\": \"testAuthor\", \"title\": \"testTitle\"}"))
+                .andExpect(status().isBadRequest());
+        mockMvc.perform(get("/ebooks?limit=0")).andExpect(status().isBadRequest());
+
+        // Assert
+        assertThat(meterRegistry.get("ebook.not.found").counter().count()).isEqualTo(notFound + 1);
+        assertThat(meterRegistry.get("ebook.validation.failures").counter().count()).isEqualTo(invalid + 2);
+    }
+
+    @Test
+    void shouldServeMetricsThroughActuator() throws Exception {
+        // Act & Assert
+        mockMvc.perform(get("/actuator/metrics"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.names", hasItems("ebook.store.size", "ebook.store.heap", "ebook.write.conflicts",
+                        "ebook.not.found", "ebook.validation.failures", "ebook.precondition.failures",
+                        "ebook.json.cache.requests", "ebook.changes.subscribers", "ebook.sync.tombstones", "ebook.admission.limit",
+                        "ebook.admission.rejected")));
+        mockMvc.perform(get("/actuator/metrics/ebook.store.size"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.measurements[0].value").value(0.0));
+        mockMvc.perform(get("/actuator/prometheus"))
+                .andExpect(status().isOk())
+                .andExpect(content().string(containsString("http_server_requests_seconds_bucket{")))
+                .andExpect(content().string(containsString("ebook_store_operations_seconds_count{")));
+    }
+}
@@ -0,0 +1,399 @@
+package com.jani.ebookapi;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.jani.ebookapi.model.Ebook;
+import com.jani.ebookapi.service.EbookService;
+import com.jani.ebookapi.service.ReactiveEbookService;
+import com.jani.ebookapi.web.EbookController;
+import com.jani.ebookapi.web.EbookFormats;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.reactive.AutoConfigureWebTestClient;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.codec.ServerSentEvent;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.reactive.server.WebTestClient;
+import reactor.core.publisher.Flux;
+import reactor.test.StepVerifier;
+
+import java.io.InputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+// the reactive stack selected by the "reactive" profile, against a real Netty server
+@SpringBootTest(classes = EbookApplication.class, webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+@ActiveProfiles("reactive")
+@AutoConfigureWebTestClient
+public class ReactiveEbookControllerTests {
+
+    @LocalServerPort
+    private int port;
+
+    @Autowired
+    private WebTestClient webTestClient;
+
+    @Autowired
+    private EbookService ebookService;
+
+    @Autowired
+    private ReactiveEbookService reactiveEbookService;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Autowired
+    private EbookFormats ebookFormats;
+
+    @BeforeEach
+    void allowLargeResponses() {
+        webTestClient = webTestClient.mutate()
+                .codecs(codecs -> codecs.defaultCodecs().maxInMemorySize(16 * 1024 * 1024))
+                .build();
+    }
+
+    @AfterEach
+    void cleanupTestData() {
+        ebookService.clearData();
+    }
+
+    @Test
+    void shouldAddAndGetEbook() {
+        // Arrange
+        Ebook inputEbook = new Ebook(null, "testAuthor", "testTitle", "testFormat");
+
+        // Act
+        Ebook added = webTestClient.post().uri("/ebooks")
+                .bodyValue(inputEbook)
+                .exchange()
+                .expectStatus().isCreated()
+                .expectHeader().exists("ETag")
+                .expectBody(Ebook.class).returnResult().getResponseBody();
+
+        // Assert
+        assertThat(added.getId()).isNotNull();
+        String etag = webTestClient.get().uri("/ebooks/" + added.getId())
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody().json("{\"author\":\"testAuthor\",\"title\":\"testTitle\",\"format\":\"testFormat\"}", true)
+                .returnResult().getResponseHeaders().getETag();
+        webTestClient.get().uri("/ebooks/" + added.getId())
+                .header("If-None-Match", etag)
+                .exchange()
+                .expectStatus().isNotModified();
+    }
+
+    @Test
+    void shouldRejectInvalidEbooksAndUnknownIds() {
+        // Arrange
+        double notFound = meterRegistry.get("ebook.not.found").counter().count();
+        double invalid = meterRegistry.get("ebook.validation.failures").counter().count();
+
+        // Act & Assert
+        webTestClient.post().uri("/ebooks")
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue("{\"author\": \"testAuthor\", \"title\": \"testTitle\"}")
+                .exchange()
+                .expectStatus().isBadRequest();
+        webTestClient.get().uri("/ebooks/unknown").exchange().expectStatus().isNotFound();
+        webTestClient.put().uri("/ebooks/unknown")
+                .bodyValue(new Ebook(null, "testAuthor", "testTitle", "testFormat"))
+                .exchange()
+                .expectStatus().isNotFound();
+        webTestClient.delete().uri("/ebooks/unknown").exchange().expectStatus().isNotFound();
+        webTestClient.get().uri("/ebooks?limit=0").exchange().expectStatus().isBadRequest();
+        assertThat(meterRegistry.get("ebook.not.found").counter().count()).isEqualTo(notFound + 3);
+        assertThat(meterRegistry.get("ebook.validation.failures").counter().count()).isEqualTo(invalid + 2);
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"application/cbor", "application/x-jackson-smile"})
+    void shouldAddAndGetEbooksInBinaryFormat(String mediaType) throws Exception {
+        // Arrange
+        ObjectMapper binaryMapper = ebookFormats.mapper(MediaType.parseMediaType(mediaType));
+        for (int i = 0; i < EbookController.EXPORT_PAGE_SIZE + 1; i++) {
+            ebookService.add(new Ebook(null, "testAuthor", "testTitle" + i, "testFormat"));
+        }
+
+        // Act
+        byte[] created = webTestClient.post().uri("/ebooks")
+                .contentType(MediaType.parseMediaType(mediaType))
+                .accept(MediaType.parseMediaType(mediaType))
+                .bodyValue(binaryMapper.writeValueAsBytes(new Ebook(null, "testAuthor", "testTitle", "testFormat")))
+                .exchange()
+                .expectStatus().isCreated()
+                .expectHeader().contentType(mediaType)
+                .expectBody(byte[].class).returnResult().getResponseBody();
+        Ebook added = binaryMapper.readValue(created, Ebook.class);
+        byte[] single = webTestClient.get().uri("/ebooks/" + added.getId())
+                .accept(MediaType.parseMediaType(mediaType))
+                .exchange()
+                .expectStatus().isOk()
+                .expectHeader().contentType(mediaType)
+                .expectHeader().valueMatches("ETag", "\"v[0-9]+-(cbor|smile)\"")
+                .expectBody(byte[].class).returnResult().getResponseBody();
+        byte[] list = webTestClient.get().uri("/ebooks")
+                .accept(MediaType.parseMediaType(mediaType))
+                .exchange()
+                .expectStatus().isOk()
+                .expectHeader().contentType(mediaType)
+                .expectHeader().valueMatches("ETag", "\"c.*-(cbor|smile)\"")
+                .expectBody(byte[].class).returnResult().getResponseBody();
+
+        // Assert: the catalog spans two pages of the stream
+        assertThat(binaryMapper.readValue(single, Ebook.class)).isEqualTo(new Ebook(null, "testAuthor", "testTitle", "testFormat"));
+        assertThat(binaryMapper.readTree(list).get("data")).hasSize(EbookController.EXPORT_PAGE_SIZE + 2);
+        webTestClient.post().uri("/ebooks")
+                .contentType(MediaType.parseMediaType(mediaType))
+                .bodyValue(binaryMapper.writeValueAsBytes(new Ebook(null, "", "testTitle", "testFormat")))
+                .exchange()
+                .expectStatus().isBadRequest();
+    }
+
+    @Test
+    void shouldUpdateAndDeleteEbook() {
+        // Arrange
+        Ebook ebook = ebookService.add(new Ebook(null, "testAuthor", "testTitle", "testFormat"));
+
+        // Act & Assert
+        webTestClient.put().uri("/ebooks/" + ebook.getId())
+                .bodyValue(new Ebook(null, "updatedAuthor", "updatedTitle", "updatedFormat"))
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody().json("{\"author\":\"updatedAuthor\",\"title\":\"updatedTitle\",\"format\":\"updatedFormat\"}", true);
+        webTestClient.delete().uri("/ebooks/" + ebook.getId()).exchange().expectStatus().isOk();
+        assertThat(ebookService.get(ebook.getId())).isNull();
+    }
+
+    @Test
+    void shouldRejectWritesWithStaleIfMatch() {
+        // Arrange
+        Ebook ebook = ebookService.add(new Ebook(null, "testAuthor", "testTitle", "testFormat"));
+        String etag = "\"v" + ebook.getVersion() + "\"";
+        double preconditionFailures = meterRegistry.get("ebook.precondition.failures").counter().count();
+
+        // Act
+        String newEtag = webTestClient.put().uri("/ebooks/" + ebook.getId())
+                .header("If-Match", etag)
+                .bodyValue(new Ebook(null, "testAuthor", "updatedTitle", "testFormat"))
+                .exchange()
+                .expectStatus().isOk()
+                .returnResult(Ebook.class).getResponseHeaders().getETag();
+
+        // Assert
+        webTestClient.put().uri("/ebooks/" + ebook.getId())
+                .header("If-Match", etag)
+                .bodyValue(new Ebook(null, "testAuthor", "lostUpdate", "testFormat"))
+                .exchange()
+                .expectStatus().isEqualTo(HttpStatus.PRECONDITION_FAILED);
+        webTestClient.delete().uri("/ebooks/" + ebook.getId())
+                .header("If-Match", "\"v1\", " + etag)
+                .exchange()
+                .expectStatus().isEqualTo(HttpStatus.PRECONDITION_FAILED);
+        webTestClient.delete().uri("/ebooks/unknown")
+                .header("If-Match", "\"v1\", " + etag)
+                .exchange()
+                .expectStatus().isNotFound();
+        assertThat(ebookService.get(ebook.getId()).getTitle()).isEqualTo("updatedTitle");
+        assertThat(meterRegistry.get("ebook.precondition.failures").counter().count()).isEqualTo(preconditionFailures + 2);
+        webTestClient.delete().uri("/ebooks/" + ebook.getId())
+                .header("If-Match", newEtag)
+                .exchange()
+                .expectStatus().isOk();
+    }
+
+    @Test
+    void shouldStreamWholeCatalogInDataEnvelope() throws Exception {
+        // Arrange: more ebooks than one page
+        for (int i = 0; i < 2_500; i++) {
+            ebookService.add(new Ebook(null, i % 2 == 0 ? "evenAuthor" : "oddAuthor", "testTitle" + i, "testFormat"));
+        }
+
+        // Act
+        String all = webTestClient.get().uri("/ebooks").exchange()
+                .expectStatus().isOk()
+                .expectHeader().contentType(MediaType.APPLICATION_JSON)
+                .expectBody(String.class).returnResult().getResponseBody();
+        String filtered = webTestClient.get().uri("/ebooks?author=evenAuthor").exchange()
+                .expectBody(String.class).returnResult().getResponseBody();
+
+        // Assert
+        Map<?, ?> allData = objectMapper.readValue(all, Map.class);
+        assertThat((List<?>) allData.get("data")).hasSize(2_500);
+        Map<?, ?> filteredData = objectMapper.readValue(filtered, Map.class);
+        assertThat((List<?>) filteredData.get("data")).hasSize(1_250)
+                .allMatch(item -> ((Map<?, ?>) item).get("author").equals("evenAuthor"));
+        webTestClient.get().uri("/ebooks?stream=true").exchange()
+                .expectStatus().isOk()
+                .expectBody().jsonPath("$.data.length()").isEqualTo(2_500);
+    }
+
+    @Test
+    void shouldPageThroughEbooksWithCursors() {
+        // Arrange
+        for (int i = 0; i < 5; i++) {
+            ebookService.add(new Ebook(null, "testAuthor", "testTitle" + i, "testFormat"));
+        }
+
+        // Act
+        Map<?, ?> first = webTestClient.get().uri("/ebooks?limit=3").exchange()
+                .expectStatus().isOk()
+                .expectBody(Map.class).returnResult().getResponseBody();
+        Map<?, ?> second = webTestClient.get().uri("/ebooks?limit=3&cursor=" + first.get("next")).exchange()
+                .expectStatus().isOk()
+                .expectBody(Map.class).returnResult().getResponseBody();
+
+        // Assert
+        assertThat((List<?>) first.get("data")).hasSize(3);
+        assertThat((List<?>) second.get("data")).hasSize(2);
+        assertThat(second.containsKey("next")).isFalse();
+    }
+
+    @Test
+    void shouldGetChangesSinceSequence() {
+        // Arrange
+        Ebook removed = ebookService.add(new Ebook(null, "testAuthor", "testTitle1", "testFormat"));
+        long since = ebookService.checkpoint();
+        Ebook added = ebookService.add(new Ebook(null, "testAuthor", "testTitle2", "testFormat"));
+        ebookService.remove(removed.getId());
+
+        // Act
+        Map<?, ?> delta = webTestClient.get().uri("/ebooks?since=" + since).exchange()
+                .expectStatus().isOk()
+                .expectBody(Map.class).returnResult().getResponseBody();
+
+        // Assert
+        assertThat((List<?>) delta.get("data")).hasSize(1);
+        assertThat(((Map<?, ?>) ((List<?>) delta.get("data")).get(0)).get("id")).isEqualTo(added.getId());
+        assertThat(delta.get("deleted")).isEqualTo(List.of(removed.getId()));
+        assertThat(((Number) delta.get("sequence")).longValue()).isEqualTo(ebookService.checkpoint());
+        webTestClient.get().uri("/ebooks?since=" + (ebookService.checkpoint() + 1)).exchange()
+                .expectStatus().isEqualTo(HttpStatus.GONE);
+    }
+
+    @Test
+    void shouldBulkAddAndExportEbooks() throws Exception {
+        // Arrange: more lines than one batch, with one invalid line in the middle
+        StringBuilder body = new StringBuilder();
+        for (int i = 0; i < 2_500; i++) {
+            if (i == 1_200) body.append("{\"author\": \"testAuthor\"}\n");
+            body.append("{\"author\": \"testAuthor\", \"title\": \"testTitle").append(i)
+                    .append("\", \"format\": \"testFormat\"}\n");
+        }
+
+        // Act
+        webTestClient.post().uri("/ebooks/bulk")
+                .contentType(MediaType.parseMediaType("application/x-ndjson"))
+                .bodyValue(body.toString())
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody()
+                .jsonPath("$.inserted").isEqualTo(2_500)
+                .jsonPath("$.failed").isEqualTo(1)
+                .jsonPath("$.errors[0].line").isEqualTo(1_201)
+                .jsonPath("$.errors[0].error").isEqualTo("format: must not be empty, title: must not be empty");
+        String export = webTestClient.get().uri("/ebooks/export").exchange()
+                .expectStatus().isOk()
+                .expectHeader().contentType("application/x-ndjson")
+                .expectBody(String.class).returnResult().getResponseBody();
+
+        // WebTestClient decompresses transparently, so look at the raw response
+        HttpResponse<InputStream> gzipped = HttpClient.newHttpClient().send(
+                HttpRequest.newBuilder(URI.create("http://localhost:" + port + "/ebooks/export"))
+                        .header("Accept-Encoding", "gzip").build(),
+                HttpResponse.BodyHandlers.ofInputStream());
+        String unzipped;
+        try (InputStream content = new GZIPInputStream(gzipped.body())) {
+            unzipped = new String(content.readAllBytes(), StandardCharsets.UTF_8);
+        }
+        HttpResponse<String> refused = HttpClient.newHttpClient().send(
+                HttpRequest.newBuilder(URI.create("http://localhost:" + port + "/ebooks/export"))
+                        .header("Accept-Encoding", "gzip;q=0").build(),
+                HttpResponse.BodyHandlers.ofString());
+
+        // Assert
+        String[] lines = export.split("\n");
+        assertThat(lines).hasSize(2_500);
+        assertThat(gzipped.headers().firstValue("Content-Encoding")).hasValue("gzip");
+        assertThat(unzipped).isEqualTo(export);
+        assertThat(refused.headers().firstValue("Content-Encoding")).isEmpty();
+        assertThat(refused.body()).isEqualTo(export);
+        String previousId = "";
+        for (String line : lines) {
+            Ebook ebook = objectMapper.readValue(line, Ebook.class);
+            assertThat(ebook).isEqualTo(ebookService.get(ebook.getId()));
+            assertThat(ebook.getId()).isGreaterThan(previousId);
+            previousId = ebook.getId();
+        }
+    }
+
+    @Test
+    void shouldReadPagesOnlyOnDemand() {
+        // Arrange
+        for (int i = 0; i < 10; i++) {
+            ebookService.add(new Ebook(null, "testAuthor", "testTitle" + i, "testFormat"));
+        }
+
+        // Act & Assert: a subscriber that never requests more than one page never sees a second
+        StepVerifier.create(reactiveEbookService.pages(null, null, 4), 1)
+                .assertNext(page -> assertThat(page).hasSize(4))
+                .expectNoEvent(Duration.ofMillis(50))
+                .thenRequest(2)
+                .assertNext(page -> assertThat(page).hasSize(4))
+                .assertNext(page -> assertThat(page).hasSize(2))
+                .verifyComplete();
+    }
+
+    @Test
+    void shouldStreamChangesAfterLastEventId() {
+        // Arrange
+        Ebook first = ebookService.add(new Ebook(null, "testAuthor", "testTitle1", "testFormat"));
+        Ebook second = ebookService.add(new Ebook(null, "testAuthor", "testTitle2", "testFormat"));
+
+        // Act
+        Flux<ServerSentEvent<Map<String, Object>>> events = webTestClient.get().uri("/ebooks/changes")
+                .header("Last-Event-ID", Long.toString(first.getVersion()))
+                .accept(MediaType.TEXT_EVENT_STREAM)
+                .exchange()
+                .expectStatus().isOk()
+                .returnResult(new ParameterizedTypeReference<ServerSentEvent<Map<String, Object>>>() {
+                })
+                .getResponseBody()
+                .filter(event -> event.event() != null);
+
+        // Assert
+        StepVerifier.create(events)
+                .assertNext(event -> {
+                    assertThat(event.event()).isEqualTo("created");
+                    assertThat(event.id()).isEqualTo(Long.toString(second.getVersion()));
+                    assertThat(event.data()).containsEntry("id", second.getId());
+                })
+                .then(() -> ebookService.remove(second.getId()))
+                .assertNext(event -> {
+                    assertThat(event.event()).isEqualTo("deleted");
+                    assertThat(event.data()).containsEntry("id", second.getId());
+                })
+                .thenCancel()
+                .verify(Duration.ofSeconds(10));
+    }
+}
@@ -0,0 +1,68 @@
+package com.jani.ebookapi;
+
+import com.jani.ebookapi.model.Ebook;
+import com.jani.ebookapi.replication.ReplicationLog;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class ReplicationLogTests {
+
+    @Test
+    void shouldStopAtTheFirstChangeNotAppendedYet() throws Exception {
+        // Arrange
+        ReplicationLog log = new ReplicationLog(16, 0);
+        log.append(1, "a", new Ebook());
+        log.append(3, "c", new Ebook());
+
+        // Act
+        List<ReplicationLog.Change> beforeGap = log.read(0, 10, 0);
+        log.append(2, "b", null);
+        List<ReplicationLog.Change> afterGap = log.read(0, 10, 0);
+
+        // Assert
+        assertThat(beforeGap).extracting(ReplicationLog.Change::id).containsExactly("a");
+        assertThat(afterGap).extracting(ReplicationLog.Change::id).containsExactly("a", "b", "c");
+        assertThat(afterGap.get(1).ebook()).isNull();
+    }
+
+    @Test
+    void shouldRejectReadsOfChangesNoLongerHeld() throws Exception {
+        // Arrange
+        ReplicationLog log = new ReplicationLog(4, 2);
+        for (long sequence = 3; sequence <= 10; sequence++) {
+            log.append(sequence, "id" + sequence, new Ebook());
+        }
+
+        // Act & Assert
+        assertThat(log.read(1, 10, 0)).isNull();
+        assertThat(log.read(5, 10, 0)).isNull();
+        assertThat(log.read(6, 10, 0)).extracting(ReplicationLog.Change::sequence).containsExactly(7L, 8L, 9L, 10L);
+        assertThat(log.read(11, 10, 0)).isNull();
+    }
+
+    @Test
+    void shouldWakeWaitingReaderOnAppend() throws Exception {
+        // Arrange
+        ReplicationLog log = new ReplicationLog(16, 0);
+        CompletableFuture<List<ReplicationLog.Change>> read = CompletableFuture.supplyAsync(() -> {
+            try {
+                return log.read(0, 10, 10_000);
+            } catch (InterruptedException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        Thread.sleep(50);
+
+        // Act
+        log.appendClear(1);
+
+        // Assert
+        List<ReplicationLog.Change> changes = read.get();
+        assertThat(changes).hasSize(1);
+        assertThat(changes.get(0).clear()).isTrue();
+    }
+}
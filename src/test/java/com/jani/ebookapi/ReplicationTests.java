@@ -0,0 +1,186 @@
+package com.jani.ebookapi;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.jani.ebookapi.model.Ebook;
+import com.jani.ebookapi.replication.ReplicationFollower;
+import com.jani.ebookapi.service.EbookService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.boot.SpringApplication;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+// a leader and its replicas in one JVM, each on its own loopback port
+public class ReplicationTests {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final HttpClient httpClient = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+    private final List<ConfigurableApplicationContext> instances = new ArrayList<>();
+
+    @AfterEach
+    void stopInstances() {
+        // replicas first, so none of them waits for a leader that is gone
+        for (int i = instances.size() - 1; i >= 0; i--) {
+            instances.get(i).close();
+        }
+    }
+
+    @Test
+    void shouldReplicateWritesWithTheLeadersVersions() throws Exception {
+        // Arrange
+        String leader = start("--ebook.replication.role=leader");
+        String follower = start("--ebook.replication.role=follower", "--ebook.replication.leader=" + leader);
+        List<String> ids = addEbooks(leader, 20);
+
+        // Act
+        send("PUT", leader + "/ebooks/" + ids.get(0), "{\"author\": \"testAuthor\", \"title\": \"updatedTitle\", \"format\": \"epub\"}", null);
+        send("DELETE", leader + "/ebooks/" + ids.get(1), null, null);
+        awaitReplicated(instances.get(1));
+
+        // Assert: same ebooks under the same ETags, and nothing left to apply
+        assertThat(snapshot(instances.get(1))).isEqualTo(snapshot(instances.get(0)));
+        for (String id : ids) {
+            HttpResponse<String> fromLeader = send("GET", leader + "/ebooks/" + id, null, null);
+            HttpResponse<String> fromFollower = send("GET", follower + "/ebooks/" + id, null, null);
+            assertThat(fromFollower.statusCode()).isEqualTo(fromLeader.statusCode());
+            assertThat(fromFollower.headers().firstValue("ETag")).isEqualTo(fromLeader.headers().firstValue("ETag"));
+        }
+        JsonNode status = objectMapper.readTree(send("GET", follower + "/replication", null, null).body());
+        assertThat(status.get("role").asText()).isEqualTo("follower");
+        assertThat(status.get("lag").asLong()).isZero();
+        assertThat(status.get("resyncs").asLong()).isZero();
+    }
+
+    @Test
+    void shouldForwardWritesToTheLeaderAndReadThemBack() throws Exception {
+        // Arrange
+        String leader = start("--ebook.replication.role=leader");
+        String follower = start("--ebook.replication.role=follower", "--ebook.replication.leader=" + leader);
+
+        // Act
+        HttpResponse<String> created = send("POST", follower + "/ebooks", "{\"author\": \"testAuthor\", \"title\": \"testTitle\", \"format\": \"pdf\"}", null);
+        String id = objectMapper.readTree(created.body()).get("id").asText();
+        String etag = created.headers().firstValue("ETag").orElseThrow();
+        HttpResponse<String> read = send("GET", follower + "/ebooks/" + id, null, null);
+        HttpResponse<String> updated = send("PUT", follower + "/ebooks/" + id, "{\"author\": \"testAuthor\", \"title\": \"updatedTitle\", \"format\": \"pdf\"}", etag);
+        HttpResponse<String> stale = send("PUT", follower + "/ebooks/" + id, "{\"author\": \"testAuthor\", \"title\": \"staleTitle\", \"format\": \"pdf\"}", etag);
+        HttpResponse<String> reread = send("GET", follower + "/ebooks/" + id, null, null);
+
+        // Assert: every write reached the leader, and the replica had each one before answering
+        assertThat(created.statusCode()).isEqualTo(201);
+        assertThat(read.statusCode()).isEqualTo(200);
+        assertThat(read.headers().firstValue("ETag")).contains(etag);
+        assertThat(updated.statusCode()).isEqualTo(200);
+        assertThat(stale.statusCode()).isEqualTo(412);
+        assertThat(objectMapper.readTree(reread.body()).get("title").asText()).isEqualTo("updatedTitle");
+        assertThat(reread.headers().firstValue("ETag")).isEqualTo(updated.headers().firstValue("ETag"));
+        assertThat(instances.get(0).getBean(EbookService.class).get(id).getTitle()).isEqualTo("updatedTitle");
+    }
+
+    @Test
+    void shouldCatchUpAfterRestartFromItsOwnSequence(@TempDir Path directory) throws Exception {
+        // Arrange
+        String leader = start("--ebook.replication.role=leader");
+        String[] follower = {"--ebook.replication.role=follower", "--ebook.replication.leader=" + leader,
+                "--ebook.persistence.enabled=true", "--ebook.persistence.directory=" + directory};
+        start(follower);
+        List<String> ids = addEbooks(leader, 10);
+        awaitReplicated(instances.get(1));
+        instances.remove(1).close();
+
+        // Act: changes made while the replica is down
+        addEbooks(leader, 5);
+        send("DELETE", leader + "/ebooks/" + ids.get(0), null, null);
+        String restarted = start(follower);
+        awaitReplicated(instances.get(1));
+
+        // Assert: it continued from where it stopped instead of loading the whole catalog again
+        assertThat(snapshot(instances.get(1))).isEqualTo(snapshot(instances.get(0)));
+        assertThat(objectMapper.readTree(send("GET", restarted + "/replication", null, null).body()).get("resyncs").asLong()).isZero();
+    }
+
+    @Test
+    void shouldLoadTheCatalogWhenTheLeaderNoLongerHoldsTheChanges() throws Exception {
+        // Arrange: more changes than the leader keeps
+        String leader = start("--ebook.replication.role=leader", "--ebook.replication.log-size=8");
+        List<String> ids = addEbooks(leader, 30);
+        send("DELETE", leader + "/ebooks/" + ids.get(0), null, null);
+
+        // Act
+        String follower = start("--ebook.replication.role=follower", "--ebook.replication.leader=" + leader);
+        awaitReplicated(instances.get(1));
+        addEbooks(leader, 3);
+        awaitReplicated(instances.get(1));
+
+        // Assert
+        assertThat(snapshot(instances.get(1))).isEqualTo(snapshot(instances.get(0)));
+        assertThat(snapshot(instances.get(1))).hasSize(32);
+        assertThat(objectMapper.readTree(send("GET", follower + "/replication", null, null).body()).get("resyncs").asLong()).isEqualTo(1);
+    }
+
+    private String start(String... arguments) throws IOException {
+        String url;
+        try (ServerSocket socket = new ServerSocket(0)) {
+            url = "http://127.0.0.1:" + socket.getLocalPort();
+        }
+        List<String> args = new ArrayList<>(List.of(
+                "--server.address=127.0.0.1",
+                "--server.port=" + URI.create(url).getPort(),
+                "--spring.main.banner-mode=off",
+                "--ebook.replication.poll-wait=1s"));
+        args.addAll(List.of(arguments));
+        instances.add(SpringApplication.run(EbookApplication.class, args.toArray(String[]::new)));
+        return url;
+    }
+
+    private List<String> addEbooks(String url, int count) throws Exception {
+        List<String> ids = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            String ebook = "{\"author\": \"testAuthor\", \"title\": \"testTitle" + i + "\", \"format\": \"pdf\"}";
+            HttpResponse<String> response = send("POST", url + "/ebooks", ebook, null);
+            assertThat(response.statusCode()).isEqualTo(201);
+            ids.add(objectMapper.readTree(response.body()).get("id").asText());
+        }
+        return ids;
+    }
+
+    // until the replica has applied everything the leader (the first instance) has
+    private void awaitReplicated(ConfigurableApplicationContext replica) throws InterruptedException {
+        long sequence = instances.get(0).getBean(EbookService.class).checkpoint();
+        ReplicationFollower follower = replica.getBean(ReplicationFollower.class);
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (follower.applied() < sequence && System.currentTimeMillis() < deadline) {
+            Thread.sleep(20);
+        }
+        assertThat(follower.applied()).isEqualTo(sequence);
+    }
+
+    // every ebook's id, title and version
+    private Map<String, String> snapshot(ConfigurableApplicationContext instance) {
+        return instance.getBean(EbookService.class).getAll().stream()
+                .collect(Collectors.toMap(Ebook::getId, ebook -> ebook.getTitle() + "@" + ebook.getVersion()));
+    }
+
+    private HttpResponse<String> send(String method, String url, String body, String ifMatch) throws Exception {
+        HttpRequest.Builder request = HttpRequest.newBuilder(URI.create(url))
+                .method(method, body == null ? HttpRequest.BodyPublishers.noBody() : HttpRequest.BodyPublishers.ofString(body))
+                .header("Content-Type", "application/json");
+        if (ifMatch != null) request.header("If-Match", ifMatch);
+        return httpClient.send(request.build(), HttpResponse.BodyHandlers.ofString());
+    }
+}
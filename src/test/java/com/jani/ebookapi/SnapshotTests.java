@@ -0,0 +1,212 @@
+package com.jani.ebookapi;
+
+import com.jani.ebookapi.model.Ebook;
+import com.jani.ebookapi.persistence.DurabilityMode;
+import com.jani.ebookapi.persistence.SnapshotFile;
+import com.jani.ebookapi.persistence.SnapshotManager;
+import com.jani.ebookapi.persistence.WriteAheadLog;
+import com.jani.ebookapi.service.EbookDelta;
+import com.jani.ebookapi.service.EbookService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SnapshotTests {
+
+    @TempDir
+    Path directory;
+
+    private final List<WriteAheadLog> openLogs = new ArrayList<>();
+
+    @AfterEach
+    void tearDown() throws IOException {
+        for (WriteAheadLog writeAheadLog : openLogs) {
+            writeAheadLog.close();
+        }
+    }
+
+    @Test
+    void shouldRoundTripSnapshotFile() throws IOException {
+        // Arrange: enough ebooks for several blocks
+        List<Ebook> ebooks = new ArrayList<>();
+        ebooks.add(new Ebook(UUID.randomUUID().toString(), "Åsa Löfgren", null, "epub"));
+        ebooks.add(new Ebook(UUID.randomUUID().toString(), null, "", null));
+        for (int i = 0; i < 40_000; i++) {
+            ebooks.add(new Ebook(UUID.randomUUID().toString(), "testAuthor" + i % 7, "testTitle" + i, "testFormat"));
+        }
+        Path file = directory.resolve("snapshot.bin");
+
+        // Act
+        long written = SnapshotFile.write(file, 42, ebooks);
+        Set<Ebook> read = ConcurrentHashMap.newKeySet();
+        long sequence = SnapshotFile.read(file, read::add);
+
+        // Assert
+        assertEquals(ebooks.size(), written);
+        assertEquals(42, sequence);
+        assertEquals(42, SnapshotFile.sequence(file));
+        assertEquals(new HashSet<>(ebooks), read);
+    }
+
+    @Test
+    void shouldRejectCorruptOrTruncatedSnapshotFile() throws IOException {
+        // Arrange
+        List<Ebook> ebooks = List.of(new Ebook(UUID.randomUUID().toString(), "testAuthor", "testTitle", "testFormat"));
+        Path corrupt = directory.resolve("corrupt.bin");
+        SnapshotFile.write(corrupt, 1, ebooks);
+        byte[] bytes = Files.readAllBytes(corrupt);
+        // the file ends with the empty block's header and the 20-byte header of no removals
+        bytes[bytes.length - 40] ^= 1;
+        Files.write(corrupt, bytes);
+        Path truncated = directory.resolve("truncated.bin");
+        Files.write(truncated, Arrays.copyOf(bytes, bytes.length - 32));
+        Path truncatedRemovals = directory.resolve("truncated-removals.bin");
+        SnapshotFile.write(truncatedRemovals, 1, ebooks);
+        byte[] complete = Files.readAllBytes(truncatedRemovals);
+        Files.write(truncatedRemovals, Arrays.copyOf(complete, complete.length - 4));
+
+        // Act & Assert
+        assertThrows(IOException.class, () -> SnapshotFile.read(corrupt, ebook -> { }));
+        assertThrows(IOException.class, () -> SnapshotFile.read(truncated, ebook -> { }));
+        assertThrows(IOException.class, () -> SnapshotFile.removals(truncatedRemovals));
+    }
+
+    @Test
+    void shouldRecoverFromSnapshotAndLaterLogRecords() throws IOException {
+        // Arrange
+        WriteAheadLog writeAheadLog = open(256);
+        EbookService ebookService = new EbookService();
+        SnapshotManager snapshotManager = recover(ebookService, writeAheadLog);
+        List<Ebook> added = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            added.add(ebookService.add(new Ebook(null, "testAuthor", "testTitle" + i, "testFormat")));
+        }
+        long segmentsBefore = countFiles("wal-");
+        snapshotManager.snapshot();
+        ebookService.remove(added.get(0).getId());
+        Ebook updated = ebookService.update(added.get(1).getId(), new Ebook(null, "updatedAuthor", "updatedTitle", "updatedFormat"));
+        Ebook addedLater = ebookService.add(new Ebook(null, "testAuthor", "laterTitle", "testFormat"));
+        writeAheadLog.close();
+
+        // Act
+        EbookService recoveredService = new EbookService();
+        recover(recoveredService, open(256));
+
+        // Assert
+        assertTrue(countFiles("wal-") < segmentsBefore);
+        assertEquals(1, countFiles("snapshot-"));
+        assertEquals(20, recoveredService.getAll().size());
+        assertNull(recoveredService.get(added.get(0).getId()));
+        assertEquals(updated, recoveredService.get(updated.getId()));
+        assertEquals(addedLater, recoveredService.get(addedLater.getId()));
+        assertEquals(added.get(2), recoveredService.get(added.get(2).getId()));
+        assertEquals(added.get(2).getVersion(), recoveredService.get(added.get(2).getId()).getVersion());
+        assertEquals(updated.getVersion(), recoveredService.get(updated.getId()).getVersion());
+        assertEquals(19, recoveredService.find("testAuthor", "testFormat", null, 100).size());
+        assertEquals(List.of(added.get(2)), recoveredService.search("testTitle2", 10));
+        assertTrue(recoveredService.add(new Ebook(null, "testAuthor", "newTitle", "testFormat")).getVersion()
+                > addedLater.getVersion());
+        assertEquals(List.of(updated), recoveredService.find("updatedAuthor", null, null, 10));
+    }
+
+    @Test
+    void shouldRecoverWritesConcurrentWithSnapshots() throws Exception {
+        // Arrange
+        WriteAheadLog writeAheadLog = open(4096);
+        EbookService ebookService = new EbookService();
+        SnapshotManager snapshotManager = recover(ebookService, writeAheadLog);
+        List<String> ids = new ArrayList<>();
+        for (int i = 0; i < 64; i++) {
+            ids.add(ebookService.add(new Ebook(null, "testAuthor", "0", "testFormat")).getId());
+        }
+
+        // Act: keep updating and removing while snapshots are taken
+        AtomicBoolean running = new AtomicBoolean(true);
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<?>> writers = new ArrayList<>();
+            for (int t = 0; t < 4; t++) {
+                writers.add(executor.submit(() -> {
+                    ThreadLocalRandom random = ThreadLocalRandom.current();
+                    while (running.get()) {
+                        String id = ids.get(random.nextInt(ids.size()));
+                        if (random.nextInt(10) == 0) {
+                            ebookService.remove(id);
+                        } else {
+                            ebookService.update(id, new Ebook(null, "testAuthor", String.valueOf(random.nextInt()), "testFormat"));
+                        }
+                    }
+                }));
+            }
+            for (int i = 0; i < 5; i++) {
+                snapshotManager.snapshot();
+            }
+            running.set(false);
+            for (Future<?> writer : writers) {
+                writer.get(30, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        writeAheadLog.close();
+        EbookService recoveredService = new EbookService();
+        recover(recoveredService, open(4096));
+
+        // Assert
+        assertEquals(new HashSet<>(ebookService.getAll()), new HashSet<>(recoveredService.getAll()));
+    }
+
+    @Test
+    void shouldKeepRemovalsForChangesSinceAcrossRestart() throws IOException {
+        // Arrange
+        WriteAheadLog writeAheadLog = open(4096);
+        EbookService ebookService = new EbookService();
+        SnapshotManager snapshotManager = recover(ebookService, writeAheadLog);
+        Ebook removed = ebookService.add(new Ebook(null, "testAuthor", "testTitle", "testFormat"));
+        Ebook kept = ebookService.add(new Ebook(null, "testAuthor", "testTitle", "testFormat"));
+        long since = ebookService.checkpoint();
+        ebookService.remove(removed.getId());
+        snapshotManager.snapshot();
+        writeAheadLog.close();
+
+        // Act
+        EbookService recoveredService = new EbookService();
+        recover(recoveredService, open(4096));
+        EbookDelta delta = recoveredService.changesSince(since, 100);
+
+        // Assert: the removal came from the snapshot, the log segments holding it are gone
+        assertNotNull(delta);
+        assertEquals(List.of(removed.getId()), delta.removed());
+        assertTrue(delta.ebooks().isEmpty());
+        assertEquals(kept, recoveredService.get(kept.getId()));
+    }
+
+    private WriteAheadLog open(long segmentBytes) throws IOException {
+        WriteAheadLog writeAheadLog = new WriteAheadLog(directory, DurabilityMode.BATCH, segmentBytes, Duration.ofMillis(10));
+        openLogs.add(writeAheadLog);
+        return writeAheadLog;
+    }
+
+    private SnapshotManager recover(EbookService ebookService, WriteAheadLog writeAheadLog) throws IOException {
+        SnapshotManager snapshotManager = new SnapshotManager(directory, ebookService, writeAheadLog);
+        snapshotManager.recover();
+        return snapshotManager;
+    }
+
+    private long countFiles(String prefix) throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(path -> path.getFileName().toString().startsWith(prefix)).count();
+        }
+    }
+}
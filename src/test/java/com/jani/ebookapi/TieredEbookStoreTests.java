@@ -0,0 +1,236 @@
+package com.jani.ebookapi;
+
+import com.jani.ebookapi.model.Ebook;
+import com.jani.ebookapi.service.EbookService;
+import com.jani.ebookapi.service.RandomIdGenerator;
+import com.jani.ebookapi.store.TieredEbookStore;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TieredEbookStoreTests {
+
+    @TempDir
+    private Path directory;
+
+    private TieredEbookStore ebookStore;
+    private EbookService ebookService;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        // room for a few dozen ebooks, so most reads decode from the file
+        ebookStore = new TieredEbookStore(directory, 16 * 1024, 0);
+        ebookService = new EbookService(ebookStore);
+    }
+
+    @AfterEach
+    void tearDown() {
+        ebookStore.close();
+    }
+
+    @Test
+    void shouldRoundTripEbooksThroughTheFile() {
+        // Arrange
+        List<Ebook> added = new ArrayList<>();
+        for (int i = 0; i < 2_000; i++) {
+            added.add(ebookService.add(new Ebook(null, "Émile Zola " + i % 10, "Thérèse Raquin – 日本語 " + i, "epub")));
+        }
+        Ebook empty = ebookService.add(new Ebook(null, null, null, null));
+
+        // Act & Assert
+        for (Ebook ebook : added) {
+            Ebook retrieved = ebookService.get(ebook.getId());
+            assertEquals(ebook, retrieved);
+            assertEquals(ebook.getVersion(), retrieved.getVersion());
+        }
+        assertEquals(empty, ebookService.get(empty.getId()));
+        assertNull(ebookService.get(UUID.randomUUID().toString()));
+        assertNull(ebookService.get("not-a-uuid"));
+    }
+
+    @Test
+    void shouldScanInSameOrderAsStringIdsAfterUpdatesAndRemoves() {
+        // Arrange
+        ebookService = new EbookService(ebookStore, new RandomIdGenerator());
+        List<String> ids = new ArrayList<>();
+        for (int i = 0; i < 1_000; i++) {
+            ids.add(ebookService.add(new Ebook(null, "testAuthor", "testTitle" + i, "testFormat")).getId());
+        }
+        for (int i = 0; i < 1_000; i += 3) {
+            ebookService.update(ids.get(i), new Ebook(null, "testAuthor", "updatedTitle" + i, "testFormat"));
+        }
+        for (int i = 1; i < 1_000; i += 10) {
+            ebookService.remove(ids.get(i));
+        }
+        List<String> expected = new ArrayList<>();
+        for (int i = 0; i < 1_000; i++) {
+            if (i % 10 != 1) expected.add(ids.get(i));
+        }
+        expected.sort(null);
+
+        // Act
+        List<String> firstPage = new ArrayList<>();
+        ebookStore.scan(null, 450).forEach(ebook -> firstPage.add(ebook.getId()));
+        List<String> secondPage = new ArrayList<>();
+        ebookStore.scan(firstPage.get(449), 1_000).forEach(ebook -> secondPage.add(ebook.getId()));
+
+        // Assert
+        assertEquals(expected.subList(0, 450), firstPage);
+        assertEquals(expected.subList(450, 900), secondPage);
+        assertEquals(900, ebookStore.size());
+        assertEquals("updatedTitle3", ebookService.get(ids.get(3)).getTitle());
+    }
+
+    @Test
+    void shouldFindStableEbooksWhileLeavesSplitAndTheFileIsCompacted() throws Exception {
+        // Arrange
+        ebookService = new EbookService(ebookStore, new RandomIdGenerator());
+        List<Ebook> stable = new ArrayList<>();
+        for (int i = 0; i < 2_000; i++) {
+            stable.add(ebookService.add(new Ebook(null, "testAuthor", "testTitle" + i, "testFormat")));
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+
+        // Act: readers look up and iterate while one writer splits leaves and another compacts the file
+        Future<?> writer = executor.submit(() -> {
+            for (int i = 0; i < 20_000; i++) {
+                ebookService.add(new Ebook(null, "testAuthor", "testTitle", "testFormat"));
+            }
+        });
+        Future<?> compactions = executor.submit(() -> {
+            for (int i = 0; i < 20; i++) {
+                ebookStore.compact();
+            }
+        });
+        int misses = 0;
+        int duplicates = 0;
+        while (!writer.isDone() || !compactions.isDone()) {
+            for (Ebook ebook : stable) {
+                if (!ebook.equals(ebookService.get(ebook.getId()))) misses++;
+            }
+            Set<String> seen = new HashSet<>();
+            for (Ebook ebook : ebookService.getAll()) {
+                if (!seen.add(ebook.getId())) duplicates++;
+            }
+            if (!seen.containsAll(stable.stream().map(Ebook::getId).toList())) misses++;
+        }
+        writer.get(60, TimeUnit.SECONDS);
+        compactions.get(60, TimeUnit.SECONDS);
+        executor.shutdown();
+
+        // Assert
+        assertEquals(0, misses);
+        assertEquals(0, duplicates);
+        assertEquals(22_000, ebookStore.size());
+        assertEquals(22_000, ebookService.getAll().stream().map(Ebook::getId).distinct().count());
+    }
+
+    @Test
+    void shouldReclaimSupersededRecords() throws Exception {
+        // Arrange: a store that leaves compacting to this test
+        ebookStore.close();
+        ebookStore = new TieredEbookStore(directory, 16 * 1024, Long.MAX_VALUE);
+        ebookService = new EbookService(ebookStore);
+        List<String> ids = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            ids.add(ebookService.add(new Ebook(null, "testAuthor", "testTitle", "testFormat")).getId());
+        }
+        for (int round = 0; round < 50; round++) {
+            for (String id : ids) {
+                ebookService.update(id, new Ebook(null, "testAuthor", "testTitle" + round, "testFormat"));
+            }
+        }
+        long before = ebookStore.diskBytes();
+
+        // Act
+        ebookStore.compact();
+        ebookService.clearData();
+        ebookStore.compact();
+
+        // Assert: one file left, and nothing in it
+        assertTrue(before > 100 * 50 * 50, "before " + before);
+        assertEquals(0, ebookStore.diskBytes());
+        assertEquals(0, ebookStore.size());
+        try (Stream<Path> files = Files.list(directory)) {
+            assertEquals(1, files.count());
+        }
+    }
+
+    @Test
+    void shouldCompactInTheBackgroundOnceMostOfTheFileIsSuperseded() throws Exception {
+        // Arrange
+        String id = ebookService.add(new Ebook(null, "testAuthor", "testTitle", "testFormat")).getId();
+
+        // Act
+        for (int i = 0; i < 1_000; i++) {
+            ebookService.update(id, new Ebook(null, "testAuthor", "testTitle" + i, "testFormat"));
+        }
+        ebookStore.awaitCompaction(Duration.ofSeconds(10));
+
+        // Assert
+        assertTrue(ebookStore.diskBytes() <= 10_000, "disk " + ebookStore.diskBytes());
+        assertEquals("testTitle999", ebookService.get(id).getTitle());
+    }
+
+    @Test
+    void shouldNotLoseConcurrentAtomicUpdates() throws Exception {
+        // Arrange
+        String id = ebookService.add(new Ebook(null, "testAuthor", "0", "testFormat")).getId();
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+
+        // Act
+        List<Future<?>> futures = new ArrayList<>();
+        for (int t = 0; t < 8; t++) {
+            futures.add(executor.submit(() -> {
+                for (int i = 0; i < 1_000; i++) {
+                    ebookStore.computeIfPresent(id, (key, existing) -> new Ebook(null, existing.getAuthor(),
+                            String.valueOf(Integer.parseInt(existing.getTitle()) + 1), existing.getFormat()));
+                    ebookService.add(new Ebook(null, "testAuthor", UUID.randomUUID().toString(), "testFormat"));
+                }
+            }));
+        }
+        for (Future<?> future : futures) {
+            future.get(60, TimeUnit.SECONDS);
+        }
+        executor.shutdown();
+
+        // Assert
+        assertEquals("8000", ebookService.get(id).getTitle());
+        assertEquals(8_001, ebookStore.size());
+    }
+
+    @Test
+    void shouldKeepHeapFootprintToIdsAndTheCache() {
+        // Arrange
+        List<Ebook> ebooks = new ArrayList<>();
+        for (int i = 0; i < 10_000; i++) {
+            ebooks.add(new Ebook(null, "testAuthor" + i % 100, "testTitle" + i, "epub"));
+        }
+
+        // Act
+        ebookService.addAll(ebooks);
+        long filled = ebookStore.estimatedBytes();
+
+        // Assert: 24 bytes of id and location per ebook, plus at most the 16KB cache
+        assertTrue(filled > 10_000L * 24 && filled < 10_000L * 30 + 16 * 1024, "estimated " + filled);
+        assertTrue(ebookStore.diskBytes() > 10_000L * 60);
+    }
+}
@@ -0,0 +1,8 @@
+package com.jani.ebookapi;
+
+import org.springframework.test.context.TestPropertySource;
+
+// runs the whole API suite against the tiered store, with a cache small enough that most reads go to the file
+@TestPropertySource(properties = {"ebook.store.type=tiered", "ebook.store.cache-size=16KB"})
+public class TieredStoreIntegrationTests extends EbookIntegrationTests {
+}
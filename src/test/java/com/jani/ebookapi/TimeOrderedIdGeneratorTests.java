@@ -0,0 +1,69 @@
+package com.jani.ebookapi;
+
+import com.jani.ebookapi.service.TimeOrderedIdGenerator;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TimeOrderedIdGeneratorTests {
+
+    private final TimeOrderedIdGenerator idGenerator = new TimeOrderedIdGenerator();
+
+    @Test
+    void shouldGenerateVersion7IdsWithCurrentTimestamp() {
+        // Arrange
+        long before = System.currentTimeMillis();
+
+        // Act
+        UUID id = UUID.fromString(idGenerator.nextId());
+
+        // Assert
+        assertEquals(7, id.version());
+        assertEquals(2, id.variant());
+        long timestamp = id.getMostSignificantBits() >>> 16;
+        assertTrue(timestamp >= before && timestamp <= System.currentTimeMillis() + 1);
+    }
+
+    @Test
+    void shouldGenerateStrictlyIncreasingIdsWithinThread() {
+        // Arrange: far more ids than fit into one millisecond's counter
+        String previous = idGenerator.nextId();
+
+        // Act & Assert: canonical lowercase strings sort like the ids
+        for (int i = 0; i < 200_000; i++) {
+            String id = idGenerator.nextId();
+            assertTrue(id.compareTo(previous) > 0, id + " after " + previous);
+            previous = id;
+        }
+    }
+
+    @Test
+    void shouldGenerateUniqueIdsAcrossThreads() throws Exception {
+        // Arrange
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+
+        // Act
+        List<Future<String[]>> futures = new ArrayList<>();
+        for (int t = 0; t < 8; t++) {
+            futures.add(executor.submit(() -> idGenerator.nextIds(50_000)));
+        }
+        Set<String> ids = new HashSet<>();
+        for (Future<String[]> future : futures) {
+            ids.addAll(List.of(future.get(60, TimeUnit.SECONDS)));
+        }
+        executor.shutdown();
+
+        // Assert
+        assertEquals(400_000, ids.size());
+    }
+}
@@ -0,0 +1,105 @@
+package com.jani.ebookapi;
+
+import com.jani.ebookapi.model.Ebook;
+import com.jani.ebookapi.service.EbookService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class TitleSearchIndexTests {
+
+    private EbookService ebookService;
+
+    @BeforeEach
+    void setUp() {
+        ebookService = new EbookService();
+    }
+
+    @Test
+    void shouldFindTitlesByPrefixOfLastToken() {
+        // Arrange
+        ebookService.add(new Ebook(null, "testAuthor", "The Hobbit", "epub"));
+        ebookService.add(new Ebook(null, "testAuthor", "Homage to Catalonia", "epub"));
+        ebookService.add(new Ebook(null, "testAuthor", "Dune", "epub"));
+
+        // Act
+        List<Ebook> result = ebookService.search("ho", 10);
+
+        // Assert
+        assertThat(result).extracting(Ebook::getTitle)
+                .containsExactly("Homage to Catalonia", "The Hobbit");
+    }
+
+    @Test
+    void shouldRequireAllCompletedTokensToMatch() {
+        // Arrange
+        ebookService.add(new Ebook(null, "testAuthor", "War and Peace", "epub"));
+        ebookService.add(new Ebook(null, "testAuthor", "The Art of War", "epub"));
+        ebookService.add(new Ebook(null, "testAuthor", "Peace Talks", "epub"));
+
+        // Act
+        List<Ebook> result = ebookService.search("war pe", 10);
+
+        // Assert
+        assertThat(result).extracting(Ebook::getTitle).containsExactly("War and Peace");
+    }
+
+    @Test
+    void shouldRankExactMatchesBeforePrefixMatches() {
+        // Arrange
+        ebookService.add(new Ebook(null, "testAuthor", "Sea of Tranquility", "epub"));
+        ebookService.add(new Ebook(null, "testAuthor", "Seasons", "epub"));
+        ebookService.add(new Ebook(null, "testAuthor", "The Old Man and the Sea", "epub"));
+
+        // Act
+        List<Ebook> completed = ebookService.search("sea ", 10);
+        List<Ebook> typing = ebookService.search("SEA", 10);
+
+        // Assert
+        assertThat(completed).extracting(Ebook::getTitle)
+                .containsExactly("Sea of Tranquility", "The Old Man and the Sea");
+        assertThat(typing).extracting(Ebook::getTitle)
+                .containsExactly("Sea of Tranquility", "The Old Man and the Sea", "Seasons");
+    }
+
+    @Test
+    void shouldLimitResults() {
+        // Arrange
+        for (int i = 0; i < 20; i++) {
+            ebookService.add(new Ebook(null, "testAuthor", "Volume " + i, "epub"));
+        }
+
+        // Act & Assert
+        assertThat(ebookService.search("vol", 5)).hasSize(5);
+        assertThat(ebookService.search("vol", 50)).hasSize(20);
+    }
+
+    @Test
+    void shouldKeepIndexInSyncWithUpdateAndRemove() {
+        // Arrange
+        Ebook ebook = ebookService.add(new Ebook(null, "testAuthor", "Old Title", "epub"));
+        Ebook other = ebookService.add(new Ebook(null, "testAuthor", "Other Title", "epub"));
+
+        // Act
+        ebookService.update(ebook.getId(), new Ebook(null, "testAuthor", "New Name", "epub"));
+        ebookService.remove(other.getId());
+
+        // Assert
+        assertThat(ebookService.search("title", 10)).isEmpty();
+        assertThat(ebookService.search("old", 10)).isEmpty();
+        assertThat(ebookService.search("new na", 10)).extracting(Ebook::getId).containsExactly(ebook.getId());
+    }
+
+    @Test
+    void shouldReturnNothingForQueriesWithoutTokens() {
+        // Arrange
+        ebookService.add(new Ebook(null, "testAuthor", "Dune", "epub"));
+
+        // Act & Assert
+        assertThat(ebookService.search("  -- ", 10)).isEmpty();
+        assertThat(ebookService.search("xyz", 10)).isEmpty();
+    }
+}
@@ -0,0 +1,193 @@
+package com.jani.ebookapi;
+
+import com.jani.ebookapi.model.Ebook;
+import com.jani.ebookapi.persistence.DurabilityMode;
+import com.jani.ebookapi.persistence.WalRecord;
+import com.jani.ebookapi.persistence.WriteAheadLog;
+import com.jani.ebookapi.service.EbookService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class WriteAheadLogTests {
+
+    private static final long SEGMENT_BYTES = 64 * 1024 * 1024;
+
+    @TempDir
+    Path directory;
+
+    private final List<WriteAheadLog> openLogs = new ArrayList<>();
+
+    @AfterEach
+    void tearDown() throws IOException {
+        for (WriteAheadLog writeAheadLog : openLogs) {
+            writeAheadLog.close();
+        }
+    }
+
+    @Test
+    void shouldRestoreMutationsAfterRestart() throws IOException {
+        // Arrange
+        WriteAheadLog writeAheadLog = open(DurabilityMode.BATCH, SEGMENT_BYTES);
+        EbookService ebookService = restore(writeAheadLog);
+        Ebook kept = ebookService.add(new Ebook(null, "testAuthor", "testTitle", "testFormat"));
+        Ebook updated = ebookService.add(new Ebook(null, "testAuthor", null, "testFormat"));
+        Ebook removed = ebookService.add(new Ebook(null, "testAuthor", "testTitle", "testFormat"));
+        ebookService.update(updated.getId(), new Ebook(null, "updatedAuthor", "updatedTitle", "updatedFormat"));
+        ebookService.remove(removed.getId());
+        writeAheadLog.close();
+
+        // Act
+        EbookService restoredService = restore(open(DurabilityMode.BATCH, SEGMENT_BYTES));
+
+        // Assert
+        assertEquals(2, restoredService.getAll().size());
+        assertEquals(kept, restoredService.get(kept.getId()));
+        assertEquals(kept.getVersion(), restoredService.get(kept.getId()).getVersion());
+        assertEquals(new Ebook(updated.getId(), "updatedAuthor", "updatedTitle", "updatedFormat"),
+                restoredService.get(updated.getId()));
+        assertNull(restoredService.get(removed.getId()));
+        assertEquals(List.of(restoredService.get(updated.getId())),
+                restoredService.find("updatedAuthor", null, null, 10));
+    }
+
+    @Test
+    void shouldRestoreClearedData() throws IOException {
+        // Arrange
+        WriteAheadLog writeAheadLog = open(DurabilityMode.PERIODIC, SEGMENT_BYTES);
+        EbookService ebookService = restore(writeAheadLog);
+        ebookService.add(new Ebook(null, "testAuthor", "testTitle", "testFormat"));
+        ebookService.clearData();
+        Ebook added = ebookService.add(new Ebook(null, "testAuthor", "testTitle", "testFormat"));
+        writeAheadLog.close();
+
+        // Act
+        EbookService restoredService = restore(open(DurabilityMode.PERIODIC, SEGMENT_BYTES));
+
+        // Assert
+        assertEquals(List.of(added), new ArrayList<>(restoredService.getAll()));
+    }
+
+    @Test
+    void shouldTruncateTornTailOnReplay() throws IOException {
+        // Arrange: a crash in the middle of writing the last record
+        WriteAheadLog writeAheadLog = open(DurabilityMode.BATCH, SEGMENT_BYTES);
+        EbookService ebookService = restore(writeAheadLog);
+        Ebook first = ebookService.add(new Ebook(null, "testAuthor", "testTitle", "testFormat"));
+        ebookService.add(new Ebook(null, "testAuthor", "testTitle", "testFormat"));
+        writeAheadLog.close();
+        Path segment = segments().get(0);
+        long size = Files.size(segment);
+        try (var channel = Files.newByteChannel(segment, StandardOpenOption.WRITE)) {
+            channel.truncate(size - 5);
+        }
+
+        // Act
+        writeAheadLog = open(DurabilityMode.BATCH, SEGMENT_BYTES);
+        ebookService = restore(writeAheadLog);
+        Ebook afterRestart = ebookService.add(new Ebook(null, "testAuthor", "testTitle", "testFormat"));
+        writeAheadLog.close();
+        EbookService restoredService = restore(open(DurabilityMode.BATCH, SEGMENT_BYTES));
+
+        // Assert
+        assertEquals(2, restoredService.getAll().size());
+        assertEquals(first, restoredService.get(first.getId()));
+        assertEquals(afterRestart, restoredService.get(afterRestart.getId()));
+    }
+
+    @Test
+    void shouldRejectCorruptionBeforeTheLastSegment() throws IOException {
+        // Arrange
+        WriteAheadLog writeAheadLog = open(DurabilityMode.BATCH, 256);
+        EbookService ebookService = restore(writeAheadLog);
+        for (int i = 0; i < 20; i++) {
+            ebookService.add(new Ebook(null, "testAuthor", "testTitle" + i, "testFormat"));
+        }
+        writeAheadLog.close();
+        List<Path> segments = segments();
+        assertTrue(segments.size() > 1);
+        byte[] bytes = Files.readAllBytes(segments.get(0));
+        bytes[bytes.length - 1] ^= 1;
+        Files.write(segments.get(0), bytes);
+
+        // Act & Assert
+        WriteAheadLog corruptLog = open(DurabilityMode.BATCH, 256);
+        assertThrows(IOException.class, () -> corruptLog.replay(record -> { }));
+    }
+
+    @Test
+    void shouldPersistConcurrentWritesAcrossSegments() throws Exception {
+        // Arrange
+        int threads = 16;
+        int addsPerThread = 200;
+        WriteAheadLog writeAheadLog = open(DurabilityMode.BATCH, 16 * 1024);
+        EbookService ebookService = restore(writeAheadLog);
+
+        // Act: every add returns only once its group commit is fsynced
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                futures.add(executor.submit(() -> {
+                    for (int i = 0; i < addsPerThread; i++) {
+                        ebookService.add(new Ebook(null, "testAuthor", "testTitle" + i, "testFormat"));
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get(60, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        writeAheadLog.close();
+        List<WalRecord> records = new ArrayList<>();
+        open(DurabilityMode.BATCH, 16 * 1024).replay(records::add);
+
+        // Assert
+        assertTrue(segments().size() > 1);
+        assertEquals(threads * addsPerThread, records.size());
+        assertEquals(threads * addsPerThread, records.stream().mapToLong(WalRecord::sequence).distinct().count());
+        for (WalRecord record : records) {
+            assertEquals(ebookService.get(record.ebookId()), record.ebook());
+        }
+    }
+
+    private WriteAheadLog open(DurabilityMode durability, long segmentBytes) throws IOException {
+        WriteAheadLog writeAheadLog = new WriteAheadLog(directory, durability, segmentBytes, Duration.ofMillis(10));
+        openLogs.add(writeAheadLog);
+        return writeAheadLog;
+    }
+
+    private EbookService restore(WriteAheadLog writeAheadLog) throws IOException {
+        EbookService ebookService = new EbookService();
+        writeAheadLog.replay(record -> {
+            if (record.operation() == WalRecord.Operation.CLEAR) {
+                ebookService.clearData();
+            } else {
+                ebookService.restore(record.sequence(), record.ebookId(), record.ebook());
+            }
+        });
+        writeAheadLog.start();
+        ebookService.setJournal(writeAheadLog);
+        return ebookService;
+    }
+
+    private List<Path> segments() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.sorted().toList();
+        }
+    }
+}